@@ -20,4 +20,29 @@ public interface EntryStore extends AutoCloseable {
   void initialize() throws SQLException;
 
   String getUrl();
+
+  /**
+   * Creates an empty standby live database ahead of time, so that {@link #rotate(String)} only has
+   * to swap files. This may be called from a background thread.
+   */
+  default void prepareStandby() throws SQLException {}
+
+  /** @return true if this entry store implements {@link #rotate(String)}. */
+  default boolean supportsRotation() {
+    return false;
+  }
+
+  /**
+   * Commits any outstanding entries, moves the whole live database to the given file as it is,
+   * and carries on writing to the standby live database. No rows are copied.
+   *
+   * <p>The connection returned by {@link #getConnection()} before rotation is closed.  The rotated
+   * file is marked as rotated in the same commit, so that it can be told apart from other files
+   * left at the same path.
+   *
+   * @param rotatedFile where to move the live database to, which must not exist.
+   */
+  default void rotate(String rotatedFile) throws SQLException {
+    throw new UnsupportedOperationException("This entry store does not support rotation");
+  }
 }
@@ -22,4 +22,19 @@ public interface EntryStoreConfig {
   boolean getTracing();
 
   void setTracing(boolean tracing);
+
+  /**
+   * @return how long entries are held so that they are inserted in time order, or 0 to insert them
+   *     as they arrive.
+   */
+  default long getReorderWindowMillis() {
+    return 0;
+  }
+
+  /**
+   * The default implementation ignores the window, so entries are inserted as they arrive.
+   *
+   * @param reorderWindowMillis how long entries are held so that they are inserted in time order.
+   */
+  default void setReorderWindowMillis(long reorderWindowMillis) {}
 }
@@ -1,6 +1,3 @@
 package com.tersesystems.blacklite.archive;
 
-public interface FileArchiver extends Archiver {
-
-  String getFile();
-}
+public interface FileArchiver extends Archiver, RollableFile {}
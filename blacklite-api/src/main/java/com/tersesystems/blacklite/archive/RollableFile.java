@@ -0,0 +1,30 @@
+package com.tersesystems.blacklite.archive;
+
+/**
+ * A sealed archive file, as seen by the rolling strategy.
+ *
+ * <p>The rolling strategy only needs the name of the file, and to say where it has been moved to.
+ */
+public interface RollableFile {
+
+  /** @return the current name of the archive file. */
+  String getFile();
+
+  /**
+   * Called by the rolling strategy once the archive file has been renamed. The rolled file is
+   * sealed, and will not be written to again.
+   *
+   * @param rolledFile the new name of the archive file.
+   */
+  default void rolledOver(String rolledFile) {}
+
+  /**
+   * Called by the rolling strategy when it renames an older archive file to make room, i.e. moving
+   * every file in a fixed window up one index, so that anything tracking archives by path can
+   * follow it.
+   *
+   * @param from the old name of the archive file.
+   * @param to the new name of the archive file.
+   */
+  default void renamed(String from, String to) {}
+}
@@ -3,5 +3,5 @@ package com.tersesystems.blacklite.archive;
 public interface RollingStrategy {
 
   /** Roll over an archive file. */
-  void rollover(FileArchiver archiver);
+  void rollover(RollableFile file);
 }
@@ -0,0 +1,25 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.StatusReporter;
+
+/**
+ * Notified when an archive file has been sealed and rolled over, i.e. to ship it somewhere else.
+ *
+ * <p>Listeners are called on the thread doing the rollover, and should hand off any slow work to
+ * a thread of their own.
+ */
+public interface RolloverListener extends AutoCloseable {
+
+  default void initialize(StatusReporter statusReporter) throws Exception {}
+
+  /**
+   * Called once the archive file has been rolled over. The file is sealed, but may be renamed or
+   * deleted by later rollovers.
+   *
+   * @param rolledFile the name of the archive file after rollover.
+   */
+  void rolledOver(String rolledFile);
+
+  @Override
+  default void close() throws Exception {}
+}
@@ -1,12 +1,34 @@
 package com.tersesystems.blacklite.archive;
 
+import com.tersesystems.blacklite.StatusReporter;
 import java.sql.Connection;
 
 public interface TriggeringPolicy {
 
+  /**
+   * Called when the archiver is initialized.
+   *
+   * @param statusReporter reports errors from checking the archive.
+   */
+  default void initialize(StatusReporter statusReporter) {}
+
+  /**
+   * Called after each archive run that archived entries, before {@link #isTriggered}, so that
+   * policies can keep track of the archive without querying it.
+   *
+   * @param bytes roughly how many bytes were added to the archive file.
+   */
+  default void archived(long bytes) {}
+
   /**
    * @param conn the database connection.
    * @return true if the rollover strategy should be executed, false otherwise.
    */
   boolean isTriggered(Connection conn);
+
+  /**
+   * Called after the archive file has been rolled over, so that any cached state about the old
+   * archive file can be discarded.
+   */
+  default void reset() {}
 }
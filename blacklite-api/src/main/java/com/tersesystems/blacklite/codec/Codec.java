@@ -1,6 +1,7 @@
 package com.tersesystems.blacklite.codec;
 
 import com.tersesystems.blacklite.StatusReporter;
+import java.nio.ByteBuffer;
 
 /** Interface for converting between data formats, typically a text format and a binary format. */
 public interface Codec extends AutoCloseable {
@@ -19,6 +20,22 @@ public interface Codec extends AutoCloseable {
    */
   byte[] encode(byte[] unencoded) throws CodecException;
 
+  /**
+   * Encodes the content of an entry, given the level it was logged at. Archivers that encode
+   * entries one at a time call this, so that a codec can encode different kinds of entries
+   * differently, i.e. with a dictionary trained for each kind.
+   *
+   * <p>The default implementation ignores the level and calls {@link #encode(byte[])}.
+   *
+   * @param unencoded the bytes containing unencoded data.
+   * @param level the level of the entry.
+   * @return the encoded data.
+   * @throws CodecException if the bytes cannot be encoded.
+   */
+  default byte[] encode(byte[] unencoded, int level) throws CodecException {
+    return encode(unencoded);
+  }
+
   /**
    * Decodes content from sourceBytes bytes to destBytes bytes.
    *
@@ -28,5 +45,109 @@ public interface Codec extends AutoCloseable {
    */
   byte[] decode(byte[] encoded) throws CodecException;
 
+  /**
+   * Encodes content from a buffer into a caller provided buffer, so that codecs that can work on
+   * buffers directly don't have to allocate arrays for every entry.
+   *
+   * <p>Reads from the position to the limit of {@code src}, and writes from the position of
+   * {@code dst}, moving both positions past the bytes read and written. Codecs backed by native
+   * code can use direct buffers without copying.
+   *
+   * <p>The default implementation copies into an array and calls {@link #encode(byte[])}.
+   *
+   * @param src the unencoded data.
+   * @param dst the buffer to write the encoded data to, with at least {@link
+   *     #maxEncodedSize(int)} bytes remaining.
+   * @return the size of the encoded data.
+   * @throws CodecException if the data cannot be encoded.
+   * @throws java.nio.BufferOverflowException if the encoded data does not fit in {@code dst}.
+   */
+  default int encode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    byte[] unencoded = new byte[src.remaining()];
+    src.get(unencoded);
+    byte[] encoded = encode(unencoded);
+    dst.put(encoded);
+    return encoded.length;
+  }
+
+  /**
+   * Encodes the content of an entry from a buffer into a caller provided buffer, given the level
+   * it was logged at. Archivers encode through this with direct buffers they reuse for every entry
+   * when {@link #maxEncodedSize(int)} is known.
+   *
+   * <p>The default implementation ignores the level and calls {@link #encode(ByteBuffer,
+   * ByteBuffer)}, so codecs that override {@link #encode(byte[], int)} should override this too.
+   *
+   * @param src the unencoded data.
+   * @param dst the buffer to write the encoded data to, with at least {@link
+   *     #maxEncodedSize(int)} bytes remaining.
+   * @param level the level of the entry.
+   * @return the size of the encoded data.
+   * @throws CodecException if the data cannot be encoded.
+   */
+  default int encode(ByteBuffer src, ByteBuffer dst, int level) throws CodecException {
+    return encode(src, dst);
+  }
+
+  /**
+   * Decodes content from a buffer into a caller provided buffer.
+   *
+   * <p>Reads from the position to the limit of {@code src}, and writes from the position of
+   * {@code dst}, moving both positions past the bytes read and written.
+   *
+   * <p>The default implementation copies into an array and calls {@link #decode(byte[])}.
+   *
+   * @param src the encoded data.
+   * @param dst the buffer to write the decoded data to, with at least {@link
+   *     #decodedSize(ByteBuffer)} bytes remaining.
+   * @return the size of the decoded data.
+   * @throws CodecException if the data cannot be decoded.
+   * @throws java.nio.BufferOverflowException if the decoded data does not fit in {@code dst}.
+   */
+  default int decode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    byte[] encoded = new byte[src.remaining()];
+    src.get(encoded);
+    byte[] decoded = decode(encoded);
+    dst.put(decoded);
+    return decoded.length;
+  }
+
+  /**
+   * @param unencodedSize the size of the data to encode.
+   * @return the largest size the encoded data can have, or -1 if the codec can't tell.
+   */
+  default int maxEncodedSize(int unencodedSize) {
+    return -1;
+  }
+
+  /**
+   * @param src the encoded data, which is not consumed.
+   * @return the size of the data once decoded, or -1 if the codec can't tell without decoding.
+   */
+  default int decodedSize(ByteBuffer src) {
+    return -1;
+  }
+
+  /**
+   * Tells the codec how many entries are waiting to be archived. Archivers call this before each
+   * pass, so that codecs that can trade ratio for speed can encode faster when archiving falls
+   * behind.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @param rows the number of entries waiting to be archived.
+   */
+  default void archiveBacklog(long rows) {}
+
+  /**
+   * Returns the id of the dictionary the codec currently encodes with, if any. This is recorded in
+   * the archive manifest so that readers know which dictionary to look for.
+   *
+   * @return the dictionary id, or 0 if the codec does not use a dictionary.
+   */
+  default long getDictionaryId() {
+    return 0;
+  }
+
   default void close() {}
 }
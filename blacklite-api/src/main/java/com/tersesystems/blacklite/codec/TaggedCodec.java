@@ -0,0 +1,265 @@
+package com.tersesystems.blacklite.codec;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Prefixes encoded content with a one byte tag naming the codec that encoded it, so that entries
+ * encoded with different codecs can sit in the same file and be decoded row by row, without
+ * looking at the rest of the file.
+ *
+ * <p>Tags are taken from 0xB0 to 0xBF. These are UTF-8 continuation bytes, which can't start valid
+ * UTF-8 text, and don't start zstd (0x28) or LZ4 (0x04) frames either, so tagged content can't be
+ * mistaken for content written before tags. Untagged content is decoded with the fallback codec.
+ *
+ * <p>Content is encoded with the inner codec, and tagged with {@link #tagFor(String)} of its name.
+ * Other tags are decoded with codecs registered with {@link #register(byte, Supplier)}, which are
+ * only created when a row needs them.
+ */
+public class TaggedCodec implements Codec {
+
+  public static final String NAME = "tagged";
+
+  /** The content is stored as it is. */
+  public static final byte RAW = (byte) 0xB0;
+
+  /** The content is a zstd frame, with or without a dictionary. */
+  public static final byte ZSTD = (byte) 0xB1;
+
+  /** The content is an LZ4 frame. */
+  public static final byte LZ4 = (byte) 0xB2;
+
+  private static final int TAG_MASK = 0xF0;
+  private static final int TAG_BASE = 0xB0;
+
+  @SuppressWarnings("unchecked")
+  private final Supplier<? extends Codec>[] suppliers = new Supplier[16];
+
+  private final Codec[] decoders = new Codec[16];
+
+  private Codec codec;
+  private Codec fallback;
+  private Supplier<? extends Codec> fallbackSupplier;
+  private byte tag;
+
+  public TaggedCodec() {}
+
+  /** @param codec the codec to encode with. */
+  public TaggedCodec(Codec codec) {
+    this.codec = codec;
+  }
+
+  /**
+   * @param content encoded content.
+   * @return true if the content starts with a codec tag.
+   */
+  public static boolean isTagged(byte[] content) {
+    return content != null && content.length > 0 && (content[0] & TAG_MASK) == TAG_BASE;
+  }
+
+  /**
+   * @param codecName the name of a codec.
+   * @return the tag for content encoded by the codec.
+   * @throws IllegalArgumentException if the codec has no tag.
+   */
+  public static byte tagFor(String codecName) {
+    switch (codecName) {
+      case "identity":
+        return RAW;
+      case "zstd":
+      case "zstddict":
+        return ZSTD;
+      case "lz4":
+        return LZ4;
+      default:
+        throw new IllegalArgumentException("No tag for codec " + codecName);
+    }
+  }
+
+  /** @return the payload with the tag in front of it. */
+  public static byte[] tag(byte tag, byte[] payload) {
+    byte[] tagged = new byte[payload.length + 1];
+    tagged[0] = tag;
+    System.arraycopy(payload, 0, tagged, 1, payload.length);
+    return tagged;
+  }
+
+  /** @return the content without its tag. */
+  public static byte[] untag(byte[] tagged) {
+    return Arrays.copyOfRange(tagged, 1, tagged.length);
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    // A codec that only decodes doesn't need an inner codec.
+    if (codec != null) {
+      codec.initialize(statusReporter);
+      tag = tagFor(codec.getName());
+      decoders[tag & 0x0F] = codec;
+    }
+  }
+
+  @Override
+  public byte[] encode(byte[] unencoded) throws CodecException {
+    if (unencoded == null) return null;
+    Objects.requireNonNull(codec, "Null codec");
+    return tag(tag, codec.encode(unencoded));
+  }
+
+  @Override
+  public byte[] encode(byte[] unencoded, int level) throws CodecException {
+    if (unencoded == null) return null;
+    Objects.requireNonNull(codec, "Null codec");
+    return tag(tag, codec.encode(unencoded, level));
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    Objects.requireNonNull(codec, "Null codec");
+    dst.put(tag);
+    return codec.encode(src, dst) + 1;
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst, int level) throws CodecException {
+    Objects.requireNonNull(codec, "Null codec");
+    dst.put(tag);
+    return codec.encode(src, dst, level) + 1;
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded) throws CodecException {
+    if (encoded == null) return null;
+    if (!isTagged(encoded)) {
+      return fallback().decode(encoded);
+    }
+    if (encoded[0] == RAW) {
+      return untag(encoded);
+    }
+    return decoder(encoded[0]).decode(untag(encoded));
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    int size = codec == null ? -1 : codec.maxEncodedSize(unencodedSize);
+    return size < 0 ? -1 : size + 1;
+  }
+
+  @Override
+  public void archiveBacklog(long rows) {
+    if (codec != null) {
+      codec.archiveBacklog(rows);
+    }
+  }
+
+  @Override
+  public long getDictionaryId() {
+    return codec == null ? 0 : codec.getDictionaryId();
+  }
+
+  /**
+   * Registers the codec that decodes content with the given tag. The supplier is called the first
+   * time a row with the tag is decoded, and must return an initialized codec.
+   *
+   * @param tag the tag.
+   * @param supplier supplies the codec.
+   * @return this codec.
+   */
+  public TaggedCodec register(byte tag, Supplier<? extends Codec> supplier) {
+    if ((tag & TAG_MASK) != TAG_BASE) {
+      throw new IllegalArgumentException("Not a tag: " + (tag & 0xFF));
+    }
+    synchronized (decoders) {
+      suppliers[tag & 0x0F] = supplier;
+      decoders[tag & 0x0F] = null;
+    }
+    return this;
+  }
+
+  private Codec fallback() {
+    synchronized (decoders) {
+      if (fallback == null) {
+        if (fallbackSupplier == null) {
+          throw new CodecException("Content is not tagged, and there is no fallback codec");
+        }
+        fallback = fallbackSupplier.get();
+      }
+      return fallback;
+    }
+  }
+
+  private Codec decoder(byte tag) {
+    synchronized (decoders) {
+      int index = tag & 0x0F;
+      Codec decoder = decoders[index];
+      if (decoder == null) {
+        if (suppliers[index] == null) {
+          throw new CodecException("No codec registered for tag " + (tag & 0xFF));
+        }
+        decoder = suppliers[index].get();
+        decoders[index] = decoder;
+      }
+      return decoder;
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (decoders) {
+      for (int i = 0; i < decoders.length; i++) {
+        if (decoders[i] != null && decoders[i] != codec) {
+          decoders[i].close();
+        }
+        decoders[i] = null;
+      }
+    }
+    if (codec != null) {
+      codec.close();
+    }
+    synchronized (decoders) {
+      if (fallback != null) {
+        fallback.close();
+      }
+    }
+  }
+
+  public Codec getCodec() {
+    return codec;
+  }
+
+  /** @param codec the codec to encode with, which must have a tag. */
+  public void setCodec(Codec codec) {
+    this.codec = codec;
+  }
+
+  public Codec getFallback() {
+    return fallback;
+  }
+
+  /** @param fallback the initialized codec to decode untagged content with. */
+  public void setFallback(Codec fallback) {
+    synchronized (decoders) {
+      this.fallback = fallback;
+      this.fallbackSupplier = null;
+    }
+  }
+
+  /**
+   * @param supplier supplies the initialized codec to decode untagged content with, the first
+   *     time untagged content is decoded.
+   */
+  public void setFallback(Supplier<? extends Codec> supplier) {
+    synchronized (decoders) {
+      this.fallback = null;
+      this.fallbackSupplier = supplier;
+    }
+  }
+}
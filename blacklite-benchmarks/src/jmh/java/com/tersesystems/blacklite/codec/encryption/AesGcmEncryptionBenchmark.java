@@ -0,0 +1,76 @@
+package com.tersesystems.blacklite.codec.encryption;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares {@link AesGcmEncryption}, which sets up a cipher per entry, with {@link
+ * CachedAesGcmEncryption}, which keeps a cipher per thread and counts IVs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AesGcmEncryptionBenchmark {
+
+  @Param({"aesgcm", "cached"})
+  public String implementation;
+
+  byte[] content;
+  byte[] encrypted;
+  byte[] key;
+  private SymmetricEncryption encryption;
+
+  @Setup
+  public void setUp() throws IOException, URISyntaxException {
+    this.content = Files.readAllBytes(Paths.get(getClass().getResource("/message.json").toURI()));
+    this.key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    this.encryption =
+        "cached".equals(implementation) ? new CachedAesGcmEncryption() : new AesGcmEncryption();
+    this.encrypted = encryption.encrypt(content, key);
+  }
+
+  @State(Scope.Thread)
+  public static class Buffers {
+    ByteBuffer src;
+    ByteBuffer dst;
+
+    @Setup
+    public void setUp(AesGcmEncryptionBenchmark benchmark) {
+      src = ByteBuffer.wrap(benchmark.content);
+      dst = ByteBuffer.allocate(benchmark.content.length + benchmark.encryption.overhead());
+    }
+  }
+
+  @Benchmark
+  public byte[] encrypt() {
+    return encryption.encrypt(content, key);
+  }
+
+  @Benchmark
+  public byte[] decrypt() {
+    return encryption.decrypt(encrypted, key);
+  }
+
+  @Benchmark
+  public int encryptBuffer(Buffers buffers) {
+    buffers.src.rewind();
+    buffers.dst.clear();
+    return encryption.encrypt(buffers.src, buffers.dst, key);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public byte[] encryptContended() {
+    return encryption.encrypt(content, key);
+  }
+}
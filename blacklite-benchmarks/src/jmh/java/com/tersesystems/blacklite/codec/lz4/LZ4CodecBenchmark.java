@@ -0,0 +1,44 @@
+package com.tersesystems.blacklite.codec.lz4;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 20, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LZ4CodecBenchmark {
+
+  @Param({LZ4Codec.MODE_FAST, LZ4Codec.MODE_HIGH})
+  public String mode;
+
+  byte[] content;
+  byte[] encoded;
+  private LZ4Codec codec;
+
+  @Setup
+  public void setUp() throws IOException, URISyntaxException {
+    this.content = Files.readAllBytes(Paths.get(getClass().getResource("/message.json").toURI()));
+    this.codec = new LZ4Codec();
+    this.codec.setMode(mode);
+    this.codec.initialize(StatusReporter.DEFAULT);
+    this.encoded = codec.encode(content);
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return codec.encode(content);
+  }
+
+  @Benchmark
+  public byte[] decode() {
+    return codec.decode(encoded);
+  }
+}
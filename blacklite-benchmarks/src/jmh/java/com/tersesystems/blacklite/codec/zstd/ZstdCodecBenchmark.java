@@ -1,10 +1,10 @@
 package com.tersesystems.blacklite.codec.zstd;
 
 import com.tersesystems.blacklite.StatusReporter;
-import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
-import java.sql.SQLException;
+import java.nio.file.Paths;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.*;
 
@@ -20,11 +20,8 @@ public class ZstdCodecBenchmark {
   private ZStdCodec codec;
 
   @Setup
-  public void setUp() throws SQLException, IOException {
-    File file =
-        new File(
-            "/home/wsargent/work/blacklite/blacklite-benchmarks/src/jmh/resources/message.json");
-    this.content = Files.readAllBytes(file.toPath());
+  public void setUp() throws IOException, URISyntaxException {
+    this.content = Files.readAllBytes(Paths.get(getClass().getResource("/message.json").toURI()));
     this.codec = new ZStdCodec();
     this.codec.setLevel(3);
     this.codec.initialize(StatusReporter.DEFAULT);
@@ -1,9 +1,13 @@
 package com.tersesystems.blacklite.codec.zstd;
 
-import com.tersesystems.blacklite.StatusReporter;
-import java.io.File;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.corpus.BenchmarkCodecs;
+import com.tersesystems.blacklite.corpus.CorpusGenerator;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.concurrent.TimeUnit;
 import org.openjdk.jmh.annotations.*;
 
@@ -16,21 +20,21 @@ import org.openjdk.jmh.annotations.*;
 public class ZstdDictCodecBenchmark {
 
   byte[] content;
-  private ZStdDictCodec codec;
+  private BenchmarkCodecs codecs;
+  private Codec codec;
 
   @Setup
-  public void setUp() throws IOException {
-    ZstdDictFileRepository repo = new ZstdDictFileRepository();
-    repo.setFile("/home/wsargent/work/blacklite/blacklite-benchmarks/src/jmh/resources/dictionary");
-
-    this.codec = new ZStdDictCodec();
-    this.codec.setRepository(repo);
-    this.codec.initialize(StatusReporter.DEFAULT);
-
-    String path =
-        "/home/wsargent/work/blacklite/blacklite-benchmarks/src/jmh/resources/message.json";
-    File file = new File(path);
-    this.content = Files.readAllBytes(file.toPath());
+  public void setUp() throws IOException, SQLException, URISyntaxException {
+    // The dictionary is trained on a generated corpus of JSON entries.
+    this.codecs = new BenchmarkCodecs(CorpusGenerator.Format.JSON, 100);
+    this.codec = codecs.create("zstddict:3:112640");
+    this.content = Files.readAllBytes(Paths.get(getClass().getResource("/message.json").toURI()));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, SQLException {
+    codec.close();
+    codecs.close();
   }
 
   // Dell XPS Laptop running Elementary 5.1.7
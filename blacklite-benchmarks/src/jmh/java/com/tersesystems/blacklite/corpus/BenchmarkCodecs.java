@@ -0,0 +1,136 @@
+package com.tersesystems.blacklite.corpus;
+
+import com.github.luben.zstd.Zstd;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.encryption.AesGcmEncryption;
+import com.tersesystems.blacklite.codec.encryption.EncryptionCodec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import com.tersesystems.blacklite.codec.lz4.LZ4Codec;
+import com.tersesystems.blacklite.codec.zstd.ZStdCodec;
+import com.tersesystems.blacklite.codec.zstd.ZStdDictCodec;
+import com.tersesystems.blacklite.codec.zstd.ZstdDictFileRepository;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates initialized codecs from short specs, so benchmarks and reports can take the codec as a
+ * parameter.
+ *
+ * <p>The specs are:
+ *
+ * <ul>
+ *   <li>{@code identity}
+ *   <li>{@code zstd:<level>}
+ *   <li>{@code zstddict:<level>:<dictSize>}, with a dictionary trained on a separate corpus in the
+ *       same format, so that the entries being encoded were not part of the training
+ *   <li>{@code lz4:<mode>}
+ *   <li>{@code encryption:<spec>}, which encrypts the output of the inner codec with AES-GCM and
+ *       keeps its key in an in-memory database
+ * </ul>
+ *
+ * <p>Temporary files and connections are cleaned up by {@link #close()}, after the codecs are
+ * closed.
+ */
+public final class BenchmarkCodecs implements AutoCloseable {
+
+  // The training corpus uses a different seed, so it doesn't contain the benchmarked entries.
+  private static final long TRAINING_SEED = 7L;
+  private static final int TRAINING_ENTRIES = 20000;
+
+  private final CorpusGenerator.Format format;
+  private final int cardinality;
+  private final List<Path> files = new ArrayList<>();
+  private final List<Connection> connections = new ArrayList<>();
+
+  /**
+   * @param format the format dictionaries are trained on.
+   * @param cardinality the cardinality dictionaries are trained on.
+   */
+  public BenchmarkCodecs(CorpusGenerator.Format format, int cardinality) {
+    this.format = format;
+    this.cardinality = cardinality;
+  }
+
+  /**
+   * @param spec the codec spec.
+   * @return an initialized codec.
+   */
+  public Codec create(String spec) throws IOException, SQLException {
+    Codec codec = codec(spec);
+    codec.initialize(StatusReporter.DEFAULT);
+    return codec;
+  }
+
+  private Codec codec(String spec) throws IOException, SQLException {
+    String[] parts = spec.split(":", 2);
+    String args = parts.length > 1 ? parts[1] : "";
+    switch (parts[0]) {
+      case "identity":
+        return new IdentityCodec();
+      case "zstd":
+        ZStdCodec zstd = new ZStdCodec();
+        zstd.setLevel(Integer.parseInt(args));
+        return zstd;
+      case "zstddict":
+        String[] dictArgs = args.split(":");
+        ZStdDictCodec zstdDict = new ZStdDictCodec();
+        zstdDict.setLevel(Integer.parseInt(dictArgs[0]));
+        zstdDict.setRepository(dictionary(Integer.parseInt(dictArgs[1])));
+        // The dictionary is fixed, so that every iteration measures the same thing.
+        zstdDict.setRetrainThreshold(0);
+        return zstdDict;
+      case "lz4":
+        LZ4Codec lz4 = new LZ4Codec();
+        lz4.setMode(args);
+        return lz4;
+      case "encryption":
+        Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        connections.add(connection);
+        EncryptionCodec encryption = new EncryptionCodec();
+        encryption.setConnection(connection);
+        encryption.setEncryption(new AesGcmEncryption());
+        // The encryption codec initializes its inner codec.
+        encryption.setInnerCodec(codec(args));
+        return encryption;
+      default:
+        throw new IllegalArgumentException("Unknown codec spec " + spec);
+    }
+  }
+
+  private ZstdDictFileRepository dictionary(int dictSize) throws IOException {
+    List<byte[]> samples =
+        new CorpusGenerator(TRAINING_SEED, format, cardinality).generate(TRAINING_ENTRIES);
+    byte[] dictBuffer = new byte[dictSize];
+    long size = Zstd.trainFromBuffer(samples.toArray(new byte[0][]), dictBuffer);
+    if (Zstd.isError(size)) {
+      throw new IllegalStateException("Cannot train dictionary: " + Zstd.getErrorName(size));
+    }
+    Path file = Files.createTempFile("blacklite-benchmark", ".zdict");
+    files.add(file);
+    Files.write(file, Arrays.copyOf(dictBuffer, (int) size));
+
+    ZstdDictFileRepository repository = new ZstdDictFileRepository();
+    repository.setFile(file.toString());
+    return repository;
+  }
+
+  @Override
+  public void close() throws IOException, SQLException {
+    for (Connection connection : connections) {
+      connection.close();
+    }
+    connections.clear();
+    for (Path file : files) {
+      Files.deleteIfExists(file);
+    }
+    files.clear();
+  }
+}
@@ -0,0 +1,104 @@
+package com.tersesystems.blacklite.corpus;
+
+import com.tersesystems.blacklite.codec.Codec;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encode and decode throughput of each codec over a generated corpus.
+ *
+ * <p>Run with {@code -prof gc} for the allocation rate per operation, and see {@link
+ * CodecRatioReport} for the compression ratios.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+  // The codecs in the report, the same as the codec parameter.
+  static final String[] CODECS = {
+    "identity",
+    "zstd:1",
+    "zstd:3",
+    "zstd:9",
+    "zstddict:3:16384",
+    "zstddict:3:112640",
+    "zstddict:9:112640",
+    "lz4:fast",
+    "encryption:identity",
+    "encryption:zstd:3",
+    "encryption:zstddict:3:112640"
+  };
+
+  static final long SEED = 42L;
+  static final int ENTRIES = 10000;
+
+  @Param({
+    "identity",
+    "zstd:1",
+    "zstd:3",
+    "zstd:9",
+    "zstddict:3:16384",
+    "zstddict:3:112640",
+    "zstddict:9:112640",
+    "lz4:fast",
+    "encryption:identity",
+    "encryption:zstd:3",
+    "encryption:zstddict:3:112640"
+  })
+  public String codec;
+
+  @Param({"json", "pattern"})
+  public String format;
+
+  @Param({"100", "10000"})
+  public int cardinality;
+
+  private BenchmarkCodecs codecs;
+  private Codec instance;
+  private byte[][] entries;
+  private byte[][] encoded;
+  private int index;
+
+  @Setup
+  public void setUp() throws IOException, SQLException {
+    CorpusGenerator.Format corpusFormat = CorpusGenerator.format(format);
+    List<byte[]> corpus = new CorpusGenerator(SEED, corpusFormat, cardinality).generate(ENTRIES);
+    this.entries = corpus.toArray(new byte[0][]);
+    this.codecs = new BenchmarkCodecs(corpusFormat, cardinality);
+    this.instance = codecs.create(codec);
+    this.encoded = new byte[entries.length][];
+    for (int i = 0; i < entries.length; i++) {
+      encoded[i] = instance.encode(entries[i]);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException, SQLException {
+    instance.close();
+    codecs.close();
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return instance.encode(entries[next()]);
+  }
+
+  @Benchmark
+  public byte[] decode() {
+    return instance.decode(encoded[next()]);
+  }
+
+  // Cycles through the corpus, so that the codec sees a mix of entries rather than one.
+  private int next() {
+    int i = index;
+    index = i + 1 == entries.length ? 0 : i + 1;
+    return i;
+  }
+}
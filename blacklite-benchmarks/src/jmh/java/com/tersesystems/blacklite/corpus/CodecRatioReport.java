@@ -0,0 +1,100 @@
+package com.tersesystems.blacklite.corpus;
+
+import com.tersesystems.blacklite.codec.Codec;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the compression ratio of each codec in {@link CodecBenchmark} over the same corpora, as a
+ * JSON array, so that it can be read alongside the JMH results.
+ *
+ * <p>Each element has the codec spec, the corpus format and cardinality, the number of entries, the
+ * total size before and after encoding, and the ratio of the two. Entries are encoded one at a
+ * time, as the entry store does, and every entry is checked to decode back to itself.
+ *
+ * <p>Usage: {@code CodecRatioReport [output file]}, which writes to stdout by default.
+ */
+public final class CodecRatioReport {
+
+  private static final String[] FORMATS = {"json", "pattern"};
+  private static final int[] CARDINALITIES = {100, 10000};
+
+  private CodecRatioReport() {}
+
+  public static void main(String[] args) throws IOException, SQLException {
+    if (args.length > 0) {
+      Path path = Paths.get(args[0]);
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      try (PrintWriter out =
+          new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+        write(out);
+      }
+    } else {
+      PrintWriter out = new PrintWriter(System.out);
+      write(out);
+      out.flush();
+    }
+  }
+
+  static void write(PrintWriter out) throws IOException, SQLException {
+    out.println("[");
+    boolean first = true;
+    for (String format : FORMATS) {
+      for (int cardinality : CARDINALITIES) {
+        CorpusGenerator.Format corpusFormat = CorpusGenerator.format(format);
+        List<byte[]> entries =
+            new CorpusGenerator(CodecBenchmark.SEED, corpusFormat, cardinality)
+                .generate(CodecBenchmark.ENTRIES);
+        long inputBytes = CorpusGenerator.totalSize(entries);
+        try (BenchmarkCodecs codecs = new BenchmarkCodecs(corpusFormat, cardinality)) {
+          for (String spec : CodecBenchmark.CODECS) {
+            long encodedBytes = encodedSize(codecs.create(spec), spec, entries);
+            if (!first) {
+              out.println(",");
+            }
+            first = false;
+            out.printf(
+                Locale.ROOT,
+                "  {\"codec\":\"%s\",\"format\":\"%s\",\"cardinality\":%d,\"entries\":%d,"
+                    + "\"inputBytes\":%d,\"encodedBytes\":%d,\"ratio\":%.3f}",
+                spec,
+                format,
+                cardinality,
+                entries.size(),
+                inputBytes,
+                encodedBytes,
+                (double) inputBytes / encodedBytes);
+          }
+        }
+      }
+    }
+    out.println();
+    out.println("]");
+  }
+
+  private static long encodedSize(Codec codec, String spec, List<byte[]> entries) {
+    try {
+      long size = 0;
+      for (byte[] entry : entries) {
+        byte[] encoded = codec.encode(entry);
+        if (!Arrays.equals(codec.decode(encoded), entry)) {
+          throw new IllegalStateException(spec + " did not decode an entry back to itself");
+        }
+        size += encoded.length;
+      }
+      return size;
+    } finally {
+      codec.close();
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package com.tersesystems.blacklite.corpus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates a synthetic corpus of log entries, so that codecs can be benchmarked without real logs.
+ *
+ * <p>The corpus is deterministic: the same seed, format and cardinality always give the same
+ * entries. Entries look like the output of a small service, with a mix of levels, loggers, threads
+ * and message templates, the occasional stack trace on errors, and values such as user ids, client
+ * addresses and request paths. The cardinality is the number of distinct values each of these
+ * fields takes, so a low cardinality gives repetitive, highly compressible logs and a high
+ * cardinality gives logs closer to a busy production service. Request ids and durations are always
+ * random.
+ */
+public final class CorpusGenerator {
+
+  /** The layout of the generated entries. */
+  public enum Format {
+    /** One JSON object per entry, in the style of logstash-logback-encoder. */
+    JSON,
+    /** Pattern layout lines, i.e. {@code %date %level [%thread] %logger - %message%n}. */
+    PATTERN
+  }
+
+  private static final long START_MILLIS = 1604430000000L;
+
+  private static final DateTimeFormatter ISO_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").withZone(ZoneOffset.UTC);
+  private static final DateTimeFormatter PATTERN_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss,SSS").withZone(ZoneOffset.UTC);
+
+  private static final String[] LEVELS = {"DEBUG", "INFO", "WARN", "ERROR"};
+  private static final int[] LEVEL_VALUES = {10000, 20000, 30000, 40000};
+  // Cumulative weights out of 100: 30% DEBUG, 50% INFO, 15% WARN, 5% ERROR.
+  private static final int[] LEVEL_WEIGHTS = {30, 80, 95, 100};
+
+  private static final String[] PACKAGES = {"orders", "billing", "auth", "search", "inventory"};
+  private static final String[] CLASSES = {
+    "Controller", "Service", "Repository", "Client", "Scheduler", "Cache", "Validator"
+  };
+  private static final String[] METHODS = {"GET", "GET", "GET", "POST", "PUT", "DELETE"};
+  private static final String[] PATHS = {
+    "/api/orders", "/api/orders/{id}", "/api/users/{id}", "/api/search", "/api/cart", "/health"
+  };
+  private static final int[] STATUSES = {200, 200, 200, 200, 201, 204, 304, 400, 404, 500};
+  private static final String[] EXCEPTIONS = {
+    "java.net.SocketTimeoutException: Read timed out",
+    "java.lang.IllegalStateException: Connection pool exhausted",
+    "java.sql.SQLTransientConnectionException: Connection is not available"
+  };
+
+  private final long seed;
+  private final Format format;
+  private final int cardinality;
+
+  /**
+   * @param seed the seed for the random values.
+   * @param format the layout of the entries.
+   * @param cardinality the number of distinct values per field, at least 1.
+   */
+  public CorpusGenerator(long seed, Format format, int cardinality) {
+    if (cardinality < 1) {
+      throw new IllegalArgumentException("cardinality must be at least 1");
+    }
+    this.seed = seed;
+    this.format = format;
+    this.cardinality = cardinality;
+  }
+
+  public static Format format(String name) {
+    return Format.valueOf(name.toUpperCase());
+  }
+
+  /**
+   * @param count the number of entries.
+   * @return the entries, encoded as UTF-8.
+   */
+  public List<byte[]> generate(int count) {
+    Random random = new Random(seed);
+    List<byte[]> entries = new ArrayList<>(count);
+    long millis = START_MILLIS;
+    for (int i = 0; i < count; i++) {
+      millis += random.nextInt(50);
+      entries.add(entry(random, millis).getBytes(StandardCharsets.UTF_8));
+    }
+    return entries;
+  }
+
+  /** @return the total size of the entries in bytes. */
+  public static long totalSize(List<byte[]> entries) {
+    long size = 0;
+    for (byte[] entry : entries) {
+      size += entry.length;
+    }
+    return size;
+  }
+
+  private String entry(Random random, long millis) {
+    int weight = random.nextInt(100);
+    int level = 0;
+    while (weight >= LEVEL_WEIGHTS[level]) {
+      level++;
+    }
+    String logger = logger(random);
+    String thread = thread(random);
+    String message = message(random, level);
+    String stackTrace = level == 3 && random.nextInt(3) == 0 ? stackTrace(random, logger) : null;
+    String requestId = Long.toHexString(random.nextLong());
+
+    Instant timestamp = Instant.ofEpochMilli(millis);
+    StringBuilder sb = new StringBuilder(256);
+    if (format == Format.JSON) {
+      sb.append("{\"@timestamp\":\"").append(ISO_FORMAT.format(timestamp)).append('"');
+      sb.append(",\"@version\":\"1\"");
+      sb.append(",\"message\":\"").append(escape(message)).append('"');
+      sb.append(",\"logger_name\":\"").append(logger).append('"');
+      sb.append(",\"thread_name\":\"").append(thread).append('"');
+      sb.append(",\"level\":\"").append(LEVELS[level]).append('"');
+      sb.append(",\"level_value\":").append(LEVEL_VALUES[level]);
+      sb.append(",\"request_id\":\"").append(requestId).append('"');
+      if (stackTrace != null) {
+        sb.append(",\"stack_trace\":\"").append(escape(stackTrace)).append('"');
+      }
+      sb.append("}\n");
+    } else {
+      sb.append(PATTERN_FORMAT.format(timestamp)).append(' ');
+      sb.append(String.format("%-5s", LEVELS[level]));
+      sb.append(" [").append(thread).append("] ");
+      sb.append(logger).append(" - ");
+      sb.append('[').append(requestId).append("] ").append(message).append('\n');
+      if (stackTrace != null) {
+        sb.append(stackTrace).append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private String logger(Random random) {
+    int n = pick(random, PACKAGES.length * CLASSES.length);
+    String pkg = PACKAGES[n % PACKAGES.length];
+    String cls = CLASSES[(n / PACKAGES.length) % CLASSES.length];
+    return "com.example." + pkg + "." + capitalize(pkg) + cls;
+  }
+
+  private String thread(Random random) {
+    int n = pick(random, 200);
+    return n == 0 ? "main" : "http-nio-8080-exec-" + n;
+  }
+
+  private String message(Random random, int level) {
+    switch (level) {
+      case 0:
+        return random.nextBoolean()
+            ? "Cache miss for key " + userId(random) + ":profile"
+            : "Loaded " + random.nextInt(100) + " rows for " + userId(random);
+      case 1:
+        String path = PATHS[random.nextInt(PATHS.length)].replace("{id}", "" + pick(random, 10000));
+        return METHODS[random.nextInt(METHODS.length)]
+            + " "
+            + path
+            + " from "
+            + address(random)
+            + " completed in "
+            + random.nextInt(500)
+            + " ms with status "
+            + STATUSES[random.nextInt(STATUSES.length)];
+      case 2:
+        return "Retrying connection to db-" + pick(random, 8) + ".internal (attempt "
+            + (1 + random.nextInt(5)) + " of 5)";
+      default:
+        return "Request failed for user " + userId(random) + ": upstream unavailable";
+    }
+  }
+
+  private String stackTrace(Random random, String logger) {
+    StringBuilder sb = new StringBuilder(EXCEPTIONS[random.nextInt(EXCEPTIONS.length)]);
+    sb.append("\n\tat ").append(logger).append(".handle(").append(simpleName(logger));
+    sb.append(".java:").append(40 + random.nextInt(200)).append(')');
+    sb.append("\n\tat org.springframework.web.servlet.FrameworkServlet.service");
+    sb.append("(FrameworkServlet.java:897)");
+    sb.append("\n\tat javax.servlet.http.HttpServlet.service(HttpServlet.java:750)");
+    sb.append("\n\tat java.lang.Thread.run(Thread.java:829)");
+    return sb.toString();
+  }
+
+  private String userId(Random random) {
+    return "user-" + pick(random, Integer.MAX_VALUE);
+  }
+
+  private String address(Random random) {
+    int n = pick(random, 1 << 24);
+    return "10." + ((n >> 16) & 0xff) + "." + ((n >> 8) & 0xff) + "." + (n & 0xff);
+  }
+
+  // Picks one of the first min(cardinality, bound) values.
+  private int pick(Random random, int bound) {
+    return random.nextInt(Math.min(cardinality, bound));
+  }
+
+  private static String capitalize(String s) {
+    return Character.toUpperCase(s.charAt(0)) + s.substring(1);
+  }
+
+  private static String simpleName(String logger) {
+    return logger.substring(logger.lastIndexOf('.') + 1);
+  }
+
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n").replace("\t", "\\t");
+  }
+}
@@ -1,5 +1,6 @@
 package com.tersesystems.blacklite.codec.encryption;
 
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import javax.crypto.Cipher;
 import javax.crypto.spec.GCMParameterSpec;
@@ -89,4 +90,46 @@ public class AesGcmEncryption implements SymmetricEncryption {
       throw new EncryptionException("Decryption failed", e);
     }
   }
+
+  @Override
+  public int encrypt(ByteBuffer plaintext, ByteBuffer ciphertext, byte[] key)
+      throws EncryptionException {
+    try {
+      byte[] iv = new byte[IV_SIZE];
+      secureRandom.nextBytes(iv);
+
+      Cipher cipher = Cipher.getInstance(ALGORITHM);
+      SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+      cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(TAG_SIZE, iv));
+
+      // [IV][encrypted+tag], written straight into the destination.
+      ciphertext.put(iv);
+      return IV_SIZE + cipher.doFinal(plaintext, ciphertext);
+    } catch (Exception e) {
+      throw new EncryptionException("Encryption failed", e);
+    }
+  }
+
+  @Override
+  public int decrypt(ByteBuffer ciphertext, ByteBuffer plaintext, byte[] key)
+      throws EncryptionException {
+    try {
+      byte[] iv = new byte[IV_SIZE];
+      ciphertext.get(iv);
+
+      Cipher cipher = Cipher.getInstance(ALGORITHM);
+      SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+      cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(TAG_SIZE, iv));
+      return cipher.doFinal(ciphertext, plaintext);
+    } catch (javax.crypto.AEADBadTagException e) {
+      throw EncryptionException.decryptionFailed(e);
+    } catch (Exception e) {
+      throw new EncryptionException("Decryption failed", e);
+    }
+  }
+
+  @Override
+  public int overhead() {
+    return IV_SIZE + TAG_SIZE / 8;
+  }
 }
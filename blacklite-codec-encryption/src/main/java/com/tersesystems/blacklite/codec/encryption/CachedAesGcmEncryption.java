@@ -0,0 +1,182 @@
+package com.tersesystems.blacklite.codec.encryption;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-256-GCM symmetric encryption for high throughput, writing the same format as {@link
+ * AesGcmEncryption} so that either can decrypt what the other encrypts.
+ *
+ * <p>Looking up a cipher and building a key spec for every entry costs more than encrypting a log
+ * entry, so each thread keeps its own {@link Cipher}, and the key spec is kept until the key
+ * changes. Ciphertext is written straight into the output after the IV, without intermediate
+ * arrays.
+ *
+ * <p>IVs are not drawn from {@link SecureRandom} per entry. Instead, each key gets a random 4 byte
+ * prefix and a random starting point for an 8 byte counter, and the IV is the prefix followed by
+ * the counter, which is incremented for every entry. IVs never repeat within a process, and a key
+ * reused by another process starts from an unrelated point in a 96 bit space.
+ */
+public class CachedAesGcmEncryption implements SymmetricEncryption {
+
+  private static final String ALGORITHM = "AES/GCM/NoPadding";
+  private static final int IV_SIZE = 12; // 12 bytes recommended for GCM
+  private static final int PREFIX_SIZE = 4;
+  private static final int TAG_SIZE = 128; // 128-bit authentication tag
+
+  private final SecureRandom secureRandom;
+  private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(this::newCipher);
+
+  private volatile KeyState keyState;
+
+  public CachedAesGcmEncryption() {
+    this.secureRandom = new SecureRandom();
+    // Force seeding
+    secureRandom.nextBytes(new byte[1]);
+  }
+
+  @Override
+  public String getAlgorithm() {
+    return "AES-GCM-256";
+  }
+
+  @Override
+  public byte[] encrypt(byte[] plaintext, byte[] key) throws EncryptionException {
+    if (plaintext == null) {
+      return null;
+    }
+
+    try {
+      // [IV][encrypted+tag]
+      byte[] result = new byte[IV_SIZE + plaintext.length + TAG_SIZE / 8];
+      KeyState state = keyState(key);
+      state.nextIv(result, 0);
+
+      Cipher cipher = ciphers.get();
+      cipher.init(
+          Cipher.ENCRYPT_MODE, state.keySpec, new GCMParameterSpec(TAG_SIZE, result, 0, IV_SIZE));
+      cipher.doFinal(plaintext, 0, plaintext.length, result, IV_SIZE);
+      return result;
+    } catch (GeneralSecurityException e) {
+      throw new EncryptionException("Encryption failed", e);
+    }
+  }
+
+  @Override
+  public byte[] decrypt(byte[] ciphertext, byte[] key) throws EncryptionException {
+    if (ciphertext == null) {
+      return null;
+    }
+
+    try {
+      Cipher cipher = ciphers.get();
+      cipher.init(
+          Cipher.DECRYPT_MODE,
+          keyState(key).keySpec,
+          new GCMParameterSpec(TAG_SIZE, ciphertext, 0, IV_SIZE));
+
+      // Decrypt (authentication happens automatically in GCM mode)
+      return cipher.doFinal(ciphertext, IV_SIZE, ciphertext.length - IV_SIZE);
+    } catch (AEADBadTagException e) {
+      throw EncryptionException.decryptionFailed(e);
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new EncryptionException("Decryption failed", e);
+    }
+  }
+
+  @Override
+  public int encrypt(ByteBuffer plaintext, ByteBuffer ciphertext, byte[] key)
+      throws EncryptionException {
+    try {
+      byte[] iv = new byte[IV_SIZE];
+      KeyState state = keyState(key);
+      state.nextIv(iv, 0);
+
+      Cipher cipher = ciphers.get();
+      cipher.init(Cipher.ENCRYPT_MODE, state.keySpec, new GCMParameterSpec(TAG_SIZE, iv));
+
+      // [IV][encrypted+tag], written straight into the destination.
+      ciphertext.put(iv);
+      return IV_SIZE + cipher.doFinal(plaintext, ciphertext);
+    } catch (GeneralSecurityException e) {
+      throw new EncryptionException("Encryption failed", e);
+    }
+  }
+
+  @Override
+  public int decrypt(ByteBuffer ciphertext, ByteBuffer plaintext, byte[] key)
+      throws EncryptionException {
+    try {
+      byte[] iv = new byte[IV_SIZE];
+      ciphertext.get(iv);
+
+      Cipher cipher = ciphers.get();
+      cipher.init(Cipher.DECRYPT_MODE, keyState(key).keySpec, new GCMParameterSpec(TAG_SIZE, iv));
+      return cipher.doFinal(ciphertext, plaintext);
+    } catch (AEADBadTagException e) {
+      throw EncryptionException.decryptionFailed(e);
+    } catch (GeneralSecurityException e) {
+      throw new EncryptionException("Decryption failed", e);
+    }
+  }
+
+  @Override
+  public int overhead() {
+    return IV_SIZE + TAG_SIZE / 8;
+  }
+
+  /** @return the state for the key, replacing the current state if the key has changed. */
+  private KeyState keyState(byte[] key) {
+    KeyState state = keyState;
+    if (state == null || !MessageDigest.isEqual(state.key, key)) {
+      synchronized (this) {
+        state = keyState;
+        if (state == null || !MessageDigest.isEqual(state.key, key)) {
+          byte[] prefix = new byte[PREFIX_SIZE];
+          secureRandom.nextBytes(prefix);
+          state = new KeyState(key, prefix, secureRandom.nextLong());
+          keyState = state;
+        }
+      }
+    }
+    return state;
+  }
+
+  private Cipher newCipher() {
+    try {
+      return Cipher.getInstance(ALGORITHM);
+    } catch (GeneralSecurityException e) {
+      throw new EncryptionException("Cannot create cipher " + ALGORITHM, e);
+    }
+  }
+
+  private static final class KeyState {
+    final byte[] key;
+    final SecretKeySpec keySpec;
+    final byte[] prefix;
+    final AtomicLong counter;
+
+    KeyState(byte[] key, byte[] prefix, long counter) {
+      this.key = key.clone();
+      this.keySpec = new SecretKeySpec(key, "AES");
+      this.prefix = prefix;
+      this.counter = new AtomicLong(counter);
+    }
+
+    void nextIv(byte[] iv, int offset) {
+      System.arraycopy(prefix, 0, iv, offset, PREFIX_SIZE);
+      long value = counter.getAndIncrement();
+      for (int i = IV_SIZE - 1; i >= PREFIX_SIZE; i--) {
+        iv[offset + i] = (byte) value;
+        value >>>= 8;
+      }
+    }
+  }
+}
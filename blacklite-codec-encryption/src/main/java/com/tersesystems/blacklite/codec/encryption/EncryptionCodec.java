@@ -3,7 +3,12 @@ package com.tersesystems.blacklite.codec.encryption;
 import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.Codec;
 import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntBiFunction;
 
 /**
  * Encryption codec that wraps another codec and adds encryption.
@@ -17,6 +22,17 @@ public class EncryptionCodec implements Codec {
   private EncryptionKeyStore keyStore;
   private Connection connection;
 
+  // Holds the inner codec's output before encryption, or the decrypted data before decoding.
+  private ByteBuffer scratch;
+
+  // Holds the encrypted data for the array methods, before it is copied out.
+  private ByteBuffer output;
+
+  // The buffer whose decrypted data is in scratch, after decodedSize.
+  private ByteBuffer decryptedFrom;
+  private int decryptedPosition;
+  private int decryptedLimit;
+
   @Override
   public String getName() {
     return "encryption";
@@ -56,16 +72,18 @@ public class EncryptionCodec implements Codec {
     if (unencoded == null) {
       return null;
     }
+    return encodeArray(unencoded, innerCodec::encode, () -> innerCodec.encode(unencoded));
+  }
 
-    try {
-      // First apply inner codec (e.g., compression)
-      byte[] innerEncoded = innerCodec.encode(unencoded);
-
-      // Then encrypt
-      return encryption.encrypt(innerEncoded, keyStore.getSymmetricKey());
-    } catch (Exception e) {
-      throw new CodecException("Encryption failed", e);
+  @Override
+  public byte[] encode(byte[] unencoded, int level) throws CodecException {
+    if (unencoded == null) {
+      return null;
     }
+    return encodeArray(
+        unencoded,
+        (src, dst) -> innerCodec.encode(src, dst, level),
+        () -> innerCodec.encode(unencoded, level));
   }
 
   @Override
@@ -75,16 +93,171 @@ public class EncryptionCodec implements Codec {
     }
 
     try {
-      // First decrypt
-      byte[] decrypted = encryption.decrypt(encoded, keyStore.getSymmetricKey());
+      final ByteBuffer decrypted = decrypt(ByteBuffer.wrap(encoded));
+      if (decrypted == null) {
+        return innerCodec.decode(encryption.decrypt(encoded, keyStore.getSymmetricKey()));
+      }
+      final int size = innerCodec.decodedSize(decrypted);
+      if (size < 0) {
+        byte[] innerEncoded = new byte[decrypted.remaining()];
+        decrypted.get(innerEncoded);
+        return innerCodec.decode(innerEncoded);
+      }
+      byte[] decoded = new byte[size];
+      innerCodec.decode(decrypted, ByteBuffer.wrap(decoded));
+      return decoded;
+    } catch (Exception e) {
+      throw new CodecException("Decryption failed", e);
+    }
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    return encodeBuffer(src, dst, innerCodec::encode, innerCodec::encode);
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst, int level) throws CodecException {
+    return encodeBuffer(
+        src,
+        dst,
+        (s, d) -> innerCodec.encode(s, d, level),
+        unencoded -> innerCodec.encode(unencoded, level));
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    try {
+      final ByteBuffer decrypted = decrypt(src);
+      if (decrypted == null) {
+        return Codec.super.decode(src, dst);
+      }
+      return innerCodec.decode(decrypted, dst);
+    } catch (Exception e) {
+      throw new CodecException("Decryption failed", e);
+    }
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    int innerSize = innerCodec.maxEncodedSize(unencodedSize);
+    int overhead = encryption.overhead();
+    return innerSize < 0 || overhead < 0 ? -1 : innerSize + overhead;
+  }
 
-      // Then apply inner codec (e.g., decompression)
-      return innerCodec.decode(decrypted);
+  /**
+   * Decrypts the content to find its decoded size, as it is inside the encrypted data. The
+   * decrypted data is kept until the next call, so that decoding the same buffer straight after,
+   * at the same position and limit, doesn't decrypt it twice. The buffer must not be changed in
+   * between.
+   */
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    try {
+      final ByteBuffer decrypted = decrypt(src.duplicate());
+      if (decrypted == null) {
+        return -1;
+      }
+      decryptedFrom = src;
+      decryptedPosition = src.position();
+      decryptedLimit = src.limit();
+      return innerCodec.decodedSize(decrypted);
     } catch (Exception e) {
       throw new CodecException("Decryption failed", e);
     }
   }
 
+  // Encodes an array through the buffer path, into an output buffer reused between calls.
+  private byte[] encodeArray(
+      byte[] unencoded,
+      ToIntBiFunction<ByteBuffer, ByteBuffer> inner,
+      Supplier<byte[]> fallback) {
+    try {
+      final int maxSize = maxEncodedSize(unencoded.length);
+      if (maxSize < 0) {
+        return encryption.encrypt(fallback.get(), keyStore.getSymmetricKey());
+      }
+      if (output == null || output.capacity() < maxSize) {
+        output = ByteBuffer.allocate(maxSize);
+      }
+      output.clear();
+      final int size = encrypt(ByteBuffer.wrap(unencoded), output, inner);
+      return Arrays.copyOf(output.array(), size);
+    } catch (Exception e) {
+      throw new CodecException("Encryption failed", e);
+    }
+  }
+
+  private int encodeBuffer(
+      ByteBuffer src,
+      ByteBuffer dst,
+      ToIntBiFunction<ByteBuffer, ByteBuffer> inner,
+      Function<byte[], byte[]> fallback) {
+    try {
+      if (maxEncodedSize(src.remaining()) < 0) {
+        byte[] unencoded = new byte[src.remaining()];
+        src.get(unencoded);
+        byte[] encrypted =
+            encryption.encrypt(fallback.apply(unencoded), keyStore.getSymmetricKey());
+        dst.put(encrypted);
+        return encrypted.length;
+      }
+      return encrypt(src, dst, inner);
+    } catch (Exception e) {
+      throw new CodecException("Encryption failed", e);
+    }
+  }
+
+  // Encodes with the inner codec into the scratch buffer, then encrypts into dst.
+  private int encrypt(ByteBuffer src, ByteBuffer dst, ToIntBiFunction<ByteBuffer, ByteBuffer> inner)
+      throws EncryptionException {
+    final ByteBuffer innerEncoded = scratch(innerCodec.maxEncodedSize(src.remaining()));
+    inner.applyAsInt(src, innerEncoded);
+    innerEncoded.flip();
+    return encryption.encrypt(innerEncoded, dst, keyStore.getSymmetricKey());
+  }
+
+  /**
+   * Decrypts into the scratch buffer, or takes the data decrypted by {@link
+   * #decodedSize(ByteBuffer)} for the same buffer, moving the position of src to its limit.
+   *
+   * @return the flipped scratch buffer, or null if the size of the decrypted data isn't known.
+   */
+  private ByteBuffer decrypt(ByteBuffer src) throws EncryptionException {
+    if (src == decryptedFrom
+        && src.position() == decryptedPosition
+        && src.limit() == decryptedLimit) {
+      decryptedFrom = null;
+      src.position(src.limit());
+      return scratch;
+    }
+    final int overhead = encryption.overhead();
+    final ByteBuffer decrypted = overhead < 0 ? null : scratch(src.remaining() - overhead);
+    if (decrypted == null) {
+      return null;
+    }
+    encryption.decrypt(src, decrypted, keyStore.getSymmetricKey());
+    decrypted.flip();
+    return decrypted;
+  }
+
+  /**
+   * Returns the buffer for the inner codec's side of the data, reused between calls.
+   *
+   * @return a cleared buffer of at least the given size, or null if the size isn't known.
+   */
+  private ByteBuffer scratch(int size) {
+    decryptedFrom = null;
+    if (size < 0) {
+      return null;
+    }
+    if (scratch == null || scratch.capacity() < size) {
+      scratch = ByteBuffer.allocate(size);
+    }
+    scratch.clear();
+    return scratch;
+  }
+
   @Override
   public void close() {
     try {
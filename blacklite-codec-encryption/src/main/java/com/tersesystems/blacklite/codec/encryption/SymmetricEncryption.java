@@ -1,5 +1,7 @@
 package com.tersesystems.blacklite.codec.encryption;
 
+import java.nio.ByteBuffer;
+
 /** Strategy interface for symmetric encryption algorithms. */
 public interface SymmetricEncryption {
 
@@ -27,4 +29,55 @@ public interface SymmetricEncryption {
    * @throws EncryptionException if decryption fails or authentication fails
    */
   byte[] decrypt(byte[] ciphertext, byte[] key) throws EncryptionException;
+
+  /**
+   * Encrypts from a buffer into a caller provided buffer. Reads from the position to the limit of
+   * {@code plaintext}, and writes from the position of {@code ciphertext}, moving both positions.
+   *
+   * <p>The default implementation copies into an array and calls {@link #encrypt(byte[], byte[])}.
+   *
+   * @param plaintext the data to encrypt
+   * @param ciphertext the buffer to write to, with at least {@link #overhead()} more bytes
+   *     remaining than the plaintext
+   * @param key the symmetric encryption key
+   * @return the number of bytes written
+   * @throws EncryptionException if encryption fails
+   */
+  default int encrypt(ByteBuffer plaintext, ByteBuffer ciphertext, byte[] key)
+      throws EncryptionException {
+    byte[] bytes = new byte[plaintext.remaining()];
+    plaintext.get(bytes);
+    byte[] encrypted = encrypt(bytes, key);
+    ciphertext.put(encrypted);
+    return encrypted.length;
+  }
+
+  /**
+   * Decrypts from a buffer into a caller provided buffer. Reads from the position to the limit of
+   * {@code ciphertext}, and writes from the position of {@code plaintext}, moving both positions.
+   *
+   * <p>The default implementation copies into an array and calls {@link #decrypt(byte[], byte[])}.
+   *
+   * @param ciphertext the encrypted data
+   * @param plaintext the buffer to write to
+   * @param key the symmetric encryption key
+   * @return the number of bytes written
+   * @throws EncryptionException if decryption fails or authentication fails
+   */
+  default int decrypt(ByteBuffer ciphertext, ByteBuffer plaintext, byte[] key)
+      throws EncryptionException {
+    byte[] bytes = new byte[ciphertext.remaining()];
+    ciphertext.get(bytes);
+    byte[] decrypted = decrypt(bytes, key);
+    plaintext.put(decrypted);
+    return decrypted.length;
+  }
+
+  /**
+   * @return the number of bytes encryption adds to the plaintext (e.g. IV and tag), or -1 if it
+   *     varies.
+   */
+  default int overhead() {
+    return -1;
+  }
 }
@@ -0,0 +1,124 @@
+package com.tersesystems.blacklite.codec.encryption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class CachedAesGcmEncryptionTest {
+
+  private final byte[] plaintext = "Hello, World!".getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testEncryptDecryptRoundtrip() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key = newKey();
+
+    byte[] ciphertext = encryption.encrypt(plaintext, key);
+    assertThat(ciphertext).hasSize(plaintext.length + encryption.overhead());
+    assertThat(encryption.decrypt(ciphertext, key)).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void testCompatibleWithAesGcmEncryption() {
+    CachedAesGcmEncryption cached = new CachedAesGcmEncryption();
+    AesGcmEncryption plain = new AesGcmEncryption();
+    byte[] key = newKey();
+
+    assertThat(cached.getAlgorithm()).isEqualTo(plain.getAlgorithm());
+    assertThat(plain.decrypt(cached.encrypt(plaintext, key), key)).isEqualTo(plaintext);
+    assertThat(cached.decrypt(plain.encrypt(plaintext, key), key)).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void testIvsAreCounted() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key = newKey();
+
+    byte[] first = encryption.encrypt(plaintext, key);
+    byte[] second = encryption.encrypt(plaintext, key);
+    // Same prefix, next counter value.
+    assertThat(Arrays.copyOfRange(second, 0, 4)).isEqualTo(Arrays.copyOfRange(first, 0, 4));
+    assertThat(ByteBuffer.wrap(second, 4, 8).getLong())
+        .isEqualTo(ByteBuffer.wrap(first, 4, 8).getLong() + 1);
+    assertThat(second).isNotEqualTo(first);
+  }
+
+  @Test
+  public void testKeyChange() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key1 = newKey();
+    byte[] key2 = newKey();
+
+    byte[] ciphertext1 = encryption.encrypt(plaintext, key1);
+    byte[] ciphertext2 = encryption.encrypt(plaintext, key2);
+    assertThat(encryption.decrypt(ciphertext1, key1)).isEqualTo(plaintext);
+    assertThat(encryption.decrypt(ciphertext2, key2)).isEqualTo(plaintext);
+    assertThatThrownBy(() -> encryption.decrypt(ciphertext1, key2))
+        .isInstanceOf(EncryptionException.class);
+  }
+
+  @Test
+  public void testTamperingFailsDecryption() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key = newKey();
+
+    byte[] ciphertext = encryption.encrypt(plaintext, key);
+    ciphertext[ciphertext.length - 1] ^= 1;
+    assertThatThrownBy(() -> encryption.decrypt(ciphertext, key))
+        .isInstanceOf(EncryptionException.class)
+        .hasMessageContaining("Failed to decrypt content");
+  }
+
+  @Test
+  public void testByteBufferRoundtrip() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key = newKey();
+
+    ByteBuffer ciphertext = ByteBuffer.allocateDirect(plaintext.length + encryption.overhead());
+    int written = encryption.encrypt(ByteBuffer.wrap(plaintext), ciphertext, key);
+    assertThat(written).isEqualTo(ciphertext.capacity());
+
+    ciphertext.flip();
+    ByteBuffer decrypted = ByteBuffer.allocate(plaintext.length);
+    encryption.decrypt(ciphertext, decrypted, key);
+    assertThat(decrypted.array()).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void testConcurrentIvsAreUnique() {
+    CachedAesGcmEncryption encryption = new CachedAesGcmEncryption();
+    byte[] key = newKey();
+
+    Set<ByteBuffer> ivs = ConcurrentHashMap.newKeySet();
+    List<byte[]> ciphertexts =
+        IntStream.range(0, 10000)
+            .parallel()
+            .mapToObj(i -> encryption.encrypt(plaintext, key))
+            .peek(c -> ivs.add(ByteBuffer.wrap(Arrays.copyOf(c, 12))))
+            .collect(Collectors.toList());
+
+    assertThat(ivs).hasSize(10000);
+    Set<String> decrypted =
+        ciphertexts
+            .parallelStream()
+            .map(c -> new String(encryption.decrypt(c, key), StandardCharsets.UTF_8))
+            .collect(Collectors.toSet());
+    assertThat(decrypted).containsExactly("Hello, World!");
+  }
+
+  private static byte[] newKey() {
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    return key;
+  }
+}
@@ -5,6 +5,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.Codec;
 import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import org.junit.jupiter.api.AfterEach;
@@ -50,6 +51,53 @@ public class EncryptionCodecTest {
     assertThat(decrypted).isEqualTo(plaintext);
   }
 
+  @Test
+  public void testByteBufferRoundtrip() throws Exception {
+    codec.initialize(StatusReporter.DEFAULT);
+
+    byte[] plaintext = "Hello, Buffers!".getBytes("UTF-8");
+    ByteBuffer encrypted = ByteBuffer.allocate(codec.maxEncodedSize(plaintext.length));
+    int size = codec.encode(ByteBuffer.wrap(plaintext), encrypted);
+    assertThat(size).isEqualTo(codec.maxEncodedSize(plaintext.length));
+
+    // Interchangeable with the array methods.
+    byte[] encryptedBytes = new byte[size];
+    ((ByteBuffer) encrypted.flip()).duplicate().get(encryptedBytes);
+    assertThat(codec.decode(encryptedBytes)).isEqualTo(plaintext);
+
+    ByteBuffer decrypted = ByteBuffer.allocate(plaintext.length);
+    codec.decode(encrypted, decrypted);
+    assertThat(decrypted.array()).isEqualTo(plaintext);
+  }
+
+  @Test
+  public void testDecodedSize() throws Exception {
+    codec.initialize(StatusReporter.DEFAULT);
+
+    byte[] plaintext = "Hello, Sizes!".getBytes("UTF-8");
+    ByteBuffer encrypted = ByteBuffer.allocateDirect(codec.maxEncodedSize(plaintext.length));
+    codec.encode(ByteBuffer.wrap(plaintext), encrypted, 20000);
+    encrypted.flip();
+
+    int size = codec.decodedSize(encrypted);
+    assertThat(size).isEqualTo(plaintext.length);
+    assertThat(encrypted.position()).isEqualTo(0);
+
+    // Decodes the data decrypted for the size, and moves past it.
+    ByteBuffer decrypted = ByteBuffer.allocate(size);
+    assertThat(codec.decode(encrypted, decrypted)).isEqualTo(size);
+    assertThat(encrypted.hasRemaining()).isFalse();
+    assertThat(decrypted.array()).isEqualTo(plaintext);
+
+    // A different entry in the same buffer is decrypted again.
+    byte[] other = codec.encode("Hello, Again!".getBytes("UTF-8"));
+    encrypted.clear();
+    encrypted.put(other).flip();
+    decrypted.clear();
+    codec.decode(encrypted, decrypted);
+    assertThat(decrypted.array()).isEqualTo("Hello, Again!".getBytes("UTF-8"));
+  }
+
   @Test
   public void testDifferentPlaintextProducesDifferentCiphertext() throws Exception {
     codec.initialize(StatusReporter.DEFAULT);
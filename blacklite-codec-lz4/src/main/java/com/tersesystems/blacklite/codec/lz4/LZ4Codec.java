@@ -0,0 +1,138 @@
+package com.tersesystems.blacklite.codec.lz4;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.CodecException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+/**
+ * Compresses entries with LZ4, which encodes several times faster than zstd at a lower ratio, for
+ * hosts where the archive path can't spare the CPU for zstd.
+ *
+ * <p>The "fast" mode uses the LZ4 block compressor, and the "high" mode uses LZ4 HC at the given
+ * level, which is slower to encode but decodes just as fast. Each entry is written as a standard
+ * LZ4 frame, see {@link LZ4Frames}.
+ *
+ * <p>Unlike the zstd codecs, this codec is thread safe once initialized.
+ */
+public class LZ4Codec implements Codec {
+
+  public static final String NAME = "lz4";
+
+  public static final String MODE_FAST = "fast";
+  public static final String MODE_HIGH = "high";
+
+  private String mode = MODE_FAST;
+  private int level = 9;
+
+  private LZ4Compressor compressor;
+  private LZ4SafeDecompressor decompressor;
+  private XXHash32 hash;
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    LZ4Factory factory = LZ4Factory.fastestInstance();
+    if (MODE_FAST.equals(mode)) {
+      compressor = factory.fastCompressor();
+    } else if (MODE_HIGH.equals(mode)) {
+      compressor = factory.highCompressor(level);
+    } else {
+      throw new IllegalArgumentException("mode must be " + MODE_FAST + " or " + MODE_HIGH);
+    }
+    decompressor = factory.safeDecompressor();
+    hash = XXHashFactory.fastestInstance().hash32();
+  }
+
+  @Override
+  public byte[] encode(byte[] bytes) {
+    if (bytes == null) return null;
+    ByteBuffer dst = ByteBuffer.allocate(maxEncodedSize(bytes.length));
+    int size = encode(ByteBuffer.wrap(bytes), dst);
+    return Arrays.copyOf(dst.array(), size);
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded) {
+    if (encoded == null) return null;
+    ByteBuffer src = ByteBuffer.wrap(encoded);
+    if (!LZ4Frames.isSimpleFrame(src)) {
+      return decodeStream(encoded);
+    }
+    byte[] decoded = new byte[decodedSize(src)];
+    LZ4Frames.decode(decompressor, src, ByteBuffer.wrap(decoded));
+    return decoded;
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    return LZ4Frames.encode(compressor, hash, src, dst);
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    if (!LZ4Frames.isSimpleFrame(src)) {
+      return Codec.super.decode(src, dst);
+    }
+    return LZ4Frames.decode(decompressor, src, dst);
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return LZ4Frames.maxFrameSize(compressor, unencodedSize);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    long contentSize = LZ4Frames.frameContentSize(src);
+    return contentSize > Integer.MAX_VALUE ? -1 : (int) contentSize;
+  }
+
+  // Frames written by other tools may link blocks or leave out the content size.
+  private byte[] decodeStream(byte[] encoded) {
+    try (InputStream in = new LZ4FrameInputStream(new ByteArrayInputStream(encoded))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(encoded.length * 2);
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    } catch (IOException e) {
+      throw new CodecException("Cannot decode LZ4 frame", e);
+    }
+  }
+
+  public String getMode() {
+    return mode;
+  }
+
+  /** @param mode "fast" for the LZ4 block compressor, or "high" for LZ4 HC. */
+  public void setMode(String mode) {
+    this.mode = mode;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /** @param level the LZ4 HC level from 1 to 17, only used in "high" mode. */
+  public void setLevel(int level) {
+    this.level = level;
+  }
+}
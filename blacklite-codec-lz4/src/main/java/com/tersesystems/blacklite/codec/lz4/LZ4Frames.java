@@ -0,0 +1,252 @@
+package com.tersesystems.blacklite.codec.lz4;
+
+import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHash32;
+
+/**
+ * Reads and writes LZ4 frames, so that every entry is a standard frame that the {@code lz4}
+ * command line tool can read, and that a reader can recognise by its magic number.
+ *
+ * <p>lz4-java's frame streams allocate a block buffer of up to 4 MB per stream, which is a lot for
+ * a log entry, so frames are written here with independent blocks, the content size and no
+ * checksums. Each block is as small as the entry allows, and is stored uncompressed if
+ * compression doesn't make it smaller.
+ *
+ * @see <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Frame_format.md">LZ4 Frame Format</a>
+ */
+public final class LZ4Frames {
+
+  // 0x184D2204 little endian = Array(04, 22, 4D, 18)
+  static final int MAGIC_NUMBER = 0x184D2204;
+
+  // Version 01, independent blocks, content size present.
+  private static final int FLG = 0x68;
+  private static final int FLG_VERSION_MASK = 0xC0;
+  private static final int FLG_VERSION = 0x40;
+  private static final int FLG_BLOCK_INDEPENDENCE = 0x20;
+  private static final int FLG_BLOCK_CHECKSUM = 0x10;
+  private static final int FLG_CONTENT_SIZE = 0x08;
+  private static final int FLG_CONTENT_CHECKSUM = 0x04;
+  private static final int FLG_DICT_ID = 0x01;
+
+  // Magic number, FLG, BD, content size and header checksum.
+  private static final int HEADER_SIZE = 4 + 1 + 1 + 8 + 1;
+  private static final int BLOCK_HEADER_SIZE = 4;
+  private static final int END_MARK_SIZE = 4;
+  private static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+  // Block maximum sizes 4 to 7, i.e. 64 KB, 256 KB, 1 MB and 4 MB.
+  private static final int MIN_BLOCK_SIZE_ID = 4;
+  private static final int MAX_BLOCK_SIZE_ID = 7;
+
+  private LZ4Frames() {}
+
+  public static boolean isFrame(byte[] frame) {
+    if (frame == null || frame.length < 4) return false;
+    return MAGIC_NUMBER
+        == ((frame[3] << 24)
+            | ((frame[2] & 0xff) << 16)
+            | ((frame[1] & 0xff) << 8)
+            | (frame[0] & 0xff));
+  }
+
+  /**
+   * Reads the content size from the header of an LZ4 frame, without moving the position.
+   *
+   * @param frame the buffer, positioned at the start of the frame.
+   * @return the content size, or -1 if the frame header doesn't say.
+   * @throws CodecException if the buffer doesn't start with an LZ4 frame header.
+   */
+  public static long frameContentSize(ByteBuffer frame) {
+    return readHeader(frame.duplicate().order(ByteOrder.LITTLE_ENDIAN)).contentSize;
+  }
+
+  /**
+   * @return true if the frame can be decoded block by block, and false if it needs lz4-java's
+   *     frame stream.
+   */
+  static boolean isSimpleFrame(ByteBuffer frame) {
+    Header header = readHeader(frame.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    return header.independent && header.contentSize >= 0;
+  }
+
+  static int maxFrameSize(LZ4Compressor compressor, int contentSize) {
+    int blockSize = blockSize(blockSizeId(contentSize));
+    long size = HEADER_SIZE + END_MARK_SIZE;
+    for (int remaining = contentSize; remaining > 0; remaining -= blockSize) {
+      int length = Math.min(blockSize, remaining);
+      size += BLOCK_HEADER_SIZE + Math.max(length, compressor.maxCompressedLength(length));
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new CodecException("Content too large for a frame: " + contentSize);
+    }
+    return (int) size;
+  }
+
+  /**
+   * Writes the remaining bytes of {@code src} as a frame, moving both positions.
+   *
+   * @return the size of the frame.
+   */
+  static int encode(LZ4Compressor compressor, XXHash32 hash, ByteBuffer src, ByteBuffer dst) {
+    final int contentSize = src.remaining();
+    final int blockSizeId = blockSizeId(contentSize);
+    final int blockSize = blockSize(blockSizeId);
+    final ByteBuffer out = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final int start = out.position();
+
+    out.putInt(MAGIC_NUMBER);
+    final int descriptor = out.position();
+    out.put((byte) FLG);
+    out.put((byte) (blockSizeId << 4));
+    out.putLong(contentSize);
+    out.put(headerChecksum(hash, out, descriptor, out.position() - descriptor));
+
+    final int srcStart = src.position();
+    for (int offset = 0; offset < contentSize; offset += blockSize) {
+      final int length = Math.min(blockSize, contentSize - offset);
+      final int blockStart = out.position() + BLOCK_HEADER_SIZE;
+      if (blockStart > out.limit()) {
+        throw new BufferOverflowException();
+      }
+      int compressed;
+      try {
+        compressed =
+            compressor.compress(
+                src, srcStart + offset, length, out, blockStart, out.limit() - blockStart);
+      } catch (LZ4Exception e) {
+        // Didn't fit, but may still fit uncompressed.
+        compressed = length;
+      }
+      if (compressed < length) {
+        out.putInt(compressed);
+        out.position(blockStart + compressed);
+      } else {
+        out.putInt(UNCOMPRESSED_FLAG | length);
+        ByteBuffer block = src.duplicate();
+        block.limit(srcStart + offset + length).position(srcStart + offset);
+        out.put(block);
+      }
+    }
+    out.putInt(0);
+
+    final int size = out.position() - start;
+    src.position(src.limit());
+    dst.position(out.position());
+    return size;
+  }
+
+  /**
+   * Reads a frame from {@code src}, which must be a simple frame, moving both positions.
+   *
+   * @return the size of the content.
+   */
+  static int decode(LZ4SafeDecompressor decompressor, ByteBuffer src, ByteBuffer dst) {
+    final ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    final Header header = readHeader(in);
+    if (!header.independent) {
+      throw new CodecException("LZ4 frames with linked blocks are not supported");
+    }
+    final int start = dst.position();
+    int outPosition = start;
+    try {
+      int blockHeader;
+      while ((blockHeader = in.getInt()) != 0) {
+        final int length = blockHeader & ~UNCOMPRESSED_FLAG;
+        if (length > in.remaining()) {
+          throw new CodecException("Truncated LZ4 block");
+        }
+        if ((blockHeader & UNCOMPRESSED_FLAG) != 0) {
+          ByteBuffer block = in.duplicate();
+          block.limit(in.position() + length);
+          ByteBuffer out = dst.duplicate();
+          out.position(outPosition);
+          out.put(block);
+          outPosition += length;
+        } else {
+          outPosition +=
+              decompressor.decompress(
+                  in, in.position(), length, dst, outPosition, dst.limit() - outPosition);
+        }
+        in.position(in.position() + length + (header.blockChecksum ? 4 : 0));
+      }
+      if (header.contentChecksum) {
+        in.getInt();
+      }
+    } catch (BufferUnderflowException | LZ4Exception e) {
+      throw new CodecException("Cannot decode LZ4 frame", e);
+    }
+    final int size = outPosition - start;
+    if (header.contentSize >= 0 && size != header.contentSize) {
+      throw new CodecException("LZ4 frame content size mismatch");
+    }
+    src.position(in.position());
+    dst.position(outPosition);
+    return size;
+  }
+
+  private static Header readHeader(ByteBuffer in) {
+    try {
+      if (in.getInt() != MAGIC_NUMBER) {
+        throw new CodecException("Not an LZ4 frame");
+      }
+      final int flg = in.get() & 0xff;
+      if ((flg & FLG_VERSION_MASK) != FLG_VERSION) {
+        throw new CodecException("Unsupported LZ4 frame version");
+      }
+      // Block descriptor
+      in.get();
+      final long contentSize = (flg & FLG_CONTENT_SIZE) != 0 ? in.getLong() : -1;
+      final boolean dictionary = (flg & FLG_DICT_ID) != 0;
+      if (dictionary) {
+        in.getInt();
+      }
+      // Header checksum
+      in.get();
+      return new Header(
+          contentSize,
+          (flg & FLG_BLOCK_INDEPENDENCE) != 0 && !dictionary,
+          (flg & FLG_BLOCK_CHECKSUM) != 0,
+          (flg & FLG_CONTENT_CHECKSUM) != 0);
+    } catch (BufferUnderflowException e) {
+      throw new CodecException("Truncated LZ4 frame header", e);
+    }
+  }
+
+  private static byte headerChecksum(XXHash32 hash, ByteBuffer buffer, int offset, int length) {
+    return (byte) ((hash.hash(buffer, offset, length, 0) >> 8) & 0xff);
+  }
+
+  private static int blockSizeId(int contentSize) {
+    int id = MIN_BLOCK_SIZE_ID;
+    while (id < MAX_BLOCK_SIZE_ID && blockSize(id) < contentSize) {
+      id++;
+    }
+    return id;
+  }
+
+  private static int blockSize(int blockSizeId) {
+    return 1 << (8 + 2 * blockSizeId);
+  }
+
+  private static final class Header {
+    final long contentSize;
+    final boolean independent;
+    final boolean blockChecksum;
+    final boolean contentChecksum;
+
+    Header(long contentSize, boolean independent, boolean blockChecksum, boolean contentChecksum) {
+      this.contentSize = contentSize;
+      this.independent = independent;
+      this.blockChecksum = blockChecksum;
+      this.contentChecksum = contentChecksum;
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package com.tersesystems.blacklite.codec.lz4;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class LZ4CodecTest {
+
+  private final byte[] message =
+      ("{\"message\":\"hello world\",\"logger_name\":\"LZ4CodecTest\","
+              + "\"level\":\"INFO\",\"thread_name\":\"main\",\"level_value\":20000}")
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testFastRoundTrip() throws IOException {
+    LZ4Codec codec = codec(LZ4Codec.MODE_FAST);
+    byte[] encoded = codec.encode(message);
+    assertThat(LZ4Frames.isFrame(encoded)).isTrue();
+    assertThat(codec.decode(encoded)).isEqualTo(message);
+    // A standard frame, so lz4-java's frame reader checks the header checksum.
+    assertThat(readStream(encoded)).isEqualTo(message);
+  }
+
+  @Test
+  public void testHighRoundTrip() throws IOException {
+    LZ4Codec codec = codec(LZ4Codec.MODE_HIGH);
+    byte[] encoded = codec.encode(message);
+    assertThat(codec.decode(encoded)).isEqualTo(message);
+    assertThat(readStream(encoded)).isEqualTo(message);
+  }
+
+  @Test
+  public void testEmpty() {
+    LZ4Codec codec = codec(LZ4Codec.MODE_FAST);
+    byte[] encoded = codec.encode(new byte[0]);
+    assertThat(codec.decode(encoded)).isEmpty();
+  }
+
+  @Test
+  public void testIncompressibleIsStored() throws IOException {
+    LZ4Codec codec = codec(LZ4Codec.MODE_FAST);
+    byte[] random = new byte[1000];
+    new Random(1).nextBytes(random);
+    byte[] encoded = codec.encode(random);
+    assertThat(encoded.length).isLessThanOrEqualTo(codec.maxEncodedSize(random.length));
+    assertThat(codec.decode(encoded)).isEqualTo(random);
+    assertThat(readStream(encoded)).isEqualTo(random);
+  }
+
+  @Test
+  public void testMultipleBlocks() throws IOException {
+    LZ4Codec codec = codec(LZ4Codec.MODE_FAST);
+    byte[] large = new byte[5 * 1024 * 1024];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = message[i % message.length];
+    }
+    byte[] encoded = codec.encode(large);
+    assertThat(codec.decode(encoded)).isEqualTo(large);
+    assertThat(readStream(encoded)).isEqualTo(large);
+  }
+
+  @Test
+  public void testDecodesStreamFrames() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new LZ4FrameOutputStream(bytes)) {
+      out.write(message);
+    }
+    LZ4Codec codec = codec(LZ4Codec.MODE_FAST);
+    assertThat(codec.decode(bytes.toByteArray())).isEqualTo(message);
+    ByteBuffer decoded = ByteBuffer.allocate(1024);
+    codec.decode(ByteBuffer.wrap(bytes.toByteArray()), decoded);
+    assertThat(decoded.position()).isEqualTo(message.length);
+  }
+
+  @Test
+  public void testHeapBuffers() {
+    roundTrip(codec(LZ4Codec.MODE_FAST), ByteBuffer.allocate(1024), ByteBuffer.allocate(1024));
+  }
+
+  @Test
+  public void testDirectBuffers() {
+    roundTrip(
+        codec(LZ4Codec.MODE_HIGH),
+        ByteBuffer.allocateDirect(1024),
+        ByteBuffer.allocateDirect(1024));
+  }
+
+  private LZ4Codec codec(String mode) {
+    LZ4Codec codec = new LZ4Codec();
+    codec.setMode(mode);
+    codec.initialize(StatusReporter.DEFAULT);
+    return codec;
+  }
+
+  private void roundTrip(LZ4Codec codec, ByteBuffer encoded, ByteBuffer decoded) {
+    // Leave some bytes in front, to check positions are respected.
+    encoded.position(7);
+    ByteBuffer src = ByteBuffer.wrap(message);
+    assertThat(codec.maxEncodedSize(message.length)).isLessThanOrEqualTo(encoded.remaining());
+    int size = codec.encode(src, encoded);
+    assertThat(src.hasRemaining()).isFalse();
+    assertThat(encoded.position()).isEqualTo(7 + size);
+
+    encoded.flip();
+    encoded.position(7);
+    byte[] frame = new byte[size];
+    encoded.duplicate().get(frame);
+    assertThat(codec.decode(frame)).isEqualTo(message);
+
+    assertThat(codec.decodedSize(encoded)).isEqualTo(message.length);
+    int decodedSize = codec.decode(encoded, decoded);
+    assertThat(decodedSize).isEqualTo(message.length);
+    assertThat(encoded.hasRemaining()).isFalse();
+    decoded.flip();
+    byte[] result = new byte[decoded.remaining()];
+    decoded.get(result);
+    assertThat(result).isEqualTo(message);
+  }
+
+  private byte[] readStream(byte[] encoded) throws IOException {
+    try (InputStream in = new LZ4FrameInputStream(new ByteArrayInputStream(encoded))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+}
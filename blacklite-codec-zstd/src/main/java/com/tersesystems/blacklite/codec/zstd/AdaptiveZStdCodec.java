@@ -0,0 +1,203 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.CodecException;
+import com.tersesystems.blacklite.codec.TaggedCodec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A zstd codec that decides how to encode each entry, and tags the entry with its choice (see
+ * {@link TaggedCodec}).
+ *
+ * <p>Entries smaller than {@code rawThreshold} bytes are stored raw, as the zstd frame header costs
+ * more than compression saves, and so is any entry that zstd doesn't make smaller. Otherwise the
+ * level goes from {@code maxLevel} for entries up to {@code smallSize} bytes, through the midpoint,
+ * to {@code minLevel} for entries over {@code largeSize} bytes, since large entries cost the most
+ * to compress at high levels. When the archiver reports a backlog of {@code backlogThreshold}
+ * entries or more, the level drops by one more for every doubling of the backlog, down to {@code
+ * minLevel}, so that archiving can catch up.
+ *
+ * <p>Untagged zstd frames and untagged raw content, i.e. entries written before this codec was
+ * used, are still decoded. Like {@link ZStdCodec}, this codec must only be used by one thread.
+ */
+public class AdaptiveZStdCodec implements Codec {
+
+  public static final String NAME = "zstdadaptive";
+
+  private final ZstdCompressCtx compressCtx = new ZstdCompressCtx();
+  private final ZstdDecompressCtx decompressCtx = new ZstdDecompressCtx();
+
+  private int rawThreshold = 64;
+  private int smallSize = 4096;
+  private int largeSize = 65536;
+  private int minLevel = 1;
+  private int maxLevel = 6;
+  private long backlogThreshold = 10000;
+
+  private volatile long backlog;
+  private int currentLevel;
+
+  // Holds the tag and the compressed frame, reused between entries.
+  private byte[] scratch = new byte[0];
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    if (minLevel > maxLevel) {
+      throw new IllegalArgumentException("minLevel must not be more than maxLevel");
+    }
+    currentLevel = maxLevel;
+    compressCtx.setLevel(currentLevel);
+  }
+
+  @Override
+  public byte[] encode(byte[] bytes) {
+    if (bytes == null) return null;
+    if (bytes.length >= rawThreshold) {
+      int level = level(bytes.length);
+      if (level != currentLevel) {
+        compressCtx.setLevel(level);
+        currentLevel = level;
+      }
+      int bound = 1 + (int) Zstd.compressBound(bytes.length);
+      if (scratch.length < bound) {
+        scratch = new byte[bound];
+      }
+      int size = compressCtx.compressByteArray(scratch, 1, bound - 1, bytes, 0, bytes.length);
+      if (size < bytes.length) {
+        scratch[0] = TaggedCodec.ZSTD;
+        return Arrays.copyOf(scratch, size + 1);
+      }
+    }
+    return TaggedCodec.tag(TaggedCodec.RAW, bytes);
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded) {
+    if (encoded == null) return null;
+    if (!TaggedCodec.isTagged(encoded)) {
+      if (ZStdUtils.isFrame(encoded)) {
+        return decompressCtx.decompress(encoded, (int) Zstd.decompressedSize(encoded));
+      }
+      return encoded;
+    }
+    switch (encoded[0]) {
+      case TaggedCodec.RAW:
+        return TaggedCodec.untag(encoded);
+      case TaggedCodec.ZSTD:
+        return decompressTagged(encoded);
+      default:
+        throw new CodecException("Cannot decode tag " + (encoded[0] & 0xFF));
+    }
+  }
+
+  // Decompresses the frame after the tag, without copying it out first.
+  private byte[] decompressTagged(byte[] encoded) {
+    long contentSize = ZStdUtils.frameContentSize(ByteBuffer.wrap(encoded, 1, encoded.length - 1));
+    if (contentSize < 0) {
+      throw new CodecException("Frame does not have a content size");
+    }
+    byte[] decoded = new byte[(int) contentSize];
+    decompressCtx.decompressByteArray(decoded, 0, decoded.length, encoded, 1, encoded.length - 1);
+    return decoded;
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return 1 + Math.max(unencodedSize, (int) Zstd.compressBound(unencodedSize));
+  }
+
+  @Override
+  public void archiveBacklog(long rows) {
+    this.backlog = rows;
+  }
+
+  /**
+   * @param size the size of the entry.
+   * @return the zstd level to compress the entry at.
+   */
+  int level(int size) {
+    int level;
+    if (size <= smallSize) {
+      level = maxLevel;
+    } else if (size <= largeSize) {
+      level = (minLevel + maxLevel) / 2;
+    } else {
+      level = minLevel;
+    }
+    long rows = backlog;
+    if (backlogThreshold > 0 && rows >= backlogThreshold) {
+      // One level for reaching the threshold, and one more for every doubling past it.
+      int doublings = 63 - Long.numberOfLeadingZeros(rows / backlogThreshold);
+      level -= 1 + doublings;
+    }
+    return Math.max(minLevel, level);
+  }
+
+  @Override
+  public void close() {
+    compressCtx.close();
+    decompressCtx.close();
+  }
+
+  public int getRawThreshold() {
+    return rawThreshold;
+  }
+
+  /** @param rawThreshold entries smaller than this many bytes are stored raw. */
+  public void setRawThreshold(int rawThreshold) {
+    this.rawThreshold = rawThreshold;
+  }
+
+  public int getSmallSize() {
+    return smallSize;
+  }
+
+  /** @param smallSize entries up to this many bytes are compressed at {@code maxLevel}. */
+  public void setSmallSize(int smallSize) {
+    this.smallSize = smallSize;
+  }
+
+  public int getLargeSize() {
+    return largeSize;
+  }
+
+  /** @param largeSize entries over this many bytes are compressed at {@code minLevel}. */
+  public void setLargeSize(int largeSize) {
+    this.largeSize = largeSize;
+  }
+
+  public int getMinLevel() {
+    return minLevel;
+  }
+
+  public void setMinLevel(int minLevel) {
+    this.minLevel = minLevel;
+  }
+
+  public int getMaxLevel() {
+    return maxLevel;
+  }
+
+  public void setMaxLevel(int maxLevel) {
+    this.maxLevel = maxLevel;
+  }
+
+  public long getBacklogThreshold() {
+    return backlogThreshold;
+  }
+
+  /** @param backlogThreshold the backlog at which levels start to drop, or 0 to ignore it. */
+  public void setBacklogThreshold(long backlogThreshold) {
+    this.backlogThreshold = backlogThreshold;
+  }
+}
@@ -0,0 +1,18 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+/**
+ * Sorts entries into categories, i.e. by logger name or level, so that {@link
+ * ZStdCategoryDictCodec} can train and use a dictionary for each category.
+ *
+ * <p>Entries in the same category should look alike. Each category gets its own dictionary and
+ * compression context, so keep the number of categories small.
+ */
+public interface CategoryResolver {
+
+  /**
+   * @param level the level of the entry.
+   * @param content the unencoded content of the entry.
+   * @return the category of the entry, or null if it doesn't belong to one.
+   */
+  String category(int level, byte[] content);
+}
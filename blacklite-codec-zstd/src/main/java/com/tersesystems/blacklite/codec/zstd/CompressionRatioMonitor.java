@@ -0,0 +1,75 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+/**
+ * Keeps track of the compression ratio of a dictionary, and tells when it has dropped.
+ *
+ * <p>The ratio is measured over windows of {@code windowSize} input bytes. The first window after
+ * a {@link #reset()} is the baseline for the dictionary, and a later window is degraded if its
+ * ratio is more than {@code threshold} (a fraction) below the baseline. Not thread safe.
+ */
+public final class CompressionRatioMonitor {
+
+  private final long windowSize;
+  private final double threshold;
+
+  private long inputBytes;
+  private long outputBytes;
+  private double baseline;
+  private double lastRatio;
+
+  /**
+   * @param windowSize the number of input bytes to measure each ratio over.
+   * @param threshold the fraction the ratio can drop below the baseline, i.e. 0.2 for 20%.
+   */
+  public CompressionRatioMonitor(long windowSize, double threshold) {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be positive");
+    }
+    if (threshold <= 0 || threshold >= 1) {
+      throw new IllegalArgumentException("threshold must be between 0 and 1");
+    }
+    this.windowSize = windowSize;
+    this.threshold = threshold;
+  }
+
+  /**
+   * Records a compressed entry.
+   *
+   * @param uncompressed the size of the entry.
+   * @param compressed the size of the compressed entry.
+   * @return true if this completed a window and the ratio of the window is degraded.
+   */
+  public boolean record(int uncompressed, int compressed) {
+    inputBytes += uncompressed;
+    outputBytes += compressed;
+    if (inputBytes < windowSize) {
+      return false;
+    }
+    lastRatio = (double) inputBytes / Math.max(1, outputBytes);
+    inputBytes = 0;
+    outputBytes = 0;
+    if (baseline == 0) {
+      baseline = lastRatio;
+      return false;
+    }
+    return lastRatio < baseline * (1 - threshold);
+  }
+
+  /** Starts over with a new baseline, i.e. after swapping in a new dictionary. */
+  public void reset() {
+    inputBytes = 0;
+    outputBytes = 0;
+    baseline = 0;
+    lastRatio = 0;
+  }
+
+  /** @return the ratio of the first window since the last reset, or 0 if not measured yet. */
+  public double getBaseline() {
+    return baseline;
+  }
+
+  /** @return the ratio of the last completed window, or 0 if not measured yet. */
+  public double getLastRatio() {
+    return lastRatio;
+  }
+}
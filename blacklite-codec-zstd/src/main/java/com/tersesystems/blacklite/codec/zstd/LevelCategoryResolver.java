@@ -0,0 +1,62 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import java.util.Arrays;
+
+/**
+ * Puts entries into categories by level. The levels are split into buckets at the configured
+ * boundaries, and an entry belongs to the bucket of the highest boundary at or below its level,
+ * which is named {@code level:<boundary>}. Entries below the lowest boundary have no category.
+ *
+ * <p>For example, with logback levels, boundaries of {@code 10000,30000} put debug and info
+ * entries in {@code level:10000}, warnings and errors in {@code level:30000}, and trace entries
+ * in none.
+ */
+public class LevelCategoryResolver implements CategoryResolver {
+
+  private int[] boundaries = new int[0];
+  private String[] names = new String[0];
+
+  @Override
+  public String category(int level, byte[] content) {
+    int i = Arrays.binarySearch(boundaries, level);
+    if (i < 0) {
+      // The insertion point is the first boundary above the level.
+      i = -i - 2;
+    }
+    return i < 0 ? null : names[i];
+  }
+
+  public String getBoundaries() {
+    StringBuilder sb = new StringBuilder();
+    for (int boundary : boundaries) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(boundary);
+    }
+    return sb.toString();
+  }
+
+  /** @param boundaries the lowest level of each bucket, separated by commas. */
+  public void setBoundaries(String boundaries) {
+    int[] parsed =
+        Arrays.stream(boundaries.split(","))
+            .map(String::trim)
+            .filter(s -> !s.isEmpty())
+            .mapToInt(Integer::parseInt)
+            .sorted()
+            .distinct()
+            .toArray();
+    String[] categories = new String[parsed.length];
+    for (int i = 0; i < parsed.length; i++) {
+      categories[i] = "level:" + parsed[i];
+    }
+    this.boundaries = parsed;
+    this.names = categories;
+  }
+
+  @Override
+  public String toString() {
+    return "LevelCategoryResolver{boundaries=" + getBoundaries() + '}';
+  }
+}
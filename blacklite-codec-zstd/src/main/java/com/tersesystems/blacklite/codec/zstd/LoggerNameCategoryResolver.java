@@ -0,0 +1,119 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Puts JSON entries into categories by logger name. The logger name is read from a field of the
+ * content, {@code logger_name} by default, and the category is the longest configured prefix that
+ * the logger name starts with. Entries without the field, or with a logger name that matches no
+ * prefix, have no category.
+ *
+ * <p>The content is scanned as bytes, without parsing or decoding it, so the field is found by
+ * its first occurrence as a key, i.e. {@code "logger_name":"org.hibernate.SQL"}.
+ */
+public class LoggerNameCategoryResolver implements CategoryResolver {
+
+  private String field = "logger_name";
+  private byte[] key = key(field);
+  private final List<String> prefixes = new ArrayList<>();
+  private final List<byte[]> prefixBytes = new ArrayList<>();
+
+  @Override
+  public String category(int level, byte[] content) {
+    int start = valueStart(content);
+    if (start < 0) {
+      return null;
+    }
+    String category = null;
+    int longest = -1;
+    for (int i = 0; i < prefixBytes.size(); i++) {
+      byte[] prefix = prefixBytes.get(i);
+      if (prefix.length > longest && startsWith(content, start, prefix)) {
+        category = prefixes.get(i);
+        longest = prefix.length;
+      }
+    }
+    return category;
+  }
+
+  // Returns the offset of the first byte of the field's string value, or -1 if there is none.
+  private int valueStart(byte[] content) {
+    int i = indexOf(content, key);
+    if (i < 0) {
+      return -1;
+    }
+    i += key.length;
+    while (i < content.length && (content[i] == ' ' || content[i] == ':')) {
+      i++;
+    }
+    return i < content.length && content[i] == '"' ? i + 1 : -1;
+  }
+
+  private static boolean startsWith(byte[] content, int start, byte[] prefix) {
+    if (start + prefix.length > content.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (content[start + i] != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(byte[] content, byte[] key) {
+    int last = content.length - key.length;
+    outer:
+    for (int i = 0; i <= last; i++) {
+      for (int j = 0; j < key.length; j++) {
+        if (content[i + j] != key[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static byte[] key(String field) {
+    return ('"' + field + '"').getBytes(StandardCharsets.UTF_8);
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  /** @param field the name of the JSON field holding the logger name. */
+  public void setField(String field) {
+    this.field = field;
+    this.key = key(field);
+  }
+
+  public String getPrefixes() {
+    return String.join(",", prefixes);
+  }
+
+  /** @param prefixes the logger name prefixes to use as categories, separated by commas. */
+  public void setPrefixes(String prefixes) {
+    this.prefixes.clear();
+    this.prefixBytes.clear();
+    for (String prefix : prefixes.split(",")) {
+      addPrefix(prefix.trim());
+    }
+  }
+
+  /** @param prefix a logger name prefix to use as a category. */
+  public void addPrefix(String prefix) {
+    if (!prefix.isEmpty() && !prefixes.contains(prefix)) {
+      prefixes.add(prefix);
+      prefixBytes.add(prefix.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "LoggerNameCategoryResolver{field=" + field + ", prefixes=" + getPrefixes() + '}';
+  }
+}
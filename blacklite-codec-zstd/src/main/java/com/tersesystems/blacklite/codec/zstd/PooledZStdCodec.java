@@ -0,0 +1,124 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import java.nio.ByteBuffer;
+
+/**
+ * ZStandard compression that is safe to call from several threads at once.
+ *
+ * <p>{@link ZStdCodec} has a single compression and decompression context, and so must only be
+ * used by one thread. This codec hands each call a context from a pool instead, so it can be used
+ * from fork-join workers, several producer threads, or a parallel reader. It writes the same
+ * frames as {@link ZStdCodec} and has the same name, so either can read what the other wrote.
+ */
+public class PooledZStdCodec implements Codec {
+
+  private int level = 3;
+  private int maximumIdle = Runtime.getRuntime().availableProcessors();
+
+  private ZStdContextPool<ZstdCompressCtx> compressPool;
+  private ZStdContextPool<ZstdDecompressCtx> decompressPool;
+
+  @Override
+  public String getName() {
+    return ZStdCodec.NAME;
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    final int compressLevel = level;
+    this.compressPool =
+        new ZStdContextPool<>(
+            maximumIdle,
+            () -> {
+              ZstdCompressCtx ctx = new ZstdCompressCtx();
+              ctx.setLevel(compressLevel);
+              return ctx;
+            },
+            ZstdCompressCtx::close);
+    this.decompressPool =
+        new ZStdContextPool<>(maximumIdle, ZstdDecompressCtx::new, ZstdDecompressCtx::close);
+  }
+
+  public byte[] encode(byte[] bytes) {
+    if (bytes == null) return null;
+    ZstdCompressCtx ctx = compressPool.borrow();
+    try {
+      return ctx.compress(bytes);
+    } finally {
+      compressPool.release(ctx);
+    }
+  }
+
+  public byte[] decode(byte[] compressed) {
+    if (compressed == null) return null;
+    int i = (int) Zstd.decompressedSize(compressed);
+    ZstdDecompressCtx ctx = decompressPool.borrow();
+    try {
+      return ctx.decompress(compressed, i);
+    } finally {
+      decompressPool.release(ctx);
+    }
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    ZstdCompressCtx ctx = compressPool.borrow();
+    try {
+      return ZStdBuffers.compress(ctx, src, dst);
+    } finally {
+      compressPool.release(ctx);
+    }
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    ZstdDecompressCtx ctx = decompressPool.borrow();
+    try {
+      return ZStdBuffers.decompress(ctx, src, dst);
+    } finally {
+      decompressPool.release(ctx);
+    }
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return (int) Zstd.compressBound(unencodedSize);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return (int) ZStdUtils.frameContentSize(src);
+  }
+
+  @Override
+  public void close() {
+    if (compressPool != null) {
+      compressPool.close();
+    }
+    if (decompressPool != null) {
+      decompressPool.close();
+    }
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getMaximumIdle() {
+    return maximumIdle;
+  }
+
+  /** @param maximumIdle the number of contexts of each kind to keep for reuse between calls. */
+  public void setMaximumIdle(int maximumIdle) {
+    this.maximumIdle = maximumIdle;
+  }
+}
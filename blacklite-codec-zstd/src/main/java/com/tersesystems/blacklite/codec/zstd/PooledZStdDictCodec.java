@@ -0,0 +1,333 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * ZStandard dictionary compression that is safe to call from several threads at once.
+ *
+ * <p>The dictionary is digested once and shared: compression references a single {@code
+ * ZstdDictCompress}, and decompression looks up digested dictionaries in a {@link ZStdDictCache}.
+ * Each call borrows a context from a pool and only loads a dictionary into it when the context was
+ * last used with a different one, which is cheap as the dictionary is already digested.
+ *
+ * <p>Frames are the same as those of {@link ZStdDictCodec}, and the codec has the same name, so
+ * either can read what the other wrote. If there is no dictionary in the repository, entries are
+ * compressed without one and used as samples until the trainer has produced a dictionary.
+ */
+public class PooledZStdDictCodec implements Codec {
+
+  private int sampleSize = 10 * 1024 * 1024;
+  private int dictSize = 112640;
+  private double trainingDutyCycle = 0.5;
+  private String bootstrapFile;
+  private int level = 3;
+  private int dictCacheSize = ZStdDictCache.DEFAULT_MAXIMUM_SIZE;
+  private int maximumIdle = Runtime.getRuntime().availableProcessors();
+
+  private ZstdDictRepository repository;
+  private ZStdDictCache dictCache;
+  private boolean ownsDictCache;
+  private StatusReporter statusReporter;
+
+  private ZStdContextPool<Compressor> compressPool;
+  private ZStdContextPool<Decompressor> decompressPool;
+
+  // Null until there is a dictionary to compress with.
+  private volatile ZStdCompressDict sharedDict;
+  private volatile ZStdDictTrainer trainer;
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    Objects.requireNonNull(repository, "Null repository");
+    repository.initialize();
+
+    this.statusReporter = statusReporter;
+    if (dictCache == null) {
+      dictCache = new ZStdDictCache(repository, dictCacheSize);
+      ownsDictCache = true;
+    }
+    final int compressLevel = level;
+    this.compressPool =
+        new ZStdContextPool<>(maximumIdle, () -> new Compressor(compressLevel), Compressor::close);
+    this.decompressPool =
+        new ZStdContextPool<>(maximumIdle, Decompressor::new, Decompressor::close);
+
+    Optional<ZStdDict> maybe = repository.mostRecent();
+    if (maybe.isPresent()) {
+      useDictionary(maybe.get().getBytes());
+    } else {
+      ZStdDictTrainer t =
+          new ZStdDictTrainer(
+              sampleSize,
+              dictSize,
+              statusReporter,
+              dbytes -> {
+                repository.save(dbytes);
+                useDictionary(dbytes);
+                trainer = null;
+              });
+      t.setDutyCycle(trainingDutyCycle);
+      this.trainer = t;
+      if (bootstrapFile != null) {
+        t.bootstrap(bootstrapFile);
+      }
+    }
+  }
+
+  private void useDictionary(byte[] dictBytes) {
+    long dictId = Zstd.getDictIdFromDict(dictBytes);
+    dictCache.put(dictId, dictBytes);
+    sharedDict = new ZStdCompressDict(dictId, new ZstdDictCompress(dictBytes, level));
+  }
+
+  public byte[] encode(byte[] bytes) {
+    if (bytes == null) return null;
+
+    final ZStdDictTrainer t = trainer;
+    if (t != null) {
+      t.train(bytes);
+    }
+    Compressor compressor = compressPool.borrow();
+    try {
+      return compressor.compress(sharedDict, bytes);
+    } finally {
+      compressPool.release(compressor);
+    }
+  }
+
+  public byte[] decode(byte[] compressed) {
+    if (compressed == null) return null;
+    Decompressor decompressor = decompressPool.borrow();
+    try {
+      return decompressor.decompress(dictCache, compressed);
+    } finally {
+      decompressPool.release(decompressor);
+    }
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    final ZStdDictTrainer t = trainer;
+    if (t != null) {
+      t.train(ZStdBuffers.toArray(src.duplicate()));
+    }
+    Compressor compressor = compressPool.borrow();
+    try {
+      return compressor.compress(sharedDict, src, dst);
+    } finally {
+      compressPool.release(compressor);
+    }
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    Decompressor decompressor = decompressPool.borrow();
+    try {
+      return decompressor.decompress(dictCache, src, dst);
+    } finally {
+      decompressPool.release(decompressor);
+    }
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return (int) Zstd.compressBound(unencodedSize);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return (int) ZStdUtils.frameContentSize(src);
+  }
+
+  @Override
+  public void close() {
+    try {
+      if (compressPool != null) {
+        compressPool.close();
+      }
+      if (decompressPool != null) {
+        decompressPool.close();
+      }
+      if (ownsDictCache) {
+        dictCache.clear();
+      }
+      repository.close();
+    } catch (Exception e) {
+      statusReporter.addError(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return ZStdDictCodec.NAME;
+  }
+
+  @Override
+  public long getDictionaryId() {
+    ZStdCompressDict dict = sharedDict;
+    return dict == null ? 0 : dict.id;
+  }
+
+  @Override
+  public String toString() {
+    return "PooledZStdDictCodec{" + "level=" + level + ", repo=" + repository + '}';
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getDictSize() {
+    return dictSize;
+  }
+
+  public void setDictSize(int dictSize) {
+    this.dictSize = dictSize;
+  }
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  public double getTrainingDutyCycle() {
+    return trainingDutyCycle;
+  }
+
+  /** @param trainingDutyCycle the fraction of a core that training may use on average. */
+  public void setTrainingDutyCycle(double trainingDutyCycle) {
+    this.trainingDutyCycle = trainingDutyCycle;
+  }
+
+  public String getBootstrapFile() {
+    return bootstrapFile;
+  }
+
+  /** @param bootstrapFile a database to train the first dictionary from on startup. */
+  public void setBootstrapFile(String bootstrapFile) {
+    this.bootstrapFile = bootstrapFile;
+  }
+
+  public int getDictCacheSize() {
+    return dictCacheSize;
+  }
+
+  /** @param dictCacheSize the number of digested dictionaries to keep for decoding. */
+  public void setDictCacheSize(int dictCacheSize) {
+    this.dictCacheSize = dictCacheSize;
+  }
+
+  public ZStdDictCache getDictCache() {
+    return dictCache;
+  }
+
+  /**
+   * Sets the cache of digested dictionaries, so that it can be shared with other codecs reading
+   * from the same repository. By default, each codec has its own cache.
+   */
+  public void setDictCache(ZStdDictCache dictCache) {
+    this.dictCache = dictCache;
+  }
+
+  public int getMaximumIdle() {
+    return maximumIdle;
+  }
+
+  /** @param maximumIdle the number of contexts of each kind to keep for reuse between calls. */
+  public void setMaximumIdle(int maximumIdle) {
+    this.maximumIdle = maximumIdle;
+  }
+
+  public ZstdDictRepository getRepository() {
+    return this.repository;
+  }
+
+  public void setRepository(ZstdDictRepository dictRepository) {
+    this.repository = dictRepository;
+  }
+
+  /** A compression context, and the id of the dictionary loaded into it. */
+  static final class Compressor {
+    private final ZstdCompressCtx ctx = new ZstdCompressCtx();
+    private long dictId;
+
+    Compressor(int level) {
+      ctx.setLevel(level);
+    }
+
+    byte[] compress(ZStdCompressDict shared, byte[] bytes) {
+      load(shared);
+      return ctx.compress(bytes);
+    }
+
+    int compress(ZStdCompressDict shared, ByteBuffer src, ByteBuffer dst) {
+      load(shared);
+      return ZStdBuffers.compress(ctx, src, dst);
+    }
+
+    private void load(ZStdCompressDict shared) {
+      if (shared != null && shared.id != dictId) {
+        ctx.loadDict(shared.dict);
+        dictId = shared.id;
+      }
+    }
+
+    void close() {
+      ctx.close();
+    }
+  }
+
+  /** A decompression context, and the dictionary loaded into it. */
+  static final class Decompressor {
+    private final ZstdDecompressCtx ctx = new ZstdDecompressCtx();
+    // Kept reachable while it is loaded, as the cache may evict it.
+    private ZstdDictDecompress dict;
+    private long dictId;
+
+    byte[] decompress(ZStdDictCache dictCache, byte[] compressed) {
+      int i = (int) Zstd.decompressedSize(compressed);
+      load(dictCache, Zstd.getDictIdFromFrame(compressed));
+      return ctx.decompress(compressed, i);
+    }
+
+    int decompress(ZStdDictCache dictCache, ByteBuffer src, ByteBuffer dst) {
+      load(dictCache, ZStdUtils.frameDictId(src));
+      return ZStdBuffers.decompress(ctx, src, dst);
+    }
+
+    private void load(ZStdDictCache dictCache, long frameDictId) {
+      if (frameDictId == dictId) {
+        return;
+      }
+      if (frameDictId == 0) {
+        // Frames written before a dictionary was trained must be read without one.
+        ZStdUtils.unloadDict(ctx);
+        dict = null;
+      } else {
+        dict = dictCache.get(frameDictId);
+        ctx.loadDict(dict);
+      }
+      dictId = frameDictId;
+    }
+
+    void close() {
+      ctx.close();
+    }
+  }
+}
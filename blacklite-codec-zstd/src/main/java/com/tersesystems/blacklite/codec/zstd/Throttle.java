@@ -0,0 +1,62 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Slows down background work so it doesn't compete with the live writer, by limiting the bytes
+ * read and written per second, and by sleeping after each unit of work so that only a fraction of
+ * a core is used.
+ *
+ * <p>Not thread safe.
+ */
+final class Throttle {
+
+  private final long bytesPerSecond;
+  private final double dutyCycle;
+
+  // The time at which the bytes acquired so far will have been paid for.
+  private long paidUntilNanos = System.nanoTime();
+
+  /**
+   * @param bytesPerSecond the maximum bytes per second, or 0 for no limit.
+   * @param dutyCycle the fraction of time spent working, between 0 (exclusive) and 1.
+   */
+  Throttle(long bytesPerSecond, double dutyCycle) {
+    if (bytesPerSecond < 0) {
+      throw new IllegalArgumentException("bytesPerSecond must not be negative");
+    }
+    if (dutyCycle <= 0 || dutyCycle > 1) {
+      throw new IllegalArgumentException("dutyCycle must be greater than 0 and at most 1");
+    }
+    this.bytesPerSecond = bytesPerSecond;
+    this.dutyCycle = dutyCycle;
+  }
+
+  /** Blocks until the given number of bytes can be read or written within the rate limit. */
+  void acquireBytes(long bytes) throws InterruptedException {
+    if (bytesPerSecond == 0 || bytes <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    // Don't let idle time build up into a burst.
+    long start = Math.max(paidUntilNanos, now);
+    paidUntilNanos = start + TimeUnit.SECONDS.toNanos(1) * bytes / bytesPerSecond;
+    long waitNanos = paidUntilNanos - now;
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Sleeps long enough after a unit of work to keep to the duty cycle.
+   *
+   * @param workNanos how long the work took.
+   */
+  void rest(long workNanos) throws InterruptedException {
+    if (dutyCycle >= 1 || workNanos <= 0) {
+      return;
+    }
+    long restNanos = (long) (workNanos * (1 - dutyCycle) / dutyCycle);
+    TimeUnit.NANOSECONDS.sleep(restNanos);
+  }
+}
@@ -0,0 +1,103 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs archive compaction periodically in the background, on a single low priority daemon thread.
+ *
+ * <p>The compactor's throttling keeps the thread from competing with the live writer, and a
+ * compaction that is interrupted by {@link #close()} leaves the archives untouched.
+ */
+public class ZStdArchiveCompactionService implements AutoCloseable {
+
+  private final ZStdArchiveCompactor compactor;
+  private final Path directory;
+  private final String glob;
+  private long intervalSeconds = 300;
+  private String catalogFile;
+  private StatusReporter statusReporter = StatusReporter.DEFAULT;
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param compactor the compactor.
+   * @param directory the directory containing the archives.
+   * @param glob the pattern for archive file names, i.e. {@code archive.*.db}.
+   */
+  public ZStdArchiveCompactionService(
+      ZStdArchiveCompactor compactor, Path directory, String glob) {
+    this.compactor = Objects.requireNonNull(compactor, "Null compactor");
+    this.directory = Objects.requireNonNull(directory, "Null directory");
+    this.glob = Objects.requireNonNull(glob, "Null glob");
+  }
+
+  public long getIntervalSeconds() {
+    return intervalSeconds;
+  }
+
+  /** @param intervalSeconds the time between the end of one compaction run and the next. */
+  public void setIntervalSeconds(long intervalSeconds) {
+    this.intervalSeconds = intervalSeconds;
+  }
+
+  public String getCatalogFile() {
+    return catalogFile;
+  }
+
+  /** @param catalogFile the archive catalog to refresh after compaction, or null. */
+  public void setCatalogFile(String catalogFile) {
+    this.catalogFile = catalogFile;
+  }
+
+  public void setStatusReporter(StatusReporter statusReporter) {
+    this.statusReporter = Objects.requireNonNull(statusReporter, "Null statusReporter");
+    compactor.setStatusReporter(statusReporter);
+  }
+
+  public synchronized void start() {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r);
+              t.setDaemon(true);
+              t.setName("blacklite-archive-compactor");
+              t.setPriority(Thread.MIN_PRIORITY);
+              return t;
+            });
+    executor.scheduleWithFixedDelay(
+        this::compact, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  /** Runs a single compaction over the directory. */
+  public void compact() {
+    try {
+      List<Path> compacted = compactor.compactDirectory(directory, glob);
+      if (catalogFile != null && !compacted.isEmpty()) {
+        new ArchiveCatalog(catalogFile).refresh(directory);
+      }
+    } catch (Exception e) {
+      statusReporter.addError("ZStdArchiveCompactionService: Cannot compact " + directory, e);
+    }
+  }
+
+  @Override
+  public synchronized void close() throws InterruptedException {
+    if (executor == null) {
+      return;
+    }
+    executor.shutdownNow();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      statusReporter.addError("ZStdArchiveCompactionService: Timeout waiting for compaction!");
+    }
+    executor = null;
+  }
+}
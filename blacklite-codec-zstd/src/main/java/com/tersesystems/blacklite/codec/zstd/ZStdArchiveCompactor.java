@@ -0,0 +1,650 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static com.tersesystems.blacklite.DefaultEntryStore.APPLICATION_ID;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.tersesystems.blacklite.Entry;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import com.tersesystems.blacklite.archive.EntryBlock;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Merges small rolled archive files into larger ones.
+ *
+ * <p>Compaction merges the entries of adjacent archives in time order, and re-encodes them at a
+ * higher zstd level with a dictionary freshly trained on the entries. The result is built in a
+ * temporary file next to the newest archive, vacuumed, and then atomically moved over the newest
+ * archive, after which the other archives are deleted. The compacted archive keeps the name of the
+ * newest archive, so that rolling strategies that delete archives by the date in their name don't
+ * delete merged entries before the newest of them is due.
+ *
+ * <p>Before the move, the archives to delete are written to a journal next to the temporary file.
+ * If the process stops between the move and the deletes, {@link #recover(Path)} finishes the move
+ * and the deletes from the journal, so the merged entries are never left in two files.
+ *
+ * <p>Compaction is throttled, both on the bytes read and written per second and on the fraction
+ * of time spent working, so that it can run in the same process as the live writer.
+ *
+ * <p>Archive files must not be renamed while they are being compacted, so compaction should only
+ * be used with rolling strategies that give archives fixed names, such as time based rolling.
+ */
+public class ZStdArchiveCompactor {
+
+  public static final String TEMP_SUFFIX = ".compacting";
+
+  /** The suffix of the journal listing the archives to delete once the compacted file is moved. */
+  public static final String JOURNAL_SUFFIX = ".compacted";
+
+  private static final String ENTRIES_SQL =
+      "SELECT epoch_secs, nanos, level, content FROM entries ORDER BY epoch_secs, nanos";
+  private static final String BLOCKS_SQL = "SELECT content FROM entry_blocks ORDER BY rowid";
+  private static final String MIN_EPOCH_SQL = "SELECT min(epoch_secs) FROM entries";
+  private static final String MIN_EPOCH_BLOCKS_SQL =
+      "SELECT min(min_epoch_secs) FROM entry_blocks";
+  private static final String HAS_BLOCKS_SQL =
+      "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = 'entry_blocks'";
+
+  private int level = 19;
+  private int sampleSize = 10 * 1024 * 1024;
+  private int dictSize = 112640;
+  private int batchSize = 1000;
+  private long bytesPerSecond = 8 * 1024 * 1024;
+  private double dutyCycle = 0.5;
+  private long targetFileSize = 64 * 1024 * 1024;
+  private long minimumAgeSeconds = 60;
+  private StatusReporter statusReporter = StatusReporter.DEFAULT;
+
+  public int getLevel() {
+    return level;
+  }
+
+  /** @param level the zstd level to re-encode at, 19 by default. */
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /** @param sampleSize the total bytes of entries to train the dictionary on. */
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  public int getDictSize() {
+    return dictSize;
+  }
+
+  public void setDictSize(int dictSize) {
+    this.dictSize = dictSize;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /** @param batchSize the number of entries between throttling checks and batch inserts. */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getBytesPerSecond() {
+    return bytesPerSecond;
+  }
+
+  /** @param bytesPerSecond the limit on bytes read and written per second, or 0 for no limit. */
+  public void setBytesPerSecond(long bytesPerSecond) {
+    this.bytesPerSecond = bytesPerSecond;
+  }
+
+  public double getDutyCycle() {
+    return dutyCycle;
+  }
+
+  /**
+   * @param dutyCycle the fraction of time spent working, i.e. 0.25 sleeps three times as long as
+   *     it works. 1 means no sleeping.
+   */
+  public void setDutyCycle(double dutyCycle) {
+    this.dutyCycle = dutyCycle;
+  }
+
+  public long getTargetFileSize() {
+    return targetFileSize;
+  }
+
+  /**
+   * @param targetFileSize archives are merged until their combined size on disk reaches this, and
+   *     archives at least this big are left alone.
+   */
+  public void setTargetFileSize(long targetFileSize) {
+    this.targetFileSize = targetFileSize;
+  }
+
+  public long getMinimumAgeSeconds() {
+    return minimumAgeSeconds;
+  }
+
+  /** @param minimumAgeSeconds archives modified more recently than this are left alone. */
+  public void setMinimumAgeSeconds(long minimumAgeSeconds) {
+    this.minimumAgeSeconds = minimumAgeSeconds;
+  }
+
+  public void setStatusReporter(StatusReporter statusReporter) {
+    this.statusReporter = Objects.requireNonNull(statusReporter, "Null statusReporter");
+  }
+
+  /**
+   * Finds and compacts runs of small archives in a directory.
+   *
+   * @param directory the directory containing the archives.
+   * @param glob the pattern for archive file names, i.e. {@code archive.*.db}. This must not
+   *     match the live archive file.
+   * @return the compacted archives.
+   */
+  public List<Path> compactDirectory(Path directory, String glob)
+      throws SQLException, IOException {
+    recover(directory);
+    List<Path> compacted = new ArrayList<>();
+    for (List<Path> run : plan(directory, glob)) {
+      compacted.add(compact(run));
+    }
+    return compacted;
+  }
+
+  /**
+   * Finishes compactions that were interrupted after their journal was written.  The compacted
+   * file is moved into place if it is still at the temporary path, and the archives listed in the
+   * journal are deleted.
+   *
+   * @param directory the directory containing the archives.
+   * @return the compacted archives that were recovered.
+   */
+  public List<Path> recover(Path directory) throws IOException {
+    List<Path> recovered = new ArrayList<>();
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory, "*" + JOURNAL_SUFFIX)) {
+      for (Path journal : stream) {
+        String name = journal.getFileName().toString();
+        Path output =
+            journal.resolveSibling(name.substring(0, name.length() - JOURNAL_SUFFIX.length()));
+        Path temp = output.resolveSibling(output.getFileName() + TEMP_SUFFIX);
+        // The journal is only written once the temporary file is complete and on disk.
+        if (Files.exists(temp)) {
+          Files.move(
+              temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        deleteJournaled(journal);
+        statusReporter.addInfo("ZStdArchiveCompactor: recovered compaction into " + output);
+        recovered.add(output);
+      }
+    }
+    return recovered;
+  }
+
+  /**
+   * Groups the sealed archives in a directory into runs of adjacent archives to compact together.
+   * Archives are ordered by the start of their time range, and added to a run until the run would
+   * go over the target file size. Runs of a single archive are left out.
+   *
+   * @param directory the directory containing the archives.
+   * @param glob the pattern for archive file names.
+   * @return the runs of archives, oldest first.
+   */
+  public List<List<Path>> plan(Path directory, String glob) throws IOException {
+    List<Candidate> candidates = new ArrayList<>();
+    long cutoffMillis = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(minimumAgeSeconds);
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+      for (Path path : stream) {
+        if (!Files.isRegularFile(path)
+            || path.getFileName().toString().endsWith(TEMP_SUFFIX)
+            || path.getFileName().toString().endsWith(JOURNAL_SUFFIX)
+            || Files.getLastModifiedTime(path).toMillis() > cutoffMillis) {
+          continue;
+        }
+        // Only sealed archives have a manifest, so the live archive is never picked up.
+        Optional<ArchiveManifest> manifest;
+        try {
+          manifest = readManifest(path);
+        } catch (SQLException e) {
+          statusReporter.addWarn("ZStdArchiveCompactor: Skipping " + path, e);
+          continue;
+        }
+        if (manifest.isPresent()) {
+          candidates.add(new Candidate(path, manifest.get().getMinEpochSecs(), Files.size(path)));
+        }
+      }
+    }
+    candidates.sort(Comparator.comparingLong((Candidate c) -> c.minEpochSecs));
+
+    List<List<Path>> runs = new ArrayList<>();
+    List<Path> run = new ArrayList<>();
+    long runSize = 0;
+    for (Candidate candidate : candidates) {
+      if (candidate.size >= targetFileSize || runSize + candidate.size > targetFileSize) {
+        addRun(runs, run);
+        run = new ArrayList<>();
+        runSize = 0;
+        if (candidate.size >= targetFileSize) {
+          continue;
+        }
+      }
+      run.add(candidate.path);
+      runSize += candidate.size;
+    }
+    addRun(runs, run);
+    return runs;
+  }
+
+  private void addRun(List<List<Path>> runs, List<Path> run) {
+    if (run.size() > 1) {
+      runs.add(run);
+    }
+  }
+
+  /**
+   * Compacts archives into a single archive, which replaces the newest of them.
+   *
+   * @param archives the archive files.
+   * @return the compacted archive.
+   */
+  public Path compact(List<Path> archives) throws SQLException, IOException {
+    if (archives.isEmpty()) {
+      throw new IllegalArgumentException("No archives to compact");
+    }
+    Throttle throttle = new Throttle(bytesPerSecond, dutyCycle);
+    List<Input> inputs = new ArrayList<>();
+    Path output = null;
+    Path temp = null;
+    boolean built = false;
+    try {
+      for (Path archive : archives) {
+        inputs.add(new Input(archive));
+      }
+      inputs.sort(Comparator.comparingLong((Input i) -> i.minEpochSecs));
+      output = inputs.get(inputs.size() - 1).path;
+      temp = output.resolveSibling(output.getFileName() + TEMP_SUFFIX);
+      Files.deleteIfExists(temp);
+
+      byte[] dict = trainDictionary(inputs, throttle);
+      long dictId = 0;
+      if (dict != null) {
+        dictId = Zstd.getDictIdFromDict(dict);
+        ZStdDictSqliteRepository repository = new ZStdDictSqliteRepository();
+        repository.setFile(temp.toAbsolutePath().toString());
+        repository.initialize();
+        try {
+          repository.save(dict);
+        } finally {
+          repository.close();
+        }
+      }
+      write(inputs, temp, dict, dictId, throttle);
+      built = true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compacting " + archives);
+    } finally {
+      for (Input input : inputs) {
+        input.close();
+      }
+      if (!built && temp != null) {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    // Make sure the compacted file is on disk before the archives are replaced.
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    List<String> replaced = new ArrayList<>();
+    for (Path archive : archives) {
+      if (!Files.isSameFile(archive, output)) {
+        replaced.add(archive.toAbsolutePath().toString());
+      }
+    }
+    Path journal = output.resolveSibling(output.getFileName() + JOURNAL_SUFFIX);
+    Files.write(journal, replaced, StandardCharsets.UTF_8);
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+      channel.force(true);
+    }
+    Files.move(temp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    deleteJournaled(journal);
+    statusReporter.addInfo(
+        String.format(
+            "ZStdArchiveCompactor: compacted %d archives into %s", archives.size(), output));
+    return output;
+  }
+
+  /** Deletes the archives listed in a journal, and then the journal. */
+  private void deleteJournaled(Path journal) throws IOException {
+    for (String archive : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+      if (!archive.isEmpty()) {
+        Files.deleteIfExists(Paths.get(archive));
+      }
+    }
+    Files.delete(journal);
+  }
+
+  /**
+   * Trains a dictionary on an even share of entries from each archive, so the dictionary
+   * represents the whole time range.
+   *
+   * @return the dictionary, or null if there aren't enough entries to train one.
+   */
+  private byte[] trainDictionary(List<Input> inputs, Throttle throttle)
+      throws SQLException, InterruptedException {
+    ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictSize);
+    long share = sampleSize / inputs.size();
+    boolean full = false;
+    for (Input input : inputs) {
+      long sampled = 0;
+      try (Cursor cursor = new Cursor(input, 0)) {
+        long workStart = System.nanoTime();
+        int count = 0;
+        while (!full && sampled < share && cursor.next()) {
+          byte[] content = cursor.current().content;
+          full = !trainer.addSample(content);
+          sampled += content.length;
+          if (++count % batchSize == 0) {
+            throttle.rest(System.nanoTime() - workStart);
+            throttle.acquireBytes(cursor.takeBytesRead());
+            workStart = System.nanoTime();
+          }
+        }
+      }
+    }
+    long trainStart = System.nanoTime();
+    try {
+      return trainer.trainSamples();
+    } catch (RuntimeException e) {
+      statusReporter.addWarn("ZStdArchiveCompactor: Cannot train dictionary, using none", e);
+      return null;
+    } finally {
+      throttle.rest(System.nanoTime() - trainStart);
+    }
+  }
+
+  private void write(List<Input> inputs, Path temp, byte[] dict, long dictId, Throttle throttle)
+      throws SQLException, InterruptedException {
+    Statements statements = Statements.instance();
+    List<Cursor> cursors = new ArrayList<>();
+    String url = "jdbc:sqlite:" + temp;
+    try (Connection out = JDBC.createConnection(url, outputConfig().toProperties());
+        ZstdCompressCtx compressCtx = new ZstdCompressCtx()) {
+      compressCtx.setLevel(level);
+      if (dict != null) {
+        compressCtx.loadDict(dict);
+      }
+      try (Statement st = out.createStatement()) {
+        st.execute(statements.createEntriesTable());
+        st.execute(statements.createEntriesView());
+        st.execute(statements.createArchiveManifest());
+        st.execute(statements.createArchiveManifestLevels());
+      }
+
+      out.setAutoCommit(false);
+      // Merge the archives by time.  Ties go to the older archive.
+      PriorityQueue<Cursor> queue =
+          new PriorityQueue<>(
+              Comparator.comparingLong((Cursor c) -> c.current().epochSecond)
+                  .thenComparingInt(c -> c.current().nanos)
+                  .thenComparingInt(c -> c.order));
+      for (int i = 0; i < inputs.size(); i++) {
+        Cursor cursor = new Cursor(inputs.get(i), i);
+        cursors.add(cursor);
+        if (cursor.next()) {
+          queue.add(cursor);
+        }
+      }
+
+      try (PreparedStatement insert = out.prepareStatement(statements.insert())) {
+        long workStart = System.nanoTime();
+        long bytesWritten = 0;
+        int count = 0;
+        while (!queue.isEmpty()) {
+          Cursor cursor = queue.poll();
+          Entry entry = cursor.current();
+          byte[] encoded = compressCtx.compress(entry.content);
+          int adder = 1;
+          insert.setLong(adder++, entry.epochSecond);
+          insert.setInt(adder++, entry.nanos);
+          insert.setInt(adder++, entry.level);
+          insert.setBytes(adder, encoded);
+          insert.addBatch();
+          bytesWritten += encoded.length;
+          if (cursor.next()) {
+            queue.add(cursor);
+          }
+
+          if (++count % batchSize == 0) {
+            insert.executeBatch();
+            throttle.rest(System.nanoTime() - workStart);
+            long bytesRead = 0;
+            for (Cursor c : cursors) {
+              bytesRead += c.takeBytesRead();
+            }
+            throttle.acquireBytes(bytesRead + bytesWritten);
+            bytesWritten = 0;
+            workStart = System.nanoTime();
+          }
+        }
+        insert.executeBatch();
+      }
+
+      try (Statement st = out.createStatement()) {
+        st.execute(statements.rebuildArchiveManifestLevels());
+      }
+      ArchiveManifest manifest =
+          ArchiveManifest.summarize(
+              out, ArchiveManifest.FORMAT_ENTRIES, ZStdDictCodec.NAME, dictId);
+      manifest.write(out);
+      out.commit();
+
+      out.setAutoCommit(true);
+      try (Statement st = out.createStatement()) {
+        st.execute("VACUUM");
+      }
+    } finally {
+      for (Cursor cursor : cursors) {
+        cursor.close();
+      }
+    }
+  }
+
+  protected SQLiteConfig outputConfig() {
+    SQLiteConfig config = new SQLiteConfig();
+    config.setApplicationId(APPLICATION_ID);
+    config.setPageSize(4096);
+    config.setEncoding(SQLiteConfig.Encoding.UTF8);
+    // Nothing can see the file until it's moved into place, and it's synced before then.
+    config.setJournalMode(SQLiteConfig.JournalMode.OFF);
+    config.setSynchronous(SQLiteConfig.SynchronousMode.OFF);
+    return config;
+  }
+
+  private Optional<ArchiveManifest> readManifest(Path path) throws SQLException {
+    try (Connection conn = JDBC.createConnection("jdbc:sqlite:" + path, new Properties())) {
+      return ArchiveManifest.read(conn);
+    }
+  }
+
+  private static final class Candidate {
+    final Path path;
+    final long minEpochSecs;
+    final long size;
+
+    Candidate(Path path, long minEpochSecs, long size) {
+      this.path = path;
+      this.minEpochSecs = minEpochSecs;
+      this.size = size;
+    }
+  }
+
+  /** An archive being compacted, with the codec to decode its content. */
+  private final class Input implements AutoCloseable {
+    final Path path;
+    final Connection conn;
+    final boolean blocks;
+    final Codec codec;
+    final long minEpochSecs;
+
+    Input(Path path) throws SQLException {
+      this.path = path;
+      this.conn = JDBC.createConnection("jdbc:sqlite:" + path, new Properties());
+      Optional<ArchiveManifest> manifest = ArchiveManifest.read(conn);
+      String codecName;
+      if (manifest.isPresent()) {
+        blocks = ArchiveManifest.FORMAT_ENTRY_BLOCKS.equals(manifest.get().getFormat());
+        codecName = manifest.get().getCodec();
+      } else {
+        blocks = hasBlocks();
+        codecName = isCompressed() ? ZStdDictCodec.NAME : IdentityCodec.NAME;
+      }
+      this.codec = createCodec(codecName);
+      this.minEpochSecs = queryMinEpochSecs();
+    }
+
+    private Codec createCodec(String codecName) {
+      if (IdentityCodec.NAME.equals(codecName)) {
+        return new IdentityCodec();
+      }
+      if (ZStdCodec.NAME.equals(codecName) || ZStdDictCodec.NAME.equals(codecName)) {
+        ZStdDictSqliteRepository repository = new ZStdDictSqliteRepository();
+        repository.setFile(path.toAbsolutePath().toString());
+        ZStdDictCodec zstdDictCodec = new ZStdDictCodec();
+        zstdDictCodec.setRepository(repository);
+        zstdDictCodec.initialize(statusReporter);
+        return zstdDictCodec;
+      }
+      throw new IllegalArgumentException(
+          String.format("Cannot compact %s, unsupported codec %s", path, codecName));
+    }
+
+    private boolean hasBlocks() throws SQLException {
+      try (PreparedStatement ps = conn.prepareStatement(HAS_BLOCKS_SQL);
+          ResultSet rs = ps.executeQuery()) {
+        return rs.next() && rs.getInt(1) > 0;
+      }
+    }
+
+    private boolean isCompressed() throws SQLException {
+      String table = blocks ? "entry_blocks" : "entries";
+      String sql = "SELECT content FROM " + table + " LIMIT 1";
+      try (PreparedStatement ps = conn.prepareStatement(sql);
+          ResultSet rs = ps.executeQuery()) {
+        return rs.next() && ZStdUtils.isFrame(rs.getBytes(1));
+      }
+    }
+
+    private long queryMinEpochSecs() throws SQLException {
+      String sql = blocks ? MIN_EPOCH_BLOCKS_SQL : MIN_EPOCH_SQL;
+      try (PreparedStatement ps = conn.prepareStatement(sql);
+          ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? rs.getLong(1) : 0;
+      }
+    }
+
+    @Override
+    public void close() throws SQLException {
+      try {
+        codec.close();
+      } finally {
+        conn.close();
+      }
+    }
+  }
+
+  /** Iterates over the decoded entries of an archive. */
+  private static final class Cursor implements AutoCloseable {
+    final int order;
+    private final Input input;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private Iterator<Entry> block;
+    private Entry current;
+    private long bytesRead;
+
+    Cursor(Input input, int order) throws SQLException {
+      this.input = input;
+      this.order = order;
+      this.ps = input.conn.prepareStatement(input.blocks ? BLOCKS_SQL : ENTRIES_SQL);
+      this.rs = ps.executeQuery();
+    }
+
+    boolean next() throws SQLException {
+      if (input.blocks) {
+        while (block == null || !block.hasNext()) {
+          if (!rs.next()) {
+            return false;
+          }
+          byte[] encoded = rs.getBytes(1);
+          bytesRead += encoded.length;
+          block = EntryBlock.unpack(input.codec.decode(encoded)).iterator();
+        }
+        current = block.next();
+        return true;
+      }
+      if (!rs.next()) {
+        return false;
+      }
+      byte[] encoded = rs.getBytes(4);
+      bytesRead += encoded.length;
+      current =
+          new Entry(-1, rs.getLong(1), rs.getInt(2), rs.getInt(3), input.codec.decode(encoded));
+      return true;
+    }
+
+    Entry current() {
+      return current;
+    }
+
+    /** @return the bytes read since the last call. */
+    long takeBytesRead() {
+      long taken = bytesRead;
+      bytesRead = 0;
+      return taken;
+    }
+
+    @Override
+    public void close() throws SQLException {
+      try {
+        rs.close();
+      } finally {
+        ps.close();
+      }
+    }
+  }
+}
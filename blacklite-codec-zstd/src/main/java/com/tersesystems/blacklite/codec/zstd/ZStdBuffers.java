@@ -0,0 +1,79 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses and decompresses between buffers with a zstd context, without copying when both
+ * buffers are direct or both are backed by arrays. Otherwise the source is copied to an array.
+ *
+ * <p>The source is read from its position to its limit, and the destination is written from its
+ * position. Both positions are moved past the bytes read and written.
+ */
+final class ZStdBuffers {
+
+  private ZStdBuffers() {}
+
+  static int compress(ZstdCompressCtx ctx, ByteBuffer src, ByteBuffer dst) {
+    final int size;
+    if (src.isDirect() && dst.isDirect()) {
+      size =
+          ctx.compressDirectByteBuffer(
+              dst, dst.position(), dst.remaining(), src, src.position(), src.remaining());
+    } else if (src.hasArray() && dst.hasArray()) {
+      size =
+          ctx.compressByteArray(
+              dst.array(),
+              dst.arrayOffset() + dst.position(),
+              dst.remaining(),
+              src.array(),
+              src.arrayOffset() + src.position(),
+              src.remaining());
+    } else {
+      byte[] compressed = ctx.compress(toArray(src));
+      dst.put(compressed);
+      return compressed.length;
+    }
+    src.position(src.limit());
+    dst.position(dst.position() + size);
+    return size;
+  }
+
+  static int decompress(ZstdDecompressCtx ctx, ByteBuffer src, ByteBuffer dst) {
+    final int size;
+    if (src.isDirect() && dst.isDirect()) {
+      size =
+          ctx.decompressDirectByteBuffer(
+              dst, dst.position(), dst.remaining(), src, src.position(), src.remaining());
+    } else if (src.hasArray() && dst.hasArray()) {
+      size =
+          ctx.decompressByteArray(
+              dst.array(),
+              dst.arrayOffset() + dst.position(),
+              dst.remaining(),
+              src.array(),
+              src.arrayOffset() + src.position(),
+              src.remaining());
+    } else {
+      long contentSize = ZStdUtils.frameContentSize(src);
+      if (contentSize < 0) {
+        throw new CodecException("Frame does not have a content size");
+      }
+      byte[] decompressed = ctx.decompress(toArray(src), (int) contentSize);
+      dst.put(decompressed);
+      return decompressed.length;
+    }
+    src.position(src.limit());
+    dst.position(dst.position() + size);
+    return size;
+  }
+
+  /** Copies the remaining bytes of the buffer, moving its position to the limit. */
+  static byte[] toArray(ByteBuffer src) {
+    byte[] bytes = new byte[src.remaining()];
+    src.get(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,324 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * ZStandard compression with a dictionary for each category of entries.
+ *
+ * <p>Services that log very different kinds of entries, such as access logs, SQL traces and stack
+ * traces, compress poorly with a single dictionary. This codec asks a {@link CategoryResolver} for
+ * the category of each entry as it is archived, and encodes it with a {@link ZStdDictCodec} of its
+ * own for that category, which trains, retrains and saves dictionaries for the category in the
+ * repository. Entries without a category, and entries encoded without a level, share the
+ * dictionary of entries without a category.
+ *
+ * <p>The dictionary id is in every zstd frame, so decoding doesn't need the category, and entries
+ * can be read back with a plain {@link ZStdDictCodec} on the same repository. The repository must
+ * keep dictionaries by category, i.e. {@link ZStdDictSqliteRepository}.
+ */
+public class ZStdCategoryDictCodec implements Codec {
+
+  private CategoryResolver categoryResolver;
+  private ZstdDictRepository repository;
+
+  private int level = 3;
+  private int sampleSize = 10 * 1024 * 1024;
+  private int dictSize = 112640;
+  private double trainingDutyCycle = 0.5;
+  private double retrainThreshold = 0.2;
+  private long ratioWindowSize = 16 * 1024 * 1024;
+  private int dictCacheSize = ZStdDictCache.DEFAULT_MAXIMUM_SIZE;
+
+  // The codec for each category, created the first time an entry in the category is encoded.
+  private final Map<String, ZStdDictCodec> codecs = new HashMap<>();
+
+  private final ZstdDecompressCtx decompressCtx = new ZstdDecompressCtx();
+  private ZstdDictDecompress decompressDict;
+  private long decompressDictId;
+
+  private ZStdDictCache dictCache;
+  private StatusReporter statusReporter;
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    Objects.requireNonNull(repository, "Null repository");
+    Objects.requireNonNull(categoryResolver, "Null categoryResolver");
+    repository.initialize();
+    if (!repository.hasCategories()) {
+      throw new CodecException("Repository does not keep dictionaries by category: " + repository);
+    }
+    this.statusReporter = statusReporter;
+    // All the categories share one cache, as they decode from the same repository.
+    this.dictCache = new ZStdDictCache(repository, dictCacheSize);
+  }
+
+  @Override
+  public byte[] encode(byte[] unencoded) {
+    if (unencoded == null) return null;
+    return codec(null).encode(unencoded);
+  }
+
+  @Override
+  public byte[] encode(byte[] unencoded, int level) {
+    if (unencoded == null) return null;
+    return codec(categoryResolver.category(level, unencoded)).encode(unencoded);
+  }
+
+  /**
+   * Encodes without a category, as there is no level to give the resolver. The archivers encode
+   * through {@link #encode(ByteBuffer, ByteBuffer, int)}, which picks the category.
+   */
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    return codec(null).encode(src, dst);
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst, int level) {
+    // The resolver takes an array, so it sees a copy and the codec reads the buffer itself.
+    final byte[] content = new byte[src.remaining()];
+    src.duplicate().get(content);
+    return codec(categoryResolver.category(level, content)).encode(src, dst);
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return (int) Zstd.compressBound(unencodedSize);
+  }
+
+  private ZStdDictCodec codec(String category) {
+    ZStdDictCodec codec = codecs.get(category);
+    if (codec == null) {
+      codec = new ZStdDictCodec();
+      codec.setRepository(new CategoryRepository(repository, category));
+      codec.setDictCache(dictCache);
+      codec.setLevel(level);
+      codec.setSampleSize(sampleSize);
+      codec.setDictSize(dictSize);
+      codec.setTrainingDutyCycle(trainingDutyCycle);
+      codec.setRetrainThreshold(retrainThreshold);
+      codec.setRatioWindowSize(ratioWindowSize);
+      codec.initialize(statusReporter);
+      codecs.put(category, codec);
+    }
+    return codec;
+  }
+
+  @Override
+  public byte[] decode(byte[] encoded) {
+    int i = (int) Zstd.decompressedSize(encoded);
+    loadDecompressDict(Zstd.getDictIdFromFrame(encoded));
+    return decompressCtx.decompress(encoded, i);
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    loadDecompressDict(ZStdUtils.frameDictId(src));
+    return ZStdBuffers.decompress(decompressCtx, src, dst);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return (int) ZStdUtils.frameContentSize(src);
+  }
+
+  private void loadDecompressDict(long dictId) {
+    if (dictId == decompressDictId) {
+      return;
+    }
+    if (dictId == 0) {
+      // Frames written before a dictionary was trained must be read without one.
+      ZStdUtils.unloadDict(decompressCtx);
+      decompressDict = null;
+    } else {
+      decompressDict = dictCache.get(dictId);
+      decompressCtx.loadDict(decompressDict);
+    }
+    decompressDictId = dictId;
+  }
+
+  /**
+   * Returns the dictionary of entries without a category, if any. The manifest can only record one
+   * dictionary, and readers find the others from the frames.
+   */
+  @Override
+  public long getDictionaryId() {
+    ZStdDictCodec codec = codecs.get(null);
+    return codec == null ? 0 : codec.getDictionaryId();
+  }
+
+  /** @return the categories that entries have been encoded in so far. */
+  public Set<String> getCategories() {
+    return Collections.unmodifiableSet(codecs.keySet());
+  }
+
+  @Override
+  public String getName() {
+    return ZStdDictCodec.NAME;
+  }
+
+  @Override
+  public String toString() {
+    return "ZStdCategoryDictCodec{"
+        + "level="
+        + level
+        + ", categoryResolver="
+        + categoryResolver
+        + ", repo="
+        + repository
+        + '}';
+  }
+
+  @Override
+  public void close() {
+    try {
+      for (ZStdDictCodec codec : codecs.values()) {
+        codec.close();
+      }
+      codecs.clear();
+      decompressCtx.close();
+      dictCache.clear();
+      repository.close();
+    } catch (Exception e) {
+      statusReporter.addError(e.getMessage(), e);
+    }
+  }
+
+  public CategoryResolver getCategoryResolver() {
+    return categoryResolver;
+  }
+
+  public void setCategoryResolver(CategoryResolver categoryResolver) {
+    this.categoryResolver = categoryResolver;
+  }
+
+  public ZstdDictRepository getRepository() {
+    return repository;
+  }
+
+  public void setRepository(ZstdDictRepository repository) {
+    this.repository = repository;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  public void setLevel(int level) {
+    this.level = level;
+  }
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /** @param sampleSize the most bytes of samples kept for training each category. */
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  public int getDictSize() {
+    return dictSize;
+  }
+
+  public void setDictSize(int dictSize) {
+    this.dictSize = dictSize;
+  }
+
+  public double getTrainingDutyCycle() {
+    return trainingDutyCycle;
+  }
+
+  public void setTrainingDutyCycle(double trainingDutyCycle) {
+    this.trainingDutyCycle = trainingDutyCycle;
+  }
+
+  public double getRetrainThreshold() {
+    return retrainThreshold;
+  }
+
+  public void setRetrainThreshold(double retrainThreshold) {
+    this.retrainThreshold = retrainThreshold;
+  }
+
+  public long getRatioWindowSize() {
+    return ratioWindowSize;
+  }
+
+  public void setRatioWindowSize(long ratioWindowSize) {
+    this.ratioWindowSize = ratioWindowSize;
+  }
+
+  public int getDictCacheSize() {
+    return dictCacheSize;
+  }
+
+  public void setDictCacheSize(int dictCacheSize) {
+    this.dictCacheSize = dictCacheSize;
+  }
+
+  /**
+   * The dictionaries of one category in the shared repository. Lookups by id see every category,
+   * and the shared repository is initialized and closed by the codec, not by this view.
+   */
+  static final class CategoryRepository implements ZstdDictRepository {
+    private final ZstdDictRepository repository;
+    private final String category;
+
+    CategoryRepository(ZstdDictRepository repository, String category) {
+      this.repository = repository;
+      this.category = category;
+    }
+
+    @Override
+    public Optional<ZStdDict> lookup(long id) {
+      return repository.lookup(id);
+    }
+
+    @Override
+    public Optional<ZStdDict> mostRecent() {
+      return repository.mostRecent(category);
+    }
+
+    @Override
+    public void save(byte[] dictBytes) {
+      save(dictBytes, null);
+    }
+
+    @Override
+    public void save(byte[] dictBytes, String summary) {
+      if (category != null) {
+        summary = summary == null ? "category=" + category : "category=" + category + " " + summary;
+      }
+      repository.save(dictBytes, summary, category);
+    }
+
+    @Override
+    public boolean isVersioned() {
+      return repository.isVersioned();
+    }
+
+    @Override
+    public void initialize() {}
+
+    @Override
+    public void close() {}
+
+    @Override
+    public String toString() {
+      return "CategoryRepository{category=" + category + ", repo=" + repository + '}';
+    }
+  }
+}
@@ -5,16 +5,19 @@ import com.github.luben.zstd.ZstdCompressCtx;
 import com.github.luben.zstd.ZstdDecompressCtx;
 import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.Codec;
+import java.nio.ByteBuffer;
 
 public class ZStdCodec implements Codec {
 
+  public static final String NAME = "zstd";
+
   private final ZstdCompressCtx compressCtx = new ZstdCompressCtx();
   private final ZstdDecompressCtx decompressCtx = new ZstdDecompressCtx();
   private int level = 3;
 
   @Override
   public String getName() {
-    return "zstd";
+    return NAME;
   }
 
   @Override
@@ -33,6 +36,26 @@ public class ZStdCodec implements Codec {
     return decompressCtx.decompress(compressed, i);
   }
 
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    return ZStdBuffers.compress(compressCtx, src, dst);
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    return ZStdBuffers.decompress(decompressCtx, src, dst);
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return (int) Zstd.compressBound(unencodedSize);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return (int) ZStdUtils.frameContentSize(src);
+  }
+
   @Override
   public void close() {
     compressCtx.close();
@@ -0,0 +1,14 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.ZstdDictCompress;
+
+/** A digested compression dictionary and its id, which can be shared by compression contexts. */
+final class ZStdCompressDict {
+  final long id;
+  final ZstdDictCompress dict;
+
+  ZStdCompressDict(long id, ZstdDictCompress dict) {
+    this.id = id;
+    this.dict = dict;
+  }
+}
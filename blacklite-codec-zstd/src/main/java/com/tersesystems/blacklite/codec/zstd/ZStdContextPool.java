@@ -0,0 +1,71 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of zstd contexts, so a codec can be called from many threads without sharing a
+ * context between them.
+ *
+ * <p>Borrowing never blocks: if no context is idle, a new one is created. At most {@code
+ * maximumIdle} contexts are kept for reuse, and any others are closed when they are released. A
+ * pool is used instead of thread locals because fork-join workers and reader threads come and go,
+ * and a thread local would hold on to the native memory of every thread that ever called the codec.
+ *
+ * @param <T> the type of context.
+ */
+final class ZStdContextPool<T> {
+
+  private final BlockingQueue<T> idle;
+  private final Supplier<T> factory;
+  private final Consumer<T> closer;
+  private volatile boolean closed;
+
+  ZStdContextPool(int maximumIdle, Supplier<T> factory, Consumer<T> closer) {
+    if (maximumIdle <= 0) {
+      throw new IllegalArgumentException("maximumIdle must be positive");
+    }
+    this.idle = new ArrayBlockingQueue<>(maximumIdle);
+    this.factory = factory;
+    this.closer = closer;
+  }
+
+  /** @return an idle context, or a new one. The caller has sole use of it until it is released. */
+  T borrow() {
+    if (closed) {
+      throw new IllegalStateException("Codec is closed");
+    }
+    T context = idle.poll();
+    return context != null ? context : factory.get();
+  }
+
+  /** Returns a context to the pool, closing it if the pool is full or closed. */
+  void release(T context) {
+    if (closed || !idle.offer(context)) {
+      closer.accept(context);
+      return;
+    }
+    // The pool may have been closed and drained between the check and the offer.
+    if (closed) {
+      drain();
+    }
+  }
+
+  int idleCount() {
+    return idle.size();
+  }
+
+  void close() {
+    closed = true;
+    drain();
+  }
+
+  private void drain() {
+    T context;
+    while ((context = idle.poll()) != null) {
+      closer.accept(context);
+    }
+  }
+}
@@ -1,18 +1,35 @@
 package com.tersesystems.blacklite.codec.zstd;
 
 import com.tersesystems.blacklite.codec.CodecException;
+import java.time.Instant;
+import java.util.Optional;
 
 public class ZStdDict {
 
   private final long id;
   private final byte[] dictBytes;
+  private final Instant createdAt;
+  private final String summary;
 
   public ZStdDict(long dictId, byte[] dictBytes) throws CodecException {
+    this(dictId, dictBytes, null, null);
+  }
+
+  /**
+   * @param dictId the dictionary id.
+   * @param dictBytes the dictionary.
+   * @param createdAt when the dictionary was trained, or null if not known.
+   * @param summary a description of the samples the dictionary was trained on, or null.
+   */
+  public ZStdDict(long dictId, byte[] dictBytes, Instant createdAt, String summary)
+      throws CodecException {
     if (dictId == 0) {
       throw new CodecException("No dictionary found from bytes!");
     }
     this.id = dictId;
     this.dictBytes = dictBytes;
+    this.createdAt = createdAt;
+    this.summary = summary;
   }
 
   public long getId() {
@@ -23,9 +40,25 @@ public class ZStdDict {
     return dictBytes;
   }
 
+  public Optional<Instant> getCreatedAt() {
+    return Optional.ofNullable(createdAt);
+  }
+
+  public Optional<String> getSummary() {
+    return Optional.ofNullable(summary);
+  }
+
   @Override
   public String toString() {
     String bytesString = (dictBytes == null) ? "null" : "" + dictBytes.length;
-    return "ZStandardDictionary{id=" + id + ",bytes=" + bytesString + "}";
+    return "ZStandardDictionary{id="
+        + id
+        + ",bytes="
+        + bytesString
+        + ",createdAt="
+        + createdAt
+        + ",summary="
+        + summary
+        + "}";
   }
 }
@@ -0,0 +1,89 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import com.github.luben.zstd.ZstdDictDecompress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A bounded, least recently used cache of digested decompression dictionaries, keyed by
+ * dictionary id.
+ *
+ * <p>Digesting a dictionary costs far more than decompressing a log entry with it, so decoding
+ * entries written with an older dictionary looks the dictionary up in the repository and digests
+ * it once, rather than once per entry.
+ *
+ * <p>The cache is thread safe, and can be shared between codecs that use the same repository.
+ * Evicted dictionaries are not closed, as a decompression context may still be using them, and
+ * are freed once they are garbage collected.
+ */
+public class ZStdDictCache {
+
+  public static final int DEFAULT_MAXIMUM_SIZE = 16;
+
+  private final ZstdDictRepository repository;
+  private final Map<Long, ZstdDictDecompress> dicts;
+
+  public ZStdDictCache(ZstdDictRepository repository) {
+    this(repository, DEFAULT_MAXIMUM_SIZE);
+  }
+
+  /**
+   * @param repository the repository to look up dictionaries that are not in the cache.
+   * @param maximumSize the maximum number of dictionaries to keep.
+   */
+  public ZStdDictCache(ZstdDictRepository repository, int maximumSize) {
+    this.repository = Objects.requireNonNull(repository, "Null repository");
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("maximumSize must be positive");
+    }
+    this.dicts =
+        new LinkedHashMap<Long, ZstdDictDecompress>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Long, ZstdDictDecompress> eldest) {
+            return size() > maximumSize;
+          }
+        };
+  }
+
+  /**
+   * Returns the digested dictionary, looking it up in the repository if it is not cached.
+   *
+   * @param dictId the dictionary id.
+   * @return the digested dictionary.
+   * @throws NoDictionaryFoundException if the repository does not have the dictionary.
+   */
+  public synchronized ZstdDictDecompress get(long dictId) {
+    ZstdDictDecompress dict = dicts.get(dictId);
+    if (dict == null) {
+      Optional<ZStdDict> lookup = repository.lookup(dictId);
+      if (!lookup.isPresent()) {
+        throw new NoDictionaryFoundException("No dictionary found for dictId", dictId);
+      }
+      dict = new ZstdDictDecompress(lookup.get().getBytes());
+      dicts.put(dictId, dict);
+    }
+    return dict;
+  }
+
+  /**
+   * Adds a dictionary that is already at hand, i.e. a newly trained one.
+   *
+   * @param dictId the dictionary id.
+   * @param dictBytes the dictionary.
+   */
+  public synchronized void put(long dictId, byte[] dictBytes) {
+    if (!dicts.containsKey(dictId)) {
+      dicts.put(dictId, new ZstdDictDecompress(dictBytes));
+    }
+  }
+
+  public synchronized int size() {
+    return dicts.size();
+  }
+
+  public synchronized void clear() {
+    dicts.clear();
+  }
+}
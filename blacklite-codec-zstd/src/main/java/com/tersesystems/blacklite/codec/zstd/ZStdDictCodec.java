@@ -4,32 +4,69 @@ import com.github.luben.zstd.*;
 import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.Codec;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ZStandard compression with dictionary compression training.
+ *
+ * <p>The compression ratio is measured as entries are encoded, and if it drops too far below the
+ * ratio the dictionary started with, a new dictionary is trained from the next entries in the
+ * background and swapped in for encoding. Older dictionaries stay in the repository for decoding.
  */
 public class ZStdDictCodec implements Codec {
 
-  // The sample size is the sum of the individual samples,
+  public static final String NAME = "zstddict";
+
+  // The sample size is the most bytes of samples the trainer keeps in memory,
   // i.e. if you have 1000 messages that are all 26 bytes each,
-  // then the sample size is 26000 bytes.
-  private int sampleSize = 100_000 * 1024;
+  // then the sample size is 26000 bytes.  Around 100 times the dictionary size works well.
+  private int sampleSize = 10 * 1024 * 1024;
+
+  // The maximum dictionary size in bytes.  This is the output from training.
+  private int dictSize = 112640;
+
+  // The fraction of a core that training may use on average.
+  private double trainingDutyCycle = 0.5;
 
-  // Dictionary size can be up to 10 MeB in bytes.  This is the output from training.
-  private int dictSize = 10485760;
+  // A live or archive database to train the first dictionary from on startup, if any.
+  private String bootstrapFile;
 
   private int level = 3;
 
+  private int dictCacheSize = ZStdDictCache.DEFAULT_MAXIMUM_SIZE;
+
+  // Retrain once the ratio is this fraction below where the dictionary started, or 0 to never.
+  private double retrainThreshold = 0.2;
+
+  // The number of input bytes each compression ratio is measured over.
+  private long ratioWindowSize = 16 * 1024 * 1024;
+
   private final ZstdCompressCtx compressCtx = new ZstdCompressCtx();
   private final ZstdDecompressCtx decompressCtx = new ZstdDecompressCtx();
 
+  // The dictionary loaded into the compression context, kept reachable while it is in use.
+  private ZStdCompressDict compressDict;
+
+  // A newly trained dictionary, digested on the training thread and swapped in by the encoder.
+  private final AtomicReference<ZStdCompressDict> pendingDict = new AtomicReference<>();
+
+  // The dictionary loaded into the decompression context, kept reachable while it is in use.
+  private ZstdDictDecompress decompressDict;
+  private long decompressDictId;
+
   private ZstdDictRepository repository;
-  private ZStdDictTrainer trainer;
+  private ZStdDictCache dictCache;
+  private boolean ownsDictCache;
+  private volatile ZStdDictTrainer trainer;
+  private CompressionRatioMonitor ratioMonitor;
   private StatusReporter statusReporter;
 
+  // The id of the dictionary used for compression, or 0 while training.
+  private volatile long dictionaryId;
+
   public ZStdDictCodec() {}
 
   @Override
@@ -38,49 +75,155 @@ public class ZStdDictCodec implements Codec {
     repository.initialize();
 
     this.statusReporter = statusReporter;
+    if (dictCache == null) {
+      dictCache = new ZStdDictCache(repository, dictCacheSize);
+      ownsDictCache = true;
+    }
+    // Retraining replaces the dictionary, so only do it if the old ones are kept for decoding.
+    if (retrainThreshold > 0 && repository.isVersioned()) {
+      ratioMonitor = new CompressionRatioMonitor(ratioWindowSize, retrainThreshold);
+    }
     this.compressCtx.setLevel(level);
     Optional<ZStdDict> maybe = repository.mostRecent();
     if (maybe.isPresent()) {
       byte[] dict = maybe.get().getBytes();
-      trainer = null;
-      compressCtx.loadDict(dict);
-      decompressCtx.loadDict(dict);
+      long dictId = Zstd.getDictIdFromDict(dict);
+      dictCache.put(dictId, dict);
+      useDictionary(new ZStdCompressDict(dictId, new ZstdDictCompress(dict, level)));
+    } else if (bootstrapFile != null) {
+      startTraining("initial, bootstrapped from " + bootstrapFile).bootstrap(bootstrapFile);
     } else {
-      Consumer<byte[]> consumer =
-          dbytes -> {
-            repository.save(dbytes);
-            trainer = null;
-            compressCtx.loadDict(dbytes);
-            decompressCtx.loadDict(dbytes);
-          };
-      this.trainer = new ZStdDictTrainer(sampleSize, dictSize, consumer);
+      startTraining("initial");
     }
   }
 
   public byte[] encode(byte[] bytes) {
     if (bytes == null) return null;
 
-    if (trainer != null) {
-      trainer.train(bytes);
+    final ZStdDictTrainer t = prepareEncode();
+    if (t != null) {
+      t.train(bytes);
+    }
+    byte[] compressed = compressCtx.compress(bytes);
+    if (t == null) {
+      monitorRatio(bytes.length, compressed.length);
+    }
+    return compressed;
+  }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) {
+    final ZStdDictTrainer t = prepareEncode();
+    final int size = src.remaining();
+    if (t != null) {
+      t.train(ZStdBuffers.toArray(src.duplicate()));
+    }
+    int compressed = ZStdBuffers.compress(compressCtx, src, dst);
+    if (t == null) {
+      monitorRatio(size, compressed);
+    }
+    return compressed;
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return (int) Zstd.compressBound(unencodedSize);
+  }
+
+  /**
+   * Swaps in a newly trained dictionary, and lets go of a trainer that is done.
+   *
+   * @return the trainer if it is still sampling or training, or null.
+   */
+  private ZStdDictTrainer prepareEncode() {
+    if (pendingDict.get() != null) {
+      useDictionary(pendingDict.getAndSet(null));
+    }
+    final ZStdDictTrainer t = trainer;
+    if (t != null && t.isFinished()) {
+      trainer = null;
+      return null;
+    }
+    return t;
+  }
+
+  private void monitorRatio(int uncompressed, int compressed) {
+    if (ratioMonitor != null
+        && compressDict != null
+        && ratioMonitor.record(uncompressed, compressed)) {
+      String reason =
+          String.format(
+              "ratio %.2f below baseline %.2f",
+              ratioMonitor.getLastRatio(), ratioMonitor.getBaseline());
+      statusReporter.addInfo("ZStdDictCodec: " + reason + ", retraining dictionary");
+      startTraining(reason);
+    }
+  }
+
+  private ZStdDictTrainer startTraining(String reason) {
+    ZStdDictTrainer t =
+        new ZStdDictTrainer(
+            sampleSize, dictSize, statusReporter, dbytes -> trained(dbytes, reason));
+    t.setDutyCycle(trainingDutyCycle);
+    this.trainer = t;
+    return t;
+  }
+
+  // Called on the training thread, so the encoder swaps the dictionary in on its next call.
+  private void trained(byte[] dictBytes, String reason) {
+    final ZStdDictTrainer t = trainer;
+    try {
+      String summary =
+          "samples=" + t.getSampleCount() + " sampleBytes=" + t.getSampleBytes() + " " + reason;
+      repository.save(dictBytes, summary);
+      long dictId = Zstd.getDictIdFromDict(dictBytes);
+      dictCache.put(dictId, dictBytes);
+      pendingDict.set(new ZStdCompressDict(dictId, new ZstdDictCompress(dictBytes, level)));
+    } catch (RuntimeException e) {
+      statusReporter.addError("ZStdDictCodec: Cannot save trained dictionary", e);
+    }
+  }
+
+  private void useDictionary(ZStdCompressDict dict) {
+    compressCtx.loadDict(dict.dict);
+    compressDict = dict;
+    dictionaryId = dict.id;
+    if (ratioMonitor != null) {
+      ratioMonitor.reset();
     }
-    return compressCtx.compress(bytes);
   }
 
   public byte[] decode(byte[] compressed) {
     int i = (int) Zstd.decompressedSize(compressed);
-    final long dictIdFromDict = Zstd.getDictIdFromDict(compressed);
-    if (dictIdFromDict == 0) {
-      return decompressCtx.decompress(compressed, i);
+    loadDecompressDict(Zstd.getDictIdFromFrame(compressed));
+    return decompressCtx.decompress(compressed, i);
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) {
+    loadDecompressDict(ZStdUtils.frameDictId(src));
+    return ZStdBuffers.decompress(decompressCtx, src, dst);
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return (int) ZStdUtils.frameContentSize(src);
+  }
+
+  private void loadDecompressDict(long dictId) {
+    if (dictId == decompressDictId) {
+      return;
+    }
+    // Referencing a digested dictionary is cheap, so switching back and forth is fine.
+    if (dictId == 0) {
+      // Frames written before a dictionary was trained must be read without one.
+      ZStdUtils.unloadDict(decompressCtx);
+      decompressDict = null;
     } else {
-      // XXX should cache this so we don't have to do look up repeatedly
-      final Optional<ZStdDict> lookup = repository.lookup(dictIdFromDict);
-      if (! lookup.isPresent()) {
-        throw new NoDictionaryFoundException("No dictionary found for dictId", dictIdFromDict);
-      }
-      final ZStdDict zstdDict = lookup.get();
-      return Zstd.decompress(compressed, zstdDict.getBytes(), i);
+      decompressDict = dictCache.get(dictId);
+      decompressCtx.loadDict(decompressDict);
     }
-
+    decompressDictId = dictId;
   }
 
   @Override
@@ -93,6 +236,9 @@ public class ZStdDictCodec implements Codec {
     try {
       compressCtx.close();
       decompressCtx.close();
+      if (ownsDictCache) {
+        dictCache.clear();
+      }
       repository.close();
     } catch (Exception e) {
       statusReporter.addError(e.getMessage(), e);
@@ -101,7 +247,12 @@ public class ZStdDictCodec implements Codec {
 
   @Override
   public String getName() {
-    return "zstddict";
+    return NAME;
+  }
+
+  @Override
+  public long getDictionaryId() {
+    return dictionaryId;
   }
 
   public int getLevel() {
@@ -128,6 +279,73 @@ public class ZStdDictCodec implements Codec {
     this.sampleSize = sampleSize;
   }
 
+  public double getTrainingDutyCycle() {
+    return trainingDutyCycle;
+  }
+
+  /**
+   * @param trainingDutyCycle the fraction of a core that training may use on average, between 0
+   *     (exclusive) and 1. The default is 0.5.
+   */
+  public void setTrainingDutyCycle(double trainingDutyCycle) {
+    this.trainingDutyCycle = trainingDutyCycle;
+  }
+
+  public String getBootstrapFile() {
+    return bootstrapFile;
+  }
+
+  /**
+   * Sets a live or archive database to sample entries from when there is no dictionary yet, so
+   * the first dictionary is trained on startup instead of after enough new entries are logged.
+   */
+  public void setBootstrapFile(String bootstrapFile) {
+    this.bootstrapFile = bootstrapFile;
+  }
+
+  public int getDictCacheSize() {
+    return dictCacheSize;
+  }
+
+  /** @param dictCacheSize the number of digested dictionaries to keep for decoding. */
+  public void setDictCacheSize(int dictCacheSize) {
+    this.dictCacheSize = dictCacheSize;
+  }
+
+  public double getRetrainThreshold() {
+    return retrainThreshold;
+  }
+
+  /**
+   * Sets how far the compression ratio can drop below the ratio measured when the dictionary was
+   * loaded before a new dictionary is trained, as a fraction. The default is 0.2, and 0 turns
+   * retraining off. Retraining only happens with a repository that keeps older dictionaries.
+   */
+  public void setRetrainThreshold(double retrainThreshold) {
+    this.retrainThreshold = retrainThreshold;
+  }
+
+  public long getRatioWindowSize() {
+    return ratioWindowSize;
+  }
+
+  /** @param ratioWindowSize the number of input bytes each compression ratio is measured over. */
+  public void setRatioWindowSize(long ratioWindowSize) {
+    this.ratioWindowSize = ratioWindowSize;
+  }
+
+  public ZStdDictCache getDictCache() {
+    return dictCache;
+  }
+
+  /**
+   * Sets the cache of digested dictionaries, so that it can be shared with other codecs reading
+   * from the same repository. By default, each codec has its own cache.
+   */
+  public void setDictCache(ZStdDictCache dictCache) {
+    this.dictCache = dictCache;
+  }
+
   public ZstdDictRepository getRepository() {
     return this.repository;
   }
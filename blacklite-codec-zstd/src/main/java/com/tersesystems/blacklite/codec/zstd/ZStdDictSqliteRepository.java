@@ -5,15 +5,23 @@ import static com.tersesystems.blacklite.DefaultEntryStore.APPLICATION_ID;
 import com.github.luben.zstd.Zstd;
 import com.tersesystems.blacklite.codec.CodecException;
 import java.sql.*;
+import java.time.Instant;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 import org.sqlite.JDBC;
 import org.sqlite.SQLiteConfig;
 import org.sqlite.SQLiteConnection;
 
-/** Repository that can write out dictionaries and codec specific info. */
+/**
+ * Repository that can write out dictionaries and codec specific info.
+ *
+ * <p>Dictionaries are saved from the training thread and looked up from the threads that encode
+ * and decode, so every method that touches the connection is synchronized on the repository.
+ */
 public class ZStdDictSqliteRepository implements ZstdDictRepository {
 
   public static int CODEC_DB_ID = 3;
@@ -22,7 +30,7 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
   private String file;
   private Statements statements = new Statements();
 
-  public void initialize() throws CodecException {
+  public synchronized void initialize() throws CodecException {
     Objects.requireNonNull(file, "null file");
     try {
       String url = (file.startsWith("jdbc:sqlite:")) ? file : "jdbc:sqlite:" + file;
@@ -43,7 +51,7 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
   }
 
   @Override
-  public Optional<ZStdDict> lookup(long id) {
+  public synchronized Optional<ZStdDict> lookup(long id) {
     try {
       String queryStatement = statements.queryStatement();
       try (PreparedStatement statement = conn.prepareStatement(queryStatement)) {
@@ -56,7 +64,7 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
   }
 
   @Override
-  public Optional<ZStdDict> mostRecent() {
+  public synchronized Optional<ZStdDict> mostRecent() {
     try {
       // XXX should read from database first, if empty then look for file and
       // read that in and save it to database
@@ -69,15 +77,44 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
     }
   }
 
+  @Override
+  public synchronized Optional<ZStdDict> mostRecent(String category) {
+    if (category == null) {
+      return mostRecent();
+    }
+    try {
+      String queryStatement = statements.firstCategoryStatement();
+      try (PreparedStatement statement = conn.prepareStatement(queryStatement)) {
+        statement.setString(1, category);
+        return dictFromStatement(statement);
+      }
+    } catch (SQLException ex) {
+      throw new CodecException(ex);
+    }
+  }
+
   @Override
   public void save(byte[] dictBytes) {
+    save(dictBytes, null);
+  }
+
+  @Override
+  public void save(byte[] dictBytes, String summary) {
+    save(dictBytes, summary, null);
+  }
+
+  @Override
+  public synchronized void save(byte[] dictBytes, String summary, String category) {
     long dictId = Zstd.getDictIdFromDict(dictBytes);
     try {
       String insertStatement = statements.insertStatement();
       try (PreparedStatement statement = conn.prepareStatement(insertStatement)) {
         int adder = 1;
         statement.setLong(adder++, dictId);
-        statement.setBytes(adder, dictBytes);
+        statement.setBytes(adder++, dictBytes);
+        statement.setLong(adder++, System.currentTimeMillis());
+        statement.setString(adder++, summary);
+        statement.setString(adder, category);
         statement.executeUpdate();
       }
       conn.commit();
@@ -87,7 +124,17 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
   }
 
   @Override
-  public void close() throws SQLException {
+  public boolean hasCategories() {
+    return true;
+  }
+
+  @Override
+  public boolean isVersioned() {
+    return true;
+  }
+
+  @Override
+  public synchronized void close() throws SQLException {
     this.conn.close();
   }
 
@@ -103,7 +150,9 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
       if (rs.next()) {
         long id1 = rs.getLong(1);
         byte[] bytes = rs.getBytes(2);
-        ZStdDict dict = new ZStdDict(id1, bytes);
+        long createdAt = rs.getLong(3);
+        Instant created = rs.wasNull() ? null : Instant.ofEpochMilli(createdAt);
+        ZStdDict dict = new ZStdDict(id1, bytes, created, rs.getString(4));
         return Optional.of(dict);
       } else {
         return Optional.empty();
@@ -116,6 +165,7 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
       String createStatements = statements.createStatement();
       try (Statement stmt = conn.createStatement()) {
         stmt.executeUpdate(createStatements);
+        addMissingColumns(stmt);
       }
       conn.commit();
     } catch (SQLException e) {
@@ -123,6 +173,25 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
     }
   }
 
+  // Repositories created before dictionaries were versioned only have the id and bytes.
+  private void addMissingColumns(Statement stmt) throws SQLException {
+    Set<String> columns = new HashSet<>();
+    try (ResultSet rs = stmt.executeQuery(statements.columnsStatement())) {
+      while (rs.next()) {
+        columns.add(rs.getString("name"));
+      }
+    }
+    if (!columns.contains("created_at")) {
+      stmt.executeUpdate(statements.addCreatedAtStatement());
+    }
+    if (!columns.contains("summary")) {
+      stmt.executeUpdate(statements.addSummaryStatement());
+    }
+    if (!columns.contains("category")) {
+      stmt.executeUpdate(statements.addCategoryStatement());
+    }
+  }
+
   public static class Statements {
     private final ResourceBundle bundle =
       ResourceBundle.getBundle(this.getClass().getPackage().getName() + ".resources");
@@ -131,6 +200,22 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
       return bundle.getString("zstddict.create.statement"); // the zstd dictionary itself
     }
 
+    public String columnsStatement() {
+      return bundle.getString("zstddict.columns.statement");
+    }
+
+    public String addCreatedAtStatement() {
+      return bundle.getString("zstddict.addcreatedat.statement");
+    }
+
+    public String addSummaryStatement() {
+      return bundle.getString("zstddict.addsummary.statement");
+    }
+
+    public String addCategoryStatement() {
+      return bundle.getString("zstddict.addcategory.statement");
+    }
+
     public String insertStatement() {
       return bundle.getString("zstddict.insert.statement");
     }
@@ -142,5 +227,9 @@ public class ZStdDictSqliteRepository implements ZstdDictRepository {
     public String firstStatement() {
       return bundle.getString("zstddict.first.statement");
     }
+
+    public String firstCategoryStatement() {
+      return bundle.getString("zstddict.first.category.statement");
+    }
   }
 }
@@ -1,63 +1,277 @@
 package com.tersesystems.blacklite.codec.zstd;
 
+import com.github.luben.zstd.Zstd;
+import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.CodecException;
-import java.util.concurrent.CompletableFuture;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import org.sqlite.JDBC;
+import org.sqlite.SQLiteConfig;
 
 /**
  * The zstd trainer codec uses zstd without compression, but also trains the message set using a
  * dictionary. When the trainer has enough sample messages, the hook is called.
+ *
+ * <p>Samples are kept in a reservoir of at most {@code sampleSize} bytes. Once the reservoir is
+ * full, sampling carries on until {@link #OVERSAMPLING} times as many entries have been seen as
+ * the reservoir holds, with each entry replacing a random sample, so that the dictionary
+ * represents more than the burst of messages logged on startup.
+ *
+ * <p>The dictionary is trained on a daemon thread at minimum priority. Training is a single native
+ * call that can't be paused, so the duty cycle is kept by resting afterwards: the trainer is not
+ * {@link #isFinished() finished} until it has rested long enough to have used no more than {@code
+ * dutyCycle} of a core, and callers should not start another trainer before then.
  */
 public class ZStdDictTrainer {
-  private final com.github.luben.zstd.ZstdDictTrainer trainer;
+
+  /** How many times as many entries as fit in the reservoir are seen before training. */
+  public static final int OVERSAMPLING = 4;
+
+  private static final String BOOTSTRAP_SQL = "SELECT content FROM entries ORDER BY rowid DESC";
+  private static final int BOOTSTRAP_BATCH_SIZE = 1000;
+
+  private final int sampleSize;
+  private final int dictSize;
   private final AtomicBoolean trainDictionary;
   private final Consumer<byte[]> completionHook;
+  private final StatusReporter statusReporter;
+  private final List<byte[]> reservoir = new ArrayList<>();
   private ExecutorService executor;
+  private double dutyCycle = 1.0;
+  private volatile boolean finished;
+
+  // The number of samples the reservoir holds once it is full, or 0 until then.
+  private int capacity;
+  private long seenCount;
+  private long sampleCount;
+  private long sampleBytes;
 
   public ZStdDictTrainer(int sampleSize, int dictSize, Consumer<byte[]> completionHook)
       throws CodecException {
+    this(sampleSize, dictSize, StatusReporter.DEFAULT, completionHook);
+  }
+
+  /**
+   * @param sampleSize the most bytes of samples to keep in memory.
+   * @param dictSize the maximum size of the dictionary.
+   * @param statusReporter reports training failures.
+   * @param completionHook called on the training thread with the dictionary.
+   */
+  public ZStdDictTrainer(
+      int sampleSize, int dictSize, StatusReporter statusReporter, Consumer<byte[]> completionHook)
+      throws CodecException {
     trainDictionary = new AtomicBoolean(true);
-    this.trainer = new com.github.luben.zstd.ZstdDictTrainer(sampleSize, dictSize);
+    this.sampleSize = sampleSize;
+    this.dictSize = dictSize;
+    this.statusReporter = statusReporter;
     this.completionHook = completionHook;
   }
 
-  // Can take about 16 seconds to train on laptop, and will eat
-  // the core while it's doing that.  Any way to signal to the
-  // application that this is expected behavior?
-  public void train(byte[] src) throws CodecException {
+  /**
+   * @param dutyCycle the fraction of a core that training may use on average, between 0
+   *     (exclusive) and 1. Must be set before training starts.
+   */
+  public void setDutyCycle(double dutyCycle) {
+    if (dutyCycle <= 0 || dutyCycle > 1) {
+      throw new IllegalArgumentException("dutyCycle must be greater than 0 and at most 1");
+    }
+    this.dutyCycle = dutyCycle;
+  }
+
+  public synchronized void train(byte[] src) throws CodecException {
     // Already trained up
     if (!trainDictionary.get()) {
       return;
     }
 
-    // Adding this sample to this trainer didn't fill the dictionary.
-    if (this.trainer.addSample(src)) {
+    if (sample(src)) {
+      startTraining();
+    }
+  }
+
+  /**
+   * Samples the newest entries of an existing live or archive database on the training thread,
+   * and trains straight away if they fill the reservoir, rather than waiting for new entries.
+   * Entries compressed with zstd without a dictionary are decompressed, and entries compressed
+   * with a dictionary are skipped.
+   *
+   * @param file the database file.
+   */
+  public synchronized void bootstrap(String file) {
+    if (!trainDictionary.get() || !Files.exists(Paths.get(file))) {
       return;
     }
+    executor()
+        .execute(
+            () -> {
+              try {
+                readBootstrap(file);
+              } catch (SQLException | RuntimeException e) {
+                statusReporter.addWarn("ZStdDictTrainer: Cannot bootstrap from " + file, e);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+  }
+
+  /** @return true once training is over and the trainer has rested, or training failed. */
+  public boolean isFinished() {
+    return finished;
+  }
+
+  /** @return the number of samples the dictionary is trained on. */
+  public synchronized long getSampleCount() {
+    return trainDictionary.get() ? reservoir.size() : sampleCount;
+  }
+
+  /** @return the total size of the samples the dictionary is trained on. */
+  public synchronized long getSampleBytes() {
+    return sampleBytes;
+  }
+
+  /** @return the number of entries offered to the trainer while sampling. */
+  public synchronized long getSeenCount() {
+    return seenCount;
+  }
+
+  /**
+   * Adds an entry to the reservoir.
+   *
+   * @return true if enough entries have been seen to train.
+   */
+  private boolean sample(byte[] src) {
+    seenCount++;
+    if (capacity == 0) {
+      if (sampleBytes + src.length <= sampleSize) {
+        reservoir.add(src.clone());
+        sampleBytes += src.length;
+        return false;
+      }
+      // The budget is full, so the reservoir holds this many samples from now on.
+      capacity = reservoir.size();
+      if (capacity == 0) {
+        return false;
+      }
+    }
+    long j = ThreadLocalRandom.current().nextLong(seenCount);
+    if (j < capacity) {
+      byte[] evicted = reservoir.get((int) j);
+      // Skip an entry that would go over the budget, rather than evicting more samples.
+      if (sampleBytes - evicted.length + src.length <= sampleSize) {
+        reservoir.set((int) j, src.clone());
+        sampleBytes += src.length - evicted.length;
+      }
+    }
+    return seenCount >= (long) capacity * OVERSAMPLING;
+  }
+
+  private void startTraining() {
+    if (!trainDictionary.getAndSet(false)) {
+      return;
+    }
+    final byte[][] samples = reservoir.toArray(new byte[0][]);
+    sampleCount = samples.length;
+    reservoir.clear();
+    // Can take about 16 seconds to train with a large sample, and will eat the core while it's
+    // doing that, so run it at low priority and rest afterwards.
+    executor().execute(() -> trainSamples(samples));
+  }
+
+  private void trainSamples(byte[][] samples) {
+    final long start = System.nanoTime();
+    try {
+      byte[] dictBuffer = new byte[dictSize];
+      long size = Zstd.trainFromBuffer(samples, dictBuffer);
+      if (Zstd.isError(size)) {
+        throw new CodecException(Zstd.getErrorName(size));
+      }
+      completionHook.accept(Arrays.copyOf(dictBuffer, (int) size));
+    } catch (RuntimeException e) {
+      statusReporter.addError("ZStdDictTrainer: Cannot train dictionary", e);
+    } finally {
+      try {
+        new Throttle(0, dutyCycle).rest(System.nanoTime() - start);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      finished = true;
+      close();
+    }
+  }
+
+  private void readBootstrap(String file) throws SQLException, InterruptedException {
+    SQLiteConfig config = new SQLiteConfig();
+    config.setReadOnly(true);
+    Throttle throttle = new Throttle(0, dutyCycle);
+    try (Connection conn = JDBC.createConnection("jdbc:sqlite:" + file, config.toProperties());
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery(BOOTSTRAP_SQL)) {
+      long workStart = System.nanoTime();
+      int count = 0;
+      while (rs.next()) {
+        byte[] content = plainContent(rs.getBytes(1));
+        synchronized (this) {
+          if (!trainDictionary.get()) {
+            return;
+          }
+          if (content != null && sample(content)) {
+            break;
+          }
+        }
+        if (++count % BOOTSTRAP_BATCH_SIZE == 0) {
+          throttle.rest(System.nanoTime() - workStart);
+          workStart = System.nanoTime();
+        }
+      }
+    }
+    synchronized (this) {
+      // Train now if the existing entries filled the reservoir.
+      if (capacity > 0) {
+        startTraining();
+      }
+    }
+  }
+
+  /** @return the entry without zstd compression, or null if it needs a dictionary. */
+  private static byte[] plainContent(byte[] content) {
+    if (content == null || !ZStdUtils.isFrame(content)) {
+      return content;
+    }
+    if (Zstd.getDictIdFromFrame(content) != 0) {
+      return null;
+    }
+    return Zstd.decompress(content, (int) Zstd.decompressedSize(content));
+  }
 
-    // If we got to this point, we want to run a CPU bound task to train the
-    // dictionary without slowing down processing.
-    if (trainDictionary.getAndSet(false)) {
+  private synchronized ExecutorService executor() {
+    if (executor == null) {
       this.executor =
           Executors.newSingleThreadExecutor(
               r -> {
                 Thread thread = new Thread(r);
                 // if the JVM exits when we're training, then bail.
                 thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
                 thread.setName("zstd-training-executor");
                 return thread;
               });
-      CompletableFuture.supplyAsync(trainer::trainSamples, executor)
-          .thenAccept(completionHook)
-          .thenRun(this::close);
     }
+    return executor;
   }
 
-  private void close() {
-    // The actual training takes 16 seconds
+  private synchronized void close() {
     if (executor != null && !executor.isShutdown()) {
       executor.shutdown();
     }
@@ -1,11 +1,16 @@
 package com.tersesystems.blacklite.codec.zstd;
 
 import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDecompressCtx;
 import com.github.luben.zstd.ZstdDictTrainer;
+import com.tersesystems.blacklite.codec.CodecException;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.stream.Stream;
@@ -18,6 +23,8 @@ public final class ZStdUtils {
   // 0xEC30A437 little endian = Array(37, A4, 30, EC)
   private static final byte[] ZSTD_DICT_MAGIC_NUMBER = { 0x37, (byte) 0xA4, 0x30, (byte) 0xEC };
 
+  private static final byte[] NO_DICTIONARY = new byte[0];
+
   private static int magicNumber(byte[] array) {
     return (array[3] << 24) | ((array[2] & 0xff) << 16) | ((array[1] & 0xff) << 8) | (array[0] & 0xff);
   }
@@ -28,6 +35,87 @@ public final class ZStdUtils {
     return ZSTD_MAGIC_NUMBER == magicNumber(frame);
   }
 
+  /**
+   * Reads the decompressed size from the header of a zstd frame, without moving the position.
+   *
+   * @param frame the buffer, positioned at the start of the frame.
+   * @return the decompressed size, or -1 if the frame header doesn't say.
+   * @throws CodecException if the buffer doesn't start with a zstd frame header.
+   */
+  public static long frameContentSize(ByteBuffer frame) {
+    return readFrameHeader(frame)[0];
+  }
+
+  /**
+   * Reads the dictionary id from the header of a zstd frame, without moving the position.
+   *
+   * @param frame the buffer, positioned at the start of the frame.
+   * @return the dictionary id, or 0 if the frame doesn't need a dictionary.
+   * @throws CodecException if the buffer doesn't start with a zstd frame header.
+   */
+  public static long frameDictId(ByteBuffer frame) {
+    return readFrameHeader(frame)[1];
+  }
+
+  /**
+   * Unloads the dictionary from a decompression context.  A frame without a dictionary id must be
+   * decompressed without a dictionary, as a loaded one changes the starting state of the decoder.
+   *
+   * @param ctx the context.
+   */
+  static void unloadDict(ZstdDecompressCtx ctx) {
+    // Loading an empty dictionary clears the one that was loaded.
+    ctx.loadDict(NO_DICTIONARY);
+  }
+
+  // https://github.com/facebook/zstd/blob/master/doc/zstd_compression_format.md#frame_header
+  private static long[] readFrameHeader(ByteBuffer frame) {
+    ByteBuffer header = frame.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    try {
+      if (header.getInt() != ZSTD_MAGIC_NUMBER) {
+        throw new CodecException("Not a zstd frame");
+      }
+      int descriptor = header.get() & 0xff;
+      int contentSizeFlag = descriptor >>> 6;
+      boolean singleSegment = (descriptor & 0x20) != 0;
+      if (!singleSegment) {
+        // Window descriptor
+        header.get();
+      }
+      long dictId;
+      switch (descriptor & 0x03) {
+        case 1:
+          dictId = header.get() & 0xff;
+          break;
+        case 2:
+          dictId = header.getShort() & 0xffff;
+          break;
+        case 3:
+          dictId = header.getInt() & 0xffffffffL;
+          break;
+        default:
+          dictId = 0;
+      }
+      long contentSize;
+      switch (contentSizeFlag) {
+        case 1:
+          contentSize = (header.getShort() & 0xffff) + 256;
+          break;
+        case 2:
+          contentSize = header.getInt() & 0xffffffffL;
+          break;
+        case 3:
+          contentSize = header.getLong();
+          break;
+        default:
+          contentSize = singleSegment ? header.get() & 0xff : -1;
+      }
+      return new long[] {contentSize, dictId};
+    } catch (BufferUnderflowException e) {
+      throw new CodecException("Truncated zstd frame header", e);
+    }
+  }
+
   public static byte[] trainDictionary(int sampleSize, int dictSize, Stream<byte[]> samples) {
     ZstdDictTrainer trainer = new ZstdDictTrainer(sampleSize, dictSize);
     samples.forEach(trainer::addSample);
@@ -6,9 +6,63 @@ import java.util.Optional;
 public interface ZstdDictRepository extends AutoCloseable {
   Optional<ZStdDict> lookup(long id);
 
+  /** @return the dictionary to compress with, which is the newest one if there are several. */
   Optional<ZStdDict> mostRecent();
 
   void save(byte[] dictBytes);
 
+  /**
+   * Saves a newly trained dictionary, along with a description of what it was trained on.
+   * Repositories that don't keep a summary save the dictionary on its own.
+   */
+  default void save(byte[] dictBytes, String summary) {
+    save(dictBytes);
+  }
+
+  /**
+   * Returns the dictionary to compress entries in a category with. Dictionaries for different
+   * categories are trained and saved separately, but are all found by {@link #lookup(long)}.
+   *
+   * @param category the category, or null for entries without one.
+   * @return the newest dictionary saved for the category.
+   * @throws UnsupportedOperationException if the category is not null and the repository does
+   *     not keep dictionaries by category.
+   */
+  default Optional<ZStdDict> mostRecent(String category) {
+    if (category == null) {
+      return mostRecent();
+    }
+    throw new UnsupportedOperationException("Dictionaries are not kept by category");
+  }
+
+  /**
+   * Saves a newly trained dictionary for a category.
+   *
+   * @param dictBytes the dictionary.
+   * @param summary a description of what the dictionary was trained on, or null.
+   * @param category the category, or null for entries without one.
+   * @throws UnsupportedOperationException if the category is not null and the repository does
+   *     not keep dictionaries by category.
+   */
+  default void save(byte[] dictBytes, String summary, String category) {
+    if (category != null) {
+      throw new UnsupportedOperationException("Dictionaries are not kept by category");
+    }
+    save(dictBytes, summary);
+  }
+
+  /** @return true if the repository keeps a dictionary for each category of entries. */
+  default boolean hasCategories() {
+    return false;
+  }
+
+  /**
+   * @return true if saving a dictionary keeps the older ones available for lookup, so that entries
+   *     compressed with them can still be read.
+   */
+  default boolean isVersioned() {
+    return false;
+  }
+
   void initialize() throws CodecException;
 }
@@ -0,0 +1,123 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.TaggedCodec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveZStdCodecTest {
+
+  private final byte[] message =
+      ("{\"message\":\"hello world\",\"logger_name\":\"AdaptiveZStdCodecTest\","
+              + "\"level\":\"INFO\",\"thread_name\":\"main\",\"level_value\":20000}")
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testSmallEntriesAreRaw() {
+    AdaptiveZStdCodec codec = codec();
+    byte[] small = "hi".getBytes(StandardCharsets.UTF_8);
+    byte[] encoded = codec.encode(small);
+    assertThat(encoded[0]).isEqualTo(TaggedCodec.RAW);
+    assertThat(encoded).hasSize(small.length + 1);
+    assertThat(codec.decode(encoded)).isEqualTo(small);
+    codec.close();
+  }
+
+  @Test
+  public void testIncompressibleEntriesAreRaw() {
+    AdaptiveZStdCodec codec = codec();
+    byte[] random = new byte[1000];
+    new Random(1).nextBytes(random);
+    byte[] encoded = codec.encode(random);
+    assertThat(encoded[0]).isEqualTo(TaggedCodec.RAW);
+    assertThat(codec.decode(encoded)).isEqualTo(random);
+    codec.close();
+  }
+
+  @Test
+  public void testCompressedEntries() {
+    AdaptiveZStdCodec codec = codec();
+    byte[] repeated = repeat(message, 20);
+    byte[] encoded = codec.encode(repeated);
+    assertThat(encoded[0]).isEqualTo(TaggedCodec.ZSTD);
+    assertThat(encoded.length).isLessThan(repeated.length);
+    assertThat(codec.decode(encoded)).isEqualTo(repeated);
+    codec.close();
+  }
+
+  @Test
+  public void testLevelBySizeAndBacklog() {
+    AdaptiveZStdCodec codec = codec();
+    assertThat(codec.level(1000)).isEqualTo(6);
+    assertThat(codec.level(10000)).isEqualTo(3);
+    assertThat(codec.level(100000)).isEqualTo(1);
+
+    codec.archiveBacklog(10000);
+    assertThat(codec.level(1000)).isEqualTo(5);
+    codec.archiveBacklog(40000);
+    assertThat(codec.level(1000)).isEqualTo(3);
+    codec.archiveBacklog(10000000);
+    assertThat(codec.level(1000)).isEqualTo(1);
+    codec.close();
+  }
+
+  @Test
+  public void testDecodesUntaggedEntries() {
+    AdaptiveZStdCodec codec = codec();
+    ZStdCodec zstd = new ZStdCodec();
+    zstd.initialize(StatusReporter.DEFAULT);
+    assertThat(codec.decode(zstd.encode(message))).isEqualTo(message);
+    assertThat(codec.decode(message)).isEqualTo(message);
+    zstd.close();
+    codec.close();
+  }
+
+  @Test
+  public void testMixedEntriesDecodeByTag() {
+    AdaptiveZStdCodec adaptive = codec();
+    TaggedCodec taggedZstd = new TaggedCodec(new ZStdCodec());
+    taggedZstd.initialize(StatusReporter.DEFAULT);
+    IdentityCodec identity = new IdentityCodec();
+
+    byte[] repeated = repeat(message, 20);
+    byte[][] entries = {
+      adaptive.encode(repeated), adaptive.encode(message), taggedZstd.encode(message), message
+    };
+
+    TaggedCodec reader = new TaggedCodec();
+    reader.setFallback(identity);
+    reader.register(
+        TaggedCodec.ZSTD,
+        () -> {
+          ZStdCodec zstd = new ZStdCodec();
+          zstd.initialize(StatusReporter.DEFAULT);
+          return zstd;
+        });
+    assertThat(reader.decode(entries[0])).isEqualTo(repeated);
+    assertThat(reader.decode(entries[1])).isEqualTo(message);
+    assertThat(reader.decode(entries[2])).isEqualTo(message);
+    assertThat(reader.decode(entries[3])).isEqualTo(message);
+
+    reader.close();
+    taggedZstd.close();
+    adaptive.close();
+  }
+
+  private AdaptiveZStdCodec codec() {
+    AdaptiveZStdCodec codec = new AdaptiveZStdCodec();
+    codec.initialize(StatusReporter.DEFAULT);
+    return codec;
+  }
+
+  private static byte[] repeat(byte[] bytes, int times) {
+    byte[] repeated = new byte[bytes.length * times];
+    for (int i = 0; i < times; i++) {
+      System.arraycopy(bytes, 0, repeated, i * bytes.length, bytes.length);
+    }
+    return repeated;
+  }
+}
@@ -0,0 +1,142 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.luben.zstd.Zstd;
+import com.tersesystems.blacklite.StatusReporter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class PooledZStdDictCodecTest {
+
+  @Test
+  public void testConcurrentRoundTrip() throws Exception {
+    byte[] dict = trainDictionary();
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(dict);
+
+    PooledZStdDictCodec codec = new PooledZStdDictCodec();
+    codec.setRepository(repo);
+    codec.setMaximumIdle(2);
+    codec.initialize(StatusReporter.DEFAULT);
+    assertThat(codec.getDictionaryId()).isEqualTo(Zstd.getDictIdFromDict(dict));
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final int thread = t;
+        tasks.add(
+            () -> {
+              for (int i = 0; i < 1000; i++) {
+                byte[] message = message(thread, i);
+                byte[] frame = codec.encode(message);
+                if (Zstd.getDictIdFromFrame(frame) != codec.getDictionaryId()
+                    || !Arrays.equals(codec.decode(frame), message)) {
+                  return false;
+                }
+              }
+              return true;
+            });
+      }
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    codec.close();
+  }
+
+  @Test
+  public void testReadsZStdDictCodecFrames() throws Exception {
+    byte[] dict = trainDictionary();
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(dict);
+
+    ZStdDictCodec writer = new ZStdDictCodec();
+    writer.setRepository(repo);
+    writer.initialize(StatusReporter.DEFAULT);
+    PooledZStdDictCodec reader = new PooledZStdDictCodec();
+    reader.setRepository(repo);
+    reader.initialize(StatusReporter.DEFAULT);
+
+    // ZStdDictCodec is single threaded, so encode up front and decode in parallel.
+    List<byte[]> frames = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      frames.add(writer.encode(message(0, i)));
+    }
+    boolean allMatch =
+        IntStream.range(0, frames.size())
+            .parallel()
+            .allMatch(i -> Arrays.equals(reader.decode(frames.get(i)), message(0, i)));
+    assertThat(allMatch).isTrue();
+    reader.close();
+  }
+
+  @Test
+  public void testDecodePlainFrameAfterDictionaryFrame() throws Exception {
+    byte[] dict = trainDictionary();
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(dict);
+
+    PooledZStdDictCodec codec = new PooledZStdDictCodec();
+    codec.setRepository(repo);
+    codec.setMaximumIdle(1);
+    codec.initialize(StatusReporter.DEFAULT);
+
+    // One thread with one idle context, so both frames are decoded with the same context.
+    byte[] message = message(1, 1);
+    byte[] dictFrame = codec.encode(message);
+    byte[] plainFrame = Zstd.compress(message);
+    for (int i = 0; i < 3; i++) {
+      assertThat(codec.decode(dictFrame)).isEqualTo(message);
+      assertThat(codec.decode(plainFrame)).isEqualTo(message);
+    }
+    codec.close();
+  }
+
+  @Test
+  public void testPooledCodecRoundTrip() throws Exception {
+    PooledZStdCodec codec = new PooledZStdCodec();
+    codec.setMaximumIdle(1);
+    codec.initialize(StatusReporter.DEFAULT);
+
+    boolean allMatch =
+        IntStream.range(0, 1000)
+            .parallel()
+            .allMatch(i -> Arrays.equals(codec.decode(codec.encode(message(i, i))), message(i, i)));
+    assertThat(allMatch).isTrue();
+    codec.close();
+  }
+
+  private static byte[] message(int thread, int i) {
+    String message =
+        "{\"message\":\"thread " + thread + " message " + i + "\",\"logger_name\":\"pooled\"}";
+    return message.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] trainDictionary() {
+    byte[][] samples = new byte[2000][];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = message(i % 8, i);
+    }
+    byte[] dict = new byte[16 * 1024];
+    long size = Zstd.trainFromBuffer(samples, dict);
+    return Arrays.copyOf(dict, (int) size);
+  }
+}
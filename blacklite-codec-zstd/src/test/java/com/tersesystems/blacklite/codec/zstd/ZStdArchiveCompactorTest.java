@@ -0,0 +1,203 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ZStdArchiveCompactorTest {
+
+  @Test
+  public void testCompact() throws Exception {
+    Path tmpDir = Files.createTempDirectory("compactor");
+    // Archives overlap in time, so the merge has to interleave them.
+    Path first = createArchive(tmpDir.resolve("archive.1.db"), 1000, 0);
+    Path second = createArchive(tmpDir.resolve("archive.2.db"), 1000, 500);
+    Path third = createArchive(tmpDir.resolve("archive.3.db"), 1000, 1000);
+
+    ZStdArchiveCompactor compactor = new ZStdArchiveCompactor();
+    compactor.setMinimumAgeSeconds(0);
+    compactor.setBytesPerSecond(0);
+    compactor.setDutyCycle(1);
+    List<List<Path>> plan = compactor.plan(tmpDir, "archive.*.db");
+    assertThat(plan).hasSize(1);
+    assertThat(plan.get(0)).containsExactlyInAnyOrder(first, second, third);
+
+    // The compacted archive is named after the newest archive.
+    Path compacted = compactor.compact(Arrays.asList(third, first, second));
+    assertThat(compacted).isEqualTo(third);
+    assertThat(Files.exists(first)).isFalse();
+    assertThat(Files.exists(second)).isFalse();
+    assertThat(Files.exists(third.resolveSibling("archive.3.db.compacted"))).isFalse();
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + compacted)) {
+      ArchiveManifest manifest = ArchiveManifest.read(c).orElseThrow(IllegalStateException::new);
+      assertThat(manifest.getRowCount()).isEqualTo(3000);
+      assertThat(manifest.getCodec()).isEqualTo("zstddict");
+      assertThat(manifest.getMinEpochSecs()).isEqualTo(1604430000L);
+
+      String sql = "SELECT epoch_secs, content FROM entries ORDER BY rowid";
+      try (Statement st = c.createStatement();
+          ResultSet rs = st.executeQuery(sql)) {
+        ZStdDictSqliteRepository repository = new ZStdDictSqliteRepository();
+        repository.setFile(compacted.toString());
+        ZStdDictCodec codec = new ZStdDictCodec();
+        codec.setRepository(repository);
+        codec.initialize(StatusReporter.DEFAULT);
+        long previous = Long.MIN_VALUE;
+        int count = 0;
+        while (rs.next()) {
+          long epochSecs = rs.getLong(1);
+          assertThat(epochSecs).isGreaterThanOrEqualTo(previous);
+          assertThat(new String(codec.decode(rs.getBytes(2)))).contains("\"message\"");
+          previous = epochSecs;
+          count++;
+        }
+        codec.close();
+        assertThat(count).isEqualTo(3000);
+      }
+    }
+  }
+
+  @Test
+  public void testRecoverFinishesInterruptedCompaction() throws Exception {
+    Path tmpDir = Files.createTempDirectory("compactor");
+    Path first = createArchive(tmpDir.resolve("archive.1.db"), 10, 0);
+    Path second = createArchive(tmpDir.resolve("archive.2.db"), 10, 10);
+    Path third = createArchive(tmpDir.resolve("archive.3.db"), 10, 20);
+    // Stopped after the compacted file was built and the journal written, before the move.
+    Path temp = tmpDir.resolve("archive.3.db" + ZStdArchiveCompactor.TEMP_SUFFIX);
+    Files.copy(third, temp);
+    Path journal = tmpDir.resolve("archive.3.db" + ZStdArchiveCompactor.JOURNAL_SUFFIX);
+    Files.write(
+        journal,
+        Arrays.asList(first.toAbsolutePath().toString(), second.toAbsolutePath().toString()));
+
+    ZStdArchiveCompactor compactor = new ZStdArchiveCompactor();
+    assertThat(compactor.recover(tmpDir)).containsExactly(third);
+    assertThat(Files.exists(first)).isFalse();
+    assertThat(Files.exists(second)).isFalse();
+    assertThat(Files.exists(third)).isTrue();
+    assertThat(Files.exists(temp)).isFalse();
+    assertThat(Files.exists(journal)).isFalse();
+  }
+
+  @Test
+  public void testCompactMixedDictionaryFrames() throws Exception {
+    Path tmpDir = Files.createTempDirectory("compactor");
+    Path first = createArchive(tmpDir.resolve("archive.1.db"), 100, 0);
+    Path second = tmpDir.resolve("archive.2.db");
+    createDictArchive(second, 100, 100);
+
+    ZStdArchiveCompactor compactor = new ZStdArchiveCompactor();
+    compactor.setBytesPerSecond(0);
+    compactor.setDutyCycle(1);
+    Path compacted = compactor.compact(Arrays.asList(first, second));
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + compacted)) {
+      String sql = "SELECT content FROM entries WHERE epoch_secs >= 1604430100 ORDER BY rowid";
+      try (Statement st = c.createStatement();
+          ResultSet rs = st.executeQuery(sql)) {
+        ZStdDictSqliteRepository repository = new ZStdDictSqliteRepository();
+        repository.setFile(compacted.toString());
+        ZStdDictCodec codec = new ZStdDictCodec();
+        codec.setRepository(repository);
+        codec.initialize(StatusReporter.DEFAULT);
+        int i = 0;
+        while (rs.next()) {
+          assertThat(new String(codec.decode(rs.getBytes(1)))).isEqualTo(message(i++, 100));
+        }
+        codec.close();
+        assertThat(i).isEqualTo(100);
+      }
+    }
+  }
+
+  // Alternates frames with and without a dictionary, as an archive written while training does.
+  private void createDictArchive(Path path, int rows, int offset) throws SQLException {
+    byte[][] samples = new byte[2000][];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = message(i, offset).getBytes();
+    }
+    byte[] dict = new byte[16 * 1024];
+    dict = Arrays.copyOf(dict, (int) Zstd.trainFromBuffer(samples, dict));
+    ZStdDictSqliteRepository repository = new ZStdDictSqliteRepository();
+    repository.setFile(path.toString());
+    repository.initialize();
+    repository.save(dict);
+    repository.close();
+
+    Statements statements = Statements.instance();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + path);
+        ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+      ctx.loadDict(dict);
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.createEntriesTable());
+        st.execute(statements.createArchiveManifest());
+        st.execute(statements.createArchiveManifestLevels());
+      }
+      try (PreparedStatement ps = c.prepareStatement(statements.insert())) {
+        for (int i = 0; i < rows; i++) {
+          byte[] content = message(i, offset).getBytes();
+          ps.setLong(1, 1604430000L + offset + i);
+          ps.setInt(2, 0);
+          ps.setInt(3, 20000);
+          ps.setBytes(4, i % 2 == 0 ? Zstd.compress(content) : ctx.compress(content));
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.rebuildArchiveManifestLevels());
+      }
+      long dictId = Zstd.getDictIdFromDict(dict);
+      ArchiveManifest.summarize(c, ArchiveManifest.FORMAT_ENTRIES, ZStdDictCodec.NAME, dictId)
+          .write(c);
+    }
+  }
+
+  private static String message(int i, int offset) {
+    return "{\"message\":\"row " + i + "\",\"offset\":" + offset + "}";
+  }
+
+  private Path createArchive(Path path, int rows, int offset) throws SQLException {
+    Statements statements = Statements.instance();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + path)) {
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.createEntriesTable());
+        st.execute(statements.createArchiveManifest());
+        st.execute(statements.createArchiveManifestLevels());
+      }
+      try (PreparedStatement ps = c.prepareStatement(statements.insert())) {
+        for (int i = 0; i < rows; i++) {
+          ps.setLong(1, 1604430000L + offset + i);
+          ps.setInt(2, 0);
+          ps.setInt(3, 20000);
+          ps.setBytes(4, message(i, offset).getBytes());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.rebuildArchiveManifestLevels());
+      }
+      ArchiveManifest.summarize(c, ArchiveManifest.FORMAT_ENTRIES, IdentityCodec.NAME, 0).write(c);
+    }
+    return path;
+  }
+}
@@ -0,0 +1,190 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.luben.zstd.Zstd;
+import com.tersesystems.blacklite.StatusReporter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class ZStdCategoryDictCodecTest {
+
+  @Test
+  public void testDictionaryPerCategory() throws Exception {
+    byte[] sqlDict = trainDictionary("org.hibernate.SQL");
+    byte[] accessDict = trainDictionary("access");
+    byte[] defaultDict = trainDictionary("com.example");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(sqlDict, "sql", "org.hibernate");
+    repo.save(accessDict, "access", "access");
+    repo.save(defaultDict);
+
+    LoggerNameCategoryResolver resolver = new LoggerNameCategoryResolver();
+    resolver.setPrefixes("org.hibernate, access");
+    ZStdCategoryDictCodec codec = new ZStdCategoryDictCodec();
+    codec.setRepository(repo);
+    codec.setCategoryResolver(resolver);
+    codec.initialize(StatusReporter.DEFAULT);
+
+    byte[] sql = message("org.hibernate.SQL", 1);
+    byte[] access = message("access", 2);
+    byte[] other = message("com.example.Main", 3);
+    byte[] sqlFrame = codec.encode(sql, 20000);
+    byte[] accessFrame = codec.encode(access, 20000);
+    byte[] otherFrame = codec.encode(other, 20000);
+
+    assertThat(Zstd.getDictIdFromFrame(sqlFrame)).isEqualTo(Zstd.getDictIdFromDict(sqlDict));
+    assertThat(Zstd.getDictIdFromFrame(accessFrame)).isEqualTo(Zstd.getDictIdFromDict(accessDict));
+    assertThat(Zstd.getDictIdFromFrame(otherFrame)).isEqualTo(Zstd.getDictIdFromDict(defaultDict));
+    assertThat(codec.getCategories()).containsExactlyInAnyOrder("org.hibernate", "access", null);
+    assertThat(codec.getDictionaryId()).isEqualTo(Zstd.getDictIdFromDict(defaultDict));
+
+    // Frames carry their dictionary id, so a plain dictionary codec reads every category.
+    ZStdDictCodec reader = new ZStdDictCodec();
+    reader.setRepository(repo);
+    reader.setRetrainThreshold(0);
+    reader.initialize(StatusReporter.DEFAULT);
+    assertThat(reader.decode(sqlFrame)).isEqualTo(sql);
+    assertThat(reader.decode(accessFrame)).isEqualTo(access);
+    assertThat(reader.decode(otherFrame)).isEqualTo(other);
+    assertThat(codec.decode(accessFrame)).isEqualTo(access);
+    codec.close();
+  }
+
+  @Test
+  public void testBufferEncodeByCategory() throws Exception {
+    byte[] sqlDict = trainDictionary("org.hibernate.SQL");
+    byte[] defaultDict = trainDictionary("com.example");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(sqlDict, "sql", "org.hibernate");
+    repo.save(defaultDict);
+    ZStdCategoryDictCodec codec = newCodec(repo);
+
+    byte[] sql = message("org.hibernate.SQL", 1);
+    ByteBuffer src = ByteBuffer.allocateDirect(sql.length);
+    src.put(sql).flip();
+    ByteBuffer dst = ByteBuffer.allocateDirect(codec.maxEncodedSize(sql.length));
+    int size = codec.encode(src, dst, 20000);
+    dst.flip();
+    assertThat(dst.remaining()).isEqualTo(size);
+    assertThat(ZStdUtils.frameDictId(dst)).isEqualTo(Zstd.getDictIdFromDict(sqlDict));
+
+    // Without a level there is no category.
+    src.rewind();
+    dst.clear();
+    codec.encode(src, dst);
+    dst.flip();
+    assertThat(ZStdUtils.frameDictId(dst)).isEqualTo(Zstd.getDictIdFromDict(defaultDict));
+
+    ByteBuffer decoded = ByteBuffer.allocate(codec.decodedSize(dst));
+    codec.decode(dst, decoded);
+    assertThat(decoded.array()).isEqualTo(sql);
+    codec.close();
+  }
+
+  @Test
+  public void testDecodePlainFrameAfterDictionaryFrame() throws Exception {
+    byte[] sqlDict = trainDictionary("org.hibernate.SQL");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(sqlDict, "sql", "org.hibernate");
+    ZStdCategoryDictCodec codec = newCodec(repo);
+
+    byte[] sql = message("org.hibernate.SQL", 1);
+    byte[] dictFrame = codec.encode(sql, 20000);
+    // Written before a dictionary was trained.
+    byte[] plainFrame = Zstd.compress(sql);
+    assertThat(Zstd.getDictIdFromFrame(dictFrame)).isEqualTo(Zstd.getDictIdFromDict(sqlDict));
+    assertThat(Zstd.getDictIdFromFrame(plainFrame)).isEqualTo(0L);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(codec.decode(dictFrame)).isEqualTo(sql);
+      assertThat(codec.decode(plainFrame)).isEqualTo(sql);
+    }
+
+    codec.decode(dictFrame);
+    ByteBuffer decoded = ByteBuffer.allocate(sql.length);
+    codec.decode(ByteBuffer.wrap(plainFrame), decoded);
+    assertThat(decoded.array()).isEqualTo(sql);
+    codec.close();
+  }
+
+  @Test
+  public void testMostRecentByCategory() throws Exception {
+    byte[] first = trainDictionary("first");
+    byte[] second = trainDictionary("second");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(first);
+    repo.save(second, null, "second");
+
+    // Dictionaries for a category are not used for entries without one.
+    assertThat(repo.mostRecent().map(ZStdDict::getId)).contains(Zstd.getDictIdFromDict(first));
+    assertThat(repo.mostRecent("second").map(ZStdDict::getId))
+        .contains(Zstd.getDictIdFromDict(second));
+    assertThat(repo.mostRecent("third")).isEmpty();
+    assertThat(repo.lookup(Zstd.getDictIdFromDict(second))).isPresent();
+    repo.close();
+  }
+
+  @Test
+  public void testLoggerNameResolver() {
+    LoggerNameCategoryResolver resolver = new LoggerNameCategoryResolver();
+    resolver.setPrefixes("org.hibernate,org.hibernate.SQL");
+
+    assertThat(resolver.category(0, message("org.hibernate.SQL", 1)))
+        .isEqualTo("org.hibernate.SQL");
+    assertThat(resolver.category(0, message("org.hibernate.orm", 1))).isEqualTo("org.hibernate");
+    assertThat(resolver.category(0, message("org.apache", 1))).isNull();
+    byte[] spaced = "{\"logger_name\" : \"org.hibernate.type\"}".getBytes(StandardCharsets.UTF_8);
+    assertThat(resolver.category(0, spaced)).isEqualTo("org.hibernate");
+    assertThat(resolver.category(0, "plain text".getBytes(StandardCharsets.UTF_8))).isNull();
+  }
+
+  @Test
+  public void testLevelResolver() {
+    LevelCategoryResolver resolver = new LevelCategoryResolver();
+    resolver.setBoundaries("30000, 10000");
+
+    assertThat(resolver.category(5000, new byte[0])).isNull();
+    assertThat(resolver.category(10000, new byte[0])).isEqualTo("level:10000");
+    assertThat(resolver.category(20000, new byte[0])).isEqualTo("level:10000");
+    assertThat(resolver.category(40000, new byte[0])).isEqualTo("level:30000");
+    assertThat(resolver.getBoundaries()).isEqualTo("10000,30000");
+  }
+
+  private static ZStdCategoryDictCodec newCodec(ZStdDictSqliteRepository repo) {
+    LoggerNameCategoryResolver resolver = new LoggerNameCategoryResolver();
+    resolver.setPrefixes("org.hibernate");
+    ZStdCategoryDictCodec codec = new ZStdCategoryDictCodec();
+    codec.setRepository(repo);
+    codec.setCategoryResolver(resolver);
+    codec.initialize(StatusReporter.DEFAULT);
+    return codec;
+  }
+
+  private static byte[] message(String loggerName, int i) {
+    String message =
+        "{\"message\":\"" + loggerName + " message " + i + "\",\"logger_name\":\"" + loggerName
+            + "\"}";
+    return message.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] trainDictionary(String loggerName) {
+    byte[][] samples = new byte[2000][];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = message(loggerName, i);
+    }
+    byte[] dict = new byte[16 * 1024];
+    long size = Zstd.trainFromBuffer(samples, dict);
+    return Arrays.copyOf(dict, (int) size);
+  }
+}
@@ -0,0 +1,75 @@
+package com.tersesystems.blacklite.codec.zstd;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class ZStdCodecTest {
+
+  private final byte[] message =
+      "{\"message\":\"hello world\",\"logger_name\":\"ZStdCodecTest\"}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  public void testHeapBuffers() {
+    ZStdCodec codec = new ZStdCodec();
+    codec.initialize(StatusReporter.DEFAULT);
+    roundTrip(codec, ByteBuffer.allocate(1024), ByteBuffer.allocate(1024));
+    codec.close();
+  }
+
+  @Test
+  public void testDirectBuffers() {
+    ZStdCodec codec = new ZStdCodec();
+    codec.initialize(StatusReporter.DEFAULT);
+    roundTrip(codec, ByteBuffer.allocateDirect(1024), ByteBuffer.allocateDirect(1024));
+    codec.close();
+  }
+
+  @Test
+  public void testMixedBuffers() {
+    ZStdCodec codec = new ZStdCodec();
+    codec.initialize(StatusReporter.DEFAULT);
+    roundTrip(codec, ByteBuffer.allocate(1024), ByteBuffer.allocateDirect(1024));
+    codec.close();
+  }
+
+  @Test
+  public void testReadsArrayFrames() {
+    ZStdCodec codec = new ZStdCodec();
+    codec.initialize(StatusReporter.DEFAULT);
+    ByteBuffer src = ByteBuffer.wrap(codec.encode(message));
+    assertThat(ZStdUtils.frameDictId(src)).isEqualTo(0);
+    ByteBuffer dst = ByteBuffer.allocate(codec.decodedSize(src));
+    codec.decode(src, dst);
+    assertThat(dst.array()).isEqualTo(message);
+    codec.close();
+  }
+
+  private void roundTrip(ZStdCodec codec, ByteBuffer encoded, ByteBuffer decoded) {
+    // Leave some bytes in front, to check positions are respected.
+    encoded.position(7);
+    ByteBuffer src = ByteBuffer.wrap(message);
+    assertThat(codec.maxEncodedSize(message.length)).isLessThanOrEqualTo(encoded.remaining());
+    int size = codec.encode(src, encoded);
+    assertThat(src.hasRemaining()).isFalse();
+    assertThat(encoded.position()).isEqualTo(7 + size);
+
+    encoded.flip();
+    encoded.position(7);
+    byte[] frame = new byte[size];
+    encoded.duplicate().get(frame);
+    assertThat(codec.decode(frame)).isEqualTo(message);
+
+    assertThat(codec.decodedSize(encoded)).isEqualTo(message.length);
+    int decodedSize = codec.decode(encoded, decoded);
+    assertThat(decodedSize).isEqualTo(message.length);
+    decoded.flip();
+    byte[] result = new byte[decoded.remaining()];
+    decoded.get(result);
+    assertThat(result).isEqualTo(message);
+  }
+}
@@ -2,9 +2,15 @@ package com.tersesystems.blacklite.codec.zstd;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
 import com.tersesystems.blacklite.StatusReporter;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.UUID;
 import org.junit.jupiter.api.Test;
 
 public class ZStdDictCodecTest {
@@ -33,4 +39,176 @@ public class ZStdDictCodecTest {
 
     assertThat(decompressed.length).isEqualTo(bytes.length);
   }
+
+  @Test
+  public void testDecodeAcrossDictionaries() throws Exception {
+    byte[] oldDict = trainDictionary("old");
+    byte[] newDict = trainDictionary("new");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    // mostRecent() returns the newest dictionary.
+    repo.save(oldDict);
+    repo.save(newDict);
+
+    ZStdDictCodec codec = new ZStdDictCodec();
+    codec.setRepository(repo);
+    codec.initialize(StatusReporter.DEFAULT);
+    assertThat(codec.getDictionaryId()).isEqualTo(Zstd.getDictIdFromDict(newDict));
+
+    byte[] message = "{\"message\":\"old message 42\"}".getBytes(StandardCharsets.UTF_8);
+    byte[] oldFrame;
+    try (ZstdCompressCtx ctx = new ZstdCompressCtx()) {
+      ctx.loadDict(oldDict);
+      oldFrame = ctx.compress(message);
+    }
+    byte[] newFrame = codec.encode(message);
+
+    // Interleave frames so the decoder has to switch dictionaries.
+    for (int i = 0; i < 10; i++) {
+      assertThat(codec.decode(oldFrame)).isEqualTo(message);
+      assertThat(codec.decode(newFrame)).isEqualTo(message);
+    }
+    assertThat(codec.getDictCache().size()).isEqualTo(2);
+    codec.close();
+  }
+
+  @Test
+  public void testDecodePlainFrameAfterDictionaryFrame() throws Exception {
+    byte[] dict = trainDictionary("plain");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(dict);
+
+    ZStdDictCodec codec = new ZStdDictCodec();
+    codec.setRepository(repo);
+    codec.initialize(StatusReporter.DEFAULT);
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      sb.append("{\"message\":\"plain message ").append(i).append("\",\"logger_name\":\"plain\"}");
+    }
+    byte[] message = sb.toString().getBytes(StandardCharsets.UTF_8);
+    byte[] dictFrame = codec.encode(message);
+    // Written before a dictionary was trained.
+    byte[] plainFrame = Zstd.compress(message);
+    assertThat(Zstd.getDictIdFromFrame(dictFrame)).isEqualTo(Zstd.getDictIdFromDict(dict));
+    assertThat(Zstd.getDictIdFromFrame(plainFrame)).isEqualTo(0L);
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(codec.decode(dictFrame)).isEqualTo(message);
+      assertThat(codec.decode(plainFrame)).isEqualTo(message);
+    }
+
+    codec.decode(dictFrame);
+    ByteBuffer decoded = ByteBuffer.allocateDirect(message.length);
+    codec.decode(ByteBuffer.wrap(plainFrame), decoded);
+    decoded.flip();
+    byte[] result = new byte[decoded.remaining()];
+    decoded.get(result);
+    assertThat(result).isEqualTo(message);
+    codec.close();
+  }
+
+  @Test
+  public void testByteBufferRoundTrip() throws Exception {
+    byte[] dict = trainDictionary("buffer");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(dict);
+
+    ZStdDictCodec codec = new ZStdDictCodec();
+    codec.setRepository(repo);
+    codec.initialize(StatusReporter.DEFAULT);
+
+    byte[] message = "{\"message\":\"buffer message 7\"}".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer encoded = ByteBuffer.allocateDirect(codec.maxEncodedSize(message.length));
+    codec.encode(ByteBuffer.wrap(message), encoded);
+    encoded.flip();
+    assertThat(ZStdUtils.frameDictId(encoded)).isEqualTo(Zstd.getDictIdFromDict(dict));
+
+    ByteBuffer decoded = ByteBuffer.allocateDirect(codec.decodedSize(encoded));
+    codec.decode(encoded, decoded);
+    decoded.flip();
+    byte[] result = new byte[decoded.remaining()];
+    decoded.get(result);
+    assertThat(result).isEqualTo(message);
+    codec.close();
+  }
+
+  @Test
+  public void testDictCacheEviction() throws Exception {
+    byte[] first = trainDictionary("first");
+    byte[] second = trainDictionary("second");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(first);
+    repo.save(second);
+
+    ZStdDictCache cache = new ZStdDictCache(repo, 1);
+    cache.get(Zstd.getDictIdFromDict(first));
+    cache.get(Zstd.getDictIdFromDict(second));
+    assertThat(cache.size()).isEqualTo(1);
+    repo.close();
+  }
+
+  @Test
+  public void testRetrainOnRatioDrop() throws Exception {
+    byte[] oldDict = trainDictionary("old");
+    ZStdDictSqliteRepository repo = new ZStdDictSqliteRepository();
+    repo.setFile("jdbc:sqlite:");
+    repo.initialize();
+    repo.save(oldDict);
+
+    ZStdDictCodec codec = new ZStdDictCodec();
+    codec.setRepository(repo);
+    codec.setSampleSize(64 * 1024);
+    codec.setDictSize(16 * 1024);
+    codec.setRatioWindowSize(16 * 1024);
+    codec.initialize(StatusReporter.DEFAULT);
+    final long oldDictId = Zstd.getDictIdFromDict(oldDict);
+
+    // Set the baseline with the content the dictionary was trained on.
+    byte[] oldMessage = "{\"message\":\"old message 42\",\"logger_name\":\"old\"}"
+        .getBytes(StandardCharsets.UTF_8);
+    byte[] oldFrame = null;
+    for (int i = 0; i < 1000; i++) {
+      oldFrame = codec.encode(oldMessage);
+    }
+
+    // A new release logs something else entirely.
+    long deadline = System.currentTimeMillis() + 30_000;
+    while (codec.getDictionaryId() == oldDictId && System.currentTimeMillis() < deadline) {
+      String message =
+          "{\"event\":\"request\",\"request_id\":\"" + UUID.randomUUID() + "\",\"status\":200}";
+      codec.encode(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    long newDictId = codec.getDictionaryId();
+    assertThat(newDictId).isNotEqualTo(oldDictId);
+    ZStdDict newest = repo.mostRecent().orElseThrow(IllegalStateException::new);
+    assertThat(newest.getId()).isEqualTo(newDictId);
+    assertThat(newest.getCreatedAt()).isPresent();
+    assertThat(newest.getSummary().orElse("")).contains("below baseline");
+
+    // The old dictionary is kept for decoding.
+    assertThat(repo.lookup(oldDictId)).isPresent();
+    assertThat(codec.decode(oldFrame)).isEqualTo(oldMessage);
+    codec.close();
+  }
+
+  private byte[] trainDictionary(String prefix) {
+    byte[][] samples = new byte[2000][];
+    for (int i = 0; i < samples.length; i++) {
+      String sample =
+          "{\"message\":\"" + prefix + " message " + i + "\",\"logger_name\":\"" + prefix + "\"}";
+      samples[i] = sample.getBytes(StandardCharsets.UTF_8);
+    }
+    byte[] dict = new byte[16 * 1024];
+    long size = Zstd.trainFromBuffer(samples, dict);
+    return Arrays.copyOf(dict, (int) size);
+  }
 }
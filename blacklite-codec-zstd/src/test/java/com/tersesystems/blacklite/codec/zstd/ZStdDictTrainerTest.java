@@ -4,8 +4,16 @@ import static java.util.Objects.requireNonNull;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.github.luben.zstd.Zstd;
+import com.tersesystems.blacklite.Statements;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
@@ -46,4 +54,78 @@ public class ZStdDictTrainerTest {
     // Check we have a dictionary at the end of this.
     assertThat(dictionaryId).isGreaterThan(-1);
   }
+
+  @Test
+  public void testReservoirStaysWithinBudget() throws Exception {
+    int sampleSize = 64 * 1024;
+    AtomicReference<byte[]> ref = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    ZStdDictTrainer trainer =
+        new ZStdDictTrainer(
+            sampleSize,
+            16 * 1024,
+            f -> {
+              ref.set(f);
+              latch.countDown();
+            });
+
+    int i = 0;
+    while (latch.getCount() > 0 && i < 1_000_000) {
+      trainer.train(message(i++));
+      assertThat(trainer.getSampleBytes()).isLessThanOrEqualTo(sampleSize);
+    }
+    latch.await();
+
+    // Sampling carried on well past the point where the reservoir was full.
+    assertThat(trainer.getSeenCount())
+        .isGreaterThanOrEqualTo(trainer.getSampleCount() * ZStdDictTrainer.OVERSAMPLING);
+    assertThat(Zstd.getDictIdFromDict(requireNonNull(ref.get()))).isNotEqualTo(0);
+  }
+
+  @Test
+  public void testBootstrap() throws Exception {
+    Path file = Files.createTempDirectory("trainer").resolve("live.db");
+    Statements statements = Statements.instance();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file)) {
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.createEntriesTable());
+      }
+      try (PreparedStatement ps = c.prepareStatement(statements.insert())) {
+        for (int i = 0; i < 10000; i++) {
+          ps.setLong(1, System.currentTimeMillis() / 1000);
+          ps.setInt(2, 0);
+          ps.setInt(3, 20000);
+          ps.setBytes(4, message(i));
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+    }
+
+    AtomicReference<byte[]> ref = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    ZStdDictTrainer trainer =
+        new ZStdDictTrainer(
+            64 * 1024,
+            16 * 1024,
+            f -> {
+              ref.set(f);
+              latch.countDown();
+            });
+    trainer.bootstrap(file.toString());
+
+    // Trained from the existing entries, without any new ones.
+    assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+    assertThat(Zstd.getDictIdFromDict(requireNonNull(ref.get()))).isNotEqualTo(0);
+  }
+
+  private static byte[] message(int i) {
+    String message =
+        "{\"message\":\"Message "
+            + i
+            + "\",\"level\":\"INFO\",\"thread_name\":\"worker-"
+            + (i % 8)
+            + "\"}";
+    return message.getBytes(StandardCharsets.UTF_8);
+  }
 }
@@ -22,6 +22,10 @@ import java.util.concurrent.locks.LockSupport;
  * <p>
  * When idle, the queue will call flush() on the entry store, and call the archive task every second.
  * <p>
+ * If the config has a reorder window, entries are held for that long before they are inserted, and
+ * inserted in time order, so that rowids are in time order even when entries are queued slightly
+ * out of order by different threads.
+ * <p>
  * The queue is unbounded because when an archiver is active, the backlog can
  * get very large, but will drain extremely quickly once archiver has completed.
  * <p>
@@ -34,6 +38,8 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
   protected final ExecutorService executor;
   private final MessagePassingQueue<Entry> queue;
   private final boolean tracing;
+  // Only set when the config has a reorder window, and only used from the executor thread.
+  private final ReorderWindow reorderWindow;
   private boolean archiving = false;
 
   public AsyncEntryWriter(
@@ -43,6 +49,9 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
 
     this.tracing = config.getTracing();
 
+    final long reorderWindowMillis = config.getReorderWindowMillis();
+    this.reorderWindow = reorderWindowMillis > 0 ? new ReorderWindow(reorderWindowMillis) : null;
+
     this.queue = new MpscGrowableArrayQueue<>(config.getMaxCapacity());
 
     this.executor =
@@ -94,6 +103,9 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
           // This means that batchInsertSize is more of a highwater mark:
           // "you MUST commit now after this number of inserts" etc
           try {
+            if (reorderWindow != null) {
+              reorderWindow.release(System.currentTimeMillis(), this::insert);
+            }
             commit();
           } catch (SQLException e) {
             statusReporter.addError(e.getMessage(), e);
@@ -111,12 +123,10 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
       MessagePassingQueue.Consumer<Entry> consumer =
         e -> {
           try {
-            entryStore.insert(e.epochSecond, e.nanos, e.level, e.content);
-            inserts = inserts + 1;
-            // Always flush on batch insert size, even if we've never been idle.
-            if (inserts >= batchInsertSize) {
-              commit();
-
+            if (reorderWindow == null) {
+              insert(e);
+            } else {
+              reorderWindow.add(e, System.currentTimeMillis(), this::insert);
             }
             archive();
           } catch (SQLException ex) {
@@ -129,6 +139,15 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
       }
     }
 
+    private void insert(Entry e) throws SQLException {
+      entryStore.insert(e.epochSecond, e.nanos, e.level, e.content);
+      inserts = inserts + 1;
+      // Always flush on batch insert size, even if we've never been idle.
+      if (inserts >= batchInsertSize) {
+        commit();
+      }
+    }
+
     private void commit() throws SQLException {
       final long i = inserts;
       if (i > 0) {
@@ -170,9 +189,15 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
         }
         // Check if there's anything still in there (shouldn't be, but
         // we'll check anyway)
+        final ReorderWindow.Sink sink =
+          e -> entryStore.insert(e.epochSecond, e.nanos, e.level, e.content);
         int entries = queue.drain(e -> {
           try {
-            entryStore.insert(e.epochSecond, e.nanos, e.level, e.content);
+            if (reorderWindow == null) {
+              sink.accept(e);
+            } else {
+              reorderWindow.add(e, System.currentTimeMillis(), sink);
+            }
           } catch (SQLException ex) {
             statusReporter.addError(ex.getMessage(), ex);
           }
@@ -180,6 +205,14 @@ public class AsyncEntryWriter extends AbstractEntryWriter {
         if (tracing) {
           statusReporter.addInfo("AsyncEntryWriter: closed queue contained " + entries + " entries");
         }
+        if (reorderWindow != null) {
+          // Everything held is written out now, in order.
+          reorderWindow.flush(sink);
+          if (tracing) {
+            statusReporter.addInfo(
+              "AsyncEntryWriter: " + reorderWindow.getLate() + " entries were too late to reorder");
+          }
+        }
         entryStore.executeBatch();
         entryStore.commit();
 
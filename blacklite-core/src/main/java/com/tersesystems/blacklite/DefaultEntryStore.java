@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
 import org.sqlite.JDBC;
 
@@ -21,17 +22,27 @@ import org.sqlite.JDBC;
  */
 public class DefaultEntryStore implements EntryStore {
 
-  private final Connection conn;
+  static final String STANDBY_SUFFIX = ".standby";
+
+  // Files that sqlite keeps next to the database, which have to move with it.
+  private static final String[] SIDECAR_SUFFIXES = {"-wal", "-shm", "-journal"};
+
+  private final EntryStoreConfig config;
+  private final Path path;
+  private Connection conn;
   private final String url;
   private final Statements statements;
   private PreparedStatement insertStatement;
 
+  private volatile boolean standbyReady;
+
   private long totalInserts;
   private long totalBytes;
 
   public DefaultEntryStore(EntryStoreConfig config) throws SQLException {
+    this.config = config;
     String fileString = requireNonNull(config.getFile(), "Null file");
-    Path path = Paths.get(fileString);
+    this.path = Paths.get(fileString).toAbsolutePath();
     this.url = "jdbc:sqlite:" + path.toAbsolutePath();
     if (!JDBC.isValidURL(this.url)) {
       throw new IllegalArgumentException("Invalid URL " + config.getFile());
@@ -54,16 +65,144 @@ public class DefaultEntryStore implements EntryStore {
 
   @Override
   public void initialize() throws SQLException {
-    try (Statement stmt = conn.createStatement()) {
-      stmt.execute(statements.createEntriesTable());
-      stmt.execute(statements.createEntriesView());
-    }
+    createSchema(conn);
     this.insertStatement = conn.prepareStatement(statements.insert());
 
     // Set to transaction mode after setting up DDL.
     conn.setAutoCommit(false);
   }
 
+  private void createSchema(Connection c) throws SQLException {
+    try (Statement stmt = c.createStatement()) {
+      stmt.execute(statements.createEntriesTable());
+      stmt.execute(statements.createEntriesView());
+    }
+    recordReorderWindow(c);
+  }
+
+  /**
+   * Records the reorder window in the database, so that readers can find a time range by bisecting
+   * rowids.  The window only holds for entries written with it, so it is dropped when there is no
+   * window, and only recorded for entries already in the file if they were written with one.
+   */
+  private void recordReorderWindow(Connection c) throws SQLException {
+    final long windowMillis = config.getReorderWindowMillis();
+    try (Statement stmt = c.createStatement()) {
+      if (windowMillis <= 0) {
+        stmt.execute(statements.dropReorderWindow());
+        return;
+      }
+      final boolean empty;
+      try (ResultSet rs = stmt.executeQuery(statements.selectMaxRowId())) {
+        empty = !rs.next() || rs.getObject(1) == null;
+      }
+      if (!empty && !exists(stmt, statements.reorderWindowExists())) {
+        return;
+      }
+      stmt.execute(statements.createReorderWindow());
+      if (empty) {
+        stmt.execute(statements.deleteReorderWindow());
+      }
+    }
+    try (PreparedStatement ps = c.prepareStatement(statements.upsertReorderWindow())) {
+      ps.setLong(1, windowMillis);
+      ps.executeUpdate();
+    }
+  }
+
+  private static boolean exists(Statement stmt, String sql) throws SQLException {
+    try (ResultSet rs = stmt.executeQuery(sql)) {
+      return rs.next() && rs.getInt(1) > 0;
+    }
+  }
+
+  /** Creates an empty live database with the schema next to the live database. */
+  @Override
+  public synchronized void prepareStandby() throws SQLException {
+    if (standbyReady) {
+      return;
+    }
+    Path standby = standbyPath();
+    try {
+      deleteWithSidecars(standby);
+    } catch (IOException e) {
+      throw new SQLException(e);
+    }
+    try (Connection standbyConn =
+        JDBC.createConnection("jdbc:sqlite:" + standby, config.getProperties())) {
+      createSchema(standbyConn);
+    }
+    standbyReady = true;
+  }
+
+  @Override
+  public boolean supportsRotation() {
+    return true;
+  }
+
+  /**
+   * Moves the live database and its journal to the rotated file, renames the standby database into
+   * its place, and reconnects. If the standby has not been prepared yet, it is created first.
+   */
+  @Override
+  public synchronized void rotate(String rotatedFile) throws SQLException {
+    Path rotated = Paths.get(rotatedFile).toAbsolutePath();
+    if (Files.exists(rotated)) {
+      throw new SQLException("Rotated file " + rotated + " already exists");
+    }
+    prepareStandby();
+
+    executeBatch();
+    markRotated();
+    commit();
+    insertStatement.close();
+    conn.close();
+    try {
+      // Any WAL left behind by readers still holding the old file goes with it, and the shared
+      // memory file must not be picked up by the new live database.
+      move(path, rotated);
+      for (String suffix : SIDECAR_SUFFIXES) {
+        Path sidecar = Paths.get(path + suffix);
+        if (Files.exists(sidecar)) {
+          move(sidecar, Paths.get(rotated + suffix));
+        }
+      }
+      move(standbyPath(), path);
+    } catch (IOException e) {
+      throw new SQLException("Cannot rotate " + path + " to " + rotated, e);
+    } finally {
+      standbyReady = false;
+      // Carry on with whatever is at the live path, even if the rotation failed.
+      conn = JDBC.createConnection(url, config.getProperties());
+      initialize();
+    }
+  }
+
+  private void markRotated() throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.execute(statements.createRotationMarker());
+    }
+    try (PreparedStatement ps = conn.prepareStatement(statements.insertRotationMarker())) {
+      ps.setLong(1, System.currentTimeMillis() / 1000);
+      ps.executeUpdate();
+    }
+  }
+
+  private Path standbyPath() {
+    return Paths.get(path + STANDBY_SUFFIX);
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void deleteWithSidecars(Path file) throws IOException {
+    Files.deleteIfExists(file);
+    for (String suffix : SIDECAR_SUFFIXES) {
+      Files.deleteIfExists(Paths.get(file + suffix));
+    }
+  }
+
   @Override
   public String getUrl() {
     return url;
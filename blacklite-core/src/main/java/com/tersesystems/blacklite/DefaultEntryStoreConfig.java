@@ -18,6 +18,8 @@ public class DefaultEntryStoreConfig implements EntryStoreConfig {
 
   private int maxCapacity = MAX_CAPACITY;
 
+  private long reorderWindowMillis = 0;
+
   @Override
   public String getFile() {
     return this.file;
@@ -71,6 +73,21 @@ public class DefaultEntryStoreConfig implements EntryStoreConfig {
     this.tracing = tracing;
   }
 
+  @Override
+  public long getReorderWindowMillis() {
+    return this.reorderWindowMillis;
+  }
+
+  /**
+   * Holds entries for this long before writing them, so that they are written in time order even
+   * if they are queued slightly out of order.  This keeps rowids in time order, so readers can
+   * find a time range by rowid.  Only the async writer does this, and 0 turns it off.
+   */
+  @Override
+  public void setReorderWindowMillis(long reorderWindowMillis) {
+    this.reorderWindowMillis = reorderWindowMillis;
+  }
+
   private static SQLiteConfig liveConfig() {
     // https://github.com/xerial/sqlite-jdbc/blob/master/Usage.md#configure-connections
     // https://phiresky.github.io/blog/2020/sqlite-performance-tuning/
@@ -124,6 +141,8 @@ public class DefaultEntryStoreConfig implements EntryStoreConfig {
         + properties
         + ", batchInsertSize="
         + batchInsertSize
+        + ", reorderWindowMillis="
+        + reorderWindowMillis
         + '}';
   }
 }
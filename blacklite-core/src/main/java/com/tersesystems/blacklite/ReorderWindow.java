@@ -0,0 +1,125 @@
+package com.tersesystems.blacklite;
+
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Holds entries for a short window so that they are released in time order.
+ *
+ * <p>Entries are queued by several threads, so they can arrive slightly out of order.  Each entry
+ * is held until the window has passed since its timestamp, and then released in (epochSecond,
+ * nanos) order, with ties released in the order they arrived.  An entry older than one that has
+ * already been released is late, and is released at once, as holding it would not put it in
+ * order.
+ *
+ * <p>This is not thread safe, and is only used from the writer thread.
+ */
+final class ReorderWindow {
+
+  /** Receives released entries. */
+  interface Sink {
+    void accept(Entry entry) throws SQLException;
+  }
+
+  private static final Comparator<Held> ORDER =
+      Comparator.<Held>comparingLong(h -> h.entry.epochSecond)
+          .thenComparingInt(h -> h.entry.nanos)
+          .thenComparingLong(h -> h.sequence);
+
+  private final long windowMillis;
+  private final PriorityQueue<Held> held = new PriorityQueue<>(ORDER);
+  private long sequence;
+  private long lastEpochSecond = Long.MIN_VALUE;
+  private int lastNanos;
+  private long late;
+
+  ReorderWindow(long windowMillis) {
+    this.windowMillis = windowMillis;
+  }
+
+  /**
+   * Holds an entry, and releases any entries that are due.
+   *
+   * @param entry the entry.
+   * @param nowMillis the current time in milliseconds.
+   * @param sink receives released entries.
+   */
+  void add(Entry entry, long nowMillis, Sink sink) throws SQLException {
+    if (isBeforeReleased(entry)) {
+      late++;
+      sink.accept(entry);
+    } else {
+      held.add(new Held(entry, sequence++));
+    }
+    release(nowMillis, sink);
+  }
+
+  /**
+   * Releases the entries that have been held for the window.
+   *
+   * @param nowMillis the current time in milliseconds.
+   * @param sink receives released entries.
+   * @return the number of entries released.
+   */
+  int release(long nowMillis, Sink sink) throws SQLException {
+    final long cutoff = nowMillis - windowMillis;
+    int released = 0;
+    while (!held.isEmpty() && millis(held.peek().entry) <= cutoff) {
+      releaseHead(sink);
+      released++;
+    }
+    return released;
+  }
+
+  /**
+   * Releases every held entry.
+   *
+   * @param sink receives released entries.
+   * @return the number of entries released.
+   */
+  int flush(Sink sink) throws SQLException {
+    int released = 0;
+    while (!held.isEmpty()) {
+      releaseHead(sink);
+      released++;
+    }
+    return released;
+  }
+
+  /** @return the number of entries being held. */
+  int size() {
+    return held.size();
+  }
+
+  /** @return the number of entries that arrived after a later entry had been released. */
+  long getLate() {
+    return late;
+  }
+
+  private void releaseHead(Sink sink) throws SQLException {
+    final Entry entry = held.poll().entry;
+    lastEpochSecond = entry.epochSecond;
+    lastNanos = entry.nanos;
+    sink.accept(entry);
+  }
+
+  private boolean isBeforeReleased(Entry entry) {
+    return entry.epochSecond < lastEpochSecond
+        || (entry.epochSecond == lastEpochSecond && entry.nanos < lastNanos);
+  }
+
+  private static long millis(Entry entry) {
+    return entry.epochSecond * 1000 + entry.nanos / 1_000_000;
+  }
+
+  private static final class Held {
+    private final Entry entry;
+    private final long sequence;
+
+    Held(Entry entry, long sequence) {
+      this.entry = entry;
+      this.sequence = sequence;
+    }
+  }
+}
@@ -37,6 +37,14 @@ public final class Statements {
     return bundle.getString("entries.oldest.statement");
   }
 
+  public String archiveOldest() {
+    return bundle.getString("entries.archive.oldest.statement");
+  }
+
+  public String archiveOldestEntryBlock() {
+    return bundle.getString("entry_blocks.archive.oldest.statement");
+  }
+
   public String databaseSizeStatement() {
     return bundle.getString("entries.dbsize.statement");
   }
@@ -61,6 +69,218 @@ public final class Statements {
     return bundle.getString("entries.deletelessthan.statement");
   }
 
+  public String selectLessThanRowId() {
+    return bundle.getString("entries.select.lessthan.statement");
+  }
+
+  public String createEntryBlocksTable() {
+    return bundle.getString("entry_blocks.create.statement");
+  }
+
+  public String insertEntryBlock() {
+    return bundle.getString("entry_blocks.insert.statement");
+  }
+
+  public String archiveHasEntryBlocks() {
+    return bundle.getString("entry_blocks.archive.exists.statement");
+  }
+
+  public String archiveNumBlockRows() {
+    return bundle.getString("entry_blocks.archive.numrows.statement");
+  }
+
+  public String countEntryBlocks() {
+    return bundle.getString("entry_blocks.count.statement");
+  }
+
+  public String createEntryBloomsTable() {
+    return bundle.getString("entry_blooms.create.statement");
+  }
+
+  public String insertEntryBloom() {
+    return bundle.getString("entry_blooms.insert.statement");
+  }
+
+  public String insertSealedEntryBloom() {
+    return bundle.getString("entry_blooms.insert_sealed.statement");
+  }
+
+  public String createEntryTimesTable() {
+    return bundle.getString("entry_times.create.statement");
+  }
+
+  public String insertEntryTimes() {
+    return bundle.getString("entry_times.insert.statement");
+  }
+
+  public String insertSealedEntryTimes() {
+    return bundle.getString("entry_times.insert_sealed.statement");
+  }
+
+  public String lastInsertRowId() {
+    return bundle.getString("entries.lastrowid.statement");
+  }
+
+  public String createIndexFormat() {
+    return bundle.getString("entries.index.create.statement");
+  }
+
+  public String createEntryBlocksIndex() {
+    return bundle.getString("entry_blocks.index.create.statement");
+  }
+
+  public String analyze() {
+    return bundle.getString("archive.analyze.statement");
+  }
+
+  public String optimize() {
+    return bundle.getString("archive.optimize.statement");
+  }
+
+  public String journalModeDelete() {
+    return bundle.getString("archive.journal_mode.statement");
+  }
+
+  public String vacuum() {
+    return bundle.getString("archive.vacuum.statement");
+  }
+
+  public String archiveGeneration() {
+    return bundle.getString("archive.generation.select.statement");
+  }
+
+  public String archiveGenerationUpdateFormat() {
+    return bundle.getString("archive.generation.update.statement");
+  }
+
+  public String encodeEntries() {
+    return bundle.getString("entries.encode.statement");
+  }
+
+  public String selectEntryContents() {
+    return bundle.getString("entries.contents.statement");
+  }
+
+  public String createRotationMarker() {
+    return bundle.getString("rotation.create.statement");
+  }
+
+  public String insertRotationMarker() {
+    return bundle.getString("rotation.insert.statement");
+  }
+
+  public String rotationMarkerExists() {
+    return bundle.getString("rotation.exists.statement");
+  }
+
+  public String dropRotationMarker() {
+    return bundle.getString("rotation.drop.statement");
+  }
+
+  public String createReorderWindow() {
+    return bundle.getString("reorder_window.create.statement");
+  }
+
+  public String upsertReorderWindow() {
+    return bundle.getString("reorder_window.upsert.statement");
+  }
+
+  public String deleteReorderWindow() {
+    return bundle.getString("reorder_window.delete.statement");
+  }
+
+  public String reorderWindowExists() {
+    return bundle.getString("reorder_window.exists.statement");
+  }
+
+  public String dropReorderWindow() {
+    return bundle.getString("reorder_window.drop.statement");
+  }
+
+  public String createArchiveManifest() {
+    return bundle.getString("archive_manifest.create.statement");
+  }
+
+  public String createArchiveManifestLevels() {
+    return bundle.getString("archive_manifest_levels.create.statement");
+  }
+
+  public String upsertArchiveManifestLevels() {
+    return bundle.getString("archive_manifest_levels.upsert.statement");
+  }
+
+  public String rebuildArchiveManifestLevels() {
+    return bundle.getString("archive_manifest_levels.rebuild.statement");
+  }
+
+  public String archiveManifestSummary() {
+    return bundle.getString("archive_manifest.summary.statement");
+  }
+
+  public String deleteArchiveManifest() {
+    return bundle.getString("archive_manifest.delete.statement");
+  }
+
+  public String insertArchiveManifest() {
+    return bundle.getString("archive_manifest.insert.statement");
+  }
+
+  public String selectArchiveManifest() {
+    return bundle.getString("archive_manifest.select.statement");
+  }
+
+  public String selectArchiveManifestLevels() {
+    return bundle.getString("archive_manifest_levels.select.statement");
+  }
+
+  public String archiveManifestExists() {
+    return bundle.getString("archive_manifest.exists.statement");
+  }
+
+  public String createCatalog() {
+    return bundle.getString("catalog.create.statement");
+  }
+
+  public String upsertCatalog() {
+    return bundle.getString("catalog.upsert.statement");
+  }
+
+  public String catalogPaths() {
+    return bundle.getString("catalog.paths.statement");
+  }
+
+  public String deleteFromCatalog() {
+    return bundle.getString("catalog.delete.statement");
+  }
+
+  public String selectCatalogPath() {
+    return bundle.getString("catalog.path.statement");
+  }
+
+  public String deletePathFromCatalog() {
+    return bundle.getString("catalog.delete_path.statement");
+  }
+
+  public String renameInCatalog() {
+    return bundle.getString("catalog.rename.statement");
+  }
+
+  public String findInCatalog() {
+    return bundle.getString("catalog.find.statement");
+  }
+
+  public String createCatalogShipments() {
+    return bundle.getString("catalog_shipments.create.statement");
+  }
+
+  public String upsertCatalogShipment() {
+    return bundle.getString("catalog_shipments.upsert.statement");
+  }
+
+  public String selectCatalogShipment() {
+    return bundle.getString("catalog_shipments.select.statement");
+  }
+
   public String attachFormat() {
     return bundle.getString("entries.attach.statement");
   }
@@ -0,0 +1,368 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.Statements;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import org.sqlite.JDBC;
+
+/**
+ * A catalog of sealed archive files, kept in its own SQLite database.
+ *
+ * <p>The catalog lists every sealed archive with the time range from its manifest, so that readers
+ * can go straight to the archives that overlap a query. Archives are keyed by the archive id in the
+ * manifest, so the catalog keeps track of files as rolling strategies rename them.
+ *
+ * <p>A rolling strategy renames archives one at a time, so the archiver {@link #publish publishes}
+ * every rename of a rollover, along with the rolled file, in a single transaction once they are
+ * all done. The catalog always holds a set of archives as it was between rollovers, and {@link
+ * #findPublished} only returns a set once the files on disk match it.
+ */
+public class ArchiveCatalog {
+
+  private static final byte[] SQLITE_MAGIC = "SQLite format 3\u0000".getBytes(StandardCharsets.US_ASCII);
+
+  // How often findPublished reads the catalog again while a rollover is in progress.
+  private static final long PUBLISH_POLL_MILLIS = 50;
+
+  private final String file;
+
+  public ArchiveCatalog(String file) {
+    this.file = Objects.requireNonNull(file, "Null file");
+  }
+
+  public String getFile() {
+    return file;
+  }
+
+  /**
+   * Scans a directory for sealed archives, and brings the catalog up to date: new and renamed
+   * archives are recorded with their current path, and archives whose files no longer exist are
+   * removed.
+   *
+   * @param directory the directory containing archive files.
+   */
+  public void refresh(Path directory) throws SQLException, IOException {
+    try (Connection conn = createConnection()) {
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path path : stream) {
+          if (isDatabase(path) && !path.toAbsolutePath().equals(Paths.get(file).toAbsolutePath())) {
+            Optional<ArchiveManifest> manifest = readManifest(path);
+            if (manifest.isPresent()) {
+              upsert(conn, path, manifest.get());
+            }
+          }
+        }
+      }
+      removeMissing(conn);
+    }
+  }
+
+  /**
+   * Records a sealed archive that has just been rolled over, without scanning the directory, and
+   * removes archives whose files no longer exist.  Any archive recorded at the same path is
+   * replaced, as the file has been rolled over on top of it.
+   *
+   * @param path the path of the sealed archive.
+   */
+  public void add(Path path) throws SQLException {
+    publish(Collections.emptyMap(), path);
+  }
+
+  /**
+   * Records that a rolling strategy has renamed an archive, i.e. when a fixed window moves every
+   * archive up one index.  Any archive recorded at the new path is replaced.
+   *
+   * @param from the old path of the archive.
+   * @param to the new path of the archive.
+   */
+  public void rename(Path from, Path to) throws SQLException {
+    publish(Collections.singletonMap(from, to), null);
+  }
+
+  /**
+   * Records a rollover in a single transaction: the renames of older archives, in the order they
+   * were made, then the rolled file, and then removes archives whose files no longer exist, i.e.
+   * the oldest file of a fixed window. Readers see the archives either as they were before the
+   * rollover, or after it, and never part way through.
+   *
+   * @param renames the old and new paths of renamed archives, in the order they were renamed.
+   * @param rolledFile the path of the sealed archive that was rolled over, or null if none.
+   */
+  public void publish(Map<Path, Path> renames, Path rolledFile) throws SQLException {
+    final Optional<ArchiveManifest> manifest =
+        rolledFile == null ? Optional.empty() : readManifest(rolledFile);
+    try (Connection conn = createConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        for (Map.Entry<Path, Path> rename : renames.entrySet()) {
+          deletePath(conn, rename.getValue());
+          try (PreparedStatement ps = conn.prepareStatement(statements().renameInCatalog())) {
+            ps.setString(1, rename.getValue().toAbsolutePath().toString());
+            ps.setString(2, rename.getKey().toAbsolutePath().toString());
+            ps.executeUpdate();
+          }
+        }
+        if (manifest.isPresent()) {
+          deletePath(conn, rolledFile);
+          upsert(conn, rolledFile, manifest.get());
+        }
+        removeMissing(conn);
+        conn.commit();
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Removes an archive whose file has been deleted, without checking the other archives.
+   *
+   * @param archiveId the archive id from the manifest.
+   */
+  public void remove(String archiveId) throws SQLException {
+    try (Connection conn = createConnection();
+        PreparedStatement ps = conn.prepareStatement(statements().deleteFromCatalog())) {
+      ps.setString(1, archiveId);
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * @param archiveId the archive id from the manifest.
+   * @return the path the archive was last recorded at, or empty if it is not in the catalog.
+   */
+  public Optional<Path> path(String archiveId) throws SQLException {
+    try (Connection conn = createConnection();
+        PreparedStatement ps = conn.prepareStatement(statements().selectCatalogPath())) {
+      ps.setString(1, archiveId);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? Optional.of(Paths.get(rs.getString(1))) : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * Finds the archives that may contain entries in a time range.
+   *
+   * @param afterEpochSecs the start of the range, exclusive, or null if open.
+   * @param beforeEpochSecs the end of the range, exclusive, or null if open.
+   * @return the paths of the archives, oldest first.
+   */
+  public List<Path> find(Long afterEpochSecs, Long beforeEpochSecs) throws SQLException {
+    List<Path> paths = new ArrayList<>();
+    try (Connection conn = createConnection();
+        PreparedStatement ps = conn.prepareStatement(statements().findInCatalog())) {
+      // The range bounds are exclusive, but the archive ranges are inclusive.
+      ps.setLong(1, afterEpochSecs == null ? Long.MIN_VALUE : afterEpochSecs + 1);
+      ps.setLong(2, beforeEpochSecs == null ? Long.MAX_VALUE : beforeEpochSecs - 1);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          paths.add(Paths.get(rs.getString(1)));
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Finds the archives that may contain entries in a time range, as of the last rollover that was
+   * published.
+   *
+   * <p>While a rollover is in progress, files have already been renamed but the catalog still has
+   * the old paths, so every file is checked against the archive id in its manifest. If any doesn't
+   * match, the catalog is read again until the rollover has been published, so that no archive is
+   * returned twice or left out.
+   *
+   * @param afterEpochSecs the start of the range, exclusive, or null if open.
+   * @param beforeEpochSecs the end of the range, exclusive, or null if open.
+   * @param timeoutMillis how long to wait for a rollover in progress to be published.
+   * @return the paths of the archives by archive id, oldest first.
+   * @throws SQLException if the files still don't match the catalog once the time is up, i.e. if
+   *     archives were moved or deleted by hand, and the catalog needs a {@link #refresh}.
+   */
+  public Map<String, Path> findPublished(
+      Long afterEpochSecs, Long beforeEpochSecs, long timeoutMillis) throws SQLException {
+    final long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (true) {
+      final Map<String, Path> archives = new LinkedHashMap<>();
+      try (Connection conn = createConnection();
+          PreparedStatement ps = conn.prepareStatement(statements().findInCatalog())) {
+        ps.setLong(1, afterEpochSecs == null ? Long.MIN_VALUE : afterEpochSecs + 1);
+        ps.setLong(2, beforeEpochSecs == null ? Long.MAX_VALUE : beforeEpochSecs - 1);
+        try (ResultSet rs = ps.executeQuery()) {
+          while (rs.next()) {
+            archives.put(rs.getString(2), Paths.get(rs.getString(1)));
+          }
+        }
+      }
+      final Optional<Path> moved = firstMoved(archives);
+      if (!moved.isPresent()) {
+        return archives;
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        throw new SQLException("Archive " + moved.get() + " does not match catalog " + file);
+      }
+      try {
+        Thread.sleep(PUBLISH_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for catalog " + file, e);
+      }
+    }
+  }
+
+  // Finds a file that is missing, or is not the archive the catalog has at its path.
+  private static Optional<Path> firstMoved(Map<String, Path> archives) throws SQLException {
+    for (Map.Entry<String, Path> archive : archives.entrySet()) {
+      final Path path = archive.getValue();
+      try {
+        if (!isDatabase(path)) {
+          return Optional.of(path);
+        }
+      } catch (IOException e) {
+        return Optional.of(path);
+      }
+      final Optional<ArchiveManifest> manifest = readManifest(path);
+      if (!manifest.isPresent() || !manifest.get().getArchiveId().equals(archive.getKey())) {
+        return Optional.of(path);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Records that an archive has been shipped to remote storage.
+   *
+   * @param archiveId the archive id from the manifest.
+   * @param uri where the archive was shipped to.
+   * @param etag the entity tag of the uploaded object, or null.
+   * @param shippedAt the time of shipment in epoch seconds.
+   */
+  public void markShipped(String archiveId, String uri, String etag, long shippedAt)
+      throws SQLException {
+    try (Connection conn = createConnection();
+        PreparedStatement ps = conn.prepareStatement(statements().upsertCatalogShipment())) {
+      ps.setString(1, archiveId);
+      ps.setString(2, uri);
+      ps.setString(3, etag);
+      ps.setLong(4, shippedAt);
+      ps.executeUpdate();
+    }
+  }
+
+  /**
+   * @param archiveId the archive id from the manifest.
+   * @return where the archive was shipped to, or empty if it has not been shipped.
+   */
+  public Optional<String> findShipment(String archiveId) throws SQLException {
+    try (Connection conn = createConnection();
+        PreparedStatement ps = conn.prepareStatement(statements().selectCatalogShipment())) {
+      ps.setString(1, archiveId);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() ? Optional.of(rs.getString(1)) : Optional.empty();
+      }
+    }
+  }
+
+  /**
+   * Finds the current path of an archive, which may have been renamed by a rolling strategy since
+   * it was sealed.
+   *
+   * @param directory the directory containing archive files.
+   * @param archiveId the archive id from the manifest.
+   * @return the path of the archive, or empty if there is no such archive in the directory.
+   */
+  public static Optional<Path> locate(Path directory, String archiveId)
+      throws SQLException, IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+      for (Path path : stream) {
+        if (isDatabase(path)) {
+          Optional<ArchiveManifest> manifest = readManifest(path);
+          if (manifest.isPresent() && manifest.get().getArchiveId().equals(archiveId)) {
+            return Optional.of(path);
+          }
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private void upsert(Connection conn, Path path, ArchiveManifest manifest) throws SQLException {
+    try (PreparedStatement ps = conn.prepareStatement(statements().upsertCatalog())) {
+      int adder = 1;
+      ps.setString(adder++, manifest.getArchiveId());
+      ps.setString(adder++, path.toAbsolutePath().toString());
+      ps.setString(adder++, manifest.getFormat());
+      ps.setString(adder++, manifest.getCodec());
+      ps.setLong(adder++, manifest.getDictionaryId());
+      ps.setLong(adder++, manifest.getRowCount());
+      ps.setLong(adder++, manifest.getMinEpochSecs());
+      ps.setLong(adder++, manifest.getMaxEpochSecs());
+      ps.setLong(adder, manifest.getSealedAt());
+      ps.executeUpdate();
+    }
+  }
+
+  private void deletePath(Connection conn, Path path) throws SQLException {
+    try (PreparedStatement ps = conn.prepareStatement(statements().deletePathFromCatalog())) {
+      ps.setString(1, path.toAbsolutePath().toString());
+      ps.executeUpdate();
+    }
+  }
+
+  private void removeMissing(Connection conn) throws SQLException {
+    List<String> missing = new ArrayList<>();
+    try (PreparedStatement ps = conn.prepareStatement(statements().catalogPaths());
+        ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        if (!Files.exists(Paths.get(rs.getString(2)))) {
+          missing.add(rs.getString(1));
+        }
+      }
+    }
+    try (PreparedStatement ps = conn.prepareStatement(statements().deleteFromCatalog())) {
+      for (String archiveId : missing) {
+        ps.setString(1, archiveId);
+        ps.executeUpdate();
+      }
+    }
+  }
+
+  private static Optional<ArchiveManifest> readManifest(Path path) throws SQLException {
+    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath())) {
+      return ArchiveManifest.read(conn);
+    }
+  }
+
+  private Connection createConnection() throws SQLException {
+    Connection conn = JDBC.createConnection("jdbc:sqlite:" + file, new Properties());
+    try (Statement st = conn.createStatement()) {
+      st.execute(statements().createCatalog());
+      st.execute(statements().createCatalogShipments());
+    }
+    return conn;
+  }
+
+  // Don't open files that aren't sqlite databases, as sqlite will happily create them.
+  static boolean isDatabase(Path path) throws IOException {
+    if (!Files.isRegularFile(path) || Files.size(path) < SQLITE_MAGIC.length) {
+      return false;
+    }
+    try (InputStream in = Files.newInputStream(path)) {
+      byte[] bytes = new byte[SQLITE_MAGIC.length];
+      return in.read(bytes) == bytes.length && Arrays.equals(bytes, SQLITE_MAGIC);
+    }
+  }
+
+  private Statements statements() {
+    return Statements.instance();
+  }
+}
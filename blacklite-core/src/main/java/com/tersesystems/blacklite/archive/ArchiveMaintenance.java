@@ -0,0 +1,58 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs archive file maintenance (rollover, renaming, deleting old files) on a single background
+ * thread, so that slow filesystem operations don't block the writer thread.
+ *
+ * <p>Tasks run one at a time in submission order, so a rollover is always complete before the next
+ * one starts.
+ */
+final class ArchiveMaintenance implements AutoCloseable {
+
+  private final ExecutorService executor;
+  private final StatusReporter statusReporter;
+
+  ArchiveMaintenance(String name, StatusReporter statusReporter) {
+    this(name, Thread.NORM_PRIORITY, statusReporter);
+  }
+
+  ArchiveMaintenance(String name, int priority, StatusReporter statusReporter) {
+    this.statusReporter = statusReporter;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread t = new Thread(r);
+              t.setDaemon(true);
+              t.setName(name);
+              t.setPriority(priority);
+              return t;
+            });
+  }
+
+  Future<?> submit(String description, Runnable task) {
+    return executor.submit(
+        () -> {
+          try {
+            task.run();
+          } catch (Exception e) {
+            statusReporter.addError("ArchiveMaintenance: " + description + " failed", e);
+          }
+        });
+  }
+
+  /** Waits for any outstanding tasks to complete, and then shuts down the thread. */
+  @Override
+  public void close() throws InterruptedException {
+    executor.shutdown();
+    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+      statusReporter.addError("ArchiveMaintenance: Timeout exceeded waiting for maintenance tasks!");
+      executor.shutdownNow();
+    }
+  }
+}
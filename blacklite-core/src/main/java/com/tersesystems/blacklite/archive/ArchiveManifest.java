@@ -0,0 +1,245 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.Statements;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * A summary of a sealed archive file, kept in the "archive_manifest" and "archive_manifest_levels"
+ * tables of the archive itself.
+ *
+ * <p>The manifest is written when the archive file is rolled over, so readers can find out the
+ * time range, number of entries, format and codec of an archive without scanning it.
+ */
+public final class ArchiveManifest {
+
+  public static final int SCHEMA_VERSION = 1;
+
+  /** Entries are stored one per row in the "entries" table. */
+  public static final String FORMAT_ENTRIES = "entries";
+
+  /** Entries are packed into blocks in the "entry_blocks" table. */
+  public static final String FORMAT_ENTRY_BLOCKS = "entry_blocks";
+
+  private final int schemaVersion;
+  private final String archiveId;
+  private final String format;
+  private final String codec;
+  private final long dictionaryId;
+  private final long rowCount;
+  private final long minEpochSecs;
+  private final long maxEpochSecs;
+  private final long sealedAt;
+  private final Map<Integer, Long> levelCounts;
+
+  public ArchiveManifest(
+      int schemaVersion,
+      String archiveId,
+      String format,
+      String codec,
+      long dictionaryId,
+      long rowCount,
+      long minEpochSecs,
+      long maxEpochSecs,
+      long sealedAt,
+      Map<Integer, Long> levelCounts) {
+    this.schemaVersion = schemaVersion;
+    this.archiveId = archiveId;
+    this.format = format;
+    this.codec = codec;
+    this.dictionaryId = dictionaryId;
+    this.rowCount = rowCount;
+    this.minEpochSecs = minEpochSecs;
+    this.maxEpochSecs = maxEpochSecs;
+    this.sealedAt = sealedAt;
+    this.levelCounts = Collections.unmodifiableMap(levelCounts);
+  }
+
+  public int getSchemaVersion() {
+    return schemaVersion;
+  }
+
+  /** @return a unique id for the archive file, which does not change when the file is renamed. */
+  public String getArchiveId() {
+    return archiveId;
+  }
+
+  public String getFormat() {
+    return format;
+  }
+
+  /** @return the name of the codec used to encode content. */
+  public String getCodec() {
+    return codec;
+  }
+
+  /** @return the dictionary id the codec was using when the archive was sealed, or 0. */
+  public long getDictionaryId() {
+    return dictionaryId;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  public long getMinEpochSecs() {
+    return minEpochSecs;
+  }
+
+  public long getMaxEpochSecs() {
+    return maxEpochSecs;
+  }
+
+  /** @return the epoch second when the archive was sealed. */
+  public long getSealedAt() {
+    return sealedAt;
+  }
+
+  /** @return the number of entries for each level. */
+  public Map<Integer, Long> getLevelCounts() {
+    return levelCounts;
+  }
+
+  /**
+   * @param afterEpochSecs the start of the range, exclusive, or null if open.
+   * @param beforeEpochSecs the end of the range, exclusive, or null if open.
+   * @return true if the archive may contain entries in the range.
+   */
+  public boolean overlaps(Long afterEpochSecs, Long beforeEpochSecs) {
+    if (afterEpochSecs != null && maxEpochSecs <= afterEpochSecs) {
+      return false;
+    }
+    return beforeEpochSecs == null || minEpochSecs < beforeEpochSecs;
+  }
+
+  /**
+   * Reads the manifest from an archive database.
+   *
+   * @param conn a connection to the archive database.
+   * @return the manifest, or empty if the archive has not been sealed.
+   */
+  public static Optional<ArchiveManifest> read(Connection conn) throws SQLException {
+    Statements statements = Statements.instance();
+    try (PreparedStatement ps = conn.prepareStatement(statements.archiveManifestExists());
+        ResultSet rs = ps.executeQuery()) {
+      if (!rs.next() || rs.getInt(1) == 0) {
+        return Optional.empty();
+      }
+    }
+
+    Map<Integer, Long> levelCounts = new LinkedHashMap<>();
+    try (PreparedStatement ps = conn.prepareStatement(statements.selectArchiveManifestLevels());
+        ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        levelCounts.put(rs.getInt(1), rs.getLong(2));
+      }
+    }
+
+    try (PreparedStatement ps = conn.prepareStatement(statements.selectArchiveManifest());
+        ResultSet rs = ps.executeQuery()) {
+      if (!rs.next()) {
+        return Optional.empty();
+      }
+      int adder = 1;
+      return Optional.of(
+          new ArchiveManifest(
+              rs.getInt(adder++),
+              rs.getString(adder++),
+              rs.getString(adder++),
+              rs.getString(adder++),
+              rs.getLong(adder++),
+              rs.getLong(adder++),
+              rs.getLong(adder++),
+              rs.getLong(adder++),
+              rs.getLong(adder),
+              levelCounts));
+    }
+  }
+
+  /**
+   * Creates a new manifest for an archive database from its level counts.
+   *
+   * @param conn a connection to the archive database.
+   * @param format the format of the archive.
+   * @param codec the name of the codec used to encode content.
+   * @param dictionaryId the dictionary id used by the codec, or 0.
+   * @return a manifest with a new archive id, sealed now.
+   */
+  public static ArchiveManifest summarize(
+      Connection conn, String format, String codec, long dictionaryId) throws SQLException {
+    long rowCount = 0;
+    long minEpochSecs = 0;
+    long maxEpochSecs = 0;
+    try (PreparedStatement ps =
+            conn.prepareStatement(Statements.instance().archiveManifestSummary());
+        ResultSet rs = ps.executeQuery()) {
+      if (rs.next()) {
+        rowCount = rs.getLong(1);
+        minEpochSecs = rs.getLong(2);
+        maxEpochSecs = rs.getLong(3);
+      }
+    }
+    return new ArchiveManifest(
+        SCHEMA_VERSION,
+        UUID.randomUUID().toString(),
+        format,
+        codec,
+        dictionaryId,
+        rowCount,
+        minEpochSecs,
+        maxEpochSecs,
+        System.currentTimeMillis() / 1000,
+        Collections.emptyMap());
+  }
+
+  /**
+   * Writes the manifest to an archive database, replacing any existing manifest. The level counts
+   * are written by the archiver before the manifest is summarized, and are not written here.
+   *
+   * @param conn a connection to the archive database.
+   */
+  public void write(Connection conn) throws SQLException {
+    Statements statements = Statements.instance();
+    try (PreparedStatement ps = conn.prepareStatement(statements.deleteArchiveManifest())) {
+      ps.executeUpdate();
+    }
+    try (PreparedStatement ps = conn.prepareStatement(statements.insertArchiveManifest())) {
+      int adder = 1;
+      ps.setInt(adder++, schemaVersion);
+      ps.setString(adder++, archiveId);
+      ps.setString(adder++, format);
+      ps.setString(adder++, codec);
+      ps.setLong(adder++, dictionaryId);
+      ps.setLong(adder++, rowCount);
+      ps.setLong(adder++, minEpochSecs);
+      ps.setLong(adder++, maxEpochSecs);
+      ps.setLong(adder, sealedAt);
+      ps.executeUpdate();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ArchiveManifest{"
+        + "archiveId="
+        + archiveId
+        + ", format="
+        + format
+        + ", codec="
+        + codec
+        + ", rowCount="
+        + rowCount
+        + ", minEpochSecs="
+        + minEpochSecs
+        + ", maxEpochSecs="
+        + maxEpochSecs
+        + '}';
+  }
+}
@@ -0,0 +1,148 @@
+package com.tersesystems.blacklite.archive;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A rolling archiver that packs entries into blocks, and encodes each block as a single blob.
+ *
+ * <p>Encoding entries one at a time means the codec starts from scratch on every row, and small
+ * entries get very little benefit out of compression. Packing many entries into an {@link
+ * EntryBlock} and running the codec over the whole block lets it find the redundancy between
+ * entries without needing a trained dictionary.
+ *
+ * <p>Blocks are written to the "entry_blocks" table in the archive database, together with the
+ * timestamp and level ranges of the entries so that readers can skip blocks. With bloom filters
+ * turned on, there is one filter for every block, keyed by the rowid of the block.
+ */
+public class BlockRollingArchiver extends RollingArchiver {
+
+  // Maximum number of entries in a block.
+  private int blockSize = 1000;
+
+  // Maximum number of content bytes in a block.
+  private long blockBytes = 1024 * 1024;
+
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  public void setBlockSize(int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  public long getBlockBytes() {
+    return blockBytes;
+  }
+
+  public void setBlockBytes(long blockBytes) {
+    this.blockBytes = blockBytes;
+  }
+
+  @Override
+  protected void createArchiveSchema(Connection archiveConn) throws SQLException {
+    super.createArchiveSchema(archiveConn);
+    try (Statement stmt = archiveConn.createStatement()) {
+      stmt.execute(statements().createEntryBlocksTable());
+    }
+  }
+
+  @Override
+  protected String getFormat() {
+    return ArchiveManifest.FORMAT_ENTRY_BLOCKS;
+  }
+
+  @Override
+  protected void createIndexes(Connection sealedConn) throws SQLException {
+    super.createIndexes(sealedConn);
+    try (Statement stmt = sealedConn.createStatement()) {
+      stmt.execute(statements().createEntryBlocksIndex());
+    }
+  }
+
+  @Override
+  protected boolean hasArchivedRows(Connection archiveConn) throws SQLException {
+    if (super.hasArchivedRows(archiveConn)) {
+      return true;
+    }
+    try (PreparedStatement ps = archiveConn.prepareStatement(statements().countEntryBlocks());
+        ResultSet rs = ps.executeQuery()) {
+      return rs.next() && rs.getLong(1) > 0;
+    }
+  }
+
+  @Override
+  protected int archiveRows(Connection conn, long rowId) throws SQLException {
+    int archived = 0;
+    EntryBlock.Builder builder = new EntryBlock.Builder();
+    TokenBloomFilter.Builder bloomBuilder = isBloomFilters() ? newBloomFilterBuilder() : null;
+    // Level -> {count, min epoch secs, max epoch secs}, tallied as the entries go by.
+    Map<Integer, long[]> levels = new HashMap<>();
+    PreparedStatement selectStatement = prepareStatement(conn, statements().selectLessThanRowId());
+    PreparedStatement insertStatement = prepareStatement(conn, statements().insertEntryBlock());
+    selectStatement.setLong(1, rowId);
+    try (ResultSet rs = selectStatement.executeQuery()) {
+      while (rs.next()) {
+        byte[] content = rs.getBytes(5);
+        long epochSecs = rs.getLong(2);
+        int level = rs.getInt(4);
+        builder.add(epochSecs, rs.getInt(3), level, content);
+        long[] tally = levels.computeIfAbsent(level, l -> new long[] {0, epochSecs, epochSecs});
+        tally[0]++;
+        tally[1] = Math.min(tally[1], epochSecs);
+        tally[2] = Math.max(tally[2], epochSecs);
+        if (bloomBuilder != null) {
+          bloomBuilder.add(content);
+        }
+        archived++;
+        if (builder.size() >= blockSize || builder.contentBytes() >= blockBytes) {
+          insertBlock(conn, insertStatement, builder.build(), bloomBuilder);
+        }
+      }
+    }
+    if (!builder.isEmpty()) {
+      insertBlock(conn, insertStatement, builder.build(), bloomBuilder);
+    }
+    PreparedStatement levelsStatement =
+        prepareStatement(conn, statements().upsertArchiveManifestLevels());
+    for (Map.Entry<Integer, long[]> entry : levels.entrySet()) {
+      levelsStatement.setInt(1, entry.getKey());
+      levelsStatement.setLong(2, entry.getValue()[0]);
+      levelsStatement.setLong(3, entry.getValue()[1]);
+      levelsStatement.setLong(4, entry.getValue()[2]);
+      levelsStatement.executeUpdate();
+    }
+    return archived;
+  }
+
+  // The entries are packed into blocks, so the levels are tallied as they are archived instead.
+  @Override
+  protected void summarizeLevels(Connection sealedConn) {}
+
+  private void insertBlock(
+      Connection conn,
+      PreparedStatement insertStatement,
+      EntryBlock block,
+      TokenBloomFilter.Builder bloomBuilder)
+      throws SQLException {
+    insertStatement.setLong(1, block.getMinEpochSecs());
+    insertStatement.setLong(2, block.getMaxEpochSecs());
+    insertStatement.setInt(3, block.getMinLevel());
+    insertStatement.setInt(4, block.getMaxLevel());
+    insertStatement.setLong(5, block.getLevelBitmap());
+    insertStatement.setInt(6, block.getNumEntries());
+    final byte[] encoded = getCodec().encode(block.getBytes());
+    insertStatement.setBytes(7, encoded);
+    addArchivedBytes(ROW_OVERHEAD_BYTES + (long) encoded.length);
+    insertStatement.executeUpdate();
+    if (bloomBuilder != null) {
+      long blockRowId = lastInsertRowId(conn);
+      insertBloomFilter(conn, blockRowId, blockRowId, bloomBuilder.build());
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Combines several triggering policies.
+ *
+ * <p>In {@code ANY} mode (the default) the policy triggers when any of the policies triggers, and
+ * in {@code ALL} mode only when all of them trigger.
+ */
+public class CompositeTriggeringPolicy implements TriggeringPolicy {
+
+  public enum Mode {
+    ANY,
+    ALL
+  }
+
+  private final List<TriggeringPolicy> policies = new ArrayList<>();
+
+  private Mode mode = Mode.ANY;
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    for (TriggeringPolicy policy : policies) {
+      policy.initialize(statusReporter);
+    }
+  }
+
+  @Override
+  public void archived(long bytes) {
+    for (TriggeringPolicy policy : policies) {
+      policy.archived(bytes);
+    }
+  }
+
+  @Override
+  public boolean isTriggered(Connection conn) {
+    if (policies.isEmpty()) {
+      return false;
+    }
+    for (TriggeringPolicy policy : policies) {
+      boolean triggered = policy.isTriggered(conn);
+      if (mode == Mode.ANY && triggered) {
+        return true;
+      }
+      if (mode == Mode.ALL && !triggered) {
+        return false;
+      }
+    }
+    return mode == Mode.ALL;
+  }
+
+  @Override
+  public void reset() {
+    for (TriggeringPolicy policy : policies) {
+      policy.reset();
+    }
+  }
+
+  public void addPolicy(TriggeringPolicy policy) {
+    policies.add(policy);
+  }
+
+  public List<TriggeringPolicy> getPolicies() {
+    return Collections.unmodifiableList(policies);
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+}
@@ -0,0 +1,308 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.Entry;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A block of consecutive entries packed into a single blob.
+ *
+ * <p>The block layout is columnar so that the codec sees similar bytes next to each other:
+ *
+ * <ul>
+ *   <li>a version byte and the number of entries,
+ *   <li>timestamps, with epoch seconds delta encoded against the previous entry,
+ *   <li>levels, run-length encoded,
+ *   <li>content, concatenated with a length prefix for each entry.
+ * </ul>
+ *
+ * <p>All integers are written as varints (zigzag for signed values), so a block of entries logged
+ * in the same second costs a couple of bytes per entry before any compression is applied.
+ *
+ * <p>The block also tracks the minimum and maximum epoch seconds and levels, and a bitmap of the
+ * levels it contains, so that blocks can be skipped without being decoded.
+ */
+public final class EntryBlock {
+
+  static final int VERSION = 1;
+
+  private final byte[] bytes;
+  private final int numEntries;
+  private final long minEpochSecs;
+  private final long maxEpochSecs;
+  private final int minLevel;
+  private final int maxLevel;
+  private final long levelBitmap;
+
+  EntryBlock(
+      byte[] bytes,
+      int numEntries,
+      long minEpochSecs,
+      long maxEpochSecs,
+      int minLevel,
+      int maxLevel,
+      long levelBitmap) {
+    this.bytes = bytes;
+    this.numEntries = numEntries;
+    this.minEpochSecs = minEpochSecs;
+    this.maxEpochSecs = maxEpochSecs;
+    this.minLevel = minLevel;
+    this.maxLevel = maxLevel;
+    this.levelBitmap = levelBitmap;
+  }
+
+  /** @return the packed, unencoded bytes of the block. */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  public int getNumEntries() {
+    return numEntries;
+  }
+
+  public long getMinEpochSecs() {
+    return minEpochSecs;
+  }
+
+  public long getMaxEpochSecs() {
+    return maxEpochSecs;
+  }
+
+  public int getMinLevel() {
+    return minLevel;
+  }
+
+  public int getMaxLevel() {
+    return maxLevel;
+  }
+
+  public long getLevelBitmap() {
+    return levelBitmap;
+  }
+
+  /**
+   * Maps a level to its bit in the level bitmap.
+   *
+   * <p>Levels are hashed into 61 buckets, which keeps the logback levels (5000 - 40000) and the
+   * log4j 2 levels (100 - 600) in distinct buckets. Any other level may share a bucket, so a set bit
+   * means the block may contain the level, and a clear bit means it definitely does not.
+   *
+   * @param level the logging level.
+   * @return the bit for the level.
+   */
+  public static long levelBit(int level) {
+    return 1L << Math.floorMod(level, 61);
+  }
+
+  /**
+   * @param levelBitmap the level bitmap of a block.
+   * @param level the logging level.
+   * @return false if the block definitely does not contain the level, true if it may.
+   */
+  public static boolean mayContainLevel(long levelBitmap, int level) {
+    return (levelBitmap & levelBit(level)) != 0;
+  }
+
+  /**
+   * Unpacks the bytes of a block into entries.
+   *
+   * @param bytes the packed, decoded bytes of a block.
+   * @return the entries in the block, in the order they were added. Row ids are not kept.
+   */
+  public static List<Entry> unpack(byte[] bytes) {
+    Reader reader = new Reader(bytes);
+    int version = reader.readVarInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unknown entry block version " + version);
+    }
+    int count = reader.readVarInt();
+    long[] epochSecs = new long[count];
+    int[] nanos = new int[count];
+    int[] levels = new int[count];
+
+    long previous = 0;
+    for (int i = 0; i < count; i++) {
+      previous = previous + reader.readZigZagLong();
+      epochSecs[i] = previous;
+      nanos[i] = reader.readVarInt();
+    }
+
+    int i = 0;
+    while (i < count) {
+      int run = reader.readVarInt();
+      int level = (int) reader.readZigZagLong();
+      Arrays.fill(levels, i, i + run, level);
+      i += run;
+    }
+
+    List<Entry> entries = new ArrayList<>(count);
+    for (int j = 0; j < count; j++) {
+      byte[] content = reader.readBytes(reader.readVarInt());
+      entries.add(new Entry(-1, epochSecs[j], nanos[j], levels[j], content));
+    }
+    return entries;
+  }
+
+  /** Accumulates entries until the block is full. Not thread safe. */
+  public static final class Builder {
+    private long[] epochSecs = new long[64];
+    private int[] nanos = new int[64];
+    private int[] levels = new int[64];
+    private byte[][] contents = new byte[64][];
+    private int size;
+    private long contentBytes;
+
+    public Builder add(long epochSecs, int nanos, int level, byte[] content) {
+      if (size == this.epochSecs.length) {
+        int capacity = size * 2;
+        this.epochSecs = Arrays.copyOf(this.epochSecs, capacity);
+        this.nanos = Arrays.copyOf(this.nanos, capacity);
+        this.levels = Arrays.copyOf(this.levels, capacity);
+        this.contents = Arrays.copyOf(this.contents, capacity);
+      }
+      this.epochSecs[size] = epochSecs;
+      this.nanos[size] = nanos;
+      this.levels[size] = level;
+      this.contents[size] = content;
+      this.contentBytes += content.length;
+      size++;
+      return this;
+    }
+
+    /** @return the number of entries in the builder. */
+    public int size() {
+      return size;
+    }
+
+    /** @return the sum of the content lengths in the builder. */
+    public long contentBytes() {
+      return contentBytes;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    /** Packs the accumulated entries into a block, and resets the builder. */
+    public EntryBlock build() {
+      if (size == 0) {
+        throw new IllegalStateException("Cannot build an empty block");
+      }
+      Writer writer = new Writer((int) Math.min(Integer.MAX_VALUE - 8, contentBytes + size * 8L));
+      writer.writeVarInt(VERSION);
+      writer.writeVarInt(size);
+
+      long minEpochSecs = Long.MAX_VALUE;
+      long maxEpochSecs = Long.MIN_VALUE;
+      long previous = 0;
+      for (int i = 0; i < size; i++) {
+        long secs = epochSecs[i];
+        writer.writeZigZagLong(secs - previous);
+        writer.writeVarInt(nanos[i]);
+        previous = secs;
+        minEpochSecs = Math.min(minEpochSecs, secs);
+        maxEpochSecs = Math.max(maxEpochSecs, secs);
+      }
+
+      int minLevel = Integer.MAX_VALUE;
+      int maxLevel = Integer.MIN_VALUE;
+      long levelBitmap = 0;
+      int i = 0;
+      while (i < size) {
+        int level = levels[i];
+        int run = 1;
+        while (i + run < size && levels[i + run] == level) {
+          run++;
+        }
+        writer.writeVarInt(run);
+        writer.writeZigZagLong(level);
+        minLevel = Math.min(minLevel, level);
+        maxLevel = Math.max(maxLevel, level);
+        levelBitmap |= levelBit(level);
+        i += run;
+      }
+
+      for (int j = 0; j < size; j++) {
+        byte[] content = contents[j];
+        writer.writeVarInt(content.length);
+        writer.write(content, 0, content.length);
+      }
+
+      EntryBlock block =
+          new EntryBlock(
+              writer.toByteArray(),
+              size,
+              minEpochSecs,
+              maxEpochSecs,
+              minLevel,
+              maxLevel,
+              levelBitmap);
+      Arrays.fill(contents, 0, size, null);
+      size = 0;
+      contentBytes = 0;
+      return block;
+    }
+  }
+
+  private static final class Writer extends ByteArrayOutputStream {
+    Writer(int size) {
+      super(size);
+    }
+
+    void writeVarInt(int value) {
+      writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    void writeZigZagLong(long value) {
+      writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeVarLong(long value) {
+      while ((value & ~0x7FL) != 0) {
+        write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+  }
+
+  private static final class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int readVarInt() {
+      return (int) readVarLong();
+    }
+
+    long readZigZagLong() {
+      long value = readVarLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    long readVarLong() {
+      long result = 0;
+      int shift = 0;
+      while (shift < 64) {
+        byte b = bytes[position++];
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+        shift += 7;
+      }
+      throw new IllegalStateException("Malformed varint at position " + position);
+    }
+
+    byte[] readBytes(int length) {
+      byte[] result = Arrays.copyOfRange(bytes, position, position + length);
+      position += length;
+      return result;
+    }
+  }
+}
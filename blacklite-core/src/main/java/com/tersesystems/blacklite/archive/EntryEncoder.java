@@ -0,0 +1,63 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes entries for the {@code encode} SQL function of the archivers.
+ *
+ * <p>SQLite hands the content over as an array and takes the result as an array, but in between
+ * the entry is encoded through {@link Codec#encode(ByteBuffer, ByteBuffer, int)} with a pair of
+ * direct buffers that are reused for every entry, so codecs backed by native code don't allocate
+ * and copy on each call. Codecs that can't tell the largest encoded size are called with the
+ * array instead.
+ *
+ * <p>This is not thread safe, and is only used from the archiving thread.
+ */
+final class EntryEncoder {
+
+  private final Codec codec;
+  private final boolean identity;
+
+  private ByteBuffer src;
+  private ByteBuffer dst;
+
+  EntryEncoder(Codec codec) {
+    this.codec = codec;
+    this.identity = IdentityCodec.NAME.equals(codec.getName());
+  }
+
+  /**
+   * @param content the content of the entry.
+   * @param level the level of the entry.
+   * @return the encoded content.
+   */
+  byte[] encode(byte[] content, int level) {
+    if (content == null || identity) {
+      return codec.encode(content, level);
+    }
+    final int maxSize = codec.maxEncodedSize(content.length);
+    if (maxSize < 0) {
+      return codec.encode(content, level);
+    }
+    src = ensureCapacity(src, content.length);
+    src.put(content).flip();
+    dst = ensureCapacity(dst, maxSize);
+    final int size = codec.encode(src, dst, level);
+    dst.flip();
+    final byte[] encoded = new byte[size];
+    dst.get(encoded);
+    return encoded;
+  }
+
+  // Grows by doubling, so a run of growing entries doesn't allocate a buffer for each one.
+  private static ByteBuffer ensureCapacity(ByteBuffer buffer, int size) {
+    if (buffer == null || buffer.capacity() < size) {
+      final int capacity = buffer == null ? size : Math.max(size, buffer.capacity() * 2);
+      return ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    return buffer;
+  }
+}
@@ -7,24 +7,98 @@ import com.tersesystems.blacklite.codec.Codec;
 import com.tersesystems.blacklite.codec.identity.IdentityCodec;
 
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.sqlite.*;
 
 public class RollingArchiver extends AbstractArchiver implements FileArchiver {
 
+  static final String STANDBY_SUFFIX = ".standby";
+
+  // Roughly what a row of the archive takes besides its content: the record header, the rowid,
+  // the cell pointer and the time and level columns.
+  static final int ROW_OVERHEAD_BYTES = 20;
+
   private String file;
 
+  private boolean asyncRollover = false;
+
+  // The file currently being archived to.  Only differs from the file when rollover is async.
+  private volatile String activeFile;
+
+  // The generation stamped on the active file, see activate().
+  private int activeGeneration;
+
+  // True when the standby file has been created and can be swapped in.
+  private volatile boolean standbyReady;
+
+  private ArchiveMaintenance maintenance;
+
+  // Index expressions to build on sealed archive files.
+  private final List<String> indexes = new ArrayList<>();
+
+  private ArchiveMaintenance sealedFileMaintenance;
+
+  // The last task submitted for a sealed file.  Tasks run in order, so once it is done, no task
+  // has a connection open on a sealed file that the next rollover may rename or delete.
+  private volatile Future<?> lastSealedFileTask;
+
+  private String catalogFile;
+
+  // The renames made by the rolling strategy in the rollover in progress, and the file it rolled
+  // the sealed file over to, which are published to the catalog together once it is done.  Only
+  // used by the thread doing the rollover.
+  private final Map<Path, Path> pendingRenames = new LinkedHashMap<>();
+  private Path pendingRolledFile;
+  private boolean rollingOver;
+
+  private final List<RolloverListener> rolloverListeners = new ArrayList<>();
+
   private Properties properties = archiveSqliteConfig().toProperties();
 
   private Codec codec = new IdentityCodec();
+  private EntryEncoder encoder;
+
+  // The bytes added to the archive by the current archive run, for the triggering policy.
+  private long archivedBytes;
 
   private RollingStrategy rollingStrategy;
 
+  private boolean bloomFilters;
+
+  private int bloomFilterRows = 1000;
+
+  private int bloomBitsPerToken = TokenBloomFilter.DEFAULT_BITS_PER_TOKEN;
+
+  private boolean timeIndex = true;
+
+  private int timeIndexRows = 1000;
+
+  // Collects the tokens of the rows being encoded, only set while rows are being archived.
+  private BloomRows bloomRows;
+
+  // The live connection that the archive database is attached to, or null if not attached.
+  private Connection attachedConn;
+
+  // Prepared statements against the attached archive, only valid while attached.
+  private final Map<String, PreparedStatement> preparedStatements = new HashMap<>();
+
   @Override
   public String getFile() {
     return file;
@@ -34,6 +108,99 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
     this.file = file;
   }
 
+  /**
+   * Returns the file that entries are currently archived to.
+   *
+   * <p>With synchronous rollover this is always the file. With asynchronous rollover, this
+   * alternates between the file and the standby file.
+   */
+  public String getActiveFile() {
+    String active = activeFile;
+    return active != null ? active : file;
+  }
+
+  public boolean isAsyncRollover() {
+    return asyncRollover;
+  }
+
+  /**
+   * If true, rollover does not block archiving.
+   *
+   * <p>A standby archive file is created ahead of time in the background. When the triggering
+   * policy fires, archiving switches over to the standby file and the full file is handed to the
+   * rolling strategy on a background maintenance thread, where renames and deletions take as long
+   * as they need. If the standby is not ready yet, archiving continues into the current file and
+   * the rollover happens on a later run.
+   *
+   * @param asyncRollover true if rollover should happen in the background, false otherwise.
+   */
+  public void setAsyncRollover(boolean asyncRollover) {
+    this.asyncRollover = asyncRollover;
+  }
+
+  /**
+   * Adds an index to build on the archive file after it has been rolled over.
+   *
+   * <p>The live archive file is never indexed, so that archiving stays fast. Once the file is rolled
+   * over and sealed, the indexes are built on a low priority background thread, followed by {@code
+   * ANALYZE} and {@code PRAGMA optimize}.
+   *
+   * @param index the indexed column or expression, i.e. "epoch_secs" or "json_extract(content,
+   *     '$.logger_name')".
+   */
+  public void addIndex(String index) {
+    indexes.add(index);
+  }
+
+  /**
+   * Adds indexes from a list of expressions separated by semicolons, as expression indexes can
+   * contain commas, i.e. "epoch_secs;json_extract(content, '$.logger_name')".
+   *
+   * @param indexes the index expressions, or null for none.
+   */
+  public void setIndexes(String indexes) {
+    if (indexes == null) {
+      return;
+    }
+    for (String index : indexes.split(";")) {
+      if (!index.trim().isEmpty()) {
+        addIndex(index.trim());
+      }
+    }
+  }
+
+  public List<String> getIndexes() {
+    return Collections.unmodifiableList(indexes);
+  }
+
+  public String getCatalogFile() {
+    return catalogFile;
+  }
+
+  /**
+   * Sets the catalog database. After every rollover, the catalog is updated with the rolled file
+   * and the archives the rolling strategy renamed, in a single transaction, so that readers can
+   * find archives by time range, and never see the archives part way through a rollover.
+   *
+   * @param catalogFile the path to the catalog sqlite database.
+   */
+  public void setCatalogFile(String catalogFile) {
+    this.catalogFile = catalogFile;
+  }
+
+  /**
+   * Adds a listener that is told about every archive file once it has been sealed and rolled over.
+   *
+   * @param listener the listener, i.e. a shipper that uploads archives to remote storage.
+   */
+  public void addRolloverListener(RolloverListener listener) {
+    rolloverListeners.add(Objects.requireNonNull(listener, "Null listener"));
+  }
+
+  public List<RolloverListener> getRolloverListeners() {
+    return Collections.unmodifiableList(rolloverListeners);
+  }
+
   public Properties getProperties() {
     return properties;
   }
@@ -46,10 +213,89 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
     return codec;
   }
 
+  /**
+   * Counts bytes added to the archive by an archive run that doesn't go through the {@code encode}
+   * SQL function, so that the triggering policy can keep track of the archive size.
+   *
+   * @param bytes the number of bytes added.
+   */
+  protected void addArchivedBytes(long bytes) {
+    archivedBytes += bytes;
+  }
+
+  /** @return the encoder for the {@code encode} SQL function, set when initialized. */
+  EntryEncoder encoder() {
+    return encoder;
+  }
+
   public void setCodec(Codec codec) {
     this.codec = codec;
   }
 
+  public boolean isBloomFilters() {
+    return bloomFilters;
+  }
+
+  /**
+   * If true, archived entries are covered by {@link TokenBloomFilter}s in the "entry_blooms" table
+   * of the archive, so that readers searching for some text only decode the entries that may
+   * contain it.
+   *
+   * @param bloomFilters true if filters should be written, false otherwise.
+   */
+  public void setBloomFilters(boolean bloomFilters) {
+    this.bloomFilters = bloomFilters;
+  }
+
+  public int getBloomFilterRows() {
+    return bloomFilterRows;
+  }
+
+  /**
+   * @param bloomFilterRows the most rows each filter covers. Filters don't span archive runs, so
+   *     a filter may cover fewer rows.
+   */
+  public void setBloomFilterRows(int bloomFilterRows) {
+    this.bloomFilterRows = bloomFilterRows;
+  }
+
+  public int getBloomBitsPerToken() {
+    return bloomBitsPerToken;
+  }
+
+  /** @param bloomBitsPerToken the bits in a filter for every distinct token it contains. */
+  public void setBloomBitsPerToken(int bloomBitsPerToken) {
+    this.bloomBitsPerToken = bloomBitsPerToken;
+  }
+
+  public boolean isTimeIndex() {
+    return timeIndex;
+  }
+
+  /**
+   * If true, the range of timestamps of every {@code timeIndexRows} archived entries is written to
+   * the "entry_times" table of the archive, so that readers asking for a time range only read the
+   * rows that can be in it.  This is written when rows are archived, so there is no index on the
+   * insert path.  It is only written for entries, as blocks already have their time range.
+   *
+   * @param timeIndex true if the time index should be written, false otherwise.
+   */
+  public void setTimeIndex(boolean timeIndex) {
+    this.timeIndex = timeIndex;
+  }
+
+  public int getTimeIndexRows() {
+    return timeIndexRows;
+  }
+
+  /**
+   * @param timeIndexRows the most rows each time index entry covers. Entries don't span archive
+   *     runs, so an entry may cover fewer rows.
+   */
+  public void setTimeIndexRows(int timeIndexRows) {
+    this.timeIndexRows = timeIndexRows;
+  }
+
   public RollingStrategy getRollingStrategy() {
     return rollingStrategy;
   }
@@ -63,15 +309,6 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
     statusReporter.addInfo("RollingArchiver: archive start ");
     ArchiveResult result;
     try {
-      Function codecFunction =
-        new Function() {
-          @Override
-          protected void xFunc() throws SQLException {
-            result(codec.encode(value_blob(0)));
-          }
-        };
-      // Register the codec as a custom SQLite function
-      Function.create(conn, "encode", codecFunction);
       result = execute(conn);
     } catch (Exception e) {
       result = new ArchiveResult.Failure(e);
@@ -92,14 +329,248 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
 
   @Override
   public void close() throws Exception {
-    codec.close();
+    try {
+      if (attachedConn != null && !attachedConn.isClosed()) {
+        detach(attachedConn);
+      }
+      if (maintenance != null) {
+        maintenance.close();
+      }
+      if (sealedFileMaintenance != null) {
+        sealedFileMaintenance.close();
+      }
+      for (RolloverListener listener : rolloverListeners) {
+        listener.close();
+      }
+    } finally {
+      codec.close();
+    }
   }
 
   @Override
   public void initialize(StatusReporter statusReporter) throws SQLException {
     Objects.requireNonNull(codec, "Null codec");
     codec.initialize(statusReporter);
+    this.encoder = new EntryEncoder(codec);
     this.statusReporter = statusReporter;
+    if (getTriggeringPolicy() != null) {
+      getTriggeringPolicy().initialize(statusReporter);
+    }
+
+    for (RolloverListener listener : rolloverListeners) {
+      try {
+        listener.initialize(statusReporter);
+      } catch (Exception e) {
+        throw new SQLException("Cannot initialize rollover listener " + listener, e);
+      }
+    }
+    if (!indexes.isEmpty()) {
+      sealedFileMaintenance =
+          new ArchiveMaintenance(
+              "blacklite-sealed-file-maintenance", Thread.MIN_PRIORITY, statusReporter);
+    }
+    if (asyncRollover && file != null) {
+      initializeStandby();
+    }
+  }
+
+  @Override
+  public void rolledOver(String rolledFile) {
+    if (sealedFileMaintenance != null) {
+      lastSealedFileTask =
+          sealedFileMaintenance.submit("index " + rolledFile, () -> indexSealedFile(rolledFile));
+    }
+    if (catalogFile != null) {
+      pendingRolledFile = Paths.get(rolledFile);
+      if (!rollingOver) {
+        publishToCatalog();
+      }
+    }
+    for (RolloverListener listener : rolloverListeners) {
+      try {
+        listener.rolledOver(rolledFile);
+      } catch (RuntimeException e) {
+        statusReporter.addError("RollingArchiver: Rollover listener failed on " + rolledFile, e);
+      }
+    }
+  }
+
+  @Override
+  public void renamed(String from, String to) {
+    if (catalogFile != null) {
+      pendingRenames.put(Paths.get(from), Paths.get(to));
+      if (!rollingOver) {
+        publishToCatalog();
+      }
+    }
+  }
+
+  /**
+   * Publishes the renames and rolled file of a rollover to the catalog in one transaction, on the
+   * thread that did the renames, so the catalog is up to date before the next rollover starts.
+   * Only the rolled file is opened, so the cost doesn't grow with the number of archives.
+   */
+  private void publishToCatalog() {
+    if (pendingRenames.isEmpty() && pendingRolledFile == null) {
+      return;
+    }
+    final Map<Path, Path> renames = new LinkedHashMap<>(pendingRenames);
+    final Path rolledFile = pendingRolledFile;
+    pendingRenames.clear();
+    pendingRolledFile = null;
+    try {
+      new ArchiveCatalog(catalogFile).publish(renames, rolledFile);
+    } catch (SQLException e) {
+      statusReporter.addError("RollingArchiver: Cannot update catalog " + catalogFile, e);
+    }
+  }
+
+  /**
+   * Writes the manifest into an archive file that is about to be rolled over.
+   *
+   * @param sealedFile the archive file, which must not be written to again.
+   */
+  void seal(String sealedFile) {
+    String sealedUrl = "jdbc:sqlite:" + Paths.get(sealedFile);
+    try (Connection sealedConn = JDBC.createConnection(sealedUrl, getProperties())) {
+      createArchiveSchema(sealedConn);
+      summarizeLevels(sealedConn);
+      ArchiveManifest manifest =
+          ArchiveManifest.summarize(
+              sealedConn, getFormat(), codec.getName(), codec.getDictionaryId());
+      manifest.write(sealedConn);
+    } catch (SQLException e) {
+      statusReporter.addError("RollingArchiver: Cannot write manifest to " + sealedFile, e);
+    }
+  }
+
+  /**
+   * Counts the entries for each level into the manifest of an archive that is being sealed. This
+   * is only done once per archive file, rather than on every archive run.
+   *
+   * @param sealedConn a connection to the archive database.
+   */
+  protected void summarizeLevels(Connection sealedConn) throws SQLException {
+    try (Statement st = sealedConn.createStatement()) {
+      st.execute(statements().rebuildArchiveManifestLevels());
+    }
+  }
+
+  /** @return the format of the archive, as recorded in the manifest. */
+  protected String getFormat() {
+    return ArchiveManifest.FORMAT_ENTRIES;
+  }
+
+  private void indexSealedFile(String sealedFile) {
+    String sealedUrl = "jdbc:sqlite:" + Paths.get(sealedFile);
+    try (Connection sealedConn = JDBC.createConnection(sealedUrl, getProperties())) {
+      final long start = System.currentTimeMillis();
+      createIndexes(sealedConn);
+      try (Statement st = sealedConn.createStatement()) {
+        st.execute(statements().analyze());
+        st.execute(statements().optimize());
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      statusReporter.addInfo("RollingArchiver: indexed " + sealedFile + " in " + elapsed + "ms");
+    } catch (SQLException e) {
+      statusReporter.addError("RollingArchiver: Cannot index " + sealedFile, e);
+    }
+  }
+
+  /**
+   * Creates the configured indexes on a sealed archive database.
+   *
+   * @param sealedConn a connection to the sealed archive database.
+   */
+  protected void createIndexes(Connection sealedConn) throws SQLException {
+    try (Statement st = sealedConn.createStatement()) {
+      for (String index : indexes) {
+        st.execute(String.format(statements().createIndexFormat(), indexName(index), index));
+      }
+    }
+  }
+
+  /**
+   * Rolls over a sealed file, once the indexing of the last rolled file is done, and publishes the
+   * result to the catalog.
+   *
+   * <p>The rolling strategy may rename or delete the last rolled file, so it can't run while a
+   * background task has a connection open on it. With synchronous rollover this waits on the
+   * archiving thread, so a rollover that comes round before the last file has been indexed is
+   * held up until it has.
+   */
+  void rollover(RollableFile sealedFile) {
+    final Future<?> task = lastSealedFileTask;
+    if (task != null) {
+      try {
+        task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        // Already reported by the maintenance thread.
+      }
+    }
+    rollingOver = true;
+    try {
+      rollingStrategy.rollover(sealedFile);
+    } finally {
+      rollingOver = false;
+      publishToCatalog();
+    }
+  }
+
+  /**
+   * Names an index after a digest of its expression, so that the same expression always gets the
+   * same name, and different expressions never share one.
+   */
+  static String indexName(String index) {
+    try {
+      final byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(index.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder sb = new StringBuilder("entries_idx_");
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // Every JVM has SHA-256.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private void initializeStandby() throws SQLException {
+    // Pick up where the last run left off: the file with the latest generation is the active one.
+    final String standby = file + STANDBY_SUFFIX;
+    final int primaryGeneration = readGeneration(file);
+    final int standbyGeneration = readGeneration(standby);
+    if (standbyGeneration > primaryGeneration) {
+      activeFile = standby;
+      activeGeneration = standbyGeneration;
+    } else {
+      activeFile = file;
+      activeGeneration = primaryGeneration;
+    }
+
+    maintenance = new ArchiveMaintenance("blacklite-archive-maintenance", statusReporter);
+    final String standbyFile = getStandbyFile();
+    maintenance.submit(
+        "prepare " + standbyFile,
+        () -> {
+          // A full standby file means the last run exited before it could be rolled over.
+          if (hasArchivedRows(standbyFile)) {
+            seal(standbyFile);
+            rollover(new SealedFile(standbyFile));
+          }
+          prepareStandby(standbyFile);
+        });
+  }
+
+  boolean isStandbyReady() {
+    return standbyReady;
+  }
+
+  String getStandbyFile() {
+    return file.equals(getActiveFile()) ? file + STANDBY_SUFFIX : file;
   }
 
   /**
@@ -109,6 +580,10 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
    *
    * <p>Because the archive database is append-only and inserts in batches, this keeps the archive
    * database down to near flat-file level efficiency.
+   *
+   * <p>The archive database stays attached to the live connection between runs, so the schema and
+   * prepared statements are only set up once per archive file. It is detached before rollover, and
+   * attached again on the next run.
    */
   int doArchive(Connection conn) throws SQLException {
     // XXX Better logic that can be driven by configuration here.
@@ -125,31 +600,16 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
       return 0;
     }
 
-    final Path archivePath = Paths.get(getFile());
-
-    // Create the archive database if it doesn't already exist
-    String archiveUrl = "jdbc:sqlite:" + archivePath;
-    try (Connection archiveConn = JDBC.createConnection(archiveUrl, getProperties())) {
-      try (Statement stmt = archiveConn.createStatement()) {
-        stmt.execute(statements().createEntriesTable());
-        stmt.execute(statements().createEntriesView());
-      }
-    }
+    attach(conn);
+    codec.archiveBacklog(Math.max(0, numRows(conn) - archiveAfterRows));
 
     int inserted = 0;
     boolean success = false;
+    boolean triggered = false;
+    boolean rollover = false;
+    archivedBytes = 0;
     try {
-      try (Statement st = conn.createStatement()) {
-        String attach = String.format(statements().attachFormat(), archivePath);
-        st.execute(attach);
-      }
-
-      // Insert from LIVE to ARCHIVE using custom SQL encode function here.
-      // Delete from LIVE using the same critera.
-      try (PreparedStatement insertStatement = conn.prepareStatement(statements().archive())) {
-        insertStatement.setLong(1, rowId);
-        inserted = insertStatement.executeUpdate();
-      }
+      inserted = archiveRows(conn, rowId);
 
       int deleted = deleteFromLive(conn, rowId);
       // statusReporter.addInfo(String.format("Archived %s rows to %s", inserted, archivePath));
@@ -165,24 +625,386 @@ public class RollingArchiver extends AbstractArchiver implements FileArchiver {
       // https://stackoverflow.com/questions/27224104/sqlite-using-one-file-vs-many-files
       final TriggeringPolicy triggeringPolicy = getTriggeringPolicy();
       if (triggeringPolicy != null && rollingStrategy != null) {
-        if (triggeringPolicy.isTriggered(conn)) {
-          // XXX should add an option to index timestamp/level columns on rollover
-          rollingStrategy.rollover(this);
+        if (inserted > 0) {
+          triggeringPolicy.archived(archivedBytes);
         }
+        triggered = triggeringPolicy.isTriggered(conn);
       }
+      // Keep archiving to the current file until the standby is ready.
+      rollover = triggered && (!asyncRollover || standbyReady);
       success = true;
     } finally {
       if (success) conn.commit();
       else conn.rollback();
 
-      try (Statement st = conn.createStatement()) {
-        st.execute(statements().detach());
+      // Start from a clean slate on the next run if anything went wrong.
+      if (!success || rollover) {
+        detach(conn);
+      }
+    }
+
+    if (rollover) {
+      if (asyncRollover) {
+        rolloverAsync();
+      } else {
+        seal(getActiveFile());
+        rollover(this);
+      }
+      getTriggeringPolicy().reset();
+    } else if (triggered) {
+      statusReporter.addInfo("RollingArchiver: standby file not ready, delaying rollover");
+    }
+
+    return inserted;
+  }
+
+  /**
+   * Swaps the standby file in as the active file, and rolls over the sealed file in the
+   * background. The sealed file is detached and will not be written to again, so the rolling
+   * strategy can take as long as it needs.
+   */
+  private void rolloverAsync() throws SQLException {
+    final String sealedFile = getActiveFile();
+    final String standbyFile = getStandbyFile();
+    activate(standbyFile);
+    activeFile = standbyFile;
+    standbyReady = false;
+
+    maintenance.submit(
+        "rollover " + sealedFile,
+        () -> {
+          try {
+            seal(sealedFile);
+            rollover(new SealedFile(sealedFile));
+          } finally {
+            // The sealed file's name becomes the next standby.
+            prepareStandby(sealedFile);
+          }
+        });
+  }
+
+  /**
+   * Stamps the file with the next generation before it becomes the active file, so that the next
+   * run can tell which of the two files was active without relying on modification times.  The
+   * generation is kept in the file's {@code user_version}, so it is written atomically with the
+   * file itself.
+   */
+  private void activate(String nextFile) throws SQLException {
+    final int generation = activeGeneration + 1;
+    String url = "jdbc:sqlite:" + Paths.get(nextFile);
+    try (Connection conn = JDBC.createConnection(url, getProperties());
+        Statement st = conn.createStatement()) {
+      st.execute(String.format(statements().archiveGenerationUpdateFormat(), generation));
+    }
+    activeGeneration = generation;
+  }
+
+  /** @return the generation of the archive file, or 0 if it doesn't exist or is not stamped. */
+  private int readGeneration(String archiveFile) throws SQLException {
+    if (!Files.exists(Paths.get(archiveFile))) {
+      return 0;
+    }
+    String url = "jdbc:sqlite:" + Paths.get(archiveFile);
+    try (Connection conn = JDBC.createConnection(url, getProperties());
+        Statement st = conn.createStatement();
+        ResultSet rs = st.executeQuery(statements().archiveGeneration())) {
+      return rs.next() ? rs.getInt(1) : 0;
+    }
+  }
+
+  private void prepareStandby(String standbyFile) {
+    String standbyUrl = "jdbc:sqlite:" + Paths.get(standbyFile);
+    try (Connection standbyConn = JDBC.createConnection(standbyUrl, getProperties())) {
+      createArchiveSchema(standbyConn);
+      standbyReady = true;
+    } catch (SQLException e) {
+      statusReporter.addError("RollingArchiver: Cannot create standby file " + standbyFile, e);
+    }
+  }
+
+  private boolean hasArchivedRows(String archiveFile) {
+    if (!Files.exists(Paths.get(archiveFile))) {
+      return false;
+    }
+    String archiveUrl = "jdbc:sqlite:" + Paths.get(archiveFile);
+    try (Connection archiveConn = JDBC.createConnection(archiveUrl, getProperties())) {
+      createArchiveSchema(archiveConn);
+      return hasArchivedRows(archiveConn);
+    } catch (SQLException e) {
+      statusReporter.addError("RollingArchiver: Cannot read " + archiveFile, e);
+      return false;
+    }
+  }
+
+  /**
+   * @param archiveConn a connection to an archive database.
+   * @return true if the archive database contains archived entries.
+   */
+  protected boolean hasArchivedRows(Connection archiveConn) throws SQLException {
+    return numRows(archiveConn) > 0;
+  }
+
+  /**
+   * Attaches the archive database to the live connection, creating the schema if necessary. Does
+   * nothing if the archive is already attached to this connection.
+   */
+  void attach(Connection conn) throws SQLException {
+    if (attachedConn == conn) {
+      return;
+    }
+    if (attachedConn != null && !attachedConn.isClosed()) {
+      detach(attachedConn);
+    }
+
+    final Path archivePath = Paths.get(getActiveFile());
+
+    // Create the archive database if it doesn't already exist
+    String archiveUrl = "jdbc:sqlite:" + archivePath;
+    try (Connection archiveConn = JDBC.createConnection(archiveUrl, getProperties())) {
+      createArchiveSchema(archiveConn);
+    }
+
+    Function codecFunction =
+      new Function() {
+        @Override
+        protected void xFunc() throws SQLException {
+          byte[] content = value_blob(0);
+          if (bloomRows != null) {
+            bloomRows.add(content);
+          }
+          final byte[] encoded = encoder.encode(content, value_int(1));
+          archivedBytes += ROW_OVERHEAD_BYTES + (encoded == null ? 0 : encoded.length);
+          result(encoded);
+        }
+      };
+    // Register the codec as a custom SQLite function
+    Function.create(conn, "encode", codecFunction);
+
+    try (Statement st = conn.createStatement()) {
+      String attach = String.format(statements().attachFormat(), archivePath);
+      st.execute(attach);
+    }
+    attachedConn = conn;
+  }
+
+  /** Closes the prepared statements and detaches the archive database from the live connection. */
+  void detach(Connection conn) throws SQLException {
+    try {
+      for (PreparedStatement ps : preparedStatements.values()) {
+        ps.close();
       }
+    } finally {
+      preparedStatements.clear();
+      attachedConn = null;
+    }
+    try (Statement st = conn.createStatement()) {
+      st.execute(statements().detach());
     }
+  }
+
+  /**
+   * Returns a prepared statement against the attached archive database, preparing it if needed.
+   *
+   * <p>The statement is cached until the archive is detached, and should not be closed by the
+   * caller.
+   *
+   * @param conn the live connection, with the archive database attached as "archive".
+   * @param sql the SQL statement.
+   * @return the prepared statement.
+   */
+  protected PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
+    PreparedStatement ps = preparedStatements.get(sql);
+    if (ps == null) {
+      ps = conn.prepareStatement(sql);
+      preparedStatements.put(sql, ps);
+    }
+    return ps;
+  }
 
+  @Override
+  protected int deleteFromLive(Connection conn, long rowId) throws SQLException {
+    PreparedStatement deleteStatement = prepareStatement(conn, statements().deleteLessThanRowId());
+    deleteStatement.setLong(1, rowId);
+    return deleteStatement.executeUpdate();
+  }
+
+  /**
+   * Creates the tables in the archive database, if they don't already exist.
+   *
+   * @param archiveConn a connection to the archive database.
+   */
+  protected void createArchiveSchema(Connection archiveConn) throws SQLException {
+    try (Statement stmt = archiveConn.createStatement()) {
+      stmt.execute(statements().createEntriesTable());
+      stmt.execute(statements().createEntriesView());
+      stmt.execute(statements().createArchiveManifest());
+      stmt.execute(statements().createArchiveManifestLevels());
+      if (bloomFilters) {
+        stmt.execute(statements().createEntryBloomsTable());
+      }
+      if (isTimeIndexed()) {
+        stmt.execute(statements().createEntryTimesTable());
+      }
+    }
+  }
+
+  /**
+   * Copies rows from the live database into the attached archive database.
+   *
+   * <p>The rows are not deleted from the live database here.
+   *
+   * @param conn the live connection, with the archive database attached as "archive".
+   * @param rowId rows with a row id less than or equal to this are archived.
+   * @return the number of live rows that were archived.
+   */
+  protected int archiveRows(Connection conn, long rowId) throws SQLException {
+    // Insert from LIVE to ARCHIVE using custom SQL encode function here.
+    PreparedStatement insertStatement = prepareStatement(conn, statements().archive());
+    insertStatement.setLong(1, rowId);
+    if (!bloomFilters) {
+      int inserted = insertStatement.executeUpdate();
+      if (inserted > 0 && isTimeIndexed()) {
+        insertTimeIndex(conn, lastInsertRowId(conn) - inserted + 1);
+      }
+      return inserted;
+    }
+
+    // The encode function sees the rows in the order they are inserted, so the filters can be
+    // matched up with the new rowids afterwards.
+    int inserted;
+    BloomRows rows = new BloomRows();
+    bloomRows = rows;
+    try {
+      inserted = insertStatement.executeUpdate();
+    } finally {
+      bloomRows = null;
+    }
+    List<TokenBloomFilter> filters = rows.finish();
+    if (inserted == 0) {
+      return inserted;
+    }
+    // Inserting the filters changes the last rowid, so work out the archived rows first.
+    long minRowId = lastInsertRowId(conn) - inserted + 1;
+    if (rows.count == inserted) {
+      for (int i = 0; i < filters.size(); i++) {
+        long start = minRowId + (long) i * bloomFilterRows;
+        long end = Math.min(start + bloomFilterRows, minRowId + inserted) - 1;
+        insertBloomFilter(conn, start, end, filters.get(i));
+      }
+    } else {
+      statusReporter.addWarn(
+          "RollingArchiver: encoded " + rows.count + " rows but archived " + inserted
+              + ", not writing bloom filters");
+    }
+    if (isTimeIndexed()) {
+      insertTimeIndex(conn, minRowId);
+    }
     return inserted;
   }
 
+  /** @return a builder for a filter, with the configured bits per token. */
+  protected TokenBloomFilter.Builder newBloomFilterBuilder() {
+    return new TokenBloomFilter.Builder(bloomBitsPerToken);
+  }
+
+  /**
+   * Writes a filter for a range of rows into the attached archive database.
+   *
+   * @param conn the live connection, with the archive database attached as "archive".
+   * @param minRowId the first rowid the filter covers.
+   * @param maxRowId the last rowid the filter covers.
+   * @param filter the filter.
+   */
+  protected void insertBloomFilter(
+      Connection conn, long minRowId, long maxRowId, TokenBloomFilter filter) throws SQLException {
+    PreparedStatement ps = prepareStatement(conn, statements().insertEntryBloom());
+    ps.setLong(1, minRowId);
+    ps.setLong(2, maxRowId);
+    ps.setInt(3, filter.getNumHashes());
+    ps.setBytes(4, filter.getBits());
+    ps.executeUpdate();
+  }
+
+  /** @return true if the time index is written, which is only done for entries. */
+  protected boolean isTimeIndexed() {
+    return timeIndex && ArchiveManifest.FORMAT_ENTRIES.equals(getFormat());
+  }
+
+  /**
+   * Writes the time ranges of the rows just archived into the attached archive database, in runs
+   * of {@code timeIndexRows} rows.
+   *
+   * @param conn the live connection, with the archive database attached as "archive".
+   * @param minRowId the first rowid archived in this run.
+   */
+  protected void insertTimeIndex(Connection conn, long minRowId) throws SQLException {
+    PreparedStatement ps = prepareStatement(conn, statements().insertEntryTimes());
+    ps.setLong(1, minRowId);
+    ps.setLong(2, minRowId);
+    ps.setInt(3, timeIndexRows);
+    ps.executeUpdate();
+  }
+
+  /** @return the rowid of the last row inserted on the connection. */
+  protected long lastInsertRowId(Connection conn) throws SQLException {
+    PreparedStatement ps = prepareStatement(conn, statements().lastInsertRowId());
+    try (ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  /** Builds a filter for every {@code bloomFilterRows} rows as they are encoded. */
+  private final class BloomRows {
+    private final List<TokenBloomFilter> filters = new ArrayList<>();
+    private TokenBloomFilter.Builder builder = newBloomFilterBuilder();
+    private int rowsInFilter;
+    private int count;
+
+    void add(byte[] content) {
+      if (content != null) {
+        builder.add(content);
+      }
+      count++;
+      if (++rowsInFilter == bloomFilterRows) {
+        filters.add(builder.build());
+        rowsInFilter = 0;
+      }
+    }
+
+    List<TokenBloomFilter> finish() {
+      if (rowsInFilter > 0) {
+        filters.add(builder.build());
+        rowsInFilter = 0;
+      }
+      return filters;
+    }
+  }
+
+  /** Presents a sealed archive file to the rolling strategy. */
+  private final class SealedFile implements RollableFile {
+    private final String sealedFile;
+
+    SealedFile(String sealedFile) {
+      this.sealedFile = sealedFile;
+    }
+
+    @Override
+    public String getFile() {
+      return sealedFile;
+    }
+
+    @Override
+    public void rolledOver(String rolledFile) {
+      RollingArchiver.this.rolledOver(rolledFile);
+    }
+
+    @Override
+    public void renamed(String from, String to) {
+      RollingArchiver.this.renamed(from, to);
+    }
+  }
+
   SQLiteConfig archiveSqliteConfig() {
     SQLiteConfig config = new SQLiteConfig();
     config.setApplicationId(APPLICATION_ID);
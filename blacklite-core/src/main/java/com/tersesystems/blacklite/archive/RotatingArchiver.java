@@ -0,0 +1,250 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.EntryStore;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import org.sqlite.Function;
+import org.sqlite.JDBC;
+
+/**
+ * Archives by turning the whole live database into an archive file, instead of copying rows.
+ *
+ * <p>Once the live database holds more than {@code archiveAfterRows} rows, the entry store moves
+ * the live database to the archive file as it is, and carries on with a standby live database that
+ * was prepared ahead of time. The writer only waits for a commit and a few renames, and no rows are
+ * copied out of or deleted from the live database.
+ *
+ * <p>The rotated file is finished on a background thread: bloom filters and the time index are
+ * written if they are turned on, the entries are encoded in place with the codec and the manifest
+ * is written, the file is taken out of WAL mode and vacuumed, and the file is handed to the rolling
+ * strategy. Rotation waits until the rolling strategy is done and a new standby is ready, so the
+ * archive file is always free for the next rotation.
+ *
+ * <p>The rotated file is still in WAL mode when it is encoded, so the in-place update of every
+ * row goes through the WAL, which grows to about the size of the encoded entries until it is
+ * checkpointed when the file leaves WAL mode.  Leave room for roughly twice the size of the live
+ * database next to the archive file.
+ *
+ * <p>The entry store marks the live database as rotated in the same commit as the rotation, and
+ * only marked files are encoded.  If there is a file at the archive path on startup, it is finished
+ * if it is marked, and otherwise it is handed to the rolling strategy as it is, as it may have been
+ * left by another archiver and already be encoded.
+ *
+ * <p>The triggering policy and asynchronous rollover settings are not used, as every rotation
+ * produces a sealed file.
+ */
+public class RotatingArchiver extends RollingArchiver {
+
+  private ArchiveMaintenance rotation;
+
+  // True from rotation until the rotated file has been rolled over and a new standby is ready.
+  private volatile boolean rotating;
+
+  @Override
+  public ArchiveResult archive(Connection conn) {
+    try {
+      if (!shouldArchive(conn)) {
+        return ArchiveResult.NoOp.instance;
+      }
+      if (rotating) {
+        statusReporter.addInfo("RotatingArchiver: last file not rolled over, delaying rotation");
+        return ArchiveResult.NoOp.instance;
+      }
+      final String rotatedFile = getFile();
+      final long rows = numRows(conn);
+      getEntryStore().rotate(rotatedFile);
+      rotating = true;
+      rotation.submit("rotate " + rotatedFile, () -> rollover(rotatedFile));
+      return new ArchiveResult.Success((int) rows);
+    } catch (Exception e) {
+      return new ArchiveResult.Failure(e);
+    }
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) throws SQLException {
+    super.initialize(statusReporter);
+    Objects.requireNonNull(getFile(), "Null file");
+    Objects.requireNonNull(getRollingStrategy(), "Null rollingStrategy");
+    final EntryStore entryStore = Objects.requireNonNull(getEntryStore(), "Null entryStore");
+    if (!entryStore.supportsRotation()) {
+      throw new IllegalStateException(
+          "RotatingArchiver needs an entry store that supports rotation, "
+              + entryStore.getClass().getName()
+              + " does not");
+    }
+
+    rotation = new ArchiveMaintenance("blacklite-rotation", statusReporter);
+    final String file = getFile();
+    if (Files.exists(Paths.get(file))) {
+      // The last run exited before the rotated file could be rolled over.
+      rotating = true;
+      rotation.submit("rotate " + file, () -> rollover(file));
+    } else {
+      rotation.submit("prepare standby", this::prepareLiveStandby);
+    }
+  }
+
+  boolean isRotating() {
+    return rotating;
+  }
+
+  private void rollover(String rotatedFile) {
+    try {
+      finish(rotatedFile);
+    } catch (SQLException e) {
+      // Leave the file where it is, and stop rotating until the next start retries it.
+      statusReporter.addError("RotatingArchiver: Cannot finish " + rotatedFile, e);
+      return;
+    }
+    try {
+      rollover(this);
+    } finally {
+      prepareLiveStandby();
+      rotating = false;
+    }
+  }
+
+  /** Turns a rotated live database into a sealed archive. */
+  private void finish(String rotatedFile) throws SQLException {
+    final long start = System.currentTimeMillis();
+    String rotatedUrl = "jdbc:sqlite:" + Paths.get(rotatedFile);
+    try (Connection rotatedConn = JDBC.createConnection(rotatedUrl, getProperties())) {
+      if (!ArchiveManifest.read(rotatedConn).isPresent()) {
+        if (!isRotated(rotatedConn)) {
+          statusReporter.addWarn(
+              "RotatingArchiver: "
+                  + rotatedFile
+                  + " was not rotated from the live database, rolling it over as it is");
+          return;
+        }
+        // Encode and seal in one transaction, so entries are never encoded twice.
+        rotatedConn.setAutoCommit(false);
+        createArchiveSchema(rotatedConn);
+        if (isBloomFilters()) {
+          insertBloomFilters(rotatedConn);
+        }
+        if (isTimeIndexed()) {
+          try (PreparedStatement ps =
+              rotatedConn.prepareStatement(statements().insertSealedEntryTimes())) {
+            ps.setInt(1, getTimeIndexRows());
+            ps.executeUpdate();
+          }
+        }
+        encode(rotatedConn);
+        final Codec codec = getCodec();
+        ArchiveManifest.summarize(
+                rotatedConn, getFormat(), codec.getName(), codec.getDictionaryId())
+            .write(rotatedConn);
+        try (Statement st = rotatedConn.createStatement()) {
+          st.execute(statements().dropRotationMarker());
+        }
+        rotatedConn.commit();
+        rotatedConn.setAutoCommit(true);
+      }
+      try (Statement st = rotatedConn.createStatement()) {
+        st.execute(statements().journalModeDelete());
+        st.execute(statements().vacuum());
+      }
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    statusReporter.addInfo("RotatingArchiver: finished " + rotatedFile + " in " + elapsed + "ms");
+  }
+
+  private boolean isRotated(Connection rotatedConn) throws SQLException {
+    try (PreparedStatement ps = rotatedConn.prepareStatement(statements().rotationMarkerExists());
+        ResultSet rs = ps.executeQuery()) {
+      return rs.next() && rs.getInt(1) > 0;
+    }
+  }
+
+  // Reads the entries before they are encoded, in runs of bloomFilterRows rows.
+  private void insertBloomFilters(Connection rotatedConn) throws SQLException {
+    final int filterRows = getBloomFilterRows();
+    try (PreparedStatement select =
+            rotatedConn.prepareStatement(statements().selectEntryContents());
+        PreparedStatement insert =
+            rotatedConn.prepareStatement(statements().insertSealedEntryBloom());
+        ResultSet rs = select.executeQuery()) {
+      TokenBloomFilter.Builder builder = newBloomFilterBuilder();
+      long minRowId = 0;
+      long maxRowId = 0;
+      int rows = 0;
+      while (rs.next()) {
+        maxRowId = rs.getLong(1);
+        if (rows == 0) {
+          minRowId = maxRowId;
+        }
+        byte[] content = rs.getBytes(2);
+        if (content != null) {
+          builder.add(content);
+        }
+        if (++rows == filterRows) {
+          writeBloomFilter(insert, minRowId, maxRowId, builder.build());
+          rows = 0;
+        }
+      }
+      if (rows > 0) {
+        writeBloomFilter(insert, minRowId, maxRowId, builder.build());
+      }
+    }
+  }
+
+  private void writeBloomFilter(
+      PreparedStatement insert, long minRowId, long maxRowId, TokenBloomFilter filter)
+      throws SQLException {
+    insert.setLong(1, minRowId);
+    insert.setLong(2, maxRowId);
+    insert.setInt(3, filter.getNumHashes());
+    insert.setBytes(4, filter.getBits());
+    insert.executeUpdate();
+  }
+
+  private void encode(Connection rotatedConn) throws SQLException {
+    try (Statement st = rotatedConn.createStatement()) {
+      st.execute(statements().rebuildArchiveManifestLevels());
+      final Codec codec = getCodec();
+      if (!IdentityCodec.NAME.equals(codec.getName())) {
+        codec.archiveBacklog(numRows(rotatedConn));
+        Function.create(
+            rotatedConn,
+            "encode",
+            new Function() {
+              @Override
+              protected void xFunc() throws SQLException {
+                result(encoder().encode(value_blob(0), value_int(1)));
+              }
+            });
+        st.executeUpdate(statements().encodeEntries());
+      }
+    }
+  }
+
+  private void prepareLiveStandby() {
+    try {
+      getEntryStore().prepareStandby();
+    } catch (SQLException e) {
+      statusReporter.addError("RotatingArchiver: Cannot prepare standby live database", e);
+    }
+  }
+
+  @Override
+  public void close() throws Exception {
+    try {
+      if (rotation != null) {
+        rotation.close();
+      }
+    } finally {
+      super.close();
+    }
+  }
+}
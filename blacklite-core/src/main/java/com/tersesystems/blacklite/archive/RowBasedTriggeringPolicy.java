@@ -7,13 +7,17 @@ public class RowBasedTriggeringPolicy implements TriggeringPolicy {
 
   private long maximumNumRows = Long.MAX_VALUE;
 
+  // Whether the archive has an entry_blocks table, or null if not known yet.  The schema is
+  // created before the first entries are archived, so it only changes on rollover.
+  private Boolean hasEntryBlocks;
+
   @Override
   public boolean isTriggered(Connection conn) {
     boolean result = false;
     try (PreparedStatement st = conn.prepareStatement(statements().archiveNumRows())) {
       try (ResultSet rs = st.executeQuery()) {
         if (rs.next()) {
-          final long size = rs.getLong(1);
+          final long size = rs.getLong(1) + numBlockRows(conn);
           result = size > getMaximumNumRows();
         }
       }
@@ -23,6 +27,33 @@ public class RowBasedTriggeringPolicy implements TriggeringPolicy {
     return result;
   }
 
+  // Entries packed into blocks are counted from the entry_blocks table, if it exists.
+  private long numBlockRows(Connection conn) throws SQLException {
+    if (hasEntryBlocks == null) {
+      hasEntryBlocks = archiveHasEntryBlocks(conn);
+    }
+    if (!hasEntryBlocks) {
+      return 0;
+    }
+    try (PreparedStatement st = conn.prepareStatement(statements().archiveNumBlockRows());
+        ResultSet rs = st.executeQuery()) {
+      return rs.next() ? rs.getLong(1) : 0;
+    }
+  }
+
+  static boolean archiveHasEntryBlocks(Connection conn) throws SQLException {
+    try (PreparedStatement st =
+            conn.prepareStatement(Statements.instance().archiveHasEntryBlocks());
+        ResultSet rs = st.executeQuery()) {
+      return rs.next() && rs.getInt(1) > 0;
+    }
+  }
+
+  @Override
+  public void reset() {
+    hasEntryBlocks = null;
+  }
+
   private Statements statements() {
     return Statements.instance();
   }
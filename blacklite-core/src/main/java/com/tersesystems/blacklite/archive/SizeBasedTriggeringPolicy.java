@@ -0,0 +1,93 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.StatusReporter;
+import java.sql.*;
+
+/**
+ * Triggers when the archive database is larger than the maximum file size.
+ *
+ * <p>The size of the archive is computed from the page count and page size of the database. It is
+ * read on the first check after the policy starts or is reset, and after that the bytes archived
+ * on each run are added to it, so that archiving doesn't query the pragmas on every run. The
+ * estimate leaves out free space in pages and any indexes, so the size is read again once the
+ * check interval has passed.
+ */
+public class SizeBasedTriggeringPolicy implements TriggeringPolicy {
+
+  /** The default number of milliseconds between reads of the database size. */
+  public static final long DEFAULT_CHECK_INTERVAL = 60000;
+
+  private long maximumFileSize = Long.MAX_VALUE;
+
+  // Number of milliseconds between reads of the database size.
+  private long checkInterval = DEFAULT_CHECK_INTERVAL;
+
+  // The size last read, plus the bytes archived since.
+  private long estimatedSize;
+  private long lastCheck;
+  private boolean checked;
+
+  private StatusReporter statusReporter = StatusReporter.DEFAULT;
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    this.statusReporter = statusReporter;
+  }
+
+  @Override
+  public void archived(long bytes) {
+    estimatedSize += bytes;
+  }
+
+  @Override
+  public boolean isTriggered(Connection conn) {
+    final long now = currentTimeMillis();
+    if (!checked || now - lastCheck >= checkInterval) {
+      // Only retried after the interval on failure, going by the estimate in the meantime.
+      checked = true;
+      lastCheck = now;
+      try (PreparedStatement st = conn.prepareStatement(statements().databaseSizeStatement());
+          ResultSet rs = st.executeQuery()) {
+        if (rs.next()) {
+          estimatedSize = rs.getLong(1);
+        }
+      } catch (SQLException e) {
+        statusReporter.addError("SizeBasedTriggeringPolicy: Cannot read the archive size", e);
+      }
+    }
+    return estimatedSize > getMaximumFileSize();
+  }
+
+  @Override
+  public void reset() {
+    estimatedSize = 0;
+    checked = false;
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  private Statements statements() {
+    return Statements.instance();
+  }
+
+  public long getMaximumFileSize() {
+    return maximumFileSize;
+  }
+
+  /** @param maximumFileSize the maximum size of the archive file, in bytes. */
+  public void setMaximumFileSize(long maximumFileSize) {
+    this.maximumFileSize = maximumFileSize;
+  }
+
+  public long getCheckInterval() {
+    return checkInterval;
+  }
+
+  /** @param checkInterval the minimum number of milliseconds between reads of the size. */
+  public void setCheckInterval(long checkInterval) {
+    this.checkInterval = checkInterval;
+  }
+}
@@ -0,0 +1,90 @@
+package com.tersesystems.blacklite.archive;
+
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.StatusReporter;
+import java.sql.*;
+
+/**
+ * Triggers when the oldest entry in the archive database is older than the maximum age.
+ *
+ * <p>The archive is append-only, so the oldest timestamp only has to be queried once per archive
+ * file. It is cached until the policy is reset on rollover.
+ */
+public class TimeBasedTriggeringPolicy implements TriggeringPolicy {
+
+  private long maximumAgeSeconds = Long.MAX_VALUE;
+
+  // The epoch second of the oldest entry in the archive, or null if not known yet.
+  private Long oldestEpochSecs;
+
+  private StatusReporter statusReporter = StatusReporter.DEFAULT;
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    this.statusReporter = statusReporter;
+  }
+
+  @Override
+  public boolean isTriggered(Connection conn) {
+    if (oldestEpochSecs == null) {
+      try {
+        oldestEpochSecs = findOldest(conn);
+      } catch (SQLException e) {
+        statusReporter.addError("TimeBasedTriggeringPolicy: Cannot find the oldest entry", e);
+      }
+      if (oldestEpochSecs == null) {
+        // The archive is empty.
+        return false;
+      }
+    }
+    return currentTimeSeconds() - oldestEpochSecs >= getMaximumAgeSeconds();
+  }
+
+  private Long findOldest(Connection conn) throws SQLException {
+    Long oldest = queryOldest(conn, statements().archiveOldest());
+    if (oldest == null && RowBasedTriggeringPolicy.archiveHasEntryBlocks(conn)) {
+      oldest = queryOldest(conn, statements().archiveOldestEntryBlock());
+    }
+    return oldest;
+  }
+
+  private Long queryOldest(Connection conn, String sql) throws SQLException {
+    try (PreparedStatement st = conn.prepareStatement(sql);
+        ResultSet rs = st.executeQuery()) {
+      if (rs.next()) {
+        long oldest = rs.getLong(1);
+        return rs.wasNull() ? null : oldest;
+      }
+      return null;
+    }
+  }
+
+  @Override
+  public void reset() {
+    oldestEpochSecs = null;
+  }
+
+  protected long currentTimeSeconds() {
+    return System.currentTimeMillis() / 1000;
+  }
+
+  private Statements statements() {
+    return Statements.instance();
+  }
+
+  public long getMaximumAgeSeconds() {
+    return maximumAgeSeconds;
+  }
+
+  /**
+   * @param maximumAgeSeconds the maximum age of the oldest entry in the archive, in seconds. Must be
+   *     positive, as an age of zero would roll over on every archive run.
+   */
+  public void setMaximumAgeSeconds(long maximumAgeSeconds) {
+    if (maximumAgeSeconds <= 0) {
+      throw new IllegalArgumentException(
+          "maximumAgeSeconds must be positive, but was " + maximumAgeSeconds);
+    }
+    this.maximumAgeSeconds = maximumAgeSeconds;
+  }
+}
@@ -0,0 +1,248 @@
+package com.tersesystems.blacklite.archive;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter over the tokens in a range of entries, so that a search for some text can skip
+ * the entries that definitely don't contain it without decoding them.
+ *
+ * <p>Content is split into tokens on whitespace and JSON punctuation ({@code {}[]:,"\}), working
+ * on the raw bytes so that nothing needs to be decoded into strings. A search for some text
+ * checks every token of the text against the filter: if any token is missing, no entry in the
+ * range contains the text as whole tokens, i.e. starting and ending at token boundaries. Text
+ * that only appears inside a larger token, such as "quest" in "request", is not found this way.
+ *
+ * <p>The filter is sized when it is built, at {@code bitsPerToken} bits for every distinct token,
+ * which at the default of 10 bits gives a false positive rate of around 1%.
+ */
+public final class TokenBloomFilter {
+
+  public static final int DEFAULT_BITS_PER_TOKEN = 10;
+
+  private final byte[] bits;
+  private final int numHashes;
+  private final long numBits;
+
+  /**
+   * @param bits the bits of the filter, as returned by {@link #getBits()}.
+   * @param numHashes the number of hash functions, as returned by {@link #getNumHashes()}.
+   */
+  public TokenBloomFilter(byte[] bits, int numHashes) {
+    if (bits.length == 0 || numHashes < 1) {
+      throw new IllegalArgumentException("Empty filter");
+    }
+    this.bits = bits;
+    this.numHashes = numHashes;
+    this.numBits = bits.length * 8L;
+  }
+
+  public byte[] getBits() {
+    return bits;
+  }
+
+  public int getNumHashes() {
+    return numHashes;
+  }
+
+  /**
+   * @param hash a token hash from {@link #tokenHashes(byte[])}.
+   * @return false if the token is definitely not in the filter, true if it may be.
+   */
+  public boolean mayContain(long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < numHashes; i++) {
+      long bit = Math.floorMod(h1 + (long) i * h2, numBits);
+      if ((bits[(int) (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param hashes the token hashes of the text being searched for.
+   * @return false if some token is definitely not in the filter, true if they all may be.
+   */
+  public boolean mayContainAll(long[] hashes) {
+    for (long hash : hashes) {
+      if (!mayContain(hash)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param content the content, i.e. UTF-8 text.
+   * @return the hashes of the distinct tokens in the content.
+   */
+  public static long[] tokenHashes(byte[] content) {
+    Builder builder = new Builder();
+    builder.add(content);
+    return builder.distinctHashes();
+  }
+
+  /**
+   * Checks whether the text appears in the content as whole tokens. This is the match that a
+   * filter can answer for, so readers should use it for every entry, whether or not the entry was
+   * covered by a filter.
+   *
+   * @param content the content.
+   * @param text the text to search for.
+   * @return true if the text appears in the content, starting and ending at token boundaries.
+   */
+  public static boolean containsTokens(byte[] content, byte[] text) {
+    if (text.length == 0) {
+      return true;
+    }
+    int last = content.length - text.length;
+    outer:
+    for (int i = 0; i <= last; i++) {
+      for (int j = 0; j < text.length; j++) {
+        if (content[i + j] != text[j]) {
+          continue outer;
+        }
+      }
+      boolean startsToken = i == 0 || isDelimiter(content[i - 1]) || isDelimiter(text[0]);
+      int end = i + text.length;
+      boolean endsToken =
+          end == content.length || isDelimiter(content[end]) || isDelimiter(text[text.length - 1]);
+      if (startsToken && endsToken) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean isDelimiter(byte b) {
+    switch (b) {
+      case ' ':
+      case '\t':
+      case '\n':
+      case '\r':
+      case '{':
+      case '}':
+      case '[':
+      case ']':
+      case ':':
+      case ',':
+      case '"':
+      case '\\':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  // FNV-1a, followed by the murmur3 finalizer so both halves of the hash are well mixed.
+  static long hash(byte[] content, int from, int to) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = from; i < to; i++) {
+      h ^= content[i] & 0xFF;
+      h *= 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /** Accumulates the tokens of entries until the filter is built. Not thread safe. */
+  public static final class Builder {
+    private final int bitsPerToken;
+    private long[] hashes = new long[256];
+    private int size;
+
+    public Builder() {
+      this(DEFAULT_BITS_PER_TOKEN);
+    }
+
+    /** @param bitsPerToken the number of bits in the filter for every distinct token. */
+    public Builder(int bitsPerToken) {
+      if (bitsPerToken < 1) {
+        throw new IllegalArgumentException("bitsPerToken must be at least 1");
+      }
+      this.bitsPerToken = bitsPerToken;
+    }
+
+    /**
+     * Adds the tokens of an entry.
+     *
+     * @param content the unencoded content of the entry.
+     * @return this builder.
+     */
+    public Builder add(byte[] content) {
+      int start = -1;
+      for (int i = 0; i < content.length; i++) {
+        if (isDelimiter(content[i])) {
+          if (start >= 0) {
+            addHash(hash(content, start, i));
+            start = -1;
+          }
+        } else if (start < 0) {
+          start = i;
+        }
+      }
+      if (start >= 0) {
+        addHash(hash(content, start, content.length));
+      }
+      return this;
+    }
+
+    private void addHash(long hash) {
+      if (size == hashes.length) {
+        // Drop the duplicates before growing, since most tokens in a run of entries repeat.
+        size = dedupe(hashes, size);
+        if (size > hashes.length / 2) {
+          hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+      }
+      hashes[size++] = hash;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    long[] distinctHashes() {
+      return Arrays.copyOf(hashes, dedupe(hashes, size));
+    }
+
+    /** Builds the filter from the accumulated tokens, and resets the builder. */
+    public TokenBloomFilter build() {
+      int distinct = dedupe(hashes, size);
+      long numBits = Math.max(64, (long) distinct * bitsPerToken);
+      byte[] bits = new byte[(int) Math.min(Integer.MAX_VALUE - 8, (numBits + 7) / 8)];
+      int numHashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerToken * Math.log(2))));
+      long totalBits = bits.length * 8L;
+      for (int n = 0; n < distinct; n++) {
+        int h1 = (int) hashes[n];
+        int h2 = (int) (hashes[n] >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+          long bit = Math.floorMod(h1 + (long) i * h2, totalBits);
+          bits[(int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+      }
+      size = 0;
+      return new TokenBloomFilter(bits, numHashes);
+    }
+
+    // Sorts the first size hashes and moves the distinct ones to the front.
+    private static int dedupe(long[] hashes, int size) {
+      if (size == 0) {
+        return 0;
+      }
+      Arrays.sort(hashes, 0, size);
+      int distinct = 1;
+      for (int i = 1; i < size; i++) {
+        if (hashes[i] != hashes[distinct - 1]) {
+          hashes[distinct++] = hashes[i];
+        }
+      }
+      return distinct;
+    }
+  }
+}
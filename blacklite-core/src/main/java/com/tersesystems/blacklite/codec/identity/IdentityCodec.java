@@ -3,6 +3,7 @@ package com.tersesystems.blacklite.codec.identity;
 import com.tersesystems.blacklite.StatusReporter;
 import com.tersesystems.blacklite.codec.Codec;
 import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.ByteBuffer;
 
 public class IdentityCodec implements Codec {
   public static final String NAME = "identity";
@@ -24,4 +25,28 @@ public class IdentityCodec implements Codec {
   public byte[] decode(byte[] sourceBytes) throws CodecException {
     return sourceBytes;
   }
+
+  @Override
+  public int encode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    int size = src.remaining();
+    dst.put(src);
+    return size;
+  }
+
+  @Override
+  public int decode(ByteBuffer src, ByteBuffer dst) throws CodecException {
+    int size = src.remaining();
+    dst.put(src);
+    return size;
+  }
+
+  @Override
+  public int maxEncodedSize(int unencodedSize) {
+    return unencodedSize;
+  }
+
+  @Override
+  public int decodedSize(ByteBuffer src) {
+    return src.remaining();
+  }
 }
@@ -0,0 +1,68 @@
+package com.tersesystems.blacklite;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class ReorderWindowTest {
+
+  @Test
+  public void testReleasesInTimeOrder() throws Exception {
+    ReorderWindow window = new ReorderWindow(100);
+    List<Entry> released = new ArrayList<>();
+
+    window.add(entry(10, 300), 10_000, released::add);
+    window.add(entry(10, 100), 10_000, released::add);
+    window.add(entry(10, 200), 10_000, released::add);
+    assertThat(released).isEmpty();
+    assertThat(window.size()).isEqualTo(3);
+
+    // Only entries at least 100ms old are released.
+    assertThat(window.release(10_100, released::add)).isEqualTo(3);
+    assertThat(released).extracting(e -> e.nanos).containsExactly(100, 200, 300);
+  }
+
+  @Test
+  public void testHoldsEntriesInsideWindow() throws Exception {
+    ReorderWindow window = new ReorderWindow(100);
+    List<Entry> released = new ArrayList<>();
+
+    window.add(entry(10, 0), 10_000, released::add);
+    window.add(entry(10, 50_000_000), 10_000, released::add);
+    window.release(10_120, released::add);
+    assertThat(released).extracting(e -> e.nanos).containsExactly(0);
+    assertThat(window.size()).isEqualTo(1);
+
+    assertThat(window.flush(released::add)).isEqualTo(1);
+    assertThat(released).extracting(e -> e.nanos).containsExactly(0, 50_000_000);
+  }
+
+  @Test
+  public void testLateEntriesAreReleasedAtOnce() throws Exception {
+    ReorderWindow window = new ReorderWindow(100);
+    List<Entry> released = new ArrayList<>();
+
+    window.add(entry(10, 500), 20_000, released::add);
+    window.add(entry(9, 0), 20_000, released::add);
+    assertThat(released).extracting(e -> e.epochSecond).containsExactly(10L, 9L);
+    assertThat(window.getLate()).isEqualTo(1);
+  }
+
+  @Test
+  public void testTiesKeepArrivalOrder() throws Exception {
+    ReorderWindow window = new ReorderWindow(100);
+    List<Entry> released = new ArrayList<>();
+
+    for (int i = 0; i < 10; i++) {
+      window.add(new Entry(-1, 10, 0, i, new byte[0]), 10_000, released::add);
+    }
+    window.flush(released::add);
+    assertThat(released).extracting(e -> e.level).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+  }
+
+  private Entry entry(long epochSecond, int nanos) {
+    return new Entry(-1, epochSecond, nanos, 20000, new byte[0]);
+  }
+}
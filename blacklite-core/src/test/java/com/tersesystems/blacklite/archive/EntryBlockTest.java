@@ -0,0 +1,69 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.Entry;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class EntryBlockTest {
+
+  @Test
+  public void testRoundTrip() {
+    EntryBlock.Builder builder = new EntryBlock.Builder();
+    for (int i = 0; i < 200; i++) {
+      int level = (i % 10 == 0) ? 40000 : 20000;
+      byte[] content = ("message " + i).getBytes(StandardCharsets.UTF_8);
+      builder.add(1600000000L + (i / 7), i * 1000, level, content);
+    }
+    EntryBlock block = builder.build();
+
+    assertThat(block.getNumEntries()).isEqualTo(200);
+    assertThat(block.getMinEpochSecs()).isEqualTo(1600000000L);
+    assertThat(block.getMaxEpochSecs()).isEqualTo(1600000000L + (199 / 7));
+    assertThat(block.getMinLevel()).isEqualTo(20000);
+    assertThat(block.getMaxLevel()).isEqualTo(40000);
+    assertThat(builder.isEmpty()).isTrue();
+
+    List<Entry> entries = EntryBlock.unpack(block.getBytes());
+    assertThat(entries).hasSize(200);
+    Entry entry = entries.get(42);
+    assertThat(entry.epochSecond).isEqualTo(1600000006L);
+    assertThat(entry.nanos).isEqualTo(42000);
+    assertThat(entry.level).isEqualTo(20000);
+    assertThat(new String(entry.content, StandardCharsets.UTF_8)).isEqualTo("message 42");
+  }
+
+  @Test
+  public void testOutOfOrderTimestamps() {
+    EntryBlock.Builder builder = new EntryBlock.Builder();
+    builder.add(100, 0, 100, new byte[0]);
+    builder.add(50, 999999999, 200, new byte[] {1, 2, 3});
+    EntryBlock block = builder.build();
+
+    assertThat(block.getMinEpochSecs()).isEqualTo(50);
+    assertThat(block.getMaxEpochSecs()).isEqualTo(100);
+
+    List<Entry> entries = EntryBlock.unpack(block.getBytes());
+    assertThat(entries.get(0).epochSecond).isEqualTo(100);
+    assertThat(entries.get(1).epochSecond).isEqualTo(50);
+    assertThat(entries.get(1).nanos).isEqualTo(999999999);
+    assertThat(entries.get(1).content).containsExactly(1, 2, 3);
+  }
+
+  @Test
+  public void testLevelBitmap() {
+    EntryBlock.Builder builder = new EntryBlock.Builder();
+    builder.add(0, 0, 20000, new byte[0]);
+    builder.add(0, 0, 30000, new byte[0]);
+    long bitmap = builder.build().getLevelBitmap();
+
+    assertThat(EntryBlock.mayContainLevel(bitmap, 20000)).isTrue();
+    assertThat(EntryBlock.mayContainLevel(bitmap, 30000)).isTrue();
+    // logback levels do not collide with each other.
+    assertThat(EntryBlock.mayContainLevel(bitmap, 5000)).isFalse();
+    assertThat(EntryBlock.mayContainLevel(bitmap, 10000)).isFalse();
+    assertThat(EntryBlock.mayContainLevel(bitmap, 40000)).isFalse();
+  }
+}
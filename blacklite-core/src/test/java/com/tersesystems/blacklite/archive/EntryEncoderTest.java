@@ -0,0 +1,90 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class EntryEncoderTest {
+
+  @Test
+  public void testEncodesThroughReusedDirectBuffers() {
+    ReversingCodec codec = new ReversingCodec();
+    EntryEncoder encoder = new EntryEncoder(codec);
+
+    assertThat(encoder.encode(bytes("abc"), 20000)).isEqualTo(bytes("#cba"));
+    assertThat(encoder.encode(bytes("de"), 30000)).isEqualTo(bytes("#ed"));
+    assertThat(encoder.encode(bytes("a longer entry"), 40000)).isEqualTo(bytes("#yrtne regnol a"));
+
+    assertThat(codec.levels).containsExactly(20000, 30000, 40000);
+    assertThat(codec.sources).allMatch(ByteBuffer::isDirect);
+    // The buffers only grow when an entry doesn't fit.
+    assertThat(codec.sources.get(0)).isSameAs(codec.sources.get(1));
+    assertThat(codec.sources.get(2)).isNotSameAs(codec.sources.get(1));
+  }
+
+  @Test
+  public void testFallsBackToArraysWithoutMaxSize() {
+    ReversingCodec codec = new ReversingCodec();
+    codec.maxSizeKnown = false;
+    EntryEncoder encoder = new EntryEncoder(codec);
+
+    assertThat(encoder.encode(bytes("abc"), 20000)).isEqualTo(bytes("cba"));
+    assertThat(encoder.encode(null, 20000)).isNull();
+    assertThat(codec.sources).isEmpty();
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  // Reverses the content, and marks content encoded through buffers with a '#'.
+  static class ReversingCodec implements Codec {
+    final List<Integer> levels = new ArrayList<>();
+    final List<ByteBuffer> sources = new ArrayList<>();
+    boolean maxSizeKnown = true;
+
+    @Override
+    public String getName() {
+      return "reversing";
+    }
+
+    @Override
+    public void initialize(StatusReporter statusReporter) {}
+
+    @Override
+    public byte[] encode(byte[] unencoded) {
+      if (unencoded == null) return null;
+      byte[] reversed = new byte[unencoded.length];
+      for (int i = 0; i < unencoded.length; i++) {
+        reversed[i] = unencoded[unencoded.length - 1 - i];
+      }
+      return reversed;
+    }
+
+    @Override
+    public int encode(ByteBuffer src, ByteBuffer dst, int level) {
+      levels.add(level);
+      sources.add(src);
+      byte[] unencoded = new byte[src.remaining()];
+      src.get(unencoded);
+      dst.put((byte) '#').put(encode(unencoded));
+      return unencoded.length + 1;
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) {
+      return encode(encoded);
+    }
+
+    @Override
+    public int maxEncodedSize(int unencodedSize) {
+      return maxSizeKnown ? unencodedSize + 1 : -1;
+    }
+  }
+}
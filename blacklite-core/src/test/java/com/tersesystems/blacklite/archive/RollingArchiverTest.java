@@ -0,0 +1,415 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+import com.tersesystems.blacklite.DefaultEntryStore;
+import com.tersesystems.blacklite.DefaultEntryStoreConfig;
+import com.tersesystems.blacklite.EntryStore;
+import com.tersesystems.blacklite.EntryStoreConfig;
+import com.tersesystems.blacklite.StatusReporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RollingArchiverTest {
+
+  Path tmpDir;
+  EntryStore entryStore;
+  RollingArchiver archiver;
+
+  @BeforeEach
+  public void beforeEach() throws IOException, SQLException {
+    tmpDir = Files.createTempDirectory("rollingarchiver");
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(tmpDir.resolve("live.db").toString());
+    entryStore = new DefaultEntryStore(config);
+    entryStore.initialize();
+
+    archiver = new RollingArchiver();
+    archiver.setFile(tmpDir.resolve("archive.db").toString());
+    archiver.setArchiveAfterRows(10);
+    archiver.setEntryStore(entryStore);
+    archiver.initialize(StatusReporter.DEFAULT);
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    archiver.close();
+    entryStore.close();
+  }
+
+  @Test
+  public void testArchiveAcrossRuns() throws Exception {
+    insertRows(30);
+    ArchiveResult first = archiver.archive(entryStore.getConnection());
+    assertThat(first).isInstanceOf(ArchiveResult.Success.class);
+    assertThat(((ArchiveResult.Success) first).getArchived()).isEqualTo(20);
+
+    insertRows(30);
+    ArchiveResult second = archiver.archive(entryStore.getConnection());
+    assertThat(((ArchiveResult.Success) second).getArchived()).isEqualTo(30);
+
+    assertThat(countRows(tmpDir.resolve("archive.db"))).isEqualTo(50);
+  }
+
+  @Test
+  public void testArchiveAfterRollover() throws Exception {
+    Path rolled = tmpDir.resolve("archive.1.db");
+    archiver.setTriggeringPolicy(conn -> true);
+    archiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            Files.move(Paths.get(fileArchiver.getFile()), rolled);
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+
+    insertRows(30);
+    archiver.archive(entryStore.getConnection());
+    assertThat(Files.exists(rolled)).isTrue();
+
+    archiver.setTriggeringPolicy(conn -> false);
+    insertRows(30);
+    archiver.archive(entryStore.getConnection());
+
+    assertThat(countRows(rolled)).isEqualTo(20);
+    assertThat(countRows(tmpDir.resolve("archive.db"))).isEqualTo(30);
+  }
+
+  @Test
+  public void testSetIndexes() {
+    RollingArchiver indexingArchiver = new RollingArchiver();
+    indexingArchiver.setIndexes("epoch_secs; level;;json_extract(content, '$.a,b')");
+    assertThat(indexingArchiver.getIndexes())
+        .containsExactly("epoch_secs", "level", "json_extract(content, '$.a,b')");
+
+    assertThat(RollingArchiver.indexName("level")).isEqualTo(RollingArchiver.indexName("level"));
+    assertThat(RollingArchiver.indexName("level"))
+        .startsWith("entries_idx_")
+        .isNotEqualTo(RollingArchiver.indexName("epoch_secs"));
+  }
+
+  @Test
+  public void testIndexAfterRollover() throws Exception {
+    Path rolled = tmpDir.resolve("archive.1.db");
+    RollingArchiver indexingArchiver = new RollingArchiver();
+    indexingArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    indexingArchiver.setArchiveAfterRows(10);
+    indexingArchiver.addIndex("epoch_secs");
+    indexingArchiver.addIndex("level");
+    indexingArchiver.setTriggeringPolicy(conn -> true);
+    indexingArchiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            Files.move(Paths.get(fileArchiver.getFile()), rolled);
+            fileArchiver.rolledOver(rolled.toString());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    indexingArchiver.setEntryStore(entryStore);
+    indexingArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      insertRows(30);
+      indexingArchiver.archive(entryStore.getConnection());
+    } finally {
+      // waits for the indexer to finish.
+      indexingArchiver.close();
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + rolled);
+        Statement st = c.createStatement();
+        ResultSet rs =
+            st.executeQuery("SELECT count(*) FROM sqlite_master WHERE type = 'index'")) {
+      rs.next();
+      assertThat(rs.getInt(1)).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testAsyncRollover() throws Exception {
+    Path rolled = tmpDir.resolve("archive.1.db");
+    RollingArchiver asyncArchiver = new RollingArchiver();
+    asyncArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    asyncArchiver.setArchiveAfterRows(10);
+    asyncArchiver.setAsyncRollover(true);
+    asyncArchiver.setTriggeringPolicy(conn -> true);
+    asyncArchiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            Files.move(Paths.get(fileArchiver.getFile()), rolled);
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    asyncArchiver.setEntryStore(entryStore);
+    asyncArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      await().until(asyncArchiver::isStandbyReady);
+
+      insertRows(30);
+      asyncArchiver.archive(entryStore.getConnection());
+      assertThat(asyncArchiver.getActiveFile()).endsWith(RollingArchiver.STANDBY_SUFFIX);
+
+      await().until(() -> Files.exists(rolled) && asyncArchiver.isStandbyReady());
+      assertThat(countRows(rolled)).isEqualTo(20);
+      assertThat(countRows(tmpDir.resolve("archive.db"))).isEqualTo(0);
+    } finally {
+      asyncArchiver.close();
+    }
+
+    // The next run carries on with the standby file, whatever the modification times are.
+    Files.setLastModifiedTime(
+        tmpDir.resolve("archive.db" + RollingArchiver.STANDBY_SUFFIX), FileTime.fromMillis(0));
+    RollingArchiver restarted = new RollingArchiver();
+    restarted.setFile(tmpDir.resolve("archive.db").toString());
+    restarted.setAsyncRollover(true);
+    restarted.setEntryStore(entryStore);
+    restarted.initialize(StatusReporter.DEFAULT);
+    try {
+      assertThat(restarted.getActiveFile()).endsWith(RollingArchiver.STANDBY_SUFFIX);
+    } finally {
+      restarted.close();
+    }
+  }
+
+  @Test
+  public void testManifestAndCatalogAfterRollover() throws Exception {
+    Path rolled = tmpDir.resolve("archive.1.db");
+    Path catalogFile = tmpDir.resolve("catalog.db");
+    RollingArchiver catalogArchiver = new RollingArchiver();
+    catalogArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    catalogArchiver.setArchiveAfterRows(10);
+    catalogArchiver.setCatalogFile(catalogFile.toString());
+    catalogArchiver.setTriggeringPolicy(conn -> true);
+    catalogArchiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            Files.move(Paths.get(fileArchiver.getFile()), rolled);
+            fileArchiver.rolledOver(rolled.toString());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    catalogArchiver.setEntryStore(entryStore);
+    catalogArchiver.initialize(StatusReporter.DEFAULT);
+    long now = System.currentTimeMillis() / 1000;
+    try {
+      insertRows(30);
+      catalogArchiver.archive(entryStore.getConnection());
+    } finally {
+      catalogArchiver.close();
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + rolled)) {
+      ArchiveManifest manifest = ArchiveManifest.read(c).orElseThrow(IllegalStateException::new);
+      assertThat(manifest.getRowCount()).isEqualTo(20);
+      assertThat(manifest.getFormat()).isEqualTo(ArchiveManifest.FORMAT_ENTRIES);
+      assertThat(manifest.getCodec()).isEqualTo("identity");
+      assertThat(manifest.getLevelCounts()).containsEntry(20000, 20L);
+      assertThat(manifest.overlaps(now - 60, null)).isTrue();
+      assertThat(manifest.overlaps(null, now - 60)).isFalse();
+    }
+
+    ArchiveCatalog catalog = new ArchiveCatalog(catalogFile.toString());
+    assertThat(catalog.find(null, null)).containsExactly(rolled.toAbsolutePath());
+    assertThat(catalog.find(now + 60, null)).isEmpty();
+  }
+
+  @Test
+  public void testCatalogFollowsRenames() throws Exception {
+    Path first = tmpDir.resolve("archive.1.db");
+    Path second = tmpDir.resolve("archive.2.db");
+    Path catalogFile = tmpDir.resolve("catalog.db");
+    RollingArchiver catalogArchiver = new RollingArchiver();
+    catalogArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    catalogArchiver.setArchiveAfterRows(10);
+    catalogArchiver.setCatalogFile(catalogFile.toString());
+    catalogArchiver.setTriggeringPolicy(conn -> true);
+    // A fixed window of two files.
+    catalogArchiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            if (Files.exists(first)) {
+              Files.move(first, second);
+              fileArchiver.renamed(first.toString(), second.toString());
+            }
+            Files.move(Paths.get(fileArchiver.getFile()), first);
+            fileArchiver.rolledOver(first.toString());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    catalogArchiver.setEntryStore(entryStore);
+    catalogArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      insertRows(30);
+      catalogArchiver.archive(entryStore.getConnection());
+      insertRows(30);
+      catalogArchiver.archive(entryStore.getConnection());
+    } finally {
+      catalogArchiver.close();
+    }
+
+    ArchiveCatalog catalog = new ArchiveCatalog(catalogFile.toString());
+    assertThat(catalog.find(null, null))
+        .containsExactlyInAnyOrder(first.toAbsolutePath(), second.toAbsolutePath());
+  }
+
+  @Test
+  public void testCatalogPublishesRolloverAtOnce() throws Exception {
+    Path first = tmpDir.resolve("archive.1.db");
+    Path second = tmpDir.resolve("archive.2.db");
+    Path catalogFile = tmpDir.resolve("catalog.db");
+    ArchiveCatalog catalog = new ArchiveCatalog(catalogFile.toString());
+    List<List<Path>> midRollover = new ArrayList<>();
+    List<Boolean> midRolloverPublished = new ArrayList<>();
+    RollingArchiver catalogArchiver = new RollingArchiver();
+    catalogArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    catalogArchiver.setArchiveAfterRows(10);
+    catalogArchiver.setCatalogFile(catalogFile.toString());
+    catalogArchiver.setTriggeringPolicy(conn -> true);
+    catalogArchiver.setRollingStrategy(
+        fileArchiver -> {
+          try {
+            if (Files.exists(first)) {
+              Files.move(first, second);
+              fileArchiver.renamed(first.toString(), second.toString());
+              // Part way through, the catalog still has the archives from before the rollover,
+              // which no longer match the files.
+              midRollover.add(catalog.find(null, null));
+              try {
+                catalog.findPublished(null, null, 0);
+                midRolloverPublished.add(true);
+              } catch (SQLException e) {
+                midRolloverPublished.add(false);
+              }
+            }
+            Files.move(Paths.get(fileArchiver.getFile()), first);
+            fileArchiver.rolledOver(first.toString());
+          } catch (IOException | SQLException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    catalogArchiver.setEntryStore(entryStore);
+    catalogArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      insertRows(30);
+      catalogArchiver.archive(entryStore.getConnection());
+      insertRows(30);
+      catalogArchiver.archive(entryStore.getConnection());
+    } finally {
+      catalogArchiver.close();
+    }
+
+    assertThat(midRollover).containsExactly(Collections.singletonList(first.toAbsolutePath()));
+    assertThat(midRolloverPublished).containsExactly(false);
+    Map<String, Path> published = catalog.findPublished(null, null, 0);
+    assertThat(published.values())
+        .containsExactlyInAnyOrder(first.toAbsolutePath(), second.toAbsolutePath());
+  }
+
+  @Test
+  public void testBloomFilters() throws Exception {
+    RollingArchiver bloomArchiver = new RollingArchiver();
+    bloomArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    bloomArchiver.setArchiveAfterRows(10);
+    bloomArchiver.setBloomFilters(true);
+    bloomArchiver.setBloomFilterRows(8);
+    bloomArchiver.setEntryStore(entryStore);
+    bloomArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      insertRows(30);
+      bloomArchiver.archive(entryStore.getConnection());
+    } finally {
+      bloomArchiver.close();
+    }
+
+    // 20 rows in filters of 8, 8 and 4 rows.
+    String sql = "SELECT min_rowid, max_rowid, num_hashes, bits FROM entry_blooms ORDER BY 1";
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + tmpDir.resolve("archive.db"));
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery(sql)) {
+      long[][] ranges = {{1, 8}, {9, 16}, {17, 20}};
+      for (long[] range : ranges) {
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getLong(1)).isEqualTo(range[0]);
+        assertThat(rs.getLong(2)).isEqualTo(range[1]);
+        TokenBloomFilter filter = new TokenBloomFilter(rs.getBytes(4), rs.getInt(3));
+        // "row 0" is the first row archived.
+        long[] hashes = TokenBloomFilter.tokenHashes(("row " + (range[0] - 1)).getBytes());
+        assertThat(filter.mayContainAll(hashes)).isTrue();
+      }
+      assertThat(rs.next()).isFalse();
+    }
+  }
+
+  @Test
+  public void testTimeIndex() throws Exception {
+    RollingArchiver timeArchiver = new RollingArchiver();
+    timeArchiver.setFile(tmpDir.resolve("archive.db").toString());
+    timeArchiver.setArchiveAfterRows(10);
+    timeArchiver.setTimeIndexRows(8);
+    timeArchiver.setEntryStore(entryStore);
+    timeArchiver.initialize(StatusReporter.DEFAULT);
+    try {
+      for (int i = 0; i < 30; i++) {
+        entryStore.insert(1000 + i, 0, 20000, ("row " + i).getBytes());
+      }
+      entryStore.executeBatch();
+      entryStore.commit();
+      timeArchiver.archive(entryStore.getConnection());
+    } finally {
+      timeArchiver.close();
+    }
+
+    // 20 rows in runs of 8, 8 and 4 rows.
+    String sql = "SELECT min_rowid, max_rowid, min_epoch_secs, max_epoch_secs FROM entry_times";
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + tmpDir.resolve("archive.db"));
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery(sql + " ORDER BY 1")) {
+      long[][] ranges = {{1, 8}, {9, 16}, {17, 20}};
+      for (long[] range : ranges) {
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getLong(1)).isEqualTo(range[0]);
+        assertThat(rs.getLong(2)).isEqualTo(range[1]);
+        assertThat(rs.getLong(3)).isEqualTo(1000 + range[0] - 1);
+        assertThat(rs.getLong(4)).isEqualTo(1000 + range[1] - 1);
+      }
+      assertThat(rs.next()).isFalse();
+    }
+  }
+
+  private void insertRows(int count) throws SQLException {
+    for (int i = 0; i < count; i++) {
+      entryStore.insert(System.currentTimeMillis() / 1000, 0, 20000, ("row " + i).getBytes());
+    }
+    entryStore.executeBatch();
+    entryStore.commit();
+  }
+
+  private long countRows(Path path) throws SQLException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + path);
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery("SELECT count(*) FROM entries")) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+import com.tersesystems.blacklite.DefaultEntryStore;
+import com.tersesystems.blacklite.DefaultEntryStoreConfig;
+import com.tersesystems.blacklite.EntryStore;
+import com.tersesystems.blacklite.EntryStoreConfig;
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.StatusReporter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RotatingArchiverTest {
+
+  Path tmpDir;
+  EntryStore entryStore;
+  RotatingArchiver archiver;
+  AtomicInteger rollovers = new AtomicInteger();
+
+  @BeforeEach
+  public void beforeEach() throws IOException, SQLException {
+    tmpDir = Files.createTempDirectory("rotatingarchiver");
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(tmpDir.resolve("live.db").toString());
+    entryStore = new DefaultEntryStore(config);
+    entryStore.initialize();
+
+    archiver = newArchiver();
+    archiver.initialize(StatusReporter.DEFAULT);
+  }
+
+  private RotatingArchiver newArchiver() {
+    RotatingArchiver archiver = new RotatingArchiver();
+    archiver.setFile(tmpDir.resolve("archive.db").toString());
+    archiver.setArchiveAfterRows(10);
+    archiver.setRollingStrategy(
+        fileArchiver -> {
+          Path rolled = tmpDir.resolve("archive." + rollovers.incrementAndGet() + ".db");
+          try {
+            Files.move(Paths.get(fileArchiver.getFile()), rolled);
+            fileArchiver.rolledOver(rolled.toString());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        });
+    archiver.setEntryStore(entryStore);
+    return archiver;
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    archiver.close();
+    entryStore.close();
+  }
+
+  @Test
+  public void testRotate() throws Exception {
+    insertRows(30);
+    ArchiveResult result = archiver.archive(entryStore.getConnection());
+    assertThat(((ArchiveResult.Success) result).getArchived()).isEqualTo(30);
+
+    // The live database is empty straight away, and can be written to.
+    assertThat(countRows(tmpDir.resolve("live.db"))).isEqualTo(0);
+    insertRows(5);
+    assertThat(countRows(tmpDir.resolve("live.db"))).isEqualTo(5);
+
+    await().until(() -> !archiver.isRotating());
+    Path rolled = tmpDir.resolve("archive.1.db");
+    assertThat(countRows(rolled)).isEqualTo(30);
+    assertThat(Files.exists(tmpDir.resolve("archive.db"))).isFalse();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + rolled)) {
+      ArchiveManifest manifest = ArchiveManifest.read(c).orElseThrow(IllegalStateException::new);
+      assertThat(manifest.getRowCount()).isEqualTo(30);
+      assertThat(manifest.getLevelCounts()).containsEntry(20000, 30L);
+    }
+  }
+
+  @Test
+  public void testRotateAgain() throws Exception {
+    insertRows(30);
+    archiver.archive(entryStore.getConnection());
+    await().until(() -> !archiver.isRotating());
+
+    insertRows(20);
+    ArchiveResult result = archiver.archive(entryStore.getConnection());
+    assertThat(((ArchiveResult.Success) result).getArchived()).isEqualTo(20);
+    await().until(() -> !archiver.isRotating());
+
+    assertThat(countRows(tmpDir.resolve("archive.1.db"))).isEqualTo(30);
+    assertThat(countRows(tmpDir.resolve("archive.2.db"))).isEqualTo(20);
+  }
+
+  @Test
+  public void testNoRotateUnderLimit() throws Exception {
+    insertRows(5);
+    ArchiveResult result = archiver.archive(entryStore.getConnection());
+    assertThat(result).isInstanceOf(ArchiveResult.NoOp.class);
+    assertThat(countRows(tmpDir.resolve("live.db"))).isEqualTo(5);
+  }
+
+  @Test
+  public void testRejectsEntryStoreWithoutRotation() throws Exception {
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(tmpDir.resolve("other.db").toString());
+    try (EntryStore store =
+        new DefaultEntryStore(config) {
+          @Override
+          public boolean supportsRotation() {
+            return false;
+          }
+        }) {
+      store.initialize();
+      RotatingArchiver other = newArchiver();
+      other.setEntryStore(store);
+      assertThatThrownBy(() -> other.initialize(StatusReporter.DEFAULT))
+          .isInstanceOf(IllegalStateException.class);
+    }
+  }
+
+  @Test
+  public void testRollsOverUnrotatedFileAsItIs() throws Exception {
+    archiver.close();
+    // An archive left at the same path by a rolling archiver, which has no rotation marker.
+    Path archive = tmpDir.resolve("archive.db");
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive);
+        Statement st = c.createStatement()) {
+      st.execute(Statements.instance().createEntriesTable());
+      st.execute("INSERT INTO entries VALUES (1, 0, 20000, x'28b52ffd')");
+    }
+
+    archiver = newArchiver();
+    archiver.initialize(StatusReporter.DEFAULT);
+    await().until(() -> !archiver.isRotating());
+
+    Path rolled = tmpDir.resolve("archive.1.db");
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + rolled);
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery("SELECT hex(content) FROM entries")) {
+      assertThat(ArchiveManifest.read(c)).isEmpty();
+      rs.next();
+      assertThat(rs.getString(1)).isEqualTo("28B52FFD");
+    }
+  }
+
+  @Test
+  public void testWritesTimeIndexAndBloomFilters() throws Exception {
+    archiver.close();
+    archiver = newArchiver();
+    archiver.setTimeIndex(true);
+    archiver.setTimeIndexRows(10);
+    archiver.setBloomFilters(true);
+    archiver.setBloomFilterRows(10);
+    archiver.initialize(StatusReporter.DEFAULT);
+    await().until(() -> !archiver.isRotating());
+
+    insertRows(25);
+    archiver.archive(entryStore.getConnection());
+    await().until(() -> !archiver.isRotating());
+
+    Path rolled = tmpDir.resolve("archive.1.db");
+    assertThat(countRows(rolled, "entry_times")).isEqualTo(3);
+    assertThat(countRows(rolled, "entry_blooms")).isEqualTo(3);
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + rolled);
+        Statement st = c.createStatement();
+        ResultSet rs =
+            st.executeQuery("SELECT count(*) FROM sqlite_master WHERE name = 'rotation'")) {
+      rs.next();
+      assertThat(rs.getInt(1)).isEqualTo(0);
+    }
+  }
+
+  private void insertRows(int count) throws SQLException {
+    for (int i = 0; i < count; i++) {
+      entryStore.insert(System.currentTimeMillis() / 1000, 0, 20000, ("row " + i).getBytes());
+    }
+    entryStore.executeBatch();
+    entryStore.commit();
+  }
+
+  private long countRows(Path path) throws SQLException {
+    return countRows(path, "entries");
+  }
+
+  private long countRows(Path path, String table) throws SQLException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + path);
+        Statement st = c.createStatement();
+        ResultSet rs = st.executeQuery("SELECT count(*) FROM " + table)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+}
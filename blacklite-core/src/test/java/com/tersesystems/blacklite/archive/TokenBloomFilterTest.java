@@ -0,0 +1,74 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+public class TokenBloomFilterTest {
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testTokensAreFound() {
+    TokenBloomFilter.Builder builder = new TokenBloomFilter.Builder();
+    builder.add(bytes("{\"message\":\"order placed\",\"request_id\":\"9f1c2e\"}"));
+    builder.add(bytes("GET /api/orders completed in 12 ms"));
+    TokenBloomFilter filter = builder.build();
+
+    assertThat(filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("9f1c2e")))).isTrue();
+    assertThat(filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("order placed")))).isTrue();
+    assertThat(filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("/api/orders")))).isTrue();
+    assertThat(filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("\"request_id\":"))))
+        .isTrue();
+  }
+
+  @Test
+  public void testRoundtripThroughBits() {
+    TokenBloomFilter.Builder builder = new TokenBloomFilter.Builder();
+    builder.add(bytes("hello world"));
+    TokenBloomFilter built = builder.build();
+    TokenBloomFilter read = new TokenBloomFilter(built.getBits(), built.getNumHashes());
+    assertThat(read.mayContainAll(TokenBloomFilter.tokenHashes(bytes("world hello")))).isTrue();
+  }
+
+  @Test
+  public void testFalsePositiveRate() {
+    TokenBloomFilter.Builder builder = new TokenBloomFilter.Builder();
+    for (int i = 0; i < 10000; i++) {
+      builder.add(bytes("present-" + i));
+    }
+    TokenBloomFilter filter = builder.build();
+
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      assertThat(filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("present-" + i))))
+          .isTrue();
+      if (filter.mayContainAll(TokenBloomFilter.tokenHashes(bytes("absent-" + i)))) {
+        falsePositives++;
+      }
+    }
+    // 10 bits per token is around 1%.
+    assertThat(falsePositives).isLessThan(300);
+  }
+
+  @Test
+  public void testTokenHashesAreDistinct() {
+    assertThat(TokenBloomFilter.tokenHashes(bytes("a b a, b"))).hasSize(2);
+    assertThat(TokenBloomFilter.tokenHashes(bytes(" {}\",: "))).isEmpty();
+  }
+
+  @Test
+  public void testContainsTokens() {
+    byte[] content = bytes("{\"message\":\"request 9f1c2e failed\"}");
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("9f1c2e"))).isTrue();
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("9f1c2e failed"))).isTrue();
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("\"message\""))).isTrue();
+    // Only part of a token.
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("quest"))).isFalse();
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("9f1c"))).isFalse();
+    assertThat(TokenBloomFilter.containsTokens(content, bytes("missing"))).isFalse();
+  }
+}
@@ -0,0 +1,187 @@
+package com.tersesystems.blacklite.archive;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tersesystems.blacklite.StatusReporter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TriggeringPolicyTest {
+
+  Connection conn;
+
+  @BeforeEach
+  public void beforeEach() throws SQLException {
+    conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+    try (Statement st = conn.createStatement()) {
+      st.execute("ATTACH ':memory:' AS archive");
+      st.execute(
+          "CREATE TABLE archive.entries (epoch_secs LONG, nanos INTEGER, level INTEGER, content BLOB)");
+    }
+  }
+
+  @AfterEach
+  public void afterEach() throws SQLException {
+    conn.close();
+  }
+
+  @Test
+  public void testTimeBased() throws SQLException {
+    TimeBasedTriggeringPolicy policy =
+        new TimeBasedTriggeringPolicy() {
+          @Override
+          protected long currentTimeSeconds() {
+            return 1000;
+          }
+        };
+    policy.setMaximumAgeSeconds(100);
+    assertThat(policy.isTriggered(conn)).isFalse();
+
+    insert(950);
+    assertThat(policy.isTriggered(conn)).isFalse();
+
+    // The oldest entry is cached until reset.
+    insert(800);
+    assertThat(policy.isTriggered(conn)).isFalse();
+    policy.reset();
+    assertThat(policy.isTriggered(conn)).isTrue();
+  }
+
+  @Test
+  public void testTimeBasedRejectsZeroAge() {
+    TimeBasedTriggeringPolicy policy = new TimeBasedTriggeringPolicy();
+    assertThatThrownBy(() -> policy.setMaximumAgeSeconds(0))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testSizeBasedEstimatesSize() throws SQLException {
+    final long[] now = {1000};
+    SizeBasedTriggeringPolicy policy =
+        new SizeBasedTriggeringPolicy() {
+          @Override
+          protected long currentTimeMillis() {
+            return now[0];
+          }
+        };
+    policy.setCheckInterval(60000);
+    final long size = archiveSize();
+    policy.setMaximumFileSize(size + 100);
+
+    // The size is read on the first check, and the archived bytes are added to it until the
+    // interval has passed.
+    assertThat(policy.isTriggered(conn)).isFalse();
+    policy.archived(60);
+    now[0] += 1000;
+    assertThat(policy.isTriggered(conn)).isFalse();
+    policy.archived(60);
+    now[0] += 1000;
+    assertThat(policy.isTriggered(conn)).isTrue();
+
+    // Once the interval has passed, the size is read again, and nothing was written.
+    now[0] += 60000;
+    assertThat(policy.isTriggered(conn)).isFalse();
+
+    // Reset on rollover, and read again on the next check.
+    policy.archived(200);
+    policy.reset();
+    assertThat(policy.isTriggered(conn)).isFalse();
+  }
+
+  @Test
+  public void testSizeBasedReportsErrors() throws SQLException {
+    List<String> errors = new ArrayList<>();
+    SizeBasedTriggeringPolicy policy = new SizeBasedTriggeringPolicy();
+    policy.initialize(errorReporter(errors));
+    policy.setMaximumFileSize(100);
+    Connection closed = DriverManager.getConnection("jdbc:sqlite::memory:");
+    closed.close();
+
+    // The estimate is used until the size can be read again.
+    policy.archived(50);
+    assertThat(policy.isTriggered(closed)).isFalse();
+    assertThat(errors).hasSize(1);
+    policy.archived(60);
+    assertThat(policy.isTriggered(closed)).isTrue();
+    assertThat(errors).hasSize(1);
+  }
+
+  @Test
+  public void testTimeBasedReportsErrors() throws SQLException {
+    List<String> errors = new ArrayList<>();
+    TimeBasedTriggeringPolicy policy = new TimeBasedTriggeringPolicy();
+    policy.initialize(errorReporter(errors));
+    Connection closed = DriverManager.getConnection("jdbc:sqlite::memory:");
+    closed.close();
+    assertThat(policy.isTriggered(closed)).isFalse();
+    assertThat(errors).hasSize(1);
+  }
+
+  private long archiveSize() throws SQLException {
+    try (Statement st = conn.createStatement();
+        ResultSet rs =
+            st.executeQuery(
+                "SELECT page_count * page_size FROM archive.pragma_page_count(), "
+                    + "archive.pragma_page_size()")) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  private static StatusReporter errorReporter(List<String> errors) {
+    return new StatusReporter() {
+      @Override
+      public void addInfo(String msg) {}
+
+      @Override
+      public void addInfo(String msg, Throwable ex) {}
+
+      @Override
+      public void addWarn(String msg) {}
+
+      @Override
+      public void addWarn(String msg, Throwable ex) {}
+
+      @Override
+      public void addError(String msg) {
+        errors.add(msg);
+      }
+
+      @Override
+      public void addError(String msg, Throwable ex) {
+        errors.add(msg);
+      }
+    };
+  }
+
+  @Test
+  public void testComposite() {
+    CompositeTriggeringPolicy any = new CompositeTriggeringPolicy();
+    any.addPolicy(c -> false);
+    any.addPolicy(c -> true);
+    assertThat(any.isTriggered(conn)).isTrue();
+
+    CompositeTriggeringPolicy all = new CompositeTriggeringPolicy();
+    all.setMode(CompositeTriggeringPolicy.Mode.ALL);
+    all.addPolicy(c -> false);
+    all.addPolicy(c -> true);
+    assertThat(all.isTriggered(conn)).isFalse();
+
+    assertThat(new CompositeTriggeringPolicy().isTriggered(conn)).isFalse();
+  }
+
+  private void insert(long epochSecs) throws SQLException {
+    try (Statement st = conn.createStatement()) {
+      st.execute("INSERT INTO archive.entries VALUES (" + epochSecs + ", 0, 0, x'00')");
+    }
+  }
+}
@@ -0,0 +1,224 @@
+package com.tersesystems.blacklite.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tersesystems.blacklite.Entry;
+import com.tersesystems.blacklite.archive.EntryBlock;
+import com.tersesystems.blacklite.codec.Codec;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.parquet.hadoop.ParquetWriter;
+
+/**
+ * Exports the entries of archive databases to a Parquet writer.
+ *
+ * <p>Rows are read from SQLite still encoded, and handed off in batches to a pool of decoder
+ * threads, each with its own codec instance. Decoded batches are written in the order they were
+ * read. Only a fixed number of batches are in flight at any one time, so memory use is bounded no
+ * matter how large the archive is.
+ */
+public class ArchiveExporter implements AutoCloseable {
+
+  private static final String ENTRIES_SQL =
+      "SELECT epoch_secs, nanos, level, content FROM entries ORDER BY rowid";
+  private static final String BLOCKS_SQL = "SELECT content FROM entry_blocks ORDER BY rowid";
+
+  private static final Object[] NO_FIELDS = new Object[0];
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final List<FieldSpec> fields;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+
+  /**
+   * @param fields the JSON fields to promote to columns.
+   * @param parallelism the number of decoder threads.
+   * @param batchSize the number of entries in a batch. Entry blocks are always one batch.
+   */
+  public ArchiveExporter(List<FieldSpec> fields, int parallelism, int batchSize) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1");
+    }
+    this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+    this.batchSize = batchSize;
+    // Enough to keep all the decoders busy while the writer drains the oldest batch.
+    this.maxInFlight = parallelism * 2;
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            parallelism,
+            r -> {
+              Thread t = new Thread(r);
+              t.setDaemon(true);
+              t.setName("blacklite-export-decoder-" + threadNumber.incrementAndGet());
+              return t;
+            });
+  }
+
+  public List<FieldSpec> getFields() {
+    return fields;
+  }
+
+  /**
+   * Exports all the entries in an archive, oldest first.
+   *
+   * @param conn a connection to the archive database.
+   * @param blocks true if the archive has entry blocks rather than entries.
+   * @param codecFactory creates a codec for the archive. Codecs are not thread safe, so every
+   *     decoder thread gets its own, and they are closed when the export is done.
+   * @param writer the parquet writer.
+   * @return the number of entries written.
+   */
+  public long export(
+      Connection conn,
+      boolean blocks,
+      Supplier<Codec> codecFactory,
+      ParquetWriter<ExportRecord> writer)
+      throws SQLException, IOException {
+    Queue<Codec> codecs = new ConcurrentLinkedQueue<>();
+    ThreadLocal<Codec> threadCodec =
+        ThreadLocal.withInitial(
+            () -> {
+              Codec codec = codecFactory.get();
+              codecs.add(codec);
+              return codec;
+            });
+
+    Deque<Future<List<ExportRecord>>> inFlight = new ArrayDeque<>();
+    long written = 0;
+    try {
+      try (PreparedStatement ps = conn.prepareStatement(blocks ? BLOCKS_SQL : ENTRIES_SQL);
+          ResultSet rs = ps.executeQuery()) {
+        if (blocks) {
+          while (rs.next()) {
+            byte[] block = rs.getBytes(1);
+            inFlight.add(executor.submit(() -> decodeBlock(threadCodec.get(), block)));
+            written += drain(inFlight, maxInFlight - 1, writer);
+          }
+        } else {
+          List<Entry> batch = new ArrayList<>(batchSize);
+          while (rs.next()) {
+            batch.add(new Entry(-1, rs.getLong(1), rs.getInt(2), rs.getInt(3), rs.getBytes(4)));
+            if (batch.size() == batchSize) {
+              List<Entry> full = batch;
+              inFlight.add(executor.submit(() -> decodeEntries(threadCodec.get(), full)));
+              written += drain(inFlight, maxInFlight - 1, writer);
+              batch = new ArrayList<>(batchSize);
+            }
+          }
+          if (!batch.isEmpty()) {
+            List<Entry> last = batch;
+            inFlight.add(executor.submit(() -> decodeEntries(threadCodec.get(), last)));
+          }
+        }
+      }
+      written += drain(inFlight, 0, writer);
+    } finally {
+      // Let any outstanding batches finish before their codecs are closed.
+      for (Future<List<ExportRecord>> future : inFlight) {
+        future.cancel(false);
+        try {
+          future.get();
+        } catch (Exception e) {
+          // already failing, nothing more to report.
+        }
+      }
+      for (Codec codec : codecs) {
+        codec.close();
+      }
+    }
+    return written;
+  }
+
+  private long drain(
+      Deque<Future<List<ExportRecord>>> inFlight, int limit, ParquetWriter<ExportRecord> writer)
+      throws IOException {
+    long written = 0;
+    while (inFlight.size() > limit) {
+      List<ExportRecord> records;
+      try {
+        records = inFlight.peekFirst().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while decoding");
+      } catch (ExecutionException e) {
+        throw new IOException("Cannot decode entries", e.getCause());
+      }
+      inFlight.removeFirst();
+      for (ExportRecord record : records) {
+        writer.write(record);
+      }
+      written += records.size();
+    }
+    return written;
+  }
+
+  private List<ExportRecord> decodeEntries(Codec codec, List<Entry> entries) {
+    List<ExportRecord> records = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      records.add(toRecord(entry, codec.decode(entry.content)));
+    }
+    return records;
+  }
+
+  private List<ExportRecord> decodeBlock(Codec codec, byte[] block) {
+    List<Entry> entries = EntryBlock.unpack(codec.decode(block));
+    List<ExportRecord> records = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      records.add(toRecord(entry, entry.content));
+    }
+    return records;
+  }
+
+  private ExportRecord toRecord(Entry entry, byte[] content) {
+    return new ExportRecord(
+        entry.epochSecond, entry.nanos, entry.level, content, extractFields(content));
+  }
+
+  private Object[] extractFields(byte[] content) {
+    if (fields.isEmpty()) {
+      return NO_FIELDS;
+    }
+    Object[] values = new Object[fields.size()];
+    JsonNode root;
+    try {
+      root = mapper.readTree(content);
+    } catch (IOException e) {
+      // Content that isn't JSON has no fields.
+      return values;
+    }
+    if (root == null) {
+      return values;
+    }
+    for (int i = 0; i < values.length; i++) {
+      values[i] = fields.get(i).extract(root);
+    }
+    return values;
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+}
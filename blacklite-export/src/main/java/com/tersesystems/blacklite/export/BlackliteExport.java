@@ -0,0 +1,288 @@
+package com.tersesystems.blacklite.export;
+
+import static java.lang.String.format;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.TaggedCodec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import com.tersesystems.blacklite.codec.lz4.LZ4Codec;
+import com.tersesystems.blacklite.codec.lz4.LZ4Frames;
+import com.tersesystems.blacklite.codec.zstd.AdaptiveZStdCodec;
+import com.tersesystems.blacklite.codec.zstd.ZStdCodec;
+import com.tersesystems.blacklite.codec.zstd.ZStdDictCodec;
+import com.tersesystems.blacklite.codec.zstd.ZStdDictSqliteRepository;
+import com.tersesystems.blacklite.codec.zstd.ZStdUtils;
+import com.tersesystems.blacklite.codec.zstd.ZstdDictFileRepository;
+import com.tersesystems.blacklite.codec.zstd.ZstdDictRepository;
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+/**
+ * Runs the command line application, exporting one or more archive databases into a single
+ * Parquet file.
+ */
+@Command(
+    name = "blacklite-export",
+    version = "1.0",
+    description = "Exports blacklite archives to Parquet")
+public class BlackliteExport implements Runnable {
+
+  @Parameters(
+      paramLabel = "FILE",
+      arity = "1..*",
+      description = "archive files to export, oldest first")
+  List<File> files;
+
+  @Option(
+      names = {"-o", "--output"},
+      paramLabel = "OUTPUT",
+      required = true,
+      description = "Parquet file to write")
+  File output;
+
+  @Option(
+      names = {"-f", "--field"},
+      paramLabel = "FIELD",
+      description =
+          "Promote a JSON field in content to a column, i.e. logger_name:string or"
+              + " context.duration_ms:long.  Types are string, long, double and boolean")
+  List<String> fieldSpecs = new ArrayList<>();
+
+  @Option(
+      names = {"-p", "--parallelism"},
+      paramLabel = "THREADS",
+      description = "Number of decoding threads (default: number of processors)")
+  int parallelism = Runtime.getRuntime().availableProcessors();
+
+  @Option(
+      names = {"--batch-size"},
+      paramLabel = "ENTRIES",
+      defaultValue = "1000",
+      description = "Number of entries decoded as a batch (default: ${DEFAULT-VALUE})")
+  int batchSize;
+
+  @Option(
+      names = {"--compression"},
+      paramLabel = "CODEC",
+      defaultValue = "SNAPPY",
+      description =
+          "Parquet compression, one of ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+  CompressionCodecName compression;
+
+  @Option(
+      names = {"--row-group-size"},
+      paramLabel = "BYTES",
+      defaultValue = "134217728",
+      description = "Parquet row group size in bytes (default: ${DEFAULT-VALUE})")
+  long rowGroupSize;
+
+  @Option(
+      names = {"-d", "--dictionary"},
+      description = "Use the given zstandard dictionary")
+  String dictPath;
+
+  @Option(
+      names = {"-v", "--verbose"},
+      paramLabel = "VERBOSE",
+      description = "Print verbose logging")
+  boolean verbose;
+
+  @Option(
+      names = {"-V", "--version"},
+      versionHelp = true,
+      description = "display version info")
+  boolean versionInfoRequested;
+
+  @Option(
+      names = {"-h", "--help"},
+      usageHelp = true,
+      description = "display this help message")
+  boolean usageHelpRequested;
+
+  public static void main(String... args) {
+    final CommandLine commandLine = new CommandLine(new BlackliteExport());
+    if (commandLine.isUsageHelpRequested()) {
+      commandLine.usage(System.out);
+      return;
+    } else if (commandLine.isVersionHelpRequested()) {
+      commandLine.printVersionHelp(System.out);
+      return;
+    }
+    System.exit(commandLine.execute(args));
+  }
+
+  public void run() {
+    StatusReporter statusReporter = StatusReporter.DEFAULT;
+    for (File file : files) {
+      if (! file.exists()) {
+        throw new IllegalArgumentException("File not found: " + file);
+      }
+      if (! file.canRead()) {
+        throw new IllegalArgumentException("Cannot read file: " + file);
+      }
+    }
+
+    List<FieldSpec> fields =
+      fieldSpecs.stream().map(FieldSpec::parse).collect(Collectors.toList());
+    try (ArchiveExporter exporter = new ArchiveExporter(fields, parallelism, batchSize);
+         ParquetWriter<ExportRecord> writer =
+           ExportParquetWriter.builder(output.toPath(), fields)
+             .withCompressionCodec(compression)
+             .withRowGroupSize(rowGroupSize)
+             .build()) {
+      long total = 0;
+      for (File file : files) {
+        long count = export(exporter, writer, file, statusReporter);
+        if (verbose) {
+          statusReporter.addInfo(format("Exported %d entries from %s", count, file));
+        }
+        total += count;
+      }
+      if (verbose) {
+        statusReporter.addInfo(format("Exported %d entries to %s", total, output));
+      }
+    } catch (IOException | SQLException e) {
+      throw new IllegalStateException("Cannot export to " + output, e);
+    }
+  }
+
+  protected long export(
+    ArchiveExporter exporter,
+    ParquetWriter<ExportRecord> writer,
+    File file,
+    StatusReporter statusReporter)
+    throws SQLException, IOException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath())) {
+      Optional<ArchiveManifest> manifest = ArchiveManifest.read(c);
+      boolean blocks;
+      String codecName;
+      if (manifest.isPresent()) {
+        blocks = ArchiveManifest.FORMAT_ENTRY_BLOCKS.equals(manifest.get().getFormat());
+        codecName = manifest.get().getCodec();
+      } else {
+        blocks = hasBlocks(c);
+        codecName = detectCodec(c, blocks);
+      }
+      // Only files written by a codec that tags its rows are decoded by tag, as an untagged row
+      // can start with a tag byte.
+      final Supplier<Codec> fileCodecFactory = codecFactory(file, codecName, statusReporter);
+      Supplier<Codec> codecFactory =
+        isTagged(codecName)
+          ? taggedCodecFactory(file, fileCodecFactory, statusReporter)
+          : fileCodecFactory;
+      return exporter.export(c, blocks, codecFactory, writer);
+    }
+  }
+
+  /**
+   * Decodes tagged rows by their tag, and untagged rows with the codec for the file.  Each thread
+   * gets its own tagged codec, and only creates the codecs for the tags it actually decodes.
+   */
+  protected Supplier<Codec> taggedCodecFactory(
+    File file, Supplier<Codec> fileCodecFactory, StatusReporter statusReporter) {
+    final Supplier<Codec> zstdFactory = codecFactory(file, ZStdDictCodec.NAME, statusReporter);
+    final Supplier<Codec> lz4Factory = codecFactory(file, LZ4Codec.NAME, statusReporter);
+    return () -> {
+      final TaggedCodec taggedCodec = new TaggedCodec();
+      taggedCodec.setFallback(fileCodecFactory);
+      taggedCodec.register(TaggedCodec.ZSTD, zstdFactory);
+      taggedCodec.register(TaggedCodec.LZ4, lz4Factory);
+      return taggedCodec;
+    };
+  }
+
+  /** @return true if the codec tags every row it encodes. */
+  protected boolean isTagged(String codecName) {
+    return TaggedCodec.NAME.equals(codecName) || AdaptiveZStdCodec.NAME.equals(codecName);
+  }
+
+  protected Supplier<Codec> codecFactory(
+    File file, String codecName, StatusReporter statusReporter) {
+    // Every row of a tagged file is tagged, so there's no codec for the file as a whole.
+    if (IdentityCodec.NAME.equals(codecName) || isTagged(codecName)) {
+      return IdentityCodec::new;
+    }
+    if (ZStdCodec.NAME.equals(codecName) || ZStdDictCodec.NAME.equals(codecName)) {
+      return () -> {
+        final ZStdDictCodec zstdDictCodec = new ZStdDictCodec();
+        zstdDictCodec.setRepository(dictionaryRepository(file));
+        zstdDictCodec.initialize(statusReporter);
+        return zstdDictCodec;
+      };
+    }
+    if (LZ4Codec.NAME.equals(codecName)) {
+      return () -> {
+        final LZ4Codec lz4Codec = new LZ4Codec();
+        lz4Codec.initialize(statusReporter);
+        return lz4Codec;
+      };
+    }
+    String msg = format("Cannot export %s, unsupported codec %s", file, codecName);
+    throw new IllegalArgumentException(msg);
+  }
+
+  protected ZstdDictRepository dictionaryRepository(File file) {
+    if (dictPath == null) {
+      final ZStdDictSqliteRepository dictRepo = new ZStdDictSqliteRepository();
+      dictRepo.setFile(file.getAbsolutePath());
+      return dictRepo;
+    }
+    try {
+      File dictFile = new File(dictPath);
+      if (ZStdUtils.isDictionary(dictFile)) {
+        final ZstdDictFileRepository dictRepo = new ZstdDictFileRepository();
+        dictRepo.setFile(dictFile.getAbsolutePath());
+        return dictRepo;
+      }
+      final ZStdDictSqliteRepository dictRepo = new ZStdDictSqliteRepository();
+      dictRepo.setFile(dictFile.getAbsolutePath());
+      return dictRepo;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  protected boolean hasBlocks(Connection c) throws SQLException {
+    String sql =
+      "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = 'entry_blocks'";
+    try (PreparedStatement ps = c.prepareStatement(sql);
+         ResultSet rs = ps.executeQuery()) {
+      return rs.next() && rs.getInt(1) > 0;
+    }
+  }
+
+  protected String detectCodec(Connection c, boolean blocks) throws SQLException {
+    String table = blocks ? "entry_blocks" : "entries";
+    try (PreparedStatement ps = c.prepareStatement("SELECT content FROM " + table + " LIMIT 1");
+         ResultSet resultSet = ps.executeQuery()) {
+      if (resultSet.next()) {
+        byte[] content = resultSet.getBytes(1);
+        if (ZStdUtils.isFrame(content)) {
+          return ZStdDictCodec.NAME;
+        }
+        if (LZ4Frames.isFrame(content)) {
+          return LZ4Codec.NAME;
+        }
+      }
+      return IdentityCodec.NAME;
+    }
+  }
+}
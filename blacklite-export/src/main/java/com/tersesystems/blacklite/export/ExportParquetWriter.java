@@ -0,0 +1,54 @@
+package com.tersesystems.blacklite.export;
+
+import java.nio.file.Path;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.io.OutputFile;
+
+/** Creates Parquet writers for export records. */
+public final class ExportParquetWriter {
+
+  private ExportParquetWriter() {}
+
+  /**
+   * Creates a writer builder for a local file, overwriting the file if it exists.
+   *
+   * <p>The level is dictionary encoded, as there are only a handful of distinct levels. Content is
+   * almost always unique, so dictionary encoding is turned off for it rather than building a
+   * dictionary that would be thrown away.
+   *
+   * @param path the parquet file.
+   * @param fields the promoted fields.
+   * @return the builder.
+   */
+  public static Builder builder(Path path, List<FieldSpec> fields) {
+    return new Builder(new LocalOutputFile(path), fields)
+        .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+        .withDictionaryEncoding(true)
+        .withDictionaryEncoding(ExportWriteSupport.LEVEL, true)
+        .withDictionaryEncoding(ExportWriteSupport.CONTENT, false);
+  }
+
+  public static final class Builder extends ParquetWriter.Builder<ExportRecord, Builder> {
+    private final List<FieldSpec> fields;
+
+    Builder(OutputFile file, List<FieldSpec> fields) {
+      super(file);
+      this.fields = fields;
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<ExportRecord> getWriteSupport(Configuration conf) {
+      return new ExportWriteSupport(fields);
+    }
+  }
+}
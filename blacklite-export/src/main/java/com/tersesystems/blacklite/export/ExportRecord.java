@@ -0,0 +1,49 @@
+package com.tersesystems.blacklite.export;
+
+/** A decoded entry, with the values of any promoted fields, ready to be written out. */
+public final class ExportRecord {
+
+  private final long epochSecs;
+  private final int nanos;
+  private final int level;
+  private final byte[] content;
+  private final Object[] fields;
+
+  public ExportRecord(long epochSecs, int nanos, int level, byte[] content, Object[] fields) {
+    this.epochSecs = epochSecs;
+    this.nanos = nanos;
+    this.level = level;
+    this.content = content;
+    this.fields = fields;
+  }
+
+  public long getEpochSecs() {
+    return epochSecs;
+  }
+
+  public int getNanos() {
+    return nanos;
+  }
+
+  /** @return the time as microseconds since epoch. */
+  public long getEpochMicros() {
+    return epochSecs * 1_000_000L + nanos / 1_000;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /** @return the decoded content of the entry. */
+  public byte[] getContent() {
+    return content;
+  }
+
+  /**
+   * @return the values of the promoted fields, in the same order as the field specs. Values are
+   *     null if the field was not found.
+   */
+  public Object[] getFields() {
+    return fields;
+  }
+}
@@ -0,0 +1,137 @@
+package com.tersesystems.blacklite.export;
+
+import static org.apache.parquet.schema.LogicalTypeAnnotation.TimeUnit.MICROS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+
+/**
+ * Writes export records as Parquet.
+ *
+ * <p>The schema has a {@code timestamp} column in microseconds, {@code nanos} with the full
+ * precision within the second, {@code level}, {@code content} as a string, and an optional column
+ * for each promoted field.
+ */
+public class ExportWriteSupport extends WriteSupport<ExportRecord> {
+
+  public static final String TIMESTAMP = "timestamp";
+  public static final String NANOS = "nanos";
+  public static final String LEVEL = "level";
+  public static final String CONTENT = "content";
+
+  private final List<FieldSpec> fields;
+  private final MessageType schema;
+  private RecordConsumer recordConsumer;
+
+  public ExportWriteSupport(List<FieldSpec> fields) {
+    this.fields = fields;
+    this.schema = createSchema(fields);
+  }
+
+  public static MessageType createSchema(List<FieldSpec> fields) {
+    List<Type> columns = new ArrayList<>();
+    columns.add(
+        Types.required(PrimitiveTypeName.INT64)
+            .as(LogicalTypeAnnotation.timestampType(true, MICROS))
+            .named(TIMESTAMP));
+    columns.add(Types.required(PrimitiveTypeName.INT32).named(NANOS));
+    columns.add(Types.required(PrimitiveTypeName.INT32).named(LEVEL));
+    columns.add(
+        Types.required(PrimitiveTypeName.BINARY)
+            .as(LogicalTypeAnnotation.stringType())
+            .named(CONTENT));
+    for (FieldSpec field : fields) {
+      switch (field.getType()) {
+        case STRING:
+          columns.add(
+              Types.optional(PrimitiveTypeName.BINARY)
+                  .as(LogicalTypeAnnotation.stringType())
+                  .named(field.getColumnName()));
+          break;
+        case LONG:
+          columns.add(Types.optional(PrimitiveTypeName.INT64).named(field.getColumnName()));
+          break;
+        case DOUBLE:
+          columns.add(Types.optional(PrimitiveTypeName.DOUBLE).named(field.getColumnName()));
+          break;
+        case BOOLEAN:
+          columns.add(Types.optional(PrimitiveTypeName.BOOLEAN).named(field.getColumnName()));
+          break;
+        default:
+          throw new IllegalStateException("Unknown type " + field.getType());
+      }
+    }
+    return new MessageType("blacklite", columns);
+  }
+
+  @Override
+  public WriteContext init(Configuration configuration) {
+    return new WriteContext(schema, Collections.emptyMap());
+  }
+
+  @Override
+  public void prepareForWrite(RecordConsumer recordConsumer) {
+    this.recordConsumer = recordConsumer;
+  }
+
+  @Override
+  public void write(ExportRecord record) {
+    recordConsumer.startMessage();
+    int index = 0;
+
+    recordConsumer.startField(TIMESTAMP, index);
+    recordConsumer.addLong(record.getEpochMicros());
+    recordConsumer.endField(TIMESTAMP, index++);
+
+    recordConsumer.startField(NANOS, index);
+    recordConsumer.addInteger(record.getNanos());
+    recordConsumer.endField(NANOS, index++);
+
+    recordConsumer.startField(LEVEL, index);
+    recordConsumer.addInteger(record.getLevel());
+    recordConsumer.endField(LEVEL, index++);
+
+    recordConsumer.startField(CONTENT, index);
+    recordConsumer.addBinary(Binary.fromConstantByteArray(record.getContent()));
+    recordConsumer.endField(CONTENT, index++);
+
+    Object[] values = record.getFields();
+    for (int i = 0; i < fields.size(); i++, index++) {
+      Object value = values[i];
+      if (value == null) {
+        // optional fields are left out entirely when there's no value.
+        continue;
+      }
+      String columnName = fields.get(i).getColumnName();
+      recordConsumer.startField(columnName, index);
+      switch (fields.get(i).getType()) {
+        case STRING:
+          recordConsumer.addBinary(Binary.fromString((String) value));
+          break;
+        case LONG:
+          recordConsumer.addLong((Long) value);
+          break;
+        case DOUBLE:
+          recordConsumer.addDouble((Double) value);
+          break;
+        case BOOLEAN:
+          recordConsumer.addBoolean((Boolean) value);
+          break;
+        default:
+          throw new IllegalStateException("Unknown type " + fields.get(i).getType());
+      }
+      recordConsumer.endField(columnName, index);
+    }
+    recordConsumer.endMessage();
+  }
+}
@@ -0,0 +1,148 @@
+package com.tersesystems.blacklite.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A JSON field in the content that is promoted to its own typed column, i.e. {@code
+ * logger_name:string} or {@code context.duration_ms:long}.
+ *
+ * <p>Dots in the name are treated as a path into nested objects, and replaced with underscores in
+ * the column name.  The column name can't be one of the fixed columns of the export, or the
+ * {@code epoch_secs} column it is read from.
+ */
+public final class FieldSpec {
+
+  public enum Type {
+    STRING,
+    LONG,
+    DOUBLE,
+    BOOLEAN
+  }
+
+  private static final Set<String> RESERVED =
+      Collections.unmodifiableSet(
+          new HashSet<>(
+              Arrays.asList(
+                  ExportWriteSupport.TIMESTAMP,
+                  ExportWriteSupport.NANOS,
+                  ExportWriteSupport.LEVEL,
+                  ExportWriteSupport.CONTENT,
+                  "epoch_secs")));
+
+  private final String name;
+  private final String pointer;
+  private final String columnName;
+  private final Type type;
+
+  public FieldSpec(String name, Type type) {
+    this.name = Objects.requireNonNull(name, "Null name");
+    this.type = Objects.requireNonNull(type, "Null type");
+    this.pointer = "/" + name.replace("~", "~0").replace("/", "~1").replace('.', '/');
+    this.columnName = name.replace('.', '_');
+    if (RESERVED.contains(columnName.toLowerCase(Locale.ROOT))) {
+      throw new IllegalArgumentException(
+          "Field " + name + " clashes with the fixed column " + columnName);
+    }
+  }
+
+  /**
+   * Parses a field specification.
+   *
+   * @param spec the field, in the form {@code name:type}. The type defaults to string.
+   * @return the field spec.
+   */
+  public static FieldSpec parse(String spec) {
+    int colon = spec.lastIndexOf(':');
+    if (colon == 0) {
+      throw new IllegalArgumentException("No field name in " + spec);
+    }
+    if (colon < 0) {
+      return new FieldSpec(spec, Type.STRING);
+    }
+    String name = spec.substring(0, colon);
+    String typeName = spec.substring(colon + 1).trim().toUpperCase(Locale.ROOT);
+    try {
+      return new FieldSpec(name, Type.valueOf(typeName));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown field type in " + spec, e);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getColumnName() {
+    return columnName;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Extracts the value of the field from a parsed JSON document.
+   *
+   * @param root the document.
+   * @return a String, Long, Double or Boolean depending on the type, or null if the field is
+   *     missing or can't be converted.
+   */
+  public Object extract(JsonNode root) {
+    JsonNode node = root.at(pointer);
+    if (node.isMissingNode() || node.isNull()) {
+      return null;
+    }
+    switch (type) {
+      case STRING:
+        return node.isValueNode() ? node.asText() : node.toString();
+      case LONG:
+        if (node.isNumber()) {
+          return node.longValue();
+        }
+        if (node.isTextual()) {
+          try {
+            return Long.parseLong(node.textValue().trim());
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+        return null;
+      case DOUBLE:
+        if (node.isNumber()) {
+          return node.doubleValue();
+        }
+        if (node.isTextual()) {
+          try {
+            return Double.parseDouble(node.textValue().trim());
+          } catch (NumberFormatException e) {
+            return null;
+          }
+        }
+        return null;
+      case BOOLEAN:
+        if (node.isBoolean()) {
+          return node.booleanValue();
+        }
+        if (node.isTextual()) {
+          String text = node.textValue().trim();
+          if ("true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text)) {
+            return Boolean.parseBoolean(text);
+          }
+        }
+        return null;
+      default:
+        throw new IllegalStateException("Unknown type " + type);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return name + ":" + type.name().toLowerCase(Locale.ROOT);
+  }
+}
@@ -0,0 +1,58 @@
+package com.tersesystems.blacklite.export;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.io.LocalInputFile;
+import org.junit.jupiter.api.Test;
+
+public class ArchiveExporterTest {
+
+  @Test
+  public void testExportEntries() throws Exception {
+    Path tmpDir = Files.createTempDirectory("archiveexporter");
+    Path output = tmpDir.resolve("archive.parquet");
+    List<FieldSpec> fields = Collections.singletonList(FieldSpec.parse("n:long"));
+
+    Path archive = tmpDir.resolve("archive.db");
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      try (Statement st = c.createStatement()) {
+        st.execute(
+            "CREATE TABLE entries (epoch_secs LONG, nanos INTEGER, level INTEGER, content BLOB)");
+      }
+      try (PreparedStatement ps = c.prepareStatement("INSERT INTO entries VALUES (?, ?, ?, ?)")) {
+        for (int i = 0; i < 2500; i++) {
+          ps.setLong(1, 1604430000L + i);
+          ps.setInt(2, i);
+          ps.setInt(3, 20000);
+          ps.setBytes(4, ("{\"n\":" + i + "}").getBytes());
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+
+      long written;
+      try (ArchiveExporter exporter = new ArchiveExporter(fields, 2, 100);
+          ParquetWriter<ExportRecord> writer =
+              ExportParquetWriter.builder(output, fields).build()) {
+        written = exporter.export(c, false, IdentityCodec::new, writer);
+      }
+      assertThat(written).isEqualTo(2500);
+    }
+
+    try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(output))) {
+      assertThat(reader.getRecordCount()).isEqualTo(2500);
+      assertThat(reader.getFileMetaData().getSchema().containsField("n")).isTrue();
+    }
+  }
+}
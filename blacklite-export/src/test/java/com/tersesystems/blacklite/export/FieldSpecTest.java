@@ -0,0 +1,52 @@
+package com.tersesystems.blacklite.export;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+public class FieldSpecTest {
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  @Test
+  public void testParse() {
+    FieldSpec spec = FieldSpec.parse("context.duration_ms:long");
+    assertThat(spec.getName()).isEqualTo("context.duration_ms");
+    assertThat(spec.getColumnName()).isEqualTo("context_duration_ms");
+    assertThat(spec.getType()).isEqualTo(FieldSpec.Type.LONG);
+
+    assertThat(FieldSpec.parse("logger_name").getType()).isEqualTo(FieldSpec.Type.STRING);
+    assertThatThrownBy(() -> FieldSpec.parse("logger_name:date"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testRejectsFixedColumns() {
+    assertThatThrownBy(() -> FieldSpec.parse("level:long"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> FieldSpec.parse("timestamp"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> FieldSpec.parse("Content:string"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> FieldSpec.parse("epoch_secs:long"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThat(FieldSpec.parse("context.level:string").getColumnName()).isEqualTo("context_level");
+  }
+
+  @Test
+  public void testExtract() throws Exception {
+    String json =
+        "{\"logger_name\":\"foo\",\"context\":{\"duration_ms\":\"42\",\"ok\":true},"
+            + "\"ratio\":0.5}";
+    JsonNode root = mapper.readTree(json.getBytes());
+    assertThat(FieldSpec.parse("logger_name:string").extract(root)).isEqualTo("foo");
+    assertThat(FieldSpec.parse("context.duration_ms:long").extract(root)).isEqualTo(42L);
+    assertThat(FieldSpec.parse("context.ok:boolean").extract(root)).isEqualTo(true);
+    assertThat(FieldSpec.parse("ratio:double").extract(root)).isEqualTo(0.5);
+    assertThat(FieldSpec.parse("logger_name:long").extract(root)).isNull();
+    assertThat(FieldSpec.parse("missing:string").extract(root)).isNull();
+  }
+}
@@ -0,0 +1,23 @@
+package com.tersesystems.blacklite.log4j2.lz4;
+
+import com.tersesystems.blacklite.codec.lz4.LZ4Codec;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "LZ4Codec", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JLZ4Codec extends LZ4Codec {
+
+  public Log4JLZ4Codec(String mode, int level) {
+    setMode(mode);
+    setLevel(level);
+  }
+
+  @PluginFactory
+  public static Log4JLZ4Codec createCodec(
+      @PluginAttribute(value = "mode", defaultString = MODE_FAST) String mode,
+      @PluginAttribute(value = "level", defaultInt = 9) int level) {
+    return new Log4JLZ4Codec(mode, level);
+  }
+}
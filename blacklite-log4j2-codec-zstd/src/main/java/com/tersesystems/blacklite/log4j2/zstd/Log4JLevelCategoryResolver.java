@@ -0,0 +1,20 @@
+package com.tersesystems.blacklite.log4j2.zstd;
+
+import com.tersesystems.blacklite.codec.zstd.LevelCategoryResolver;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "LevelCategoryResolver", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JLevelCategoryResolver extends LevelCategoryResolver {
+  Log4JLevelCategoryResolver(String boundaries) {
+    setBoundaries(boundaries);
+  }
+
+  @PluginFactory
+  public static Log4JLevelCategoryResolver createResolver(
+      @PluginAttribute(value = "boundaries", defaultString = "") String boundaries) {
+    return new Log4JLevelCategoryResolver(boundaries);
+  }
+}
@@ -0,0 +1,22 @@
+package com.tersesystems.blacklite.log4j2.zstd;
+
+import com.tersesystems.blacklite.codec.zstd.LoggerNameCategoryResolver;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "LoggerNameCategoryResolver", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JLoggerNameCategoryResolver extends LoggerNameCategoryResolver {
+  Log4JLoggerNameCategoryResolver(String field, String prefixes) {
+    setField(field);
+    setPrefixes(prefixes);
+  }
+
+  @PluginFactory
+  public static Log4JLoggerNameCategoryResolver createResolver(
+      @PluginAttribute(value = "field", defaultString = "logger_name") String field,
+      @PluginAttribute(value = "prefixes", defaultString = "") String prefixes) {
+    return new Log4JLoggerNameCategoryResolver(field, prefixes);
+  }
+}
@@ -0,0 +1,61 @@
+package com.tersesystems.blacklite.log4j2.zstd;
+
+import com.tersesystems.blacklite.codec.zstd.CategoryResolver;
+import com.tersesystems.blacklite.codec.zstd.ZStdCategoryDictCodec;
+import com.tersesystems.blacklite.codec.zstd.ZStdDictCache;
+import com.tersesystems.blacklite.codec.zstd.ZstdDictRepository;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "ZStdCategoryDictCodec", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JZStdCategoryDictCodec extends ZStdCategoryDictCodec {
+
+  Log4JZStdCategoryDictCodec(
+      int level,
+      int sampleSize,
+      int dictSize,
+      double retrainThreshold,
+      long ratioWindowSize,
+      double trainingDutyCycle,
+      int dictCacheSize,
+      CategoryResolver categoryResolver,
+      ZstdDictRepository repository) {
+    setLevel(level);
+    setSampleSize(sampleSize);
+    setDictSize(dictSize);
+    setRetrainThreshold(retrainThreshold);
+    setRatioWindowSize(ratioWindowSize);
+    setTrainingDutyCycle(trainingDutyCycle);
+    setDictCacheSize(dictCacheSize);
+    setCategoryResolver(categoryResolver);
+    setRepository(repository);
+  }
+
+  @PluginFactory
+  public static Log4JZStdCategoryDictCodec createCodec(
+      @PluginAttribute(value = "level", defaultInt = 3) int level,
+      @PluginAttribute(value = "sampleSize", defaultInt = 10 * 1024 * 1024) int sampleSize,
+      @PluginAttribute(value = "dictSize", defaultInt = 112640) int dictSize,
+      @PluginAttribute(value = "retrainThreshold", defaultDouble = 0.2) double retrainThreshold,
+      @PluginAttribute(value = "ratioWindowSize", defaultLong = 16 * 1024 * 1024)
+          long ratioWindowSize,
+      @PluginAttribute(value = "trainingDutyCycle", defaultDouble = 0.5) double trainingDutyCycle,
+      @PluginAttribute(value = "dictCacheSize", defaultInt = ZStdDictCache.DEFAULT_MAXIMUM_SIZE)
+          int dictCacheSize,
+      @PluginElement("categoryResolver") CategoryResolver categoryResolver,
+      @PluginElement("repository") ZstdDictRepository repository) {
+    return new Log4JZStdCategoryDictCodec(
+        level,
+        sampleSize,
+        dictSize,
+        retrainThreshold,
+        ratioWindowSize,
+        trainingDutyCycle,
+        dictCacheSize,
+        categoryResolver,
+        repository);
+  }
+}
@@ -11,19 +11,44 @@ import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 @Plugin(name = "ZStdDictCodec", category = Core.CATEGORY_NAME, printObject = true)
 public class Log4JZStdDictCodec extends ZStdDictCodec {
 
-  Log4JZStdDictCodec(int level, int sampleSize, int dictSize, ZstdDictRepository repository) {
+  Log4JZStdDictCodec(
+      int level,
+      int sampleSize,
+      int dictSize,
+      double retrainThreshold,
+      long ratioWindowSize,
+      double trainingDutyCycle,
+      String bootstrapFile,
+      ZstdDictRepository repository) {
     setLevel(level);
     setSampleSize(sampleSize);
     setDictSize(dictSize);
+    setRetrainThreshold(retrainThreshold);
+    setRatioWindowSize(ratioWindowSize);
+    setTrainingDutyCycle(trainingDutyCycle);
+    setBootstrapFile(bootstrapFile);
     setRepository(repository);
   }
 
   @PluginFactory
   public static Log4JZStdDictCodec createCodec(
       @PluginAttribute(value = "level", defaultInt = 3) int level,
-      @PluginAttribute(value = "sampleSize", defaultInt = 100_000 * 1024) int sampleSize,
-      @PluginAttribute(value = "dictSize", defaultInt = 10485760) int dictSize,
+      @PluginAttribute(value = "sampleSize", defaultInt = 10 * 1024 * 1024) int sampleSize,
+      @PluginAttribute(value = "dictSize", defaultInt = 112640) int dictSize,
+      @PluginAttribute(value = "retrainThreshold", defaultDouble = 0.2) double retrainThreshold,
+      @PluginAttribute(value = "ratioWindowSize", defaultLong = 16 * 1024 * 1024)
+          long ratioWindowSize,
+      @PluginAttribute(value = "trainingDutyCycle", defaultDouble = 0.5) double trainingDutyCycle,
+      @PluginAttribute("bootstrapFile") String bootstrapFile,
       @PluginElement("repository") ZstdDictRepository repository) {
-    return new Log4JZStdDictCodec(level, sampleSize, dictSize, repository);
+    return new Log4JZStdDictCodec(
+        level,
+        sampleSize,
+        dictSize,
+        retrainThreshold,
+        ratioWindowSize,
+        trainingDutyCycle,
+        bootstrapFile,
+        repository);
   }
 }
@@ -0,0 +1,73 @@
+package com.tersesystems.blacklite.log4j2;
+
+import static java.util.Objects.requireNonNull;
+
+import com.tersesystems.blacklite.archive.Archiver;
+import com.tersesystems.blacklite.archive.BlockRollingArchiver;
+import com.tersesystems.blacklite.archive.RollingStrategy;
+import com.tersesystems.blacklite.archive.TriggeringPolicy;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+
+@Plugin(name = "BlockRollingArchiver", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4J2BlockRollingArchiver extends BlockRollingArchiver implements Archiver {
+
+  Log4J2BlockRollingArchiver(
+      String file,
+      long maximumNumRows,
+      boolean asyncRollover,
+      String indexes,
+      String catalogFile,
+      boolean bloomFilters,
+      int blockSize,
+      long blockBytes,
+      Codec codec,
+      RollingStrategy rollingStrategy,
+      TriggeringPolicy triggeringPolicy) {
+    setFile(file);
+    setArchiveAfterRows(maximumNumRows);
+    setAsyncRollover(asyncRollover);
+    setIndexes(indexes);
+    setCatalogFile(catalogFile);
+    setBloomFilters(bloomFilters);
+    setBlockSize(blockSize);
+    setBlockBytes(blockBytes);
+    setCodec(codec == null ? new IdentityCodec() : codec);
+
+    setRollingStrategy(requireNonNull(rollingStrategy, "Null rollingStrategy"));
+    setTriggeringPolicy(requireNonNull(triggeringPolicy, "Null triggeringPolicy"));
+  }
+
+  @PluginFactory
+  public static BlockRollingArchiver createArchiver(
+      @PluginAttribute("file") @Required(message = "No file provided for Archiver") String file,
+      @PluginAttribute(value = "maximumNumRows", defaultInt = 10000) long maximumNumRows,
+      @PluginAttribute(value = "asyncRollover", defaultBoolean = false) boolean asyncRollover,
+      @PluginAttribute("indexes") String indexes,
+      @PluginAttribute("catalogFile") String catalogFile,
+      @PluginAttribute(value = "bloomFilters", defaultBoolean = false) boolean bloomFilters,
+      @PluginAttribute(value = "blockSize", defaultInt = 1000) int blockSize,
+      @PluginAttribute(value = "blockBytes", defaultLong = 1024 * 1024) long blockBytes,
+      @PluginElement("codec") Codec codec,
+      @PluginElement("rollingStrategy") RollingStrategy rollingStrategy,
+      @PluginElement("triggeringPolicy") TriggeringPolicy triggeringPolicy) {
+    return new Log4J2BlockRollingArchiver(
+        file,
+        maximumNumRows,
+        asyncRollover,
+        indexes,
+        catalogFile,
+        bloomFilters,
+        blockSize,
+        blockBytes,
+        codec,
+        rollingStrategy,
+        triggeringPolicy);
+  }
+}
@@ -21,11 +21,25 @@ public class Log4J2RollingArchiver extends RollingArchiver implements Archiver {
   Log4J2RollingArchiver(
       String file,
       long maximumNumRows,
+      boolean asyncRollover,
+      String indexes,
+      String catalogFile,
+      boolean bloomFilters,
+      int bloomFilterRows,
+      boolean timeIndex,
+      int timeIndexRows,
       Codec codec,
       RollingStrategy rollingStrategy,
       TriggeringPolicy triggeringPolicy) {
     setFile(file);
     setArchiveAfterRows(maximumNumRows);
+    setAsyncRollover(asyncRollover);
+    setIndexes(indexes);
+    setCatalogFile(catalogFile);
+    setBloomFilters(bloomFilters);
+    setBloomFilterRows(bloomFilterRows);
+    setTimeIndex(timeIndex);
+    setTimeIndexRows(timeIndexRows);
     setCodec(codec == null ? new IdentityCodec() : codec);
 
     setRollingStrategy(requireNonNull(rollingStrategy, "Null rollingStrategy"));
@@ -36,9 +50,28 @@ public class Log4J2RollingArchiver extends RollingArchiver implements Archiver {
   public static RollingArchiver createArchiver(
       @PluginAttribute("file") @Required(message = "No file provided for Archiver") String file,
       @PluginAttribute(value = "maximumNumRows", defaultInt = 10000) long maximumNumRows,
+      @PluginAttribute(value = "asyncRollover", defaultBoolean = false) boolean asyncRollover,
+      @PluginAttribute("indexes") String indexes,
+      @PluginAttribute("catalogFile") String catalogFile,
+      @PluginAttribute(value = "bloomFilters", defaultBoolean = false) boolean bloomFilters,
+      @PluginAttribute(value = "bloomFilterRows", defaultInt = 1000) int bloomFilterRows,
+      @PluginAttribute(value = "timeIndex", defaultBoolean = true) boolean timeIndex,
+      @PluginAttribute(value = "timeIndexRows", defaultInt = 1000) int timeIndexRows,
       @PluginElement("codec") Codec codec,
       @PluginElement("rollingStrategy") RollingStrategy rollingStrategy,
       @PluginElement("triggeringPolicy") TriggeringPolicy triggeringPolicy) {
-    return new Log4J2RollingArchiver(file, maximumNumRows, codec, rollingStrategy, triggeringPolicy);
+    return new Log4J2RollingArchiver(
+        file,
+        maximumNumRows,
+        asyncRollover,
+        indexes,
+        catalogFile,
+        bloomFilters,
+        bloomFilterRows,
+        timeIndex,
+        timeIndexRows,
+        codec,
+        rollingStrategy,
+        triggeringPolicy);
   }
 }
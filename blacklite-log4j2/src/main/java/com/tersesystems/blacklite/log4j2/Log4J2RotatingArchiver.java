@@ -0,0 +1,47 @@
+package com.tersesystems.blacklite.log4j2;
+
+import static java.util.Objects.requireNonNull;
+
+import com.tersesystems.blacklite.archive.Archiver;
+import com.tersesystems.blacklite.archive.RollingStrategy;
+import com.tersesystems.blacklite.archive.RotatingArchiver;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+
+@Plugin(name = "RotatingArchiver", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4J2RotatingArchiver extends RotatingArchiver implements Archiver {
+
+  Log4J2RotatingArchiver(
+      String file,
+      long maximumNumRows,
+      String indexes,
+      String catalogFile,
+      Codec codec,
+      RollingStrategy rollingStrategy) {
+    setFile(file);
+    setArchiveAfterRows(maximumNumRows);
+    setIndexes(indexes);
+    setCatalogFile(catalogFile);
+    setCodec(codec == null ? new IdentityCodec() : codec);
+
+    setRollingStrategy(requireNonNull(rollingStrategy, "Null rollingStrategy"));
+  }
+
+  @PluginFactory
+  public static RotatingArchiver createArchiver(
+      @PluginAttribute("file") @Required(message = "No file provided for Archiver") String file,
+      @PluginAttribute(value = "maximumNumRows", defaultInt = 10000) long maximumNumRows,
+      @PluginAttribute("indexes") String indexes,
+      @PluginAttribute("catalogFile") String catalogFile,
+      @PluginElement("codec") Codec codec,
+      @PluginElement("rollingStrategy") RollingStrategy rollingStrategy) {
+    return new Log4J2RotatingArchiver(
+        file, maximumNumRows, indexes, catalogFile, codec, rollingStrategy);
+  }
+}
@@ -49,6 +49,7 @@ public class Log4JBlackliteAppender extends AbstractAppender {
       @PluginAttribute("file") final String file,
       @PluginAttribute(value = "batchInsertSize", defaultInt = DefaultEntryStoreConfig.BATCH_INSERT_SIZE) final int batchInsertSize,
       @PluginAttribute(value = "maxCapacity", defaultInt = DefaultEntryStoreConfig.MAX_CAPACITY) final int maxCapacity,
+      @PluginAttribute(value = "reorderWindowMillis", defaultLong = 0) final long reorderWindowMillis,
       @PluginElement("archiver") final Archiver archiver,
       @PluginElement("layout") final Layout<? extends Serializable> layout,
       @PluginElement("filter") final Filter filter)
@@ -68,6 +69,7 @@ public class Log4JBlackliteAppender extends AbstractAppender {
     config.setFile(file);
     config.setBatchInsertSize(batchInsertSize);
     config.setMaxCapacity(maxCapacity);
+    config.setReorderWindowMillis(reorderWindowMillis);
     //config.setProperties(additionalProperties);
     LOGGER.info("Connecting with config " + config);
 
@@ -0,0 +1,27 @@
+package com.tersesystems.blacklite.log4j2;
+
+import com.tersesystems.blacklite.archive.CompositeTriggeringPolicy;
+import com.tersesystems.blacklite.archive.TriggeringPolicy;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginElement;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "CompositeTriggeringPolicy", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JCompositeTriggeringPolicy extends CompositeTriggeringPolicy {
+
+  public Log4JCompositeTriggeringPolicy(Mode mode, TriggeringPolicy... policies) {
+    setMode(mode);
+    for (TriggeringPolicy policy : policies) {
+      addPolicy(policy);
+    }
+  }
+
+  @PluginFactory
+  public static Log4JCompositeTriggeringPolicy createTriggeringPolicy(
+      @PluginAttribute(value = "mode", defaultString = "ANY") final String mode,
+      @PluginElement("policies") final TriggeringPolicy... policies) {
+    return new Log4JCompositeTriggeringPolicy(Mode.valueOf(mode.toUpperCase()), policies);
+  }
+}
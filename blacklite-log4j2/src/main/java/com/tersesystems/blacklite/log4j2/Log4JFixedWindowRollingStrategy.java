@@ -1,6 +1,6 @@
 package com.tersesystems.blacklite.log4j2;
 
-import com.tersesystems.blacklite.archive.FileArchiver;
+import com.tersesystems.blacklite.archive.RollableFile;
 import com.tersesystems.blacklite.archive.RollingStrategy;
 import java.io.File;
 import java.io.IOException;
@@ -24,6 +24,16 @@ import org.apache.logging.log4j.core.lookup.StrSubstitutor;
 import org.apache.logging.log4j.core.pattern.NotANumber;
 import org.apache.logging.log4j.status.StatusLogger;
 
+/**
+ * Rolls archive files over into a fixed window of numbered files, renaming each older file up one
+ * index and deleting the oldest.
+ *
+ * <p>Every rename is passed to {@link RollableFile#renamed}, and the archiver publishes them to its
+ * catalog in a single transaction once the rollover is done, so readers that go through the
+ * catalog see the numbered files as they were before or after a rollover, never part way through.
+ * With asynchronous rollover the renames run on the archiver's maintenance thread.  The active
+ * archive file is never renamed by the cascade.
+ */
 @Plugin(name = "FixedWindowRollingStrategy", category = Core.CATEGORY_NAME, printObject = true)
 public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
     implements RollingStrategy {
@@ -54,7 +64,7 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
   }
 
   @Override
-  public void rollover(FileArchiver archiver) {
+  public void rollover(RollableFile archiver) {
     int fileIndex;
     final StringBuilder buf = new StringBuilder(255);
     if (minIndex == Integer.MIN_VALUE) {
@@ -90,16 +100,18 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
 
     final FileRenameAction renameAction =
         new FileRenameAction(new File(currentFileName), new File(renameTo), false);
-    renameAction.execute();
+    if (renameAction.execute()) {
+      archiver.rolledOver(renameTo);
+    }
   }
 
-  private int purge(final int lowIndex, final int highIndex, FileArchiver archiver) {
+  private int purge(final int lowIndex, final int highIndex, RollableFile archiver) {
     return useMax
         ? purgeAscending(lowIndex, highIndex, archiver)
         : purgeDescending(lowIndex, highIndex, archiver);
   }
 
-  protected int purgeAscending(final int lowIndex, final int highIndex, FileArchiver archiver) {
+  protected int purgeAscending(final int lowIndex, final int highIndex, RollableFile archiver) {
     final SortedMap<Integer, Path> eligibleFiles = getEligibleFiles(archiver, true);
     final int maxFiles = highIndex - lowIndex + 1;
 
@@ -136,6 +148,7 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
           if (!action.execute()) {
             return -1;
           }
+          archiver.renamed(entry.getValue().toString(), renameTo);
         } catch (final Exception ex) {
           LOGGER.warn("Exception during purge in RollingFileAppender", ex);
           return -1;
@@ -149,7 +162,7 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
   }
 
   protected SortedMap<Integer, Path> getEligibleFiles(
-      final FileArchiver archiver, final boolean isAscending) {
+      final RollableFile archiver, final boolean isAscending) {
     final StringBuilder buf = new StringBuilder();
     final String pattern = patternProcessor.getPattern();
     patternProcessor.formatFileName(strSubstitutor, buf, NotANumber.NAN);
@@ -158,7 +171,7 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
   }
 
   private int purgeDescending(
-      final int lowIndex, final int highIndex, final FileArchiver archiver) {
+      final int lowIndex, final int highIndex, final RollableFile archiver) {
     // Retrieve the files in descending order, so the highest key will be first.
     final SortedMap<Integer, Path> eligibleFiles = getEligibleFiles(archiver, false);
     final int maxFiles = highIndex - lowIndex + 1;
@@ -191,6 +204,7 @@ public class Log4JFixedWindowRollingStrategy extends AbstractRolloverStrategy
         if (!action.execute()) {
           return -1;
         }
+        archiver.renamed(entry.getValue().toString(), renameTo);
       } catch (final Exception ex) {
         LOGGER.warn("Exception during purge in RollingFileAppender", ex);
         return -1;
@@ -0,0 +1,28 @@
+package com.tersesystems.blacklite.log4j2;
+
+import com.tersesystems.blacklite.archive.SizeBasedTriggeringPolicy;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.appender.rolling.FileSize;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "SizeBasedTriggeringPolicy", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JSizeBasedTriggeringPolicy extends SizeBasedTriggeringPolicy {
+
+  public Log4JSizeBasedTriggeringPolicy(long maximumFileSize, long checkInterval) {
+    setMaximumFileSize(maximumFileSize);
+    setCheckInterval(checkInterval);
+  }
+
+  @PluginFactory
+  public static Log4JSizeBasedTriggeringPolicy createTriggeringPolicy(
+      @PluginAttribute("maximumFileSize") final String maximumFileSize,
+      @PluginAttribute(
+              value = "checkInterval",
+              defaultLong = SizeBasedTriggeringPolicy.DEFAULT_CHECK_INTERVAL)
+          final long checkInterval) {
+    final long size = FileSize.parse(maximumFileSize, Long.MAX_VALUE);
+    return new Log4JSizeBasedTriggeringPolicy(size, checkInterval);
+  }
+}
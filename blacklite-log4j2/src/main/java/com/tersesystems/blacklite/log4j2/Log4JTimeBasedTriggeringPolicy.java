@@ -0,0 +1,22 @@
+package com.tersesystems.blacklite.log4j2;
+
+import com.tersesystems.blacklite.archive.TimeBasedTriggeringPolicy;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+
+@Plugin(name = "TimeBasedTriggeringPolicy", category = Core.CATEGORY_NAME, printObject = true)
+public class Log4JTimeBasedTriggeringPolicy extends TimeBasedTriggeringPolicy {
+
+  public Log4JTimeBasedTriggeringPolicy(long maximumAgeSeconds) {
+    setMaximumAgeSeconds(maximumAgeSeconds);
+  }
+
+  @PluginFactory
+  public static Log4JTimeBasedTriggeringPolicy createTriggeringPolicy(
+      @PluginAttribute(value = "maximumAgeSeconds", defaultLong = 86400)
+          final long maximumAgeSeconds) {
+    return new Log4JTimeBasedTriggeringPolicy(maximumAgeSeconds);
+  }
+}
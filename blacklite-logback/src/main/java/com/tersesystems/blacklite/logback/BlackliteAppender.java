@@ -27,6 +27,8 @@ public class BlackliteAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
 
   private boolean tracing = false;
 
+  private long reorderWindowMillis = 0;
+
   public Encoder<ILoggingEvent> getEncoder() {
     return encoder;
   }
@@ -48,6 +50,7 @@ public class BlackliteAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
       config.setFile(file);
       config.setTracing(tracing);
       config.setMaxCapacity(maxCapacity);
+      config.setReorderWindowMillis(reorderWindowMillis);
       if (properties != null) {
         config.setProperties(properties);
       }
@@ -141,6 +144,16 @@ public class BlackliteAppender extends UnsynchronizedAppenderBase<ILoggingEvent>
     this.tracing = tracing;
   }
 
+  @Override
+  public long getReorderWindowMillis() {
+    return this.reorderWindowMillis;
+  }
+
+  @Override
+  public void setReorderWindowMillis(long reorderWindowMillis) {
+    this.reorderWindowMillis = reorderWindowMillis;
+  }
+
   public Archiver getArchiver() {
     return archiver;
   }
@@ -9,10 +9,20 @@ import ch.qos.logback.core.rolling.helper.IntegerTokenConverter;
 import ch.qos.logback.core.rolling.helper.RenameUtil;
 import ch.qos.logback.core.spi.ContextAwareBase;
 import ch.qos.logback.core.spi.LifeCycle;
-import com.tersesystems.blacklite.archive.FileArchiver;
+import com.tersesystems.blacklite.archive.RollableFile;
 import com.tersesystems.blacklite.archive.RollingStrategy;
 import java.io.File;
 
+/**
+ * Rolls archive files over into a fixed window of numbered files, renaming each older file up one
+ * index and deleting the oldest.
+ *
+ * <p>Every rename is passed to {@link RollableFile#renamed}, and the archiver publishes them to its
+ * catalog in a single transaction once the rollover is done, so readers that go through the
+ * catalog see the numbered files as they were before or after a rollover, never part way through.
+ * With asynchronous rollover the renames run on the archiver's maintenance thread.  The active
+ * archive file is never renamed by the cascade.
+ */
 public class FixedWindowRollingStrategy extends ContextAwareBase
     implements RollingStrategy, LifeCycle {
   static final String FNP_NOT_SET =
@@ -101,7 +111,7 @@ public class FixedWindowRollingStrategy extends ContextAwareBase
   }
 
   @Override
-  public void rollover(FileArchiver archiver) throws RolloverFailure {
+  public void rollover(RollableFile archiver) throws RolloverFailure {
     addInfo(String.format("rollover: enter minIndex = %d maxIndex = %d", minIndex, maxIndex));
 
     // Inside this method it is guaranteed that the hereto active log file is
@@ -125,6 +135,7 @@ public class FixedWindowRollingStrategy extends ContextAwareBase
           final String s = fileNamePattern.convertInt(i + 1);
           addInfo(String.format("rollover: renaming %s to %s", toRenameStr, s));
           util.rename(toRenameStr, s);
+          archiver.renamed(toRenameStr, s);
         } else {
           addInfo("rollover: Skipping roll-over for non-existent file " + toRenameStr);
         }
@@ -134,6 +145,7 @@ public class FixedWindowRollingStrategy extends ContextAwareBase
       addInfo(
           String.format("rollover: finally renaming %s to %s", archiver.getFile(), minFilename));
       util.rename(archiver.getFile(), minFilename);
+      archiver.rolledOver(minFilename);
     }
   }
 
@@ -0,0 +1,15 @@
+package com.tersesystems.blacklite.logback;
+
+import ch.qos.logback.core.util.FileSize;
+
+/**
+ * A size based triggering policy that takes a logback file size, i.e. {@code
+ * <maxFileSize>50MB</maxFileSize>}.
+ */
+public class SizeBasedTriggeringPolicy
+    extends com.tersesystems.blacklite.archive.SizeBasedTriggeringPolicy {
+
+  public void setMaxFileSize(FileSize maxFileSize) {
+    setMaximumFileSize(maxFileSize.getSize());
+  }
+}
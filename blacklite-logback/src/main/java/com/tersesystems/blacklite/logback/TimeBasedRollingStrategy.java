@@ -9,6 +9,7 @@ import ch.qos.logback.core.spi.ContextAwareBase;
 import ch.qos.logback.core.spi.LifeCycle;
 import ch.qos.logback.core.util.FileSize;
 import com.tersesystems.blacklite.archive.FileArchiver;
+import com.tersesystems.blacklite.archive.RollableFile;
 import com.tersesystems.blacklite.archive.RollingStrategy;
 import java.util.Date;
 import java.util.concurrent.Future;
@@ -116,7 +117,7 @@ public class TimeBasedRollingStrategy extends ContextAwareBase
   }
 
   @Override
-  public void rollover(FileArchiver archiver) {
+  public void rollover(RollableFile archiver) {
     String msg =
         String.format(
             "rollover: maxHistory = %d, cleanHistoryOnStart = %s, totalSizeCap = %s",
@@ -126,6 +127,7 @@ public class TimeBasedRollingStrategy extends ContextAwareBase
     String elapsedPeriodsFileName = getElapsedPeriodsFileName();
     if (archiver != null) {
       renameUtil.rename(archiver.getFile(), elapsedPeriodsFileName);
+      archiver.rolledOver(elapsedPeriodsFileName);
     }
 
     if (archiveRemover != null) {
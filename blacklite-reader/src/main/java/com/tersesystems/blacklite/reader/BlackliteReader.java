@@ -6,16 +6,32 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.time.Instant;
-import java.util.Arrays;
-import java.util.TimeZone;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
 import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.TaggedCodec;
 import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import com.tersesystems.blacklite.codec.lz4.LZ4Codec;
+import com.tersesystems.blacklite.codec.lz4.LZ4Frames;
 import com.tersesystems.blacklite.codec.zstd.*;
 import picocli.CommandLine;
 import picocli.CommandLine.ArgGroup;
@@ -35,8 +51,30 @@ import static java.lang.String.format;
     description = "Outputs content from blacklite database")
 public class BlackliteReader implements Runnable {
 
-  @Parameters(paramLabel = "FILE", description = "one or more files to read")
-  File file;
+  @Parameters(
+      paramLabel = "FILE",
+      arity = "0..*",
+      description = "one or more files, directories or globs to read")
+  List<File> files;
+
+  @Option(
+      names = {"--threads"},
+      paramLabel = "THREADS",
+      description = "Number of files to read at once (default: number of processors)")
+  int threads;
+
+  @Option(
+      names = {"--parallel"},
+      paramLabel = "PARALLEL",
+      defaultValue = "1",
+      description = "Number of threads to decode each file with (default: ${DEFAULT-VALUE})")
+  int parallel;
+
+  @Option(
+      names = {"--catalog"},
+      paramLabel = "CATALOG",
+      description = "Read the archives in the catalog that overlap the before/after range")
+  File catalogFile;
 
   @Option(
       names = {"--charset"},
@@ -97,6 +135,48 @@ public class BlackliteReader implements Runnable {
       description = "Custom SQL WHERE clause")
   String whereString;
 
+  @Option(
+      names = {"--contains"},
+      paramLabel = "TEXT",
+      description = "Only render entries containing the text as whole words, using bloom filters "
+        + "to skip entries where possible")
+  String containsString;
+
+  @Option(
+      names = {"-l", "--level"},
+      paramLabel = "LEVEL",
+      split = ",",
+      description = "Only render entries with one of the levels, skipping blocks that don't "
+        + "contain them")
+  int[] levels;
+
+  @Option(
+      names = {"-f", "--follow"},
+      description = "Print new entries as they are written to a live database, until interrupted")
+  boolean follow;
+
+  @Option(
+      names = {"--poll"},
+      paramLabel = "MILLIS",
+      defaultValue = "50",
+      description = "How often to check for new entries when following (default: ${DEFAULT-VALUE})")
+  long pollMillis;
+
+  @Option(
+      names = {"--archive"},
+      paramLabel = "ARCHIVE",
+      description = "The archive file the followed database is archived to, for entries that "
+        + "were archived before they could be printed")
+  File archiveFile;
+
+  @Option(
+      names = {"--time-slack"},
+      paramLabel = "SECONDS",
+      description = "How far out of time order entries can be written, when finding a time range "
+        + "by rowid without a time index, or -1 to scan the whole table "
+        + "(default: the reorder window the file was written with, if any, or a scan)")
+  Long timeSlack;
+
   @Option(
       names = {"-t", "--timezone"},
       defaultValue = "UTC",
@@ -134,41 +214,530 @@ public class BlackliteReader implements Runnable {
     System.exit(commandLine.execute(args));
   }
 
+  // The number of entries read from a file at a time when merging several files.
+  protected static final int MERGE_BATCH_SIZE = 1024;
+
+  // Files next to the archives that are not logs in their own right: the output and journal of a
+  // compaction in progress.
+  private static final List<String> SKIPPED_SUFFIXES =
+    Arrays.asList(ZStdArchiveCompactor.TEMP_SUFFIX, ZStdArchiveCompactor.JOURNAL_SUFFIX);
+
+  // How long to wait for a rollover in progress to be published to a catalog.
+  protected static final long CATALOG_TIMEOUT_MILLIS = 30000;
+
+  // A standby live database or archive, which is empty until it is swapped in.  An archive
+  // standby is the active archive on every other rollover, so it is only skipped when empty.
+  private static final String STANDBY_SUFFIX = ".standby";
+
+  // The --after and --before times, parsed once per run so that relative times such as "5 minutes
+  // ago" mean the same instant for every file.
+  private Instant after;
+  private Instant before;
+
+  // Decodes content for every file of the run when --parallel is given, or null.
+  private ParallelDecoder parallelDecoder;
+
   public void run() {
     StatusReporter statusReporter = StatusReporter.DEFAULT;
-    if (! file.exists()) {
-      throw new IllegalArgumentException("File not found: " + file);
+    after = parseAfter();
+    before = parseBefore();
+    parallelDecoder = parallel > 1 ? QueryBuilder.newParallelDecoder(parallel) : null;
+    try {
+      run(statusReporter);
+    } finally {
+      if (parallelDecoder != null) {
+        parallelDecoder.close();
+        parallelDecoder = null;
+      }
     }
+  }
 
-    if (! file.canRead()) {
-      throw new IllegalArgumentException("Cannot read file: " + file);
+  protected void run(StatusReporter statusReporter) {
+    if (follow) {
+      follow(statusReporter);
+      return;
+    }
+    if (archiveFile != null) {
+      throw new IllegalArgumentException("--archive can only be used with --follow");
+    }
+    List<File> inputFiles = prune(inputFiles(statusReporter), statusReporter);
+    long countResult = 0;
+    if (inputFiles.size() == 1) {
+      countResult = read(inputFiles.get(0), statusReporter);
+    } else if (! inputFiles.isEmpty()) {
+      ExecutorService executor = newExecutor(Math.min(inputFiles.size(), threadCount()));
+      try {
+        if (count) {
+          countResult = countAll(inputFiles, executor, statusReporter);
+        } else {
+          readMerged(inputFiles, executor, statusReporter);
+        }
+      } finally {
+        executor.shutdownNow();
+      }
     }
+    if (count) {
+      System.out.println(countResult);
+    }
+  }
 
-    try (Connection c = Database.createConnection(file)) {
-      Codec codec;
-      if (isCompressed(c)) {
-        ZstdDictRepository dictRepo = dictPath != null ?
-          explicitDictionary(new File(dictPath)) :
-          zstdDictFromDB(file);
-        codec = zstdDictCodec(statusReporter, dictRepo);
+  /**
+   * Follows a single live database, printing entries as they are written.  Entries already in the
+   * file are printed first.
+   */
+  protected void follow(StatusReporter statusReporter) {
+    if (count || beforeTime != null || catalogFile != null) {
+      throw new IllegalArgumentException(
+        "--follow can't be used with --count, --before or --catalog");
+    }
+    List<File> inputFiles = inputFiles(statusReporter);
+    if (inputFiles.size() != 1) {
+      throw new IllegalArgumentException(
+        "--follow needs a single live database, not " + inputFiles);
+    }
+    File inputFile = inputFiles.get(0);
+    checkReadable(inputFile);
+    List<File> archiveFiles = new ArrayList<>();
+    if (archiveFile != null) {
+      // Asynchronous rollover alternates between the file and its standby.
+      archiveFiles.add(archiveFile);
+      archiveFiles.add(new File(archiveFile.getPath() + STANDBY_SUFFIX));
+    }
+    FileFollower.QueryFactory queryFactory =
+      (c, manifest) -> createQueryBuilder(c, inputFile, manifest, statusReporter);
+    Consumer<Stream<LogEntry>> output = entries -> {
+      print(entries);
+      System.out.flush();
+    };
+    try (FileFollower follower =
+           new FileFollower(
+             inputFile, archiveFiles, queryFactory, output, statusReporter, verbose)) {
+      follower.follow(pollMillis);
+    } catch (SQLException e) {
+      statusReporter.addError("Cannot follow " + inputFile, e);
+    }
+  }
+
+  protected List<File> inputFiles(StatusReporter statusReporter) {
+    List<File> expanded = new ArrayList<>();
+    if (files != null) {
+      for (File f : files) {
+        expanded.addAll(expand(f));
+      }
+    }
+    if (catalogFile == null) {
+      if (expanded.isEmpty()) {
+        throw new IllegalArgumentException("No FILE or --catalog given");
+      }
+      return expanded;
+    }
+
+    if (! catalogFile.exists()) {
+      throw new IllegalArgumentException("Catalog not found: " + catalogFile);
+    }
+
+    try {
+      ArchiveCatalog catalog = new ArchiveCatalog(catalogFile.getAbsolutePath());
+      List<File> files = new ArrayList<>();
+      for (Path path : catalog.findPublished(
+        after == null ? null : after.getEpochSecond(),
+        before == null ? null : before.getEpochSecond(),
+        CATALOG_TIMEOUT_MILLIS).values()) {
+        files.add(path.toFile());
+      }
+      for (File f : expanded) {
+        if (! files.contains(f.getAbsoluteFile())) {
+          // the live database is not in the catalog, and has the newest entries.
+          files.add(f);
+        }
+      }
+      if (verbose) {
+        statusReporter.addInfo("Catalog matched files: " + files);
+      }
+      return files;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot read catalog " + catalogFile, e);
+    }
+  }
+
+  /**
+   * Expands a FILE argument.  A directory is expanded to the blacklite databases in it, and a path
+   * with glob characters in it, i.e. {@code /var/log/blacklite/archive.*.db}, to the blacklite
+   * databases that match.  Anything else is returned as is.
+   *
+   * <p>If a directory has a catalog in it, its sealed archives are taken from the catalog, as of
+   * the last rollover that was published, so that a fixed window rollover in progress can't show
+   * an archive twice under neighbouring names, or leave one out.  Sealed archives the catalog
+   * doesn't have, the live database and the active archive are taken from the directory.
+   */
+  protected List<File> expand(File f) {
+    if (f.isDirectory()) {
+      final Optional<File> catalogFile = listDirectory(f).stream()
+        .map(Path::toFile)
+        .filter(p -> p.length() > 0 && isDatabase(p) && isCatalog(p))
+        .findFirst();
+      if (! catalogFile.isPresent()) {
+        return logDatabases(listDirectory(f).stream());
+      }
+      return expandWithCatalog(f, catalogFile.get());
+    }
+    String pattern = f.getPath();
+    if (f.exists() || ! isGlob(pattern)) {
+      return Collections.singletonList(f);
+    }
+
+    // Walk from the last directory before the glob, as deep as the glob goes.
+    Path path = Paths.get(pattern);
+    Path base = path.getRoot() == null ? Paths.get("") : path.getRoot();
+    int depth = 0;
+    boolean inGlob = false;
+    for (Path name : path) {
+      if (inGlob || isGlob(name.toString())) {
+        inGlob = true;
+        boolean anyDepth = depth == Integer.MAX_VALUE || name.toString().contains("**");
+        depth = anyDepth ? Integer.MAX_VALUE : depth + 1;
       } else {
-        codec = identityCodec();
+        base = base.resolve(name);
+      }
+    }
+    if (! Files.isDirectory(base.toString().isEmpty() ? Paths.get(".") : base)) {
+      return Collections.emptyList();
+    }
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+    try (Stream<Path> paths = Files.walk(base, depth)) {
+      return logDatabases(paths.filter(matcher::matches));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot expand " + pattern, e);
+    }
+  }
+
+  private static List<Path> listDirectory(File dir) {
+    try (Stream<Path> paths = Files.list(dir.toPath())) {
+      return paths.collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot list directory " + dir, e);
+    }
+  }
+
+  private List<File> expandWithCatalog(File dir, File catalogFile) {
+    final Map<String, Path> published;
+    try {
+      published =
+        new ArchiveCatalog(catalogFile.getAbsolutePath())
+          .findPublished(null, null, CATALOG_TIMEOUT_MILLIS);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Cannot read catalog " + catalogFile, e);
+    }
+    final Path parent = dir.toPath().toAbsolutePath();
+    final List<File> files = new ArrayList<>();
+    for (File f : logDatabases(listDirectory(dir).stream())) {
+      // Read the archive id now rather than from the listing, as the file may have been renamed.
+      if (! archiveId(f).filter(published::containsKey).isPresent()) {
+        files.add(f);
+      }
+    }
+    for (Path path : published.values()) {
+      if (parent.equals(path.getParent())) {
+        files.add(path.toFile());
       }
-      QueryBuilder qb = createQueryBuilder(codec);
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  private static boolean isGlob(String s) {
+    return s.indexOf('*') >= 0 || s.indexOf('?') >= 0 || s.indexOf('[') >= 0
+      || s.indexOf('{') >= 0;
+  }
+
+  // Skips dictionaries, catalogs and anything else that isn't a blacklite database.
+  private List<File> logDatabases(Stream<Path> paths) {
+    return paths
+      .filter(Files::isRegularFile)
+      .filter(p -> SKIPPED_SUFFIXES.stream().noneMatch(p.getFileName().toString()::endsWith))
+      .map(Path::toFile)
+      .filter(f -> f.length() > 0 && isDatabase(f) && isLogDatabase(f))
+      .filter(f -> ! f.getName().endsWith(STANDBY_SUFFIX) || ! isEmptyLogDatabase(f))
+      .sorted()
+      .collect(Collectors.toList());
+  }
 
+  protected boolean isLogDatabase(File f) {
+    try (Connection c = Database.createConnection(f)) {
+      return Database.hasTable(c, "entries") || Database.hasTable(c, "entry_blocks");
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  protected boolean isCatalog(File f) {
+    try (Connection c = Database.createConnection(f)) {
+      return Database.hasTable(c, "archives") && ! Database.hasTable(c, "entries");
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private Optional<String> archiveId(File f) {
+    try (Connection c = Database.createConnection(f)) {
+      return ArchiveManifest.read(c).map(ArchiveManifest::getArchiveId);
+    } catch (SQLException e) {
+      return Optional.empty();
+    }
+  }
+
+  protected boolean isEmptyLogDatabase(File f) {
+    try (Connection c = Database.createConnection(f)) {
+      return isEmptyTable(c, "entries") && isEmptyTable(c, "entry_blocks");
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private static boolean isEmptyTable(Connection c, String table) throws SQLException {
+    if (! Database.hasTable(c, table)) {
+      return true;
+    }
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+      return ! rs.next();
+    }
+  }
+
+  /**
+   * Drops the sealed archives whose manifest shows they have no entries in the before/after range,
+   * without querying them.
+   */
+  protected List<File> prune(List<File> inputFiles, StatusReporter statusReporter) {
+    if (inputFiles.size() < 2 || (after == null && before == null)) {
+      return inputFiles;
+    }
+    Long afterSecs = after == null ? null : after.getEpochSecond();
+    Long beforeSecs = before == null ? null : before.getEpochSecond();
+    List<File> matched = new ArrayList<>();
+    for (File inputFile : inputFiles) {
+      checkReadable(inputFile);
+      try (Connection c = Database.createConnection(inputFile)) {
+        Optional<ArchiveManifest> manifest = ArchiveManifest.read(c);
+        if (manifest.isPresent() && ! manifest.get().overlaps(afterSecs, beforeSecs)) {
+          continue;
+        }
+      } catch (SQLException e) {
+        statusReporter.addError("Cannot read manifest of " + inputFile, e);
+      }
+      matched.add(inputFile);
+    }
+    if (verbose) {
+      statusReporter.addInfo("Files in time range: " + matched);
+    }
+    return matched;
+  }
+
+  /**
+   * Counts the matching entries of several files, counting files at the same time on the pool.
+   */
+  protected long countAll(
+    List<File> inputFiles, ExecutorService executor, StatusReporter statusReporter) {
+    List<Future<Long>> counts = new ArrayList<>();
+    for (File inputFile : inputFiles) {
+      counts.add(executor.submit(() -> read(inputFile, statusReporter)));
+    }
+    long total = 0;
+    try {
+      for (Future<Long> f : counts) {
+        total += f.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      statusReporter.addError("Cannot complete count", e.getCause());
+    }
+    return total;
+  }
+
+  /**
+   * Reads several files at the same time on the pool, printing out the entries of all of them in
+   * time order.
+   */
+  protected void readMerged(
+    List<File> inputFiles, ExecutorService executor, StatusReporter statusReporter) {
+    List<FileSource> sources = new ArrayList<>();
+    for (File inputFile : inputFiles) {
+      checkReadable(inputFile);
+      sources.add(new FileSource(inputFile, statusReporter));
+    }
+    try (TimeOrderedMerge merge = new TimeOrderedMerge(sources, executor, MERGE_BATCH_SIZE)) {
+      Spliterator<LogEntry> spliterator =
+        Spliterators.spliteratorUnknownSize(merge, Spliterator.ORDERED | Spliterator.NONNULL);
+      print(StreamSupport.stream(spliterator, false));
+    } catch (IllegalStateException e) {
+      statusReporter.addError("Cannot complete query", e);
+    }
+  }
+
+  protected int threadCount() {
+    return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+  }
+
+  protected ExecutorService newExecutor(int threadCount) {
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(threadCount, r -> {
+      Thread t = new Thread(r, "blacklite-reader-" + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  protected void print(Stream<LogEntry> entryStream) {
+    entryStream
+      .map(LogEntry::getContent)
+      .map(content -> charset.decode(ByteBuffer.wrap(content)))
+      .forEach(System.out::print);
+  }
+
+  protected void checkReadable(File inputFile) {
+    if (! inputFile.exists()) {
+      throw new IllegalArgumentException("File not found: " + inputFile);
+    }
+
+    if (! inputFile.canRead()) {
+      throw new IllegalArgumentException("Cannot read file: " + inputFile);
+    }
+  }
+
+  /**
+   * Reads a single file, printing out the entries.
+   *
+   * @return the number of entries if counting, otherwise 0.
+   */
+  protected long read(File inputFile, StatusReporter statusReporter) {
+    checkReadable(inputFile);
+
+    try (Connection c = Database.createConnection(inputFile)) {
+      Optional<ArchiveManifest> manifest = ArchiveManifest.read(c);
+      if (manifest.isPresent()) {
+        OptionalLong manifestCount = manifestCount(manifest.get());
+        if (manifestCount.isPresent() && (count || manifestCount.getAsLong() == 0)) {
+          if (verbose) {
+            statusReporter.addInfo("Answered from manifest: " + manifest.get());
+          }
+          return manifestCount.getAsLong();
+        }
+      }
+
+      QueryBuilder qb = createQueryBuilder(c, inputFile, manifest, statusReporter);
       if (qb.isCount()) {
-        long countResult = qb.executeCount(c, verbose);
-        System.out.println(countResult);
+        return qb.executeCount(c, verbose);
       } else {
-        Stream<LogEntry> entryStream = qb.execute(c, verbose);
-        entryStream
-          .map(LogEntry::getContent)
-          .map(content -> charset.decode(ByteBuffer.wrap(content)))
-          .forEach(System.out::print);
+        print(qb.execute(c, verbose));
       }
     } catch (SQLException e) {
       statusReporter.addError("Cannot complete query", e);
     }
+    return 0;
+  }
+
+  /**
+   * Sets up a query for a file, with the codec and table the file was written with.
+   */
+  protected QueryBuilder createQueryBuilder(
+    Connection c, File inputFile, Optional<ArchiveManifest> manifest,
+    StatusReporter statusReporter) throws SQLException {
+    boolean blocks;
+    String codecName;
+    if (manifest.isPresent()) {
+      blocks = ArchiveManifest.FORMAT_ENTRY_BLOCKS.equals(manifest.get().getFormat());
+      codecName = detectCodec(c, blocks, manifest.get().getCodec());
+    } else {
+      blocks = hasBlocks(c);
+      codecName = detectCodec(c, blocks);
+    }
+
+    QueryBuilder qb = createQueryBuilder(createCodec(codecName, inputFile, statusReporter));
+    qb.setBlocks(blocks);
+    if (parallelDecoder != null) {
+      // Each decoding thread gets a codec of its own.
+      qb.setParallelDecode(
+        parallelDecoder, () -> createCodec(codecName, inputFile, statusReporter));
+    }
+    return qb;
+  }
+
+  protected Codec createCodec(String codecName, File inputFile, StatusReporter statusReporter) {
+    if (TaggedCodec.NAME.equals(codecName)) {
+      return taggedCodec(statusReporter, identityCodec(), inputFile);
+    }
+    if (LZ4Codec.NAME.equals(codecName)) {
+      return lz4Codec(statusReporter);
+    }
+    if (ZStdDictCodec.NAME.equals(codecName)) {
+      return zstdDictCodec(statusReporter, dictRepository(inputFile));
+    }
+    return identityCodec();
+  }
+
+  /** A file read on the pool by {@link TimeOrderedMerge}, with its own connection and codec. */
+  protected class FileSource implements TimeOrderedMerge.Source {
+    private final File inputFile;
+    private final StatusReporter statusReporter;
+    private Connection c;
+
+    protected FileSource(File inputFile, StatusReporter statusReporter) {
+      this.inputFile = inputFile;
+      this.statusReporter = statusReporter;
+    }
+
+    @Override
+    public Iterator<LogEntry> open() throws SQLException {
+      c = Database.createConnection(inputFile);
+      Optional<ArchiveManifest> manifest = ArchiveManifest.read(c);
+      QueryBuilder qb = createQueryBuilder(c, inputFile, manifest, statusReporter);
+      return qb.execute(c, verbose).iterator();
+    }
+
+    @Override
+    public void close() throws SQLException {
+      if (c != null) {
+        c.close();
+      }
+    }
+
+    @Override
+    public String toString() {
+      return inputFile.toString();
+    }
+  }
+
+  /**
+   * Works out the number of matching entries from the manifest of a sealed archive, without
+   * scanning it.  This is possible when there is no where clause or contains text, and the time
+   * range either covers the whole archive or misses it completely.
+   */
+  protected OptionalLong manifestCount(ArchiveManifest manifest) {
+    if (whereString != null || containsString != null) {
+      return OptionalLong.empty();
+    }
+    Long afterSecs = after == null ? null : after.getEpochSecond();
+    Long beforeSecs = before == null ? null : before.getEpochSecond();
+    if (! manifest.overlaps(afterSecs, beforeSecs)) {
+      return OptionalLong.of(0);
+    }
+    boolean coversStart = afterSecs == null || afterSecs < manifest.getMinEpochSecs();
+    boolean coversEnd = beforeSecs == null || manifest.getMaxEpochSecs() < beforeSecs;
+    if (! coversStart || ! coversEnd) {
+      return OptionalLong.empty();
+    }
+    if (levels == null) {
+      return OptionalLong.of(manifest.getRowCount());
+    }
+    if (manifest.getLevelCounts().isEmpty()) {
+      return OptionalLong.empty();
+    }
+    long levelCount = 0;
+    for (int level : Arrays.stream(levels).distinct().toArray()) {
+      levelCount += manifest.getLevelCounts().getOrDefault(level, 0L);
+    }
+    return OptionalLong.of(levelCount);
   }
 
   protected QueryBuilder createQueryBuilder(Codec codec) {
@@ -177,53 +746,129 @@ public class BlackliteReader implements Runnable {
       qb.setCount(count);
     }
 
-    DateParser dateParser = new DateParser(timezone);
-    if (beforeTime != null) {
-      Instant before;
-      final String beforeString = beforeTime.beforeString;
-      if (beforeString != null) {
-        before =
-          dateParser
-            .parse(beforeString)
-            .orElseThrow(
-              () -> new IllegalStateException("Cannot parse before string: " + beforeString));
-      } else {
-        before = Instant.ofEpochSecond(beforeTime.beforeEpoch);
-      }
+    if (before != null) {
       qb.addBefore(before);
     }
 
-    if (afterTime != null) {
-      final String afterString = afterTime.afterString;
-      Instant after;
-      if (afterString != null) {
-        after =
-          dateParser
-            .parse(afterString)
-            .orElseThrow(
-              () -> new IllegalStateException("Cannot parse after string: " + afterString));
-      } else {
-        after = Instant.ofEpochSecond(afterTime.afterEpoch);
-      }
+    if (after != null) {
       qb.addAfter(after);
     }
 
     if (whereString != null) {
       qb.addWhere(whereString);
     }
+
+    if (containsString != null) {
+      qb.setContains(containsString.getBytes(charset));
+    }
+
+    if (levels != null) {
+      qb.setLevels(levels);
+    }
+    qb.setTimeSlack(timeSlack);
     return qb;
   }
 
+  protected Instant parseBefore() {
+    if (beforeTime == null) {
+      return null;
+    }
+    final String beforeString = beforeTime.beforeString;
+    if (beforeString != null) {
+      return new DateParser(timezone)
+        .parse(beforeString)
+        .orElseThrow(
+          () -> new IllegalStateException("Cannot parse before string: " + beforeString));
+    } else {
+      return Instant.ofEpochSecond(beforeTime.beforeEpoch);
+    }
+  }
+
+  protected Instant parseAfter() {
+    if (afterTime == null) {
+      return null;
+    }
+    final String afterString = afterTime.afterString;
+    if (afterString != null) {
+      return new DateParser(timezone)
+        .parse(afterString)
+        .orElseThrow(
+          () -> new IllegalStateException("Cannot parse after string: " + afterString));
+    } else {
+      return Instant.ofEpochSecond(afterTime.afterEpoch);
+    }
+  }
+
+  protected boolean hasBlocks(Connection c) throws SQLException {
+    return Database.hasTable(c, "entry_blocks");
+  }
+
   protected boolean isCompressed(Connection c) throws SQLException {
-    try (PreparedStatement ps = c.prepareStatement("SELECT content FROM entries LIMIT 1")) {
+    return isCompressed(c, false);
+  }
+
+  protected boolean isCompressed(Connection c, boolean blocks) throws SQLException {
+    return ZStdDictCodec.NAME.equals(detectCodec(c, blocks));
+  }
+
+  /**
+   * Works out the codec from the magic number of the first entry.
+   *
+   * @return "zstddict" for zstd frames, "lz4" for LZ4 frames, and "identity" otherwise.
+   */
+  protected String detectCodec(Connection c, boolean blocks) throws SQLException {
+    String table = blocks ? "entry_blocks" : "entries";
+    try (PreparedStatement ps = c.prepareStatement("SELECT content FROM " + table + " LIMIT 1")) {
       try (ResultSet resultSet = ps.executeQuery()) {
         if (resultSet.next()) {
           final byte[] contentBytes = resultSet.getBytes(1);
-          return ZStdUtils.isFrame(contentBytes);
+          if (ZStdUtils.isFrame(contentBytes)) {
+            return ZStdDictCodec.NAME;
+          }
+          if (LZ4Frames.isFrame(contentBytes)) {
+            return LZ4Codec.NAME;
+          }
         }
       }
     }
-    return false;
+    return IdentityCodec.NAME;
+  }
+
+  /**
+   * The manifest records the codec, so there's no need to look at the content.  Codecs are mapped
+   * to the codec that decodes them through their tag in {@link TaggedCodec#tagFor(String)}, so
+   * that every codec with the same format is read the same way, and codecs without a tag are
+   * detected from the content.
+   *
+   * <p>Only files whose manifest names a codec that tags its rows are decoded by tag, as an
+   * untagged row can start with a tag byte, i.e. in a binary format.
+   */
+  protected String detectCodec(Connection c, boolean blocks, String codecName) throws SQLException {
+    // Every row is tagged, so there's no codec for the file as a whole.
+    if (TaggedCodec.NAME.equals(codecName) || AdaptiveZStdCodec.NAME.equals(codecName)) {
+      return TaggedCodec.NAME;
+    }
+    if (codecName == null) {
+      return detectCodec(c, blocks);
+    }
+    final byte tag;
+    try {
+      tag = TaggedCodec.tagFor(codecName);
+    } catch (IllegalArgumentException e) {
+      return detectCodec(c, blocks);
+    }
+    switch (tag) {
+      case TaggedCodec.ZSTD:
+        return ZStdDictCodec.NAME;
+      case TaggedCodec.LZ4:
+        return LZ4Codec.NAME;
+      default:
+        return IdentityCodec.NAME;
+    }
+  }
+
+  protected ZstdDictRepository dictRepository(File inputFile) {
+    return dictPath != null ? explicitDictionary(new File(dictPath)) : zstdDictFromDB(inputFile);
   }
 
   protected ZstdDictRepository explicitDictionary(File dictFile) {
@@ -269,6 +914,27 @@ public class BlackliteReader implements Runnable {
     return new IdentityCodec();
   }
 
+  /**
+   * Decodes rows that start with a codec tag with the codec for the tag, so that rows encoded with
+   * different codecs can be read from the same file, and decodes untagged rows, written before the
+   * codec tagged its rows, with the fallback codec.  The codecs for tags are only created if a row
+   * needs them.
+   */
+  protected Codec taggedCodec(StatusReporter statusReporter, Codec fileCodec, File inputFile) {
+    final TaggedCodec taggedCodec = new TaggedCodec();
+    taggedCodec.setFallback(fileCodec);
+    taggedCodec.register(
+      TaggedCodec.ZSTD, () -> zstdDictCodec(statusReporter, dictRepository(inputFile)));
+    taggedCodec.register(TaggedCodec.LZ4, () -> lz4Codec(statusReporter));
+    return taggedCodec;
+  }
+
+  protected Codec lz4Codec(StatusReporter statusReporter) {
+    final LZ4Codec lz4Codec = new LZ4Codec();
+    lz4Codec.initialize(statusReporter);
+    return lz4Codec;
+  }
+
   protected Codec zstdDictCodec(StatusReporter statusReporter, ZstdDictRepository dictRepo) {
     final ZStdDictCodec zstdDictCodec = new ZStdDictCodec();
     zstdDictCodec.setRepository(dictRepo);
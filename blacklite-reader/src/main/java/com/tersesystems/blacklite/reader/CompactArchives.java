@@ -0,0 +1,149 @@
+package com.tersesystems.blacklite.reader;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import com.tersesystems.blacklite.codec.zstd.ZStdArchiveCompactor;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Compacts rolled archive files, either a given list of files or runs of small archives found in a
+ * directory.
+ */
+@Command(
+    name = "compact-archives",
+    mixinStandardHelpOptions = true,
+    version = "1.0",
+    description = "Merges and recompresses rolled archive files")
+public class CompactArchives implements Runnable {
+
+  StatusReporter reporter = StatusReporter.DEFAULT;
+
+  @Parameters(
+      paramLabel = "FILE",
+      arity = "0..*",
+      description = "archive files to merge into one, instead of scanning a directory")
+  List<Path> files = new ArrayList<>();
+
+  @Option(
+      names = {"--directory"},
+      paramLabel = "DIR",
+      description = "Scan the directory for runs of small archives to compact")
+  Path directory;
+
+  @Option(
+      names = {"--glob"},
+      paramLabel = "GLOB",
+      defaultValue = "*.db",
+      description = "Archive file names in the directory (default: ${DEFAULT-VALUE})")
+  String glob;
+
+  @Option(
+      names = {"--level"},
+      defaultValue = "19",
+      description = "zstd compression level (default: ${DEFAULT-VALUE})")
+  int level;
+
+  @Option(
+      names = {"--target-size"},
+      paramLabel = "BYTES",
+      defaultValue = "67108864",
+      description = "Combined size of archives to merge (default: ${DEFAULT-VALUE})")
+  long targetFileSize;
+
+  @Option(
+      names = {"--min-age"},
+      paramLabel = "SECONDS",
+      defaultValue = "60",
+      description = "Leave archives modified within this time alone (default: ${DEFAULT-VALUE})")
+  long minimumAgeSeconds;
+
+  @Option(
+      names = {"--bytes-per-second"},
+      paramLabel = "BYTES",
+      defaultValue = "8388608",
+      description = "Limit on bytes read and written per second (default: ${DEFAULT-VALUE})")
+  long bytesPerSecond;
+
+  @Option(
+      names = {"--duty-cycle"},
+      paramLabel = "FRACTION",
+      defaultValue = "0.5",
+      description = "Fraction of time spent working, 1 for no limit (default: ${DEFAULT-VALUE})")
+  double dutyCycle;
+
+  @Option(
+      names = {"--catalog"},
+      paramLabel = "CATALOG",
+      description = "Refresh the archive catalog after compacting")
+  Path catalogFile;
+
+  @Option(
+      names = {"-n", "--dry-run"},
+      description = "Print the archives that would be compacted together")
+  boolean dryRun;
+
+  public static void main(String... args) {
+    final CommandLine commandLine = new CommandLine(new CompactArchives());
+    if (commandLine.isUsageHelpRequested()) {
+      commandLine.usage(System.out);
+      return;
+    } else if (commandLine.isVersionHelpRequested()) {
+      commandLine.printVersionHelp(System.out);
+      return;
+    }
+    System.exit(commandLine.execute(args));
+  }
+
+  public void run() {
+    if (directory == null && files.isEmpty()) {
+      throw new IllegalArgumentException("No FILE or --directory given");
+    }
+    // Stay out of the way of anything else running on the box.
+    Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+
+    ZStdArchiveCompactor compactor = createCompactor();
+    try {
+      if (!dryRun) {
+        compactor.recover(
+          directory != null ? directory : files.get(0).toAbsolutePath().getParent());
+      }
+      List<List<Path>> runs =
+        directory != null ? compactor.plan(directory, glob) : Collections.singletonList(files);
+      for (List<Path> run : runs) {
+        if (dryRun) {
+          System.out.println(run);
+        } else {
+          System.out.println(compactor.compact(run));
+        }
+      }
+      if (!dryRun && catalogFile != null) {
+        Path archiveDirectory =
+          directory != null ? directory : files.get(0).toAbsolutePath().getParent();
+        new ArchiveCatalog(catalogFile.toAbsolutePath().toString()).refresh(archiveDirectory);
+      }
+    } catch (IOException | SQLException e) {
+      reporter.addError("Could not compact archives", e);
+    }
+  }
+
+  protected ZStdArchiveCompactor createCompactor() {
+    ZStdArchiveCompactor compactor = new ZStdArchiveCompactor();
+    compactor.setLevel(level);
+    compactor.setTargetFileSize(targetFileSize);
+    compactor.setMinimumAgeSeconds(minimumAgeSeconds);
+    compactor.setBytesPerSecond(bytesPerSecond);
+    compactor.setDutyCycle(dutyCycle);
+    compactor.setStatusReporter(reporter);
+    return compactor;
+  }
+}
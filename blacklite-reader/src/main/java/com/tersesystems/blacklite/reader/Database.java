@@ -3,6 +3,8 @@ package com.tersesystems.blacklite.reader;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** A wrapper class for connecting to sqlite database. */
@@ -20,4 +22,14 @@ public class Database {
     String url = "jdbc:sqlite:" + file.getAbsolutePath();
     return DriverManager.getConnection(url);
   }
+
+  public static boolean hasTable(Connection c, String tableName) throws SQLException {
+    String sql = "SELECT count(*) FROM sqlite_master WHERE type = 'table' AND name = ?";
+    try (PreparedStatement ps = c.prepareStatement(sql)) {
+      ps.setString(1, tableName);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next() && rs.getInt(1) > 0;
+      }
+    }
+  }
 }
@@ -0,0 +1,498 @@
+package com.tersesystems.blacklite.reader;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Follows a live database like {@code tail -f}, reading only the entries added since the last
+ * read.
+ *
+ * <p>Entries are appended with increasing rowids, so the follower keeps the last rowid it has read
+ * as a watermark.  Each poll checks {@code PRAGMA data_version}, which only changes when another
+ * connection commits, so an idle poll is a single cheap query and doesn't touch the table.  When
+ * it changes, the rows past the watermark are read in one transaction, and the watermark moves to
+ * the last rowid that was in it.
+ *
+ * <p>When the live database is rotated into an archive, a new file appears at the same path, which
+ * is seen as a change of file key.  The open connection still points at the old file, so the rows
+ * past the watermark are read from it first, decoding them with the codec in its manifest if it
+ * has already been sealed, and then the new file is followed from its first row, so that nothing
+ * is missed or read twice.
+ *
+ * <p>The entries table has no {@code INTEGER PRIMARY KEY}, so rowids are only stable while the
+ * writer has the file open: closing the store vacuums it, which may renumber the rows, and rowids
+ * start again once every row has been deleted.  The follower keeps the time of the row at the
+ * watermark, and how many rows in a row up to it have that time.  If the row there has a different
+ * time, more rows in a row up to it have the time than were read, or the rowids have gone below
+ * it, the rows have been renumbered.  The watermark then moves to the row with that time that
+ * matches the count, or if there is none, to just before the first later row, so that entries
+ * already read aren't read again and entries with the same time aren't skipped.
+ *
+ * <p>The rolling archiver deletes rows from the live database only once there are more than {@code
+ * archiveAfterRows} newer rows, so the follower sees every row as long as it keeps up.  If rows are
+ * deleted before they have been read, they were the last rows archived, so they are read from the
+ * end of the current archive file, which is the one with the latest generation.  The archive files
+ * are locked before the live database is read, so the archiver can't move more rows in between.
+ * Rows that can't be found there, because the archive has been rolled over since or stores entry
+ * blocks, are reported as a gap.
+ *
+ * <p>This is not thread safe.
+ */
+public class FileFollower implements AutoCloseable {
+
+  /** Creates the query for a file, with the codec it was encoded with. */
+  public interface QueryFactory {
+    QueryBuilder create(Connection c, Optional<ArchiveManifest> manifest) throws SQLException;
+  }
+
+  private final File file;
+  private final QueryFactory queryFactory;
+  private final Consumer<Stream<LogEntry>> output;
+  private final StatusReporter statusReporter;
+  private final boolean verbose;
+  private final List<File> archiveFiles;
+
+  private Connection c;
+  private Object fileKey;
+  private QueryBuilder qb;
+  private boolean sealed;
+  private long dataVersion = -1;
+  private long watermark;
+  private long watermarkSecs;
+  private int watermarkNanos;
+  private int watermarkCount;
+
+  /**
+   * @param file the live database.
+   * @param queryFactory creates the query for the file.
+   * @param output receives the entries read by each poll.
+   * @param statusReporter reports gaps and errors.
+   * @param verbose true if the queries should be printed.
+   */
+  public FileFollower(
+    File file,
+    QueryFactory queryFactory,
+    Consumer<Stream<LogEntry>> output,
+    StatusReporter statusReporter,
+    boolean verbose) {
+    this(file, Collections.emptyList(), queryFactory, output, statusReporter, verbose);
+  }
+
+  /**
+   * @param file the live database.
+   * @param archiveFiles the files the live database is archived to, which are read for rows that
+   *     were archived before they could be read.
+   * @param queryFactory creates the query for the file and the archive files.
+   * @param output receives the entries read by each poll.
+   * @param statusReporter reports gaps and errors.
+   * @param verbose true if the queries should be printed.
+   */
+  public FileFollower(
+    File file,
+    List<File> archiveFiles,
+    QueryFactory queryFactory,
+    Consumer<Stream<LogEntry>> output,
+    StatusReporter statusReporter,
+    boolean verbose) {
+    this.file = file;
+    this.archiveFiles = new ArrayList<>(archiveFiles);
+    this.queryFactory = queryFactory;
+    this.output = output;
+    this.statusReporter = statusReporter;
+    this.verbose = verbose;
+  }
+
+  /**
+   * Polls until the thread is interrupted.
+   *
+   * @param pollMillis the time to sleep between polls.
+   */
+  public void follow(long pollMillis) throws SQLException {
+    try {
+      while (! Thread.currentThread().isInterrupted()) {
+        poll();
+        Thread.sleep(pollMillis);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Reads the entries added since the last poll.  The first poll reads every entry in the file.
+   *
+   * @return true if the file had changed.
+   */
+  public boolean poll() throws SQLException {
+    if (c == null) {
+      return open() && read();
+    }
+    final Object currentKey = fileKey();
+    if (currentKey != null && ! currentKey.equals(fileKey)) {
+      // The file has been rotated, so finish the old file before moving on.
+      read();
+      close();
+      return open() && read();
+    }
+    final long version = dataVersion();
+    if (version == dataVersion) {
+      return false;
+    }
+    dataVersion = version;
+    return read();
+  }
+
+  /** @return the last rowid read. */
+  public long getWatermark() {
+    return watermark;
+  }
+
+  private boolean open() throws SQLException {
+    fileKey = fileKey();
+    if (fileKey == null) {
+      // Caught between the renames of a rotation, or not created yet.
+      return false;
+    }
+    c = Database.createConnection(file);
+    qb = null;
+    sealed = false;
+    watermark = 0;
+    watermarkCount = 0;
+    dataVersion = dataVersion();
+    if (verbose) {
+      statusReporter.addInfo("FileFollower: following " + file + " (" + fileKey + ")");
+    }
+    return true;
+  }
+
+  private boolean read() throws SQLException {
+    if (! Database.hasTable(c, "entries")) {
+      return false;
+    }
+    if (watermark == 0 || archiveFiles.isEmpty() || ! hasGap()) {
+      return read(Collections.emptyList());
+    }
+    // Lock the archive files before the live database, so the archiver can't move any more rows
+    // out of it until both have been read.
+    final List<Connection> archives = new ArrayList<>();
+    try {
+      for (File archiveFile : archiveFiles) {
+        if (archiveFile.exists()) {
+          final Connection ac = Database.createConnection(archiveFile);
+          archives.add(ac);
+          ac.setAutoCommit(false);
+          try (Statement st = ac.createStatement();
+               ResultSet rs = st.executeQuery("SELECT count(*) FROM sqlite_master")) {
+            rs.next();
+          }
+        }
+      }
+      return read(archives);
+    } finally {
+      for (Connection ac : archives) {
+        ac.close();
+      }
+    }
+  }
+
+  /** @return true if rows past the watermark have been deleted from the live database. */
+  private boolean hasGap() throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("SELECT min(_rowid_) FROM entries")) {
+      return rs.next() && rs.getLong(1) > watermark + 1;
+    }
+  }
+
+  // Reads the rows past the watermark in one transaction, so the manifest and rows agree.
+  private boolean read(List<Connection> archives) throws SQLException {
+    c.setAutoCommit(false);
+    try {
+      if (qb == null || ! sealed) {
+        // A rotated file is encoded in place and sealed with a manifest in the same transaction.
+        final Optional<ArchiveManifest> manifest = ArchiveManifest.read(c);
+        if (qb == null || manifest.isPresent()) {
+          qb = queryFactory.create(c, manifest);
+          sealed = manifest.isPresent();
+        }
+      }
+      final long first;
+      final long last;
+      try (Statement st = c.createStatement();
+           ResultSet rs = st.executeQuery("SELECT min(_rowid_), max(_rowid_) FROM entries")) {
+        rs.next();
+        first = rs.getLong(1);
+        if (rs.wasNull()) {
+          return false;
+        }
+        last = rs.getLong(2);
+      }
+      boolean changed = false;
+      if (watermark > 0 && renumbered(last)) {
+        moveWatermark(resumeRowId(last));
+        statusReporter.addWarn(
+          "FileFollower: rowids in " + file + " were renumbered, resuming after rowid "
+            + watermark);
+      }
+      if (watermark > 0 && first > watermark + 1) {
+        final long missing = first - watermark - 1;
+        final long lost = missing - readArchived(archives, missing, first);
+        if (lost > 0) {
+          statusReporter.addWarn(
+            "FileFollower: " + lost + " rows were archived from " + file
+              + " before they were read");
+        }
+        changed = true;
+      }
+      if (last == watermark) {
+        return changed;
+      }
+      try (Stream<LogEntry> entries = qb.executeRange(c, verbose, watermark + 1, last)) {
+        output.accept(entries);
+      }
+      moveWatermark(last);
+      return true;
+    } finally {
+      c.commit();
+      c.setAutoCommit(true);
+    }
+  }
+
+  /**
+   * Reads the rows that were archived before they could be read from the end of the current
+   * archive file.  They must fall between the time of the watermark and the time of the first row
+   * left in the live database, or the archive has been rolled over since, and they aren't read.
+   *
+   * @param archives the archive files, locked.
+   * @param missing the number of rows deleted from the live database past the watermark.
+   * @param first the first rowid left in the live database.
+   * @return the number of rows read.
+   */
+  private long readArchived(List<Connection> archives, long missing, long first)
+    throws SQLException {
+    final Connection ac = currentArchive(archives);
+    if (ac == null) {
+      return 0;
+    }
+    final long firstSecs;
+    final int firstNanos;
+    try (PreparedStatement ps =
+           c.prepareStatement("SELECT epoch_secs, nanos FROM entries WHERE _rowid_ = ?")) {
+      ps.setLong(1, first);
+      try (ResultSet rs = ps.executeQuery()) {
+        rs.next();
+        firstSecs = rs.getLong(1);
+        firstNanos = rs.getInt(2);
+      }
+    }
+    long min = 0;
+    long max = 0;
+    long found = 0;
+    try (PreparedStatement ps =
+           ac.prepareStatement(
+             "SELECT _rowid_, epoch_secs, nanos FROM entries ORDER BY _rowid_ DESC LIMIT ?")) {
+      ps.setLong(1, missing);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          final long secs = rs.getLong(2);
+          final int nanos = rs.getInt(3);
+          if (compare(secs, nanos, firstSecs, firstNanos) > 0
+            || compare(secs, nanos, watermarkSecs, watermarkNanos) < 0) {
+            break;
+          }
+          min = rs.getLong(1);
+          if (max == 0) {
+            max = min;
+          }
+          found++;
+        }
+      }
+    }
+    if (found == 0) {
+      return 0;
+    }
+    final QueryBuilder archiveQuery = queryFactory.create(ac, ArchiveManifest.read(ac));
+    try (Stream<LogEntry> entries = archiveQuery.executeRange(ac, verbose, min, max)) {
+      output.accept(entries);
+    }
+    return found;
+  }
+
+  /**
+   * @return the archive file with the latest generation, which rows are being archived to, or null
+   *     if there is none, or it stores entry blocks.
+   */
+  private Connection currentArchive(List<Connection> archives) throws SQLException {
+    Connection current = null;
+    int currentGeneration = -1;
+    for (Connection ac : archives) {
+      try (Statement st = ac.createStatement();
+           ResultSet rs = st.executeQuery("PRAGMA user_version")) {
+        final int generation = rs.next() ? rs.getInt(1) : 0;
+        if (generation > currentGeneration) {
+          current = ac;
+          currentGeneration = generation;
+        }
+      }
+    }
+    return current != null && Database.hasTable(current, "entries") ? current : null;
+  }
+
+  private static int compare(long secs, int nanos, long otherSecs, int otherNanos) {
+    final int bySecs = Long.compare(secs, otherSecs);
+    return bySecs != 0 ? bySecs : Integer.compare(nanos, otherNanos);
+  }
+
+  /**
+   * @return true if the rowids have been reused or renumbered since the watermark was read, as they
+   *     have gone below it, the row at the watermark has a different time, or more rows in a row up
+   *     to it have its time than were read.  A missing row has been archived, which is a gap.
+   */
+  private boolean renumbered(long last) throws SQLException {
+    if (last < watermark) {
+      return true;
+    }
+    try (PreparedStatement ps =
+           c.prepareStatement("SELECT epoch_secs, nanos FROM entries WHERE _rowid_ = ?")) {
+      ps.setLong(1, watermark);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (! rs.next()) {
+          return false;
+        }
+        if (rs.getLong(1) != watermarkSecs || rs.getInt(2) != watermarkNanos) {
+          return true;
+        }
+      }
+    }
+    // Rows can only have moved up to the watermark if they were renumbered.
+    return countAtWatermarkTime(watermark) > watermarkCount;
+  }
+
+  /**
+   * Finds the rowid of the row at the watermark after a renumbering.  Renumbering keeps the rows in
+   * order, so this is the row with the time of the watermark that has as many rows with that time
+   * up to it as had been read.  If there are fewer, it is the last of them, and if there are none,
+   * the row before the first row that is later.
+   */
+  private long resumeRowId(long last) throws SQLException {
+    final List<Long> rowIds = new ArrayList<>();
+    try (PreparedStatement ps =
+           c.prepareStatement(
+             "SELECT _rowid_ FROM entries WHERE epoch_secs = ? AND nanos = ? ORDER BY _rowid_")) {
+      ps.setLong(1, watermarkSecs);
+      ps.setInt(2, watermarkNanos);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next()) {
+          rowIds.add(rs.getLong(1));
+        }
+      }
+    }
+    if (! rowIds.isEmpty()) {
+      return watermarkCount > 0
+        ? rowIds.get(Math.min(watermarkCount, rowIds.size()) - 1)
+        : rowIds.get(0) - 1;
+    }
+    try (PreparedStatement ps =
+           c.prepareStatement(
+             "SELECT min(_rowid_) FROM entries "
+               + "WHERE epoch_secs > ? OR (epoch_secs = ? AND nanos > ?)")) {
+      ps.setLong(1, watermarkSecs);
+      ps.setLong(2, watermarkSecs);
+      ps.setInt(3, watermarkNanos);
+      try (ResultSet rs = ps.executeQuery()) {
+        final long rowId = rs.next() ? rs.getLong(1) : 0;
+        return rowId > 0 ? rowId - 1 : last;
+      }
+    }
+  }
+
+  // Moves the watermark to a rowid, and keeps the time of the row there and how many have it.
+  private void moveWatermark(long rowId) throws SQLException {
+    watermark = rowId;
+    try (PreparedStatement ps =
+           c.prepareStatement("SELECT epoch_secs, nanos FROM entries WHERE _rowid_ = ?")) {
+      ps.setLong(1, rowId);
+      try (ResultSet rs = ps.executeQuery()) {
+        if (! rs.next()) {
+          watermarkCount = 0;
+          return;
+        }
+        watermarkSecs = rs.getLong(1);
+        watermarkNanos = rs.getInt(2);
+      }
+    }
+    watermarkCount = countAtWatermarkTime(rowId);
+  }
+
+  /** @return the number of rows in a row up to and including the rowid with the watermark time. */
+  private int countAtWatermarkTime(long rowId) throws SQLException {
+    int count = 0;
+    try (PreparedStatement ps =
+           c.prepareStatement(
+             "SELECT epoch_secs, nanos FROM entries WHERE _rowid_ <= ? ORDER BY _rowid_ DESC")) {
+      ps.setLong(1, rowId);
+      try (ResultSet rs = ps.executeQuery()) {
+        while (rs.next() && rs.getLong(1) == watermarkSecs && rs.getInt(2) == watermarkNanos) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  private long dataVersion() throws SQLException {
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("PRAGMA data_version")) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  /** @return the identity of the file at the path, or null if there is no file. */
+  private Object fileKey() {
+    try {
+      final BasicFileAttributes attrs =
+        Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      return attrs.fileKey() != null ? attrs.fileKey() : attrs.creationTime();
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      statusReporter.addError("FileFollower: Cannot read attributes of " + file, e);
+      return null;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    if (c != null) {
+      try {
+        c.close();
+      } finally {
+        c = null;
+        qb = null;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FileFollower{file=" + file + ", watermark=" + watermark + ", fileKey="
+      + Objects.toString(fileKey) + '}';
+  }
+}
@@ -0,0 +1,217 @@
+package com.tersesystems.blacklite.reader;
+
+import com.tersesystems.blacklite.codec.Codec;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Decodes rows on a pool of threads, and returns them in the order they were read.
+ *
+ * <p>The pool is created once, and shared by every query that {@link #decode decodes} on it, so a
+ * reader that queries many files, one after another or at the same time, doesn't start threads
+ * for each one.  It is shut down when this is closed.
+ *
+ * <p>Rows with encoded content are read on the calling thread, with a plain query that doesn't
+ * decode anything, and handed to the pool in batches.  Each batch is decoded with a codec that no
+ * other batch is using at the time, so codecs don't need to be thread safe, and a query creates at
+ * most one codec per thread.  Batches are returned in the order they were read, by waiting on the
+ * oldest batch first, so output is in the same order as a serial read.  At most {@code
+ * maxInFlight} batches per query are read ahead of the caller, which bounds memory use.
+ */
+public class ParallelDecoder implements AutoCloseable {
+
+  /** Turns a row with encoded content into decoded entries. */
+  public interface Decoder {
+
+    /**
+     * @param codec the codec of the calling thread.
+     * @param raw the row, with encoded content.  It is a copy, so it can be changed and passed on.
+     * @param out receives the decoded entries.
+     */
+    void decode(Codec codec, LogEntry raw, Consumer<LogEntry> out);
+  }
+
+  private final int threads;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final ExecutorService executor;
+
+  /**
+   * @param threads the number of threads to decode with.
+   * @param batchSize the number of rows in a batch.
+   * @param maxInFlight the most batches of a query that are read and not yet returned.
+   */
+  public ParallelDecoder(int threads, int batchSize, int maxInFlight) {
+    if (threads < 1 || batchSize < 1 || maxInFlight < 1) {
+      throw new IllegalArgumentException("threads, batchSize and maxInFlight must be positive");
+    }
+    this.threads = threads;
+    this.batchSize = batchSize;
+    this.maxInFlight = maxInFlight;
+    AtomicInteger counter = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "blacklite-decoder-" + counter.incrementAndGet());
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /** @return the number of threads to decode with. */
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * Starts decoding the rows of a query.  This is thread safe, so several queries can be decoded
+   * at the same time.
+   *
+   * @param raw the rows with encoded content, in order.  Rows may be reused, as they are copied.
+   * @param codecFactory creates an initialized codec, for each thread that decodes the rows.
+   * @param decoder decodes a row.
+   * @return the decoded entries, which must be closed if they are not read to the end.
+   */
+  public Query decode(Iterator<LogEntry> raw, Supplier<Codec> codecFactory, Decoder decoder) {
+    return new Query(raw, codecFactory, decoder);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The decoded entries of a query.  The codecs of the query are closed once every row has been
+   * returned, or when this is closed.  This is not thread safe, and must be read from a single
+   * thread.
+   */
+  public final class Query implements Iterator<LogEntry>, AutoCloseable {
+    private final Iterator<LogEntry> raw;
+    private final Supplier<Codec> codecFactory;
+    private final Decoder decoder;
+    private final Queue<Codec> idleCodecs = new ConcurrentLinkedQueue<>();
+    private final List<Codec> allCodecs = Collections.synchronizedList(new ArrayList<>());
+    private final ArrayDeque<Future<List<LogEntry>>> inFlight = new ArrayDeque<>();
+    private Iterator<LogEntry> current = Collections.emptyIterator();
+    private volatile boolean closed;
+
+    private Query(Iterator<LogEntry> raw, Supplier<Codec> codecFactory, Decoder decoder) {
+      this.raw = raw;
+      this.codecFactory = codecFactory;
+      this.decoder = decoder;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!current.hasNext()) {
+        fill();
+        if (inFlight.isEmpty()) {
+          close();
+          return false;
+        }
+        current = await(inFlight.poll()).iterator();
+      }
+      return true;
+    }
+
+    @Override
+    public LogEntry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return current.next();
+    }
+
+    // Reads rows on this thread until there are maxInFlight batches being decoded.
+    private void fill() {
+      while (!closed && inFlight.size() < maxInFlight && raw.hasNext()) {
+        final List<LogEntry> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && raw.hasNext()) {
+          batch.add(raw.next().copy());
+        }
+        inFlight.add(executor.submit(() -> decode(batch)));
+      }
+    }
+
+    private List<LogEntry> decode(List<LogEntry> batch) {
+      if (closed) {
+        return Collections.emptyList();
+      }
+      Codec codec = idleCodecs.poll();
+      if (codec == null) {
+        codec = codecFactory.get();
+        allCodecs.add(codec);
+      }
+      try {
+        final List<LogEntry> decoded = new ArrayList<>(batch.size());
+        for (LogEntry entry : batch) {
+          decoder.decode(codec, entry, decoded::add);
+        }
+        return decoded;
+      } finally {
+        idleCodecs.offer(codec);
+      }
+    }
+
+    private List<LogEntry> await(Future<List<LogEntry>> future) {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        close();
+        throw new IllegalStateException("Interrupted while decoding", e);
+      } catch (ExecutionException e) {
+        close();
+        throw new IllegalStateException("Cannot decode", e.getCause());
+      }
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      // Batches that haven't started return at once, and the ones that are running are short, and
+      // must finish before their codec is closed.
+      for (Future<List<LogEntry>> future : inFlight) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        } catch (ExecutionException e) {
+          // Already reported, or the rows are not wanted.
+        }
+      }
+      inFlight.clear();
+      synchronized (allCodecs) {
+        for (Codec codec : allCodecs) {
+          codec.close();
+        }
+        allCodecs.clear();
+      }
+    }
+  }
+}
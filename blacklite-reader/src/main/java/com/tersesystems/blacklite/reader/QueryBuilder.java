@@ -1,5 +1,8 @@
 package com.tersesystems.blacklite.reader;
 
+import com.tersesystems.blacklite.Entry;
+import com.tersesystems.blacklite.archive.EntryBlock;
+import com.tersesystems.blacklite.archive.TokenBloomFilter;
 import com.tersesystems.blacklite.codec.Codec;
 import org.sqlite.Function;
 
@@ -7,18 +10,38 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class QueryBuilder {
 
+  // The number of rows decoded at a time when decoding in parallel.
+  static final int DECODE_BATCH_SIZE = 256;
+
+  // The number of batches per decoding thread that are read ahead when decoding in parallel.
+  static final int DECODE_BATCHES_PER_THREAD = 4;
+
   private final Codec codec;
   private String whereString;
   private Instant before;
   private Instant after;
   private int boundParams = 0;
   private boolean count;
+  private boolean blocks;
+  private byte[] contains;
+  private int[] levels;
+  private ParallelDecoder parallelDecoder;
+  private Supplier<Codec> codecFactory;
+  private Long timeSlack;
 
   public QueryBuilder(Codec codec) {
     this.codec = codec;
@@ -38,50 +61,539 @@ public class QueryBuilder {
     this.whereString = whereString.trim();
   }
 
+  /**
+   * Only returns entries with one of the levels.  Block archives skip the blocks whose level
+   * bitmap (see {@link EntryBlock#levelBit(int)}) shows they don't contain any of the levels,
+   * without decoding them.
+   */
+  public void setLevels(int... levels) {
+    this.levels = levels == null || levels.length == 0 ? null : levels.clone();
+  }
+
+  public int[] getLevels() {
+    return levels;
+  }
+
+  /**
+   * Only returns entries that contain the text as whole tokens (see {@link
+   * TokenBloomFilter#containsTokens(byte[], byte[])}).  If the file has bloom filters, only the
+   * rows that may contain the text are decoded.
+   */
+  public void setContains(byte[] contains) {
+    this.contains = contains;
+  }
+
+  public byte[] getContains() {
+    return contains;
+  }
+
+  /**
+   * @param threads the number of threads to decode with.
+   * @return a pool for {@link #setParallelDecode}, which reads at most four batches per thread
+   *     ahead of each query, which bounds memory use.
+   */
+  public static ParallelDecoder newParallelDecoder(int threads) {
+    return new ParallelDecoder(threads, DECODE_BATCH_SIZE, threads * DECODE_BATCHES_PER_THREAD);
+  }
+
+  /**
+   * Decodes content on a pool of threads instead of in the query.  Rows are read with a plain
+   * query, decoded in batches by threads that each have their own codec, and returned in the order
+   * they were read.  The decoder's pool is shared, and is not closed with the query.
+   *
+   * @param parallelDecoder the pool to decode on, or null to decode in the query.
+   * @param codecFactory creates an initialized codec for each thread.
+   */
+  public void setParallelDecode(ParallelDecoder parallelDecoder, Supplier<Codec> codecFactory) {
+    this.parallelDecoder = parallelDecoder;
+    this.codecFactory = codecFactory;
+  }
+
+  /** @return the number of threads to decode with, or 1 if content is decoded in the query. */
+  public int getParallelism() {
+    return parallelDecoder == null ? 1 : parallelDecoder.getThreads();
+  }
+
+  /**
+   * Entries are appended in time order, so rowids are nearly in time order, and a time range can
+   * be found by bisecting rowids rather than scanning the table.  Entries can be written out of
+   * order when they are queued by several threads, so the bisection allows for this much slack.
+   * Archives with a time index don't need this, as the index has the time range of each run of
+   * rows.
+   *
+   * <p>Without a slack, files are only bisected if the writer recorded its reorder window in them,
+   * and are otherwise scanned, as there is no telling how far out of order the entries are.
+   *
+   * @param timeSlack the most seconds an entry can be written out of order, a negative number to
+   *                  scan the whole table, or null to go by the reorder window of the file.
+   */
+  public void setTimeSlack(Long timeSlack) {
+    this.timeSlack = timeSlack;
+  }
+
+  public Long getTimeSlack() {
+    return timeSlack;
+  }
+
   public long executeCount(Connection c, boolean verbose) throws SQLException {
-    final String statement = createCountSQL();
+    if (contains != null) {
+      return execute(c, verbose).count();
+    }
+    if (blocks && hasConditions()) {
+      // Blocks only know their time and level ranges, so filtered counts need the entries.
+      return execute(c, verbose).count();
+    }
+    final List<long[]> ranges = timeRanges(c, verbose);
+    if (ranges == null) {
+      return executeCount(c, verbose, null);
+    }
+    long total = 0;
+    for (long[] range : ranges) {
+      total += executeCount(c, verbose, range);
+    }
+    return total;
+  }
+
+  private long executeCount(Connection c, boolean verbose, long[] rowIdRange)
+    throws SQLException {
+    final String statement = createCountSQL(rowIdRange != null);
 
     if (verbose) {
       verboseExecute(statement);
     }
 
-    PreparedStatement ps = c.prepareStatement(statement);
-    int adder = 1;
-    if (before != null) {
-      ps.setLong(adder++, before.getEpochSecond());
+    try (PreparedStatement ps = c.prepareStatement(statement)) {
+      bindParameters(ps, rowIdRange);
+      try (ResultSet rs = ps.executeQuery()) {
+        rs.next();
+        return rs.getLong(1);
+      }
     }
+  }
 
-    if (after != null) {
-      ps.setLong(adder, after.getEpochSecond());
+  public Stream<LogEntry> execute(Connection c, boolean verbose) throws SQLException {
+    List<long[]> ranges = timeRanges(c, verbose);
+    if (contains != null) {
+      ranges = intersect(ranges, candidateRanges(c, verbose));
     }
+    return execute(c, verbose, ranges);
+  }
 
-    try (ResultSet rs = ps.executeQuery()) {
-      rs.next();
-      return rs.getLong(1);
+  /**
+   * Reads the rows in a range of rowids, in rowid order, applying the other conditions.  This is
+   * used to read only the rows added since the last read when following a file, so the time index
+   * and bloom filters are not consulted.
+   *
+   * @param minRowId the first rowid to read.
+   * @param maxRowId the last rowid to read.
+   */
+  public Stream<LogEntry> executeRange(
+    Connection c, boolean verbose, long minRowId, long maxRowId) throws SQLException {
+    final List<long[]> ranges = new ArrayList<>();
+    ranges.add(new long[] { minRowId, maxRowId });
+    return execute(c, verbose, ranges);
+  }
+
+  private Stream<LogEntry> execute(Connection c, boolean verbose, List<long[]> ranges)
+    throws SQLException {
+    final Stream<LogEntry> stream;
+    if (ranges == null) {
+      stream = execute(c, verbose, (long[]) null);
+    } else {
+      stream = ranges.stream().flatMap(range -> {
+        try {
+          return execute(c, verbose, range);
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    if (contains == null) {
+      return stream;
     }
+    return stream.filter(entry -> TokenBloomFilter.containsTokens(entry.getContent(), contains));
   }
 
-  public Stream<LogEntry> execute(Connection c, boolean verbose) throws SQLException {
-    final String statement = createSQL();
+  private Stream<LogEntry> execute(Connection c, boolean verbose, long[] rowIdRange)
+    throws SQLException {
+    final boolean parallel = parallelDecoder != null && codecFactory != null;
+    final String statement = createSQL(rowIdRange != null, ! parallel);
 
     if (verbose) {
       verboseExecute(statement);
     }
 
-    registerCodec(c);
+    if (! parallel) {
+      registerCodec(c);
+    }
     PreparedStatement ps = c.prepareStatement(statement);
-    int adder = 1;
-    if (before != null) {
-      ps.setLong(adder++, before.getEpochSecond());
+    bindParameters(ps, rowIdRange);
+
+    final ResultSet rs = ps.executeQuery();
+    final Stream<LogEntry> stream;
+    if (parallel) {
+      stream = parallelStream(rs);
+    } else if (blocks) {
+      stream = blockStream(rs);
+    } else {
+      final LogEntrySpliterator logEntrySpliterator = new LogEntrySpliterator(rs);
+      stream = StreamSupport.stream(logEntrySpliterator, false);
     }
+    // Closing the stream releases the statement, which matters when a file is followed.
+    return stream.onClose(() -> {
+      try {
+        ps.close();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
 
-    if (after != null) {
-      ps.setLong(adder, after.getEpochSecond());
+  /**
+   * Unpacks decoded blocks into entries.  The SQL query only selects blocks that overlap the time
+   * range and may contain the levels, so entries are filtered again here.
+   */
+  private Stream<LogEntry> blockStream(ResultSet rs) {
+    return blockContents(rs)
+      .flatMap(bytes -> EntryBlock.unpack(bytes).stream())
+      .filter(this::matchesBlockEntry)
+      .map(this::toLogEntry);
+  }
+
+  private Stream<byte[]> blockContents(ResultSet rs) {
+    Spliterator<byte[]> blockSpliterator =
+      new Spliterators.AbstractSpliterator<byte[]>(Long.MAX_VALUE, Spliterator.ORDERED) {
+        @Override
+        public boolean tryAdvance(Consumer<? super byte[]> action) {
+          try {
+            if (rs.next()) {
+              action.accept(rs.getBytes(1));
+              return true;
+            }
+            return false;
+          } catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+    return StreamSupport.stream(blockSpliterator, false);
+  }
+
+  /**
+   * Decodes the rows of a plain query on a pool of threads, keeping them in order.
+   */
+  private Stream<LogEntry> parallelStream(ResultSet rs) throws SQLException {
+    final Iterator<LogEntry> raw;
+    final ParallelDecoder.Decoder decoder;
+    if (blocks) {
+      final LogEntry block = new LogEntry();
+      raw = blockContents(rs)
+        .map(bytes -> block.set(0, 0, 0, bytes))
+        .iterator();
+      decoder = (codec, row, out) ->
+        EntryBlock.unpack(codec.decode(row.getContent())).stream()
+          .filter(this::matchesBlockEntry)
+          .map(this::toLogEntry)
+          .forEach(out);
+    } else {
+      raw = StreamSupport.stream(new LogEntrySpliterator(rs), false).iterator();
+      decoder = (codec, row, out) ->
+        out.accept(row.set(
+          row.getEpochSecs(), row.getNanos(), row.getLevel(), codec.decode(row.getContent())));
     }
+    final ParallelDecoder.Query query = parallelDecoder.decode(raw, codecFactory, decoder);
+    final Spliterator<LogEntry> spliterator =
+      Spliterators.spliteratorUnknownSize(query, Spliterator.ORDERED);
+    return StreamSupport.stream(spliterator, false).onClose(query::close);
+  }
 
-    final ResultSet rs = ps.executeQuery();
-    final LogEntrySpliterator logEntrySpliterator = new LogEntrySpliterator(rs);
-    return StreamSupport.stream(logEntrySpliterator, false);
+  /**
+   * Works out which rows may contain the text from the bloom filters, as a list of inclusive rowid
+   * ranges.  Rows that no filter covers, such as rows archived before filters were turned on, are
+   * always included.
+   *
+   * @return the ranges, or null if every row has to be read.
+   */
+  protected List<long[]> candidateRanges(Connection c, boolean verbose) throws SQLException {
+    if (! Database.hasTable(c, "entry_blooms")) {
+      return null;
+    }
+    final long[] hashes = TokenBloomFilter.tokenHashes(contains);
+    if (hashes.length == 0) {
+      return null;
+    }
+
+    final long[] bounds = rowIdBounds(c);
+    if (bounds == null) {
+      return new ArrayList<>();
+    }
+    final long first = bounds[0];
+    final long last = bounds[1];
+
+    final List<long[]> ranges = new ArrayList<>();
+    final String sql =
+      "SELECT min_rowid, max_rowid, num_hashes, bits FROM entry_blooms ORDER BY min_rowid";
+    long next = first;
+    int filters = 0;
+    int skipped = 0;
+    try (PreparedStatement ps = c.prepareStatement(sql);
+         ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        filters++;
+        final TokenBloomFilter filter = new TokenBloomFilter(rs.getBytes(4), rs.getInt(3));
+        if (filter.mayContainAll(hashes)) {
+          continue;
+        }
+        skipped++;
+        final long min = rs.getLong(1);
+        final long max = rs.getLong(2);
+        if (min > next) {
+          ranges.add(new long[] { next, Math.min(min - 1, last) });
+        }
+        next = Math.max(next, max + 1);
+      }
+    }
+    if (next <= last) {
+      ranges.add(new long[] { next, last });
+    }
+    if (verbose) {
+      verbosePrint(
+        "QueryBuilder bloom filters: skipped " + skipped + " of " + filters
+          + ", reading " + ranges.size() + " rowid ranges");
+    }
+    return ranges;
+  }
+
+  /**
+   * Works out which rows can be in the time range, as a list of inclusive rowid ranges.
+   *
+   * <p>If the file has a time index, the runs of rows whose time range overlaps are read, along
+   * with any rows the index doesn't cover.  Otherwise the first and last rows are found by
+   * bisecting rowids with point lookups, allowing for entries written out of order by up to the
+   * time slack, or the reorder window recorded in the file.  The time conditions are still applied
+   * to the rows read, so this only limits the rows that are scanned.  Blocks are not narrowed
+   * down, as there are few of them.
+   *
+   * @return the ranges, or null if every row has to be read.
+   */
+  protected List<long[]> timeRanges(Connection c, boolean verbose) throws SQLException {
+    if (blocks || (timeSlack != null && timeSlack < 0) || (before == null && after == null)) {
+      return null;
+    }
+    final long[] bounds = rowIdBounds(c);
+    if (bounds == null) {
+      return new ArrayList<>();
+    }
+    if (Database.hasTable(c, "entry_times")) {
+      return indexedTimeRanges(c, verbose, bounds[0], bounds[1]);
+    }
+    final long timeSlack = this.timeSlack != null ? this.timeSlack : recordedTimeSlack(c);
+    if (timeSlack < 0) {
+      if (verbose) {
+        verbosePrint("QueryBuilder time range: no time index or reorder window, reading all");
+      }
+      return null;
+    }
+
+    final List<long[]> ranges = new ArrayList<>();
+    final String sql =
+      "SELECT _rowid_, epoch_secs FROM entries WHERE _rowid_ >= ? ORDER BY _rowid_ LIMIT 1";
+    try (PreparedStatement ps = c.prepareStatement(sql)) {
+      long start = bounds[0];
+      long end = bounds[1];
+      if (after != null) {
+        start = firstRowIdFrom(ps, bounds[0], bounds[1], after.getEpochSecond() - timeSlack + 1);
+      }
+      if (before != null) {
+        end = firstRowIdFrom(ps, bounds[0], bounds[1], before.getEpochSecond() + timeSlack) - 1;
+      }
+      if (start <= end) {
+        ranges.add(new long[] { start, end });
+      }
+      if (verbose) {
+        verbosePrint(
+          "QueryBuilder time range: reading rowids " + start + " to " + end
+            + " of " + bounds[0] + " to " + bounds[1]);
+      }
+    }
+    return ranges;
+  }
+
+  /**
+   * @return the reorder window recorded by the writer, rounded up to whole seconds, or -1 if the
+   *     entries may have been written without one.
+   */
+  private long recordedTimeSlack(Connection c) throws SQLException {
+    if (! Database.hasTable(c, "reorder_window")) {
+      return -1;
+    }
+    try (Statement st = c.createStatement();
+         ResultSet rs = st.executeQuery("SELECT max(window_millis) FROM reorder_window")) {
+      if (! rs.next()) {
+        return -1;
+      }
+      final long windowMillis = rs.getLong(1);
+      return rs.wasNull() ? -1 : (windowMillis + 999) / 1000;
+    }
+  }
+
+  /**
+   * Bisects rowids for the first row at or after a time.  Every row before it is earlier than the
+   * time, as long as rows are no further out of order than the slack allowed for in the time.
+   *
+   * @param ps the point lookup, returning the rowid and time of the first row at a rowid.
+   * @return the rowid, or one past the last rowid if no row is at or after the time.
+   */
+  private long firstRowIdFrom(PreparedStatement ps, long first, long last, long epochSecs)
+    throws SQLException {
+    // Rows up to lo are before the time, and the first row from hi is at or after it.
+    long lo = first - 1;
+    long hi = last + 1;
+    while (hi - lo > 1) {
+      final long mid = lo + (hi - lo) / 2;
+      ps.setLong(1, mid);
+      final long rowId;
+      final long rowSecs;
+      try (ResultSet rs = ps.executeQuery()) {
+        if (! rs.next()) {
+          // Rows have been deleted since the bounds were read.
+          hi = mid;
+          continue;
+        }
+        rowId = rs.getLong(1);
+        rowSecs = rs.getLong(2);
+      }
+      if (rowId >= hi || rowSecs >= epochSecs) {
+        hi = mid;
+      } else {
+        lo = rowId;
+      }
+    }
+    return hi;
+  }
+
+  /**
+   * Reads the runs of rows in the time index that overlap the time range.
+   */
+  private List<long[]> indexedTimeRanges(Connection c, boolean verbose, long first, long last)
+    throws SQLException {
+    final List<long[]> ranges = new ArrayList<>();
+    final String sql =
+      "SELECT min_rowid, max_rowid, min_epoch_secs, max_epoch_secs FROM entry_times "
+        + "ORDER BY min_rowid";
+    long next = first;
+    int runs = 0;
+    int skipped = 0;
+    try (PreparedStatement ps = c.prepareStatement(sql);
+         ResultSet rs = ps.executeQuery()) {
+      while (rs.next()) {
+        runs++;
+        final long min = rs.getLong(1);
+        final long max = rs.getLong(2);
+        final boolean overlaps =
+          (after == null || rs.getLong(4) > after.getEpochSecond())
+            && (before == null || rs.getLong(3) < before.getEpochSecond());
+        if (overlaps) {
+          addRange(ranges, next, Math.min(max, last));
+        } else {
+          skipped++;
+          // Rows the index doesn't cover are always read.
+          addRange(ranges, next, Math.min(min - 1, last));
+        }
+        next = Math.max(next, max + 1);
+      }
+    }
+    addRange(ranges, next, last);
+    if (verbose) {
+      verbosePrint(
+        "QueryBuilder time index: skipped " + skipped + " of " + runs
+          + " runs, reading " + ranges.size() + " rowid ranges");
+    }
+    return ranges;
+  }
+
+  // Adds an inclusive range, joining it to the last range if they are next to each other.
+  private static void addRange(List<long[]> ranges, long start, long end) {
+    if (start > end) {
+      return;
+    }
+    if (! ranges.isEmpty()) {
+      final long[] previous = ranges.get(ranges.size() - 1);
+      if (previous[1] + 1 >= start) {
+        previous[1] = Math.max(previous[1], end);
+        return;
+      }
+    }
+    ranges.add(new long[] { start, end });
+  }
+
+  /**
+   * @param a sorted inclusive rowid ranges, or null for every row.
+   * @param b sorted inclusive rowid ranges, or null for every row.
+   * @return the rowids in both, or null for every row.
+   */
+  static List<long[]> intersect(List<long[]> a, List<long[]> b) {
+    if (a == null) {
+      return b;
+    }
+    if (b == null) {
+      return a;
+    }
+    final List<long[]> ranges = new ArrayList<>();
+    int i = 0;
+    int j = 0;
+    while (i < a.size() && j < b.size()) {
+      final long[] x = a.get(i);
+      final long[] y = b.get(j);
+      final long start = Math.max(x[0], y[0]);
+      final long end = Math.min(x[1], y[1]);
+      if (start <= end) {
+        ranges.add(new long[] { start, end });
+      }
+      if (x[1] < y[1]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return ranges;
+  }
+
+  /** @return the first and last rowids of the table, or null if it is empty. */
+  private long[] rowIdBounds(Connection c) throws SQLException {
+    final String table = blocks ? "entry_blocks" : "entries";
+    try (PreparedStatement ps =
+           c.prepareStatement("SELECT min(_rowid_), max(_rowid_) FROM " + table);
+         ResultSet rs = ps.executeQuery()) {
+      rs.next();
+      final long first = rs.getLong(1);
+      if (rs.wasNull()) {
+        return null;
+      }
+      return new long[] { first, rs.getLong(2) };
+    }
+  }
+
+  private boolean matchesBlockEntry(Entry entry) {
+    if (before != null && entry.epochSecond >= before.getEpochSecond()) {
+      return false;
+    }
+    if (after != null && entry.epochSecond <= after.getEpochSecond()) {
+      return false;
+    }
+    if (levels != null) {
+      for (int level : levels) {
+        if (entry.level == level) {
+          return true;
+        }
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private LogEntry toLogEntry(Entry entry) {
+    return new LogEntry().set(entry.epochSecond, entry.nanos, entry.level, entry.content);
   }
 
   public void registerCodec(Connection c) throws SQLException {
@@ -97,45 +609,128 @@ public class QueryBuilder {
   }
 
   public String createCountSQL() {
+    return createCountSQL(false);
+  }
+
+  /**
+   * @param rowIdRange true if the rows are limited to a range of rowids, bound before the other
+   *                   parameters.
+   */
+  public String createCountSQL(boolean rowIdRange) {
     StringBuilder sb = new StringBuilder();
-    sb.append("SELECT COUNT(*) FROM entries");
+    if (blocks) {
+      sb.append("SELECT total(num_entries) FROM entry_blocks");
+    } else {
+      sb.append("SELECT COUNT(*) FROM entries");
+    }
 
-    return createParameters(sb);
+    return createConditions(sb, rowIdRange);
   }
 
   public String createSQL() {
+    return createSQL(false);
+  }
+
+  /**
+   * @param rowIdRange true if the rows are limited to a range of rowids, bound before the other
+   *                   parameters.
+   */
+  public String createSQL(boolean rowIdRange) {
+    return createSQL(rowIdRange, true);
+  }
+
+  /**
+   * @param rowIdRange true if the rows are limited to a range of rowids, bound before the other
+   *                   parameters.
+   * @param decode true if the content is decoded in the query, false to select it as it is.
+   */
+  public String createSQL(boolean rowIdRange, boolean decode) {
     StringBuilder sb = new StringBuilder();
-    sb.append("SELECT epoch_secs, nanos, level, decode(content) FROM entries");
+    String content = decode ? "decode(content)" : "content";
+    if (blocks) {
+      sb.append("SELECT ").append(content).append(" FROM entry_blocks");
+    } else {
+      sb.append("SELECT epoch_secs, nanos, level, ").append(content).append(" FROM entries");
+    }
 
-    return createParameters(sb);
+    return createConditions(sb, rowIdRange);
   }
 
-  public String createParameters(StringBuilder sb) {
-    if (boundParams > 0 || whereString != null) {
-      sb.append(" WHERE ");
+  private String createConditions(StringBuilder sb, boolean rowIdRange) {
+    if (! rowIdRange) {
+      return createParameters(sb);
+    }
+    if (! hasConditions()) {
+      return sb.append(" WHERE _rowid_ BETWEEN ? AND ?").toString();
     }
+    // Wrap the other conditions, as a custom where clause may contain OR.
+    sb.append(" WHERE _rowid_ BETWEEN ? AND ? AND (");
+    StringBuilder conditions = new StringBuilder();
+    createParameters(conditions);
+    sb.append(conditions.substring(" WHERE ".length())).append(")");
+    return sb.toString();
+  }
 
+  public String createParameters(StringBuilder sb) {
+    final List<String> conditions = new ArrayList<>();
     if (before != null) {
-      sb.append("epoch_secs < ? ");
-      if (boundParams > 1) {
-        sb.append(" AND ");
-      }
+      conditions.add(blocks ? "min_epoch_secs < ? " : "epoch_secs < ? ");
     }
 
     if (after != null) {
-      sb.append("epoch_secs > ? ");
-      if (whereString != null && !whereString.isEmpty()) {
-        sb.append(" AND ");
-      }
+      conditions.add(blocks ? "max_epoch_secs > ? " : "epoch_secs > ? ");
+    }
+
+    if (levels != null) {
+      conditions.add(levelCondition());
     }
 
     if (whereString != null && !whereString.isEmpty()) {
-      sb.append(whereString);
+      conditions.add(whereString);
     }
 
+    if (! conditions.isEmpty()) {
+      sb.append(" WHERE ").append(String.join(" AND ", conditions));
+    }
     return sb.toString();
   }
 
+  private boolean hasConditions() {
+    return boundParams > 0 || levels != null || (whereString != null && !whereString.isEmpty());
+  }
+
+  // Blocks are matched on their level bitmap, so blocks without the levels are never decoded.
+  private String levelCondition() {
+    if (blocks) {
+      long mask = 0;
+      for (int level : levels) {
+        mask |= EntryBlock.levelBit(level);
+      }
+      return "(level_bitmap & " + mask + ") != 0";
+    }
+    final StringBuilder sb = new StringBuilder("level IN (");
+    for (int i = 0; i < levels.length; i++) {
+      sb.append(i == 0 ? "" : ", ").append(levels[i]);
+    }
+    return sb.append(")").toString();
+  }
+
+  private void bindParameters(PreparedStatement ps, long[] rowIdRange) throws SQLException {
+    int adder = 1;
+    if (rowIdRange != null) {
+      ps.setLong(adder++, rowIdRange[0]);
+      ps.setLong(adder++, rowIdRange[1]);
+    }
+
+    if (before != null) {
+      ps.setLong(adder++, before.getEpochSecond());
+    }
+
+    if (after != null) {
+      ps.setLong(adder, after.getEpochSecond());
+    }
+  }
+
   public void verboseExecute(String statement) {
     verbosePrint("QueryBuilder statement: " + statement);
     verbosePrint(
@@ -171,4 +766,17 @@ public class QueryBuilder {
     return this.count;
   }
 
+  /**
+   * Reads from the "entry_blocks" table written by the block rolling archiver.  Any custom where
+   * clause applies to the block columns (min_epoch_secs, max_epoch_secs, min_level, max_level,
+   * level_bitmap, num_entries).
+   */
+  public void setBlocks(boolean blocks) {
+    this.blocks = blocks;
+  }
+
+  public boolean isBlocks() {
+    return this.blocks;
+  }
+
 }
@@ -0,0 +1,215 @@
+package com.tersesystems.blacklite.reader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Merges the entries of several sources into one sequence ordered by (epoch_secs, nanos), reading
+ * the sources concurrently on a thread pool.
+ *
+ * <p>Each source is read in batches of {@code batchSize} entries by tasks on the pool, and the
+ * next batch of a source is fetched while the current one is merged, so there are at most two
+ * batches per source in memory.  A task reads one batch and returns, rather than reading a whole
+ * source, so a pool with fewer threads than sources can't deadlock waiting for a source that
+ * hasn't started.  A source is only read by one task at a time, so its connection and codec don't
+ * need to be thread safe.
+ *
+ * <p>Each source must return its entries in time order.  Entries with the same time come out in
+ * the order of the sources.  The merge holds no entries back, so a source that is only roughly in
+ * order, such as a file read in rowid order that was written without a reorder window, comes out
+ * out of order by as much as the file is, i.e. by the skew between the threads that wrote it.
+ * This is not thread safe, and must be read from a single thread.
+ */
+public class TimeOrderedMerge implements Iterator<LogEntry>, AutoCloseable {
+
+  /** A sequence of entries, opened and read on the pool. */
+  public interface Source extends AutoCloseable {
+
+    /**
+     * Opens the source.  This is called once, on a pool thread, before any entries are read.
+     *
+     * @return the entries in time order.  Entries are copied, so they can be reused.
+     */
+    Iterator<LogEntry> open() throws Exception;
+
+    @Override
+    void close() throws Exception;
+  }
+
+  private static final Comparator<Head> ORDER =
+      Comparator.<Head>comparingLong(h -> h.entry.getEpochSecs())
+          .thenComparingInt(h -> h.entry.getNanos())
+          .thenComparingInt(h -> h.buffer.index);
+
+  private final ExecutorService executor;
+  private final int batchSize;
+  private final List<Buffer> buffers = new ArrayList<>();
+  private final PriorityQueue<Head> heads = new PriorityQueue<>(ORDER);
+  private boolean started;
+
+  /**
+   * @param sources the sources to merge, which are closed when they run out or the merge is closed.
+   * @param executor the pool to read the sources on.
+   * @param batchSize the number of entries read from a source at a time.
+   */
+  public TimeOrderedMerge(List<? extends Source> sources, ExecutorService executor, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be at least 1");
+    }
+    this.executor = executor;
+    this.batchSize = batchSize;
+    for (int i = 0; i < sources.size(); i++) {
+      buffers.add(new Buffer(i, sources.get(i)));
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (!started) {
+      start();
+    }
+    return !heads.isEmpty();
+  }
+
+  @Override
+  public LogEntry next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Head head = heads.poll();
+    LogEntry entry = head.entry;
+    LogEntry following = head.buffer.poll();
+    if (following != null) {
+      head.entry = following;
+      heads.add(head);
+    }
+    return entry;
+  }
+
+  private void start() {
+    started = true;
+    // Start reading every source before waiting on any of them.
+    for (Buffer buffer : buffers) {
+      buffer.fetch();
+    }
+    for (Buffer buffer : buffers) {
+      LogEntry first = buffer.poll();
+      if (first != null) {
+        heads.add(new Head(buffer, first));
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    for (Buffer buffer : buffers) {
+      buffer.close();
+    }
+    heads.clear();
+  }
+
+  private static final class Head {
+    private final Buffer buffer;
+    private LogEntry entry;
+
+    Head(Buffer buffer, LogEntry entry) {
+      this.buffer = buffer;
+      this.entry = entry;
+    }
+  }
+
+  private final class Buffer {
+    private final int index;
+    private final Source source;
+    private final ArrayDeque<LogEntry> ready = new ArrayDeque<>();
+    private Iterator<LogEntry> entries;
+    private Future<List<LogEntry>> pending;
+    private boolean exhausted;
+    private boolean closed;
+
+    Buffer(int index, Source source) {
+      this.index = index;
+      this.source = source;
+    }
+
+    void fetch() {
+      if (pending == null && !exhausted) {
+        pending = executor.submit(this::readBatch);
+      }
+    }
+
+    // Runs on the pool.
+    private List<LogEntry> readBatch() throws Exception {
+      if (entries == null) {
+        entries = source.open();
+      }
+      List<LogEntry> batch = new ArrayList<>(batchSize);
+      while (batch.size() < batchSize && entries.hasNext()) {
+        batch.add(entries.next().copy());
+      }
+      return batch;
+    }
+
+    /** @return the next entry of the source, or null if there are no more. */
+    LogEntry poll() {
+      if (ready.isEmpty()) {
+        if (pending == null) {
+          return null;
+        }
+        List<LogEntry> batch = await();
+        ready.addAll(batch);
+        if (batch.size() < batchSize) {
+          exhausted = true;
+          close();
+        } else {
+          fetch();
+        }
+      }
+      return ready.poll();
+    }
+
+    private List<LogEntry> await() {
+      try {
+        return pending.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while reading " + source, e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Cannot read " + source, e.getCause());
+      } finally {
+        pending = null;
+      }
+    }
+
+    void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      // Let a running read finish, so the source isn't closed under it.
+      if (pending != null) {
+        try {
+          pending.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+          // the error has nowhere to go, as the merge is being closed.
+        }
+        pending = null;
+      }
+      try {
+        source.close();
+      } catch (Exception e) {
+        throw new IllegalStateException("Cannot close " + source, e);
+      }
+    }
+  }
+}
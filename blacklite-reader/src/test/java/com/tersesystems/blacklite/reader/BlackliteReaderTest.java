@@ -1,10 +1,25 @@
 package com.tersesystems.blacklite.reader;
 
+import com.tersesystems.blacklite.DefaultEntryStore;
+import com.tersesystems.blacklite.DefaultEntryStoreConfig;
+import com.tersesystems.blacklite.EntryStore;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import com.tersesystems.blacklite.archive.RollingArchiver;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.TaggedCodec;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -73,5 +88,152 @@ public class BlackliteReaderTest {
     assertThat(commandLine.execute(args)).isEqualTo(0);
   }
 
+  @Test
+  public void testOnlyTaggedFilesDecodeByTag() {
+    final BlackliteReader reader = new BlackliteReader();
+    final File file = new File("unused.db");
+    // An untagged binary row can start with a tag byte.
+    final byte[] row = { TaggedCodec.ZSTD, 1, 2, 3 };
+
+    final Codec identity = reader.createCodec("identity", file, StatusReporter.DEFAULT);
+    assertThat(identity).isNotInstanceOf(TaggedCodec.class);
+    assertThat(identity.decode(row)).isEqualTo(row);
+
+    final Codec tagged = reader.createCodec(TaggedCodec.NAME, file, StatusReporter.DEFAULT);
+    assertThat(tagged).isInstanceOf(TaggedCodec.class);
+    assertThat(tagged.decode(TaggedCodec.tag(TaggedCodec.RAW, row))).isEqualTo(row);
+  }
 
+  @Test
+  public void testExpandSkipsEmptyStandbyAndCompactionFiles() throws Exception {
+    final Path dir = Files.createTempDirectory("expand");
+    final Path live = dir.resolve("live.db");
+    final DefaultEntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(live.toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+    }
+    Files.copy(live, dir.resolve("live.db.standby"));
+    Files.copy(live, dir.resolve("archive.db.compacting"));
+    Files.write(dir.resolve("archive.db.compacted"), "archive.db".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(new BlackliteReader().expand(dir.toFile())).containsExactly(live.toFile());
+  }
+
+  @Test
+  public void testExpandKeepsActiveArchiveStandby() throws Exception {
+    final Path dir = Files.createTempDirectory("expand");
+    final Path standby = dir.resolve("archive.db.standby");
+    final DefaultEntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      final RollingArchiver archiver = new RollingArchiver();
+      archiver.setFile(dir.resolve("archive.db").toString());
+      archiver.setArchiveAfterRows(0);
+      archiver.setAsyncRollover(true);
+      // Rolls over once, as soon as the standby is ready, so archiving carries on in the standby.
+      archiver.setTriggeringPolicy(c -> ! archiver.getActiveFile().equals(standby.toString()));
+      archiver.setRollingStrategy(
+          fileArchiver -> {
+            try {
+              Files.move(Paths.get(fileArchiver.getFile()), dir.resolve("archive.1.db"));
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+      archiver.setEntryStore(entryStore);
+      archiver.initialize(StatusReporter.DEFAULT);
+      try {
+        for (int i = 0; i < 100 && ! archiver.getActiveFile().equals(standby.toString()); i++) {
+          insert(entryStore, i);
+          archiver.archive(entryStore.getConnection());
+          Thread.sleep(50);
+        }
+        assertThat(archiver.getActiveFile()).isEqualTo(standby.toString());
+        insert(entryStore, 1000);
+        archiver.archive(entryStore.getConnection());
+      } finally {
+        archiver.close();
+      }
+    }
+
+    // The newest archived entries are in the standby, which is read along with the others.
+    assertThat(new BlackliteReader().expand(dir.toFile()))
+      .contains(standby.toFile(), dir.resolve("archive.1.db").toFile());
+  }
+
+  @Test
+  public void testExpandWaitsForRolloverToBePublished() throws Exception {
+    final Path dir = Files.createTempDirectory("expand");
+    final Path first = dir.resolve("archive.1.db");
+    final Path second = dir.resolve("archive.2.db");
+    final Path third = dir.resolve("archive.3.db");
+    final ArchiveCatalog catalog = new ArchiveCatalog(dir.resolve("catalog.db").toString());
+    final DefaultEntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      final RollingArchiver archiver = new RollingArchiver();
+      archiver.setFile(dir.resolve("archive.db").toString());
+      archiver.setArchiveAfterRows(0);
+      archiver.setCatalogFile(catalog.getFile());
+      archiver.setTriggeringPolicy(c -> true);
+      archiver.setRollingStrategy(
+          fileArchiver -> {
+            try {
+              if (Files.exists(first)) {
+                Files.move(first, second);
+                fileArchiver.renamed(first.toString(), second.toString());
+              }
+              Files.move(Paths.get(fileArchiver.getFile()), first);
+              fileArchiver.rolledOver(first.toString());
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+          });
+      archiver.setEntryStore(entryStore);
+      archiver.initialize(StatusReporter.DEFAULT);
+      try {
+        insert(entryStore, 1);
+        archiver.archive(entryStore.getConnection());
+        insert(entryStore, 2);
+        archiver.archive(entryStore.getConnection());
+      } finally {
+        archiver.close();
+      }
+    }
+
+    // A rollover that has renamed the files, and publishes them a little later.
+    Files.move(second, third);
+    Files.move(first, second);
+    final Map<Path, Path> renames = new LinkedHashMap<>();
+    renames.put(second, third);
+    renames.put(first, second);
+    final Thread publisher =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(200);
+                catalog.publish(renames, null);
+              } catch (InterruptedException | SQLException e) {
+                throw new IllegalStateException(e);
+              }
+            });
+    publisher.start();
+    try {
+      assertThat(new BlackliteReader().expand(dir.toFile()))
+        .contains(second.toFile(), third.toFile())
+        .doesNotContain(first.toFile(), dir.resolve("catalog.db").toFile())
+        .doesNotHaveDuplicates();
+    } finally {
+      publisher.join();
+    }
+  }
+
+  private static void insert(EntryStore entryStore, int i) throws SQLException {
+    entryStore.insert(i, 0, 20000, ("row " + i).getBytes(StandardCharsets.UTF_8));
+    entryStore.executeBatch();
+    entryStore.commit();
+  }
 }
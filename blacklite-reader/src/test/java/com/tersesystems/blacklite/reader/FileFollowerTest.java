@@ -0,0 +1,256 @@
+package com.tersesystems.blacklite.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.tersesystems.blacklite.DefaultEntryStore;
+import com.tersesystems.blacklite.DefaultEntryStoreConfig;
+import com.tersesystems.blacklite.EntryStore;
+import com.tersesystems.blacklite.EntryStoreConfig;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class FileFollowerTest {
+
+  Path dir;
+  EntryStoreConfig config;
+  EntryStore entryStore;
+  FileFollower follower;
+  List<String> found = new ArrayList<>();
+  int written = 0;
+
+  @BeforeEach
+  public void initialize() throws Exception {
+    dir = Files.createTempDirectory("filefollower");
+    config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    entryStore = new DefaultEntryStore(config);
+    entryStore.initialize();
+    follower = follower(Collections.emptyList());
+  }
+
+  private FileFollower follower(List<File> archiveFiles) {
+    return new FileFollower(
+        dir.resolve("live.db").toFile(),
+        archiveFiles,
+        (c, manifest) -> new QueryBuilder(new IdentityCodec()),
+        entries ->
+            entries.forEach(e -> found.add(new String(e.getContent(), StandardCharsets.UTF_8))),
+        StatusReporter.DEFAULT,
+        false);
+  }
+
+  @AfterEach
+  public void cleanUp() throws Exception {
+    follower.close();
+    entryStore.close();
+  }
+
+  @Test
+  public void testFollowsNewEntries() throws Exception {
+    write(10);
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).hasSize(10);
+    assertThat(follower.getWatermark()).isEqualTo(10);
+
+    // Nothing has been committed since.
+    assertThat(follower.poll()).isFalse();
+
+    write(5);
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).hasSize(15);
+    assertThat(found.get(14)).isEqualTo("row 14");
+  }
+
+  @Test
+  public void testFollowsRotation() throws Exception {
+    write(10);
+    follower.poll();
+
+    // Rows written before the rotation are read from the rotated file.
+    for (int i = 0; i < 3; i++) {
+      entryStore.insert(written, 0, 20000, ("row " + written++).getBytes(StandardCharsets.UTF_8));
+    }
+    entryStore.rotate(dir.resolve("archive.db").toString());
+    write(2);
+
+    assertThat(follower.poll()).isTrue();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 15; i++) {
+      expected.add("row " + i);
+    }
+    assertThat(found).containsExactlyElementsOf(expected);
+    assertThat(follower.getWatermark()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFollowsReopenedStore() throws Exception {
+    write(10);
+    follower.poll();
+
+    // The archiver deletes the oldest rows, and closing the store vacuums it, which may renumber
+    // the rest.
+    try (Statement st = entryStore.getConnection().createStatement()) {
+      st.execute("DELETE FROM entries WHERE _rowid_ <= 5");
+    }
+    entryStore.commit();
+    entryStore.close();
+    entryStore = new DefaultEntryStore(config);
+    entryStore.initialize();
+    write(5);
+
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(15));
+  }
+
+  @Test
+  public void testFollowsRenumberedRows() throws Exception {
+    write(10);
+    follower.poll();
+
+    // Rows 4 to 10 are copied back to rowids 1 to 7, and the new rows follow them at 8 and 9,
+    // below the watermark.
+    try (Statement st = entryStore.getConnection().createStatement()) {
+      st.execute("CREATE TEMP TABLE kept AS SELECT * FROM entries WHERE _rowid_ > 3");
+      st.execute("DELETE FROM entries");
+      st.execute("INSERT INTO entries SELECT * FROM kept ORDER BY _rowid_");
+      st.execute("DROP TABLE kept");
+    }
+    entryStore.commit();
+    write(2);
+
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(12));
+    assertThat(follower.getWatermark()).isEqualTo(9);
+
+    // The new rows are past the watermark, and past the time of the row at it.
+    write(3);
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(15));
+  }
+
+  @Test
+  public void testReadsRowsArchivedBeforeTheyWereRead() throws Exception {
+    follower.close();
+    Path archive = dir.resolve("archive.db");
+    follower =
+        follower(
+            Arrays.asList(archive.toFile(), dir.resolve("archive.db.standby").toFile()));
+    write(10);
+    follower.poll();
+
+    // The archiver moves the oldest rows, including five that haven't been read, to the archive.
+    write(10);
+    archive(archive, 15);
+
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(20));
+
+    write(2);
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(22));
+  }
+
+  @Test
+  public void testFollowsRenumberedRowsWithTheSameTime() throws Exception {
+    write(2, 50);
+    write(3, 100);
+    follower.poll();
+    assertThat(follower.getWatermark()).isEqualTo(5);
+
+    // The rows are renumbered so the ones with the time of the watermark move down, and the new
+    // rows with the same time end at the watermark.
+    try (Statement st = entryStore.getConnection().createStatement()) {
+      st.execute("CREATE TEMP TABLE kept AS SELECT * FROM entries WHERE _rowid_ > 2");
+      st.execute("DELETE FROM entries");
+      st.execute("INSERT INTO entries SELECT * FROM kept ORDER BY _rowid_");
+      st.execute("DROP TABLE kept");
+    }
+    entryStore.commit();
+    write(2, 100);
+
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(7));
+    assertThat(follower.getWatermark()).isEqualTo(5);
+
+    write(1, 100);
+    assertThat(follower.poll()).isTrue();
+    assertThat(found).containsExactlyElementsOf(rows(8));
+  }
+
+  // Moves the rows up to the rowid into the archive, as the rolling archiver does.
+  private void archive(Path archive, long maxRowId) throws SQLException {
+    Connection live = entryStore.getConnection();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      try (Statement st = c.createStatement()) {
+        st.execute(
+            "CREATE TABLE IF NOT EXISTS entries "
+                + "(epoch_secs LONG, nanos INTEGER, level INTEGER, content BLOB)");
+      }
+      try (PreparedStatement select =
+              live.prepareStatement(
+                  "SELECT epoch_secs, nanos, level, content FROM entries "
+                      + "WHERE _rowid_ <= ? ORDER BY _rowid_");
+          PreparedStatement insert =
+              c.prepareStatement(
+                  "INSERT INTO entries(epoch_secs, nanos, level, content) VALUES (?, ?, ?, ?)")) {
+        select.setLong(1, maxRowId);
+        try (ResultSet rs = select.executeQuery()) {
+          while (rs.next()) {
+            insert.setLong(1, rs.getLong(1));
+            insert.setInt(2, rs.getInt(2));
+            insert.setInt(3, rs.getInt(3));
+            insert.setBytes(4, rs.getBytes(4));
+            insert.executeUpdate();
+          }
+        }
+      }
+    }
+    try (PreparedStatement delete =
+        live.prepareStatement("DELETE FROM entries WHERE _rowid_ <= ?")) {
+      delete.setLong(1, maxRowId);
+      delete.executeUpdate();
+    }
+    entryStore.commit();
+  }
+
+  private static List<String> rows(int count) {
+    List<String> rows = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      rows.add("row " + i);
+    }
+    return rows;
+  }
+
+  private void write(int count) throws SQLException {
+    for (int i = 0; i < count; i++) {
+      entryStore.insert(written, 0, 20000, ("row " + written++).getBytes(StandardCharsets.UTF_8));
+    }
+    entryStore.executeBatch();
+    entryStore.commit();
+  }
+
+  private void write(int count, long epochSecs) throws SQLException {
+    for (int i = 0; i < count; i++) {
+      entryStore.insert(epochSecs, 0, 20000, ("row " + written++).getBytes(StandardCharsets.UTF_8));
+    }
+    entryStore.executeBatch();
+    entryStore.commit();
+  }
+}
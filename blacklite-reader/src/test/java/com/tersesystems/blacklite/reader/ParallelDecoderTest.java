@@ -0,0 +1,136 @@
+package com.tersesystems.blacklite.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.codec.Codec;
+import com.tersesystems.blacklite.codec.CodecException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+public class ParallelDecoderTest {
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final AtomicInteger closed = new AtomicInteger();
+
+  private final ParallelDecoder.Decoder decoder =
+      (codec, row, out) ->
+          out.accept(
+              row.set(
+                  row.getEpochSecs(),
+                  row.getNanos(),
+                  row.getLevel(),
+                  codec.decode(row.getContent())));
+
+  @Test
+  public void testKeepsOrder() {
+    try (ParallelDecoder parallelDecoder = new ParallelDecoder(4, 16, 8)) {
+      ParallelDecoder.Query query =
+          parallelDecoder.decode(rows(10000), this::reversingCodec, decoder);
+      long expected = 0;
+      while (query.hasNext()) {
+        LogEntry entry = query.next();
+        assertThat(entry.getEpochSecs()).isEqualTo(expected);
+        assertThat(new String(entry.getContent(), StandardCharsets.UTF_8))
+            .isEqualTo("entry " + expected);
+        expected++;
+      }
+      assertThat(expected).isEqualTo(10000);
+      // Each thread had its own codec, and they are closed once everything has been read.
+      assertThat(created.get()).isBetween(1, 4);
+      assertThat(closed.get()).isEqualTo(created.get());
+    }
+  }
+
+  @Test
+  public void testSharesPoolBetweenQueries() {
+    try (ParallelDecoder parallelDecoder = new ParallelDecoder(2, 16, 4)) {
+      ParallelDecoder.Query first =
+          parallelDecoder.decode(rows(1000), this::reversingCodec, decoder);
+      ParallelDecoder.Query second =
+          parallelDecoder.decode(rows(1000), this::reversingCodec, decoder);
+      int count = 0;
+      while (first.hasNext() && second.hasNext()) {
+        assertThat(first.next().getEpochSecs()).isEqualTo(second.next().getEpochSecs());
+        count++;
+      }
+      assertThat(count).isEqualTo(1000);
+      assertThat(first.hasNext() || second.hasNext()).isFalse();
+      assertThat(closed.get()).isEqualTo(created.get());
+
+      // A query that is closed early closes its codecs, and leaves the pool running.
+      ParallelDecoder.Query abandoned =
+          parallelDecoder.decode(rows(1000), this::reversingCodec, decoder);
+      abandoned.next();
+      abandoned.close();
+      assertThat(closed.get()).isEqualTo(created.get());
+      try (ParallelDecoder.Query next =
+          parallelDecoder.decode(rows(10), this::reversingCodec, decoder)) {
+        assertThat(next.hasNext()).isTrue();
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeError() {
+    ParallelDecoder.Decoder failing =
+        (codec, row, out) -> {
+          throw new CodecException("bad row " + row.getEpochSecs());
+        };
+    try (ParallelDecoder parallelDecoder = new ParallelDecoder(2, 10, 4)) {
+      ParallelDecoder.Query query =
+          parallelDecoder.decode(rows(100), this::reversingCodec, failing);
+      assertThatThrownBy(query::hasNext).isInstanceOf(IllegalStateException.class);
+      assertThat(query.hasNext()).isFalse();
+      assertThat(closed.get()).isEqualTo(created.get());
+    }
+  }
+
+  // Rows reuse one entry, like rows read from a result set, with the content reversed.
+  private Iterator<LogEntry> rows(int count) {
+    LogEntry row = new LogEntry();
+    return IntStream.range(0, count)
+        .mapToObj(i -> row.set(i, 0, 0, reverse(("entry " + i).getBytes(StandardCharsets.UTF_8))))
+        .iterator();
+  }
+
+  private Codec reversingCodec() {
+    created.incrementAndGet();
+    return new Codec() {
+      @Override
+      public String getName() {
+        return "reverse";
+      }
+
+      @Override
+      public void initialize(StatusReporter statusReporter) {}
+
+      @Override
+      public byte[] encode(byte[] unencoded) {
+        return reverse(unencoded);
+      }
+
+      @Override
+      public byte[] decode(byte[] encoded) {
+        return reverse(encoded);
+      }
+
+      @Override
+      public void close() {
+        closed.incrementAndGet();
+      }
+    };
+  }
+
+  private static byte[] reverse(byte[] bytes) {
+    byte[] reversed = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      reversed[i] = bytes[bytes.length - 1 - i];
+    }
+    return reversed;
+  }
+}
@@ -3,17 +3,27 @@ package com.tersesystems.blacklite.reader;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.tersesystems.blacklite.DefaultEntryStore;
 import com.tersesystems.blacklite.DefaultEntryStoreConfig;
 import com.tersesystems.blacklite.EntryStore;
 import com.tersesystems.blacklite.EntryStoreConfig;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.BlockRollingArchiver;
+import com.tersesystems.blacklite.archive.EntryBlock;
+import com.tersesystems.blacklite.archive.RollingArchiver;
 import com.tersesystems.blacklite.codec.identity.IdentityCodec;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -141,6 +151,301 @@ public class QueryBuilderTest {
             "SELECT epoch_secs, nanos, level, decode(content) FROM entries WHERE epoch_secs < ?  AND epoch_secs > ?  AND level > 9000");
   }
 
+  @Test
+  public void testContainsSQL() {
+    final TestBlackliteReader runner = new TestBlackliteReader();
+    final CommandLine commandLine = new CommandLine(runner);
+    commandLine.execute("-s", "0", "-w", "level > 9000", "--contains", "9f1c2e", archiveFile);
+
+    final QueryBuilder actual = runner.createQueryBuilder(new IdentityCodec());
+    assertThat(actual.getContains()).isEqualTo("9f1c2e".getBytes(StandardCharsets.UTF_8));
+    assertThat(actual.createSQL(true))
+        .isEqualTo(
+            "SELECT epoch_secs, nanos, level, decode(content) FROM entries WHERE _rowid_ BETWEEN ? AND ? AND (epoch_secs > ?  AND level > 9000)");
+  }
+
+  @Test
+  public void testLevelSQL() {
+    final TestBlackliteReader runner = new TestBlackliteReader();
+    final CommandLine commandLine = new CommandLine(runner);
+    commandLine.execute("-s", "0", "--level", "30000,40000", archiveFile);
+
+    final QueryBuilder actual = runner.createQueryBuilder(new IdentityCodec());
+    assertThat(actual.createSQL())
+        .isEqualTo(
+            "SELECT epoch_secs, nanos, level, decode(content) FROM entries WHERE epoch_secs > ?  AND level IN (30000, 40000)");
+  }
+
+  @Test
+  public void testLevelsSkipBlocks() throws Exception {
+    Path dir = Files.createTempDirectory("querybuilder");
+    Path archive = dir.resolve("archive.db");
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      BlockRollingArchiver archiver = new BlockRollingArchiver();
+      archiver.setFile(archive.toString());
+      archiver.setArchiveAfterRows(0);
+      archiver.setBlockSize(10);
+      archiver.setEntryStore(entryStore);
+      archiver.initialize(StatusReporter.DEFAULT);
+      try {
+        // Only the fifth block has warnings in it.
+        for (int i = 0; i < 100; i++) {
+          int level = i == 45 ? 30000 : 20000;
+          entryStore.insert(i, 0, level, ("row " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        entryStore.executeBatch();
+        entryStore.commit();
+        archiver.archive(entryStore.getConnection());
+      } finally {
+        archiver.close();
+      }
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.setBlocks(true);
+      qb.setLevels(30000);
+      assertThat(qb.createSQL(false, false))
+          .isEqualTo(
+              "SELECT content FROM entry_blocks WHERE (level_bitmap & "
+                  + EntryBlock.levelBit(30000)
+                  + ") != 0");
+
+      List<String> found =
+          qb.execute(c, false)
+              .map(entry -> new String(entry.getContent(), StandardCharsets.UTF_8))
+              .collect(Collectors.toList());
+      assertThat(found).containsExactly("row 45");
+      assertThat(qb.executeCount(c, false)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testParallelSQL() {
+    final TestBlackliteReader runner = new TestBlackliteReader();
+    final CommandLine commandLine = new CommandLine(runner);
+    commandLine.execute("-s", "0", "--parallel", "4", archiveFile);
+
+    final QueryBuilder actual = runner.createQueryBuilder(new IdentityCodec());
+    assertThat(runner.parallel).isEqualTo(4);
+    assertThat(actual.createSQL(false, false))
+        .isEqualTo("SELECT epoch_secs, nanos, level, content FROM entries WHERE epoch_secs > ? ");
+  }
+
+  @Test
+  public void testParallelDecode() throws Exception {
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(archiveFile);
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      for (int i = 0; i < 2000; i++) {
+        entryStore.insert(i, 0, 20000, ("row " + i).getBytes(StandardCharsets.UTF_8));
+      }
+      entryStore.executeBatch();
+      entryStore.commit();
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archiveFile);
+        ParallelDecoder parallelDecoder = QueryBuilder.newParallelDecoder(4)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.setParallelDecode(parallelDecoder, IdentityCodec::new);
+      assertThat(qb.getParallelism()).isEqualTo(4);
+      // The pool is shared by every query.
+      for (int i = 0; i < 2; i++) {
+        List<String> found;
+        try (Stream<LogEntry> entries = qb.execute(c, false)) {
+          found =
+              entries
+                  .map(entry -> new String(entry.getContent(), StandardCharsets.UTF_8))
+                  .collect(Collectors.toList());
+        }
+        assertThat(found).hasSize(2000);
+        assertThat(found.get(0)).isEqualTo("row 0");
+        assertThat(found.get(1999)).isEqualTo("row 1999");
+      }
+    }
+  }
+
+  @Test
+  public void testContainsWithBloomFilters() throws Exception {
+    Path dir = Files.createTempDirectory("querybuilder");
+    Path archive = dir.resolve("archive.db");
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      RollingArchiver archiver = new RollingArchiver();
+      archiver.setFile(archive.toString());
+      archiver.setArchiveAfterRows(0);
+      archiver.setBloomFilters(true);
+      archiver.setBloomFilterRows(10);
+      archiver.setEntryStore(entryStore);
+      archiver.initialize(StatusReporter.DEFAULT);
+      try {
+        for (int i = 0; i < 100; i++) {
+          entryStore.insert(i, 0, 20000, ("{\"message\":\"row " + i + "\"}").getBytes());
+        }
+        entryStore.executeBatch();
+        entryStore.commit();
+        archiver.archive(entryStore.getConnection());
+      } finally {
+        archiver.close();
+      }
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.setContains("row 42".getBytes(StandardCharsets.UTF_8));
+      // Most filters are skipped.
+      assertThat(qb.candidateRanges(c, false)).hasSizeLessThan(5);
+
+      List<String> found =
+          qb.execute(c, false)
+              .map(entry -> new String(entry.getContent(), StandardCharsets.UTF_8))
+              .collect(Collectors.toList());
+      assertThat(found).containsExactly("{\"message\":\"row 42\"}");
+      assertThat(qb.executeCount(c, false)).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testTimeRangeBisection() throws Exception {
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(archiveFile);
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      for (int i = 0; i < 1000; i++) {
+        // Every tenth entry is written two seconds late.
+        long epochSecs = i % 10 == 0 ? i - 2 : i;
+        entryStore.insert(epochSecs, 0, 20000, ("row " + i).getBytes(StandardCharsets.UTF_8));
+      }
+      entryStore.executeBatch();
+      entryStore.commit();
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archiveFile)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.addAfter(Instant.ofEpochSecond(500));
+      qb.addBefore(Instant.ofEpochSecond(600));
+      // The file has no reorder window, so it is only bisected with an explicit slack.
+      assertThat(qb.timeRanges(c, false)).isNull();
+      qb.setTimeSlack(3L);
+      List<long[]> ranges = qb.timeRanges(c, false);
+      assertThat(ranges).hasSize(1);
+      assertThat(ranges.get(0)[0]).isBetween(490L, 502L);
+      assertThat(ranges.get(0)[1]).isBetween(600L, 610L);
+
+      List<String> found =
+          qb.execute(c, false)
+              .map(entry -> new String(entry.getContent(), StandardCharsets.UTF_8))
+              .collect(Collectors.toList());
+      // 501 to 600, as 600 was written late as 598, and 500 as 498.
+      assertThat(found).hasSize(100);
+      assertThat(found).contains("row 501", "row 600").doesNotContain("row 500", "row 601");
+      assertThat(qb.executeCount(c, false)).isEqualTo(100);
+
+      qb.setTimeSlack(-1L);
+      assertThat(qb.timeRanges(c, false)).isNull();
+      assertThat(qb.executeCount(c, false)).isEqualTo(100);
+    }
+  }
+
+  @Test
+  public void testTimeRangeWithRecordedReorderWindow() throws Exception {
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(archiveFile);
+    config.setReorderWindowMillis(500);
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      for (int i = 0; i < 1000; i++) {
+        entryStore.insert(i, 0, 20000, ("row " + i).getBytes(StandardCharsets.UTF_8));
+      }
+      entryStore.executeBatch();
+      entryStore.commit();
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archiveFile)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.addAfter(Instant.ofEpochSecond(500));
+      qb.addBefore(Instant.ofEpochSecond(600));
+      // The window is rounded up to a second of slack.
+      List<long[]> ranges = qb.timeRanges(c, false);
+      assertThat(ranges).hasSize(1);
+      assertThat(ranges.get(0)[0]).isBetween(499L, 502L);
+      assertThat(ranges.get(0)[1]).isBetween(600L, 602L);
+      assertThat(qb.executeCount(c, false)).isEqualTo(99);
+    }
+
+    // Reopening the file without a window drops the record, as new entries may be out of order.
+    config.setReorderWindowMillis(0);
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+    }
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archiveFile)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.addAfter(Instant.ofEpochSecond(500));
+      assertThat(qb.timeRanges(c, false)).isNull();
+    }
+  }
+
+  @Test
+  public void testTimeRangeWithTimeIndex() throws Exception {
+    Path dir = Files.createTempDirectory("querybuilder");
+    Path archive = dir.resolve("archive.db");
+    EntryStoreConfig config = new DefaultEntryStoreConfig();
+    config.setFile(dir.resolve("live.db").toString());
+    try (EntryStore entryStore = new DefaultEntryStore(config)) {
+      entryStore.initialize();
+      RollingArchiver archiver = new RollingArchiver();
+      archiver.setFile(archive.toString());
+      archiver.setArchiveAfterRows(0);
+      archiver.setTimeIndexRows(10);
+      archiver.setEntryStore(entryStore);
+      archiver.initialize(StatusReporter.DEFAULT);
+      try {
+        for (int i = 0; i < 100; i++) {
+          entryStore.insert(1000 + i, 0, 20000, ("row " + i).getBytes());
+        }
+        entryStore.executeBatch();
+        entryStore.commit();
+        archiver.archive(entryStore.getConnection());
+      } finally {
+        archiver.close();
+      }
+    }
+
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      QueryBuilder qb = new QueryBuilder(new IdentityCodec());
+      qb.addAfter(Instant.ofEpochSecond(1042));
+      qb.addBefore(Instant.ofEpochSecond(1055));
+      // Only the runs of rows 40 to 59 are read.
+      List<long[]> ranges = qb.timeRanges(c, false);
+      assertThat(ranges).hasSize(1);
+      assertThat(ranges.get(0)).containsExactly(41L, 60L);
+
+      List<String> found =
+          qb.execute(c, false)
+              .map(entry -> new String(entry.getContent(), StandardCharsets.UTF_8))
+              .collect(Collectors.toList());
+      assertThat(found).hasSize(12);
+      assertThat(found.get(0)).isEqualTo("row 43");
+      assertThat(found.get(11)).isEqualTo("row 54");
+    }
+  }
+
+  @Test
+  public void testIntersect() {
+    List<long[]> a = Arrays.asList(new long[] {1, 10}, new long[] {20, 30});
+    List<long[]> b = Arrays.asList(new long[] {5, 25}, new long[] {28, 40});
+    List<long[]> both = QueryBuilder.intersect(a, b);
+    assertThat(both).containsExactly(new long[] {5, 10}, new long[] {20, 25}, new long[] {28, 30});
+    assertThat(QueryBuilder.intersect(null, b)).isSameAs(b);
+    assertThat(QueryBuilder.intersect(a, null)).isSameAs(a);
+  }
+
   static class TestBlackliteReader extends BlackliteReader {
 
   }
@@ -0,0 +1,90 @@
+package com.tersesystems.blacklite.reader;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TimeOrderedMergeTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+  @AfterEach
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testMergesInTimeOrder() {
+    // More sources than threads, with batches smaller than the sources.
+    List<TestSource> sources =
+        Arrays.asList(
+            new TestSource("a", 1, 4, 7, 10),
+            new TestSource("b", 2, 5, 8),
+            new TestSource("c"),
+            new TestSource("d", 3, 6, 9, 11, 12));
+    List<Long> merged = new ArrayList<>();
+    try (TimeOrderedMerge merge = new TimeOrderedMerge(sources, executor, 2)) {
+      merge.forEachRemaining(entry -> merged.add(entry.getEpochSecs()));
+    }
+    assertThat(merged).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L, 12L);
+    assertThat(sources).allMatch(s -> s.closed);
+  }
+
+  @Test
+  public void testTiesKeepSourceOrder() {
+    List<TestSource> sources = Arrays.asList(new TestSource("a", 1, 1), new TestSource("b", 1));
+    List<String> merged = new ArrayList<>();
+    try (TimeOrderedMerge merge = new TimeOrderedMerge(sources, executor, 1)) {
+      merge.forEachRemaining(entry -> merged.add(new String(entry.getContent())));
+    }
+    assertThat(merged).containsExactly("a:1", "a:1", "b:1");
+  }
+
+  @Test
+  public void testSourceError() {
+    TestSource broken = new TestSource("broken", 1);
+    broken.broken = true;
+    List<TestSource> sources = Arrays.asList(new TestSource("a", 2), broken);
+    try (TimeOrderedMerge merge = new TimeOrderedMerge(sources, executor, 10)) {
+      assertThatThrownBy(merge::hasNext).isInstanceOf(IllegalStateException.class);
+    }
+    assertThat(sources).allMatch(s -> s.closed);
+  }
+
+  static class TestSource implements TimeOrderedMerge.Source {
+    private final String name;
+    private final long[] times;
+    boolean broken;
+    boolean closed;
+
+    TestSource(String name, long... times) {
+      this.name = name;
+      this.times = times;
+    }
+
+    @Override
+    public Iterator<LogEntry> open() {
+      if (broken) {
+        throw new IllegalStateException("broken");
+      }
+      // Reuses one entry, like the entries read from a result set.
+      LogEntry entry = new LogEntry();
+      return Arrays.stream(times)
+          .mapToObj(t -> entry.set(t, 0, 0, (name + ":" + t).getBytes()))
+          .iterator();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
@@ -0,0 +1,642 @@
+package com.tersesystems.blacklite.s3;
+
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import com.tersesystems.blacklite.archive.RolloverListener;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.sqlite.JDBC;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Ships sealed archive files to S3 or an S3 compatible object store as soon as they are rolled
+ * over.
+ *
+ * <p>The archive file is opened as soon as it is rolled over, so later renames and deletions by the
+ * rolling strategy don't matter, and it is read once, straight from the sealed file. Nothing else
+ * is done on the thread that rolled over: the manifest is read by the upload, from wherever the
+ * file has been renamed to by then. Files larger than the part size are sent as a multipart
+ * upload. Single PUTs and the parts of all uploads share a bounded pool of threads, and each reads
+ * its bytes only once it runs, so no more than {@code maxConcurrentParts * partSize} bytes are held
+ * in memory. Failed requests are retried with exponential backoff and jitter.
+ *
+ * <p>Once the upload has been confirmed with a HEAD request, the shipment is recorded in the
+ * catalog, and the local file can optionally be deleted.
+ *
+ * <p>Objects are stored under {@code prefix/yyyy/MM/dd/archiveId.db}, using the UTC date of the
+ * oldest entry in the archive.
+ */
+public class S3ArchiveShipper implements RolloverListener {
+
+  /** The smallest part size that S3 accepts, for all parts but the last. */
+  public static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+  private static final DateTimeFormatter DATE_PATH =
+      DateTimeFormatter.ofPattern("yyyy/MM/dd").withZone(ZoneOffset.UTC);
+
+  private String bucket;
+  private String prefix = "";
+  private String region;
+  private String endpoint;
+  private boolean pathStyleAccess;
+  private String accessKeyId;
+  private String secretAccessKey;
+  private int partSize = 8 * 1024 * 1024;
+  private int maxConcurrentUploads = 2;
+  private int maxConcurrentParts = 4;
+  private int maxAttempts = 5;
+  private long baseBackoffMillis = 200;
+  private long maxBackoffMillis = 20000;
+  private long shutdownTimeoutSeconds = 60;
+  private String catalogFile;
+  private boolean deleteAfterShipping;
+
+  private S3Client s3Client;
+  private boolean ownsClient;
+  private ArchiveCatalog catalog;
+  private ExecutorService uploadExecutor;
+  private ExecutorService partExecutor;
+  private StatusReporter statusReporter = StatusReporter.DEFAULT;
+
+  public String getBucket() {
+    return bucket;
+  }
+
+  public void setBucket(String bucket) {
+    this.bucket = bucket;
+  }
+
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /** @param prefix the prefix of object keys, i.e. "logs/host-1/". */
+  public void setPrefix(String prefix) {
+    this.prefix = prefix == null ? "" : prefix;
+  }
+
+  public String getRegion() {
+    return region;
+  }
+
+  /** @param region the region, or null to use the default region provider chain. */
+  public void setRegion(String region) {
+    this.region = region;
+  }
+
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /** @param endpoint the endpoint of an S3 compatible store, i.e. "http://localhost:9000". */
+  public void setEndpoint(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  public boolean isPathStyleAccess() {
+    return pathStyleAccess;
+  }
+
+  /** @param pathStyleAccess true to put the bucket in the path, as MinIO expects by default. */
+  public void setPathStyleAccess(boolean pathStyleAccess) {
+    this.pathStyleAccess = pathStyleAccess;
+  }
+
+  public String getAccessKeyId() {
+    return accessKeyId;
+  }
+
+  /**
+   * @param accessKeyId the access key, or null to use the default credentials provider chain.
+   */
+  public void setAccessKeyId(String accessKeyId) {
+    this.accessKeyId = accessKeyId;
+  }
+
+  public void setSecretAccessKey(String secretAccessKey) {
+    this.secretAccessKey = secretAccessKey;
+  }
+
+  public int getPartSize() {
+    return partSize;
+  }
+
+  /**
+   * Sets the size of the parts of a multipart upload. Files no larger than this are sent with a
+   * single PUT. S3 rejects parts smaller than {@link #MIN_PART_SIZE}, although other stores may
+   * not.
+   *
+   * @param partSize the part size in bytes, 8 MiB by default.
+   */
+  public void setPartSize(int partSize) {
+    this.partSize = partSize;
+  }
+
+  public int getMaxConcurrentUploads() {
+    return maxConcurrentUploads;
+  }
+
+  /** @param maxConcurrentUploads the number of archives uploaded at once, 2 by default. */
+  public void setMaxConcurrentUploads(int maxConcurrentUploads) {
+    this.maxConcurrentUploads = maxConcurrentUploads;
+  }
+
+  public int getMaxConcurrentParts() {
+    return maxConcurrentParts;
+  }
+
+  /** @param maxConcurrentParts the number of parts uploaded at once, 4 by default. */
+  public void setMaxConcurrentParts(int maxConcurrentParts) {
+    this.maxConcurrentParts = maxConcurrentParts;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /** @param maxAttempts the number of times a request is tried before giving up, 5 by default. */
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public long getBaseBackoffMillis() {
+    return baseBackoffMillis;
+  }
+
+  /** @param baseBackoffMillis the delay before the first retry, doubled on every attempt. */
+  public void setBaseBackoffMillis(long baseBackoffMillis) {
+    this.baseBackoffMillis = baseBackoffMillis;
+  }
+
+  public long getMaxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public void setMaxBackoffMillis(long maxBackoffMillis) {
+    this.maxBackoffMillis = maxBackoffMillis;
+  }
+
+  public long getShutdownTimeoutSeconds() {
+    return shutdownTimeoutSeconds;
+  }
+
+  /** @param shutdownTimeoutSeconds how long close waits for queued uploads to finish. */
+  public void setShutdownTimeoutSeconds(long shutdownTimeoutSeconds) {
+    this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+  }
+
+  public String getCatalogFile() {
+    return catalogFile;
+  }
+
+  /** @param catalogFile the archive catalog to record shipments in, or null. */
+  public void setCatalogFile(String catalogFile) {
+    this.catalogFile = catalogFile;
+  }
+
+  public boolean isDeleteAfterShipping() {
+    return deleteAfterShipping;
+  }
+
+  /** @param deleteAfterShipping true if the local file is deleted once the upload is confirmed. */
+  public void setDeleteAfterShipping(boolean deleteAfterShipping) {
+    this.deleteAfterShipping = deleteAfterShipping;
+  }
+
+  /**
+   * Sets the client to use instead of building one from the configuration. The client is not
+   * closed by the shipper.
+   */
+  public void setS3Client(S3Client s3Client) {
+    this.s3Client = s3Client;
+  }
+
+  @Override
+  public void initialize(StatusReporter statusReporter) {
+    this.statusReporter = Objects.requireNonNull(statusReporter, "Null statusReporter");
+    Objects.requireNonNull(bucket, "Null bucket");
+    if (partSize <= 0 || maxConcurrentUploads <= 0 || maxConcurrentParts <= 0 || maxAttempts <= 0) {
+      throw new IllegalArgumentException(
+          "partSize, maxConcurrentUploads, maxConcurrentParts and maxAttempts must be positive");
+    }
+    if (s3Client == null) {
+      s3Client = buildClient();
+      ownsClient = true;
+    }
+    if (catalogFile != null) {
+      catalog = new ArchiveCatalog(catalogFile);
+    }
+    uploadExecutor =
+        Executors.newFixedThreadPool(maxConcurrentUploads, threadFactory("blacklite-s3-shipper"));
+    partExecutor =
+        Executors.newFixedThreadPool(maxConcurrentParts, threadFactory("blacklite-s3-part"));
+  }
+
+  @Override
+  public void rolledOver(String rolledFile) {
+    Path path = Paths.get(rolledFile).toAbsolutePath();
+    final FileChannel channel;
+    try {
+      // Hold on to the file, so it can be read even if the rolling strategy renames it.
+      channel = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (IOException e) {
+      statusReporter.addError("S3ArchiveShipper: Cannot open " + path, e);
+      return;
+    }
+    // Opening a database would hold up the rollover, so only the file key is kept for the upload.
+    Object fileKey = fileKey(path);
+    try {
+      uploadExecutor.execute(() -> ship(path, fileKey, channel));
+    } catch (RejectedExecutionException e) {
+      statusReporter.addWarn("S3ArchiveShipper: Closed, not shipping " + path);
+      closeQuietly(channel);
+    }
+  }
+
+  private void ship(Path rolledPath, Object fileKey, FileChannel channel) {
+    Path path = rolledPath;
+    try (FileChannel ch = channel) {
+      path = currentPath(rolledPath, fileKey);
+      Optional<ArchiveManifest> maybeManifest =
+          Files.isRegularFile(path) ? readManifest(path) : Optional.empty();
+      if (!maybeManifest.isPresent()) {
+        statusReporter.addError("S3ArchiveShipper: No manifest in " + path + ", not shipping");
+        return;
+      }
+      ArchiveManifest manifest = maybeManifest.get();
+      String archiveId = manifest.getArchiveId();
+      if (catalog != null && catalog.findShipment(archiveId).isPresent()) {
+        statusReporter.addInfo("S3ArchiveShipper: " + archiveId + " has already been shipped");
+        return;
+      }
+      final long start = System.currentTimeMillis();
+      String key = objectKey(manifest);
+      long size = ch.size();
+      Map<String, String> metadata = metadata(manifest);
+      String etag =
+          size <= partSize
+              ? putObject(ch, key, size, metadata)
+              : multipartUpload(ch, key, size, metadata);
+      confirm(key, size);
+
+      String uri = "s3://" + bucket + "/" + key;
+      if (catalog != null) {
+        catalog.markShipped(archiveId, uri, etag, Instant.now().getEpochSecond());
+      }
+      long elapsed = System.currentTimeMillis() - start;
+      statusReporter.addInfo(
+          "S3ArchiveShipper: shipped " + path + " to " + uri + " in " + elapsed + "ms");
+
+      if (deleteAfterShipping) {
+        deleteLocal(path, archiveId);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      statusReporter.addWarn("S3ArchiveShipper: Interrupted while shipping " + path, e);
+    } catch (Exception e) {
+      statusReporter.addError("S3ArchiveShipper: Cannot ship " + path, e);
+    }
+  }
+
+  private String putObject(FileChannel ch, String key, long size, Map<String, String> metadata)
+      throws Exception {
+    PutObjectRequest request =
+        PutObjectRequest.builder()
+            .bucket(bucket)
+            .key(key)
+            .contentLength(size)
+            .metadata(metadata)
+            .build();
+    // Sent from the part pool, so it counts towards the parts held in memory.
+    Future<String> future =
+        partExecutor.submit(
+            () -> {
+              byte[] bytes = readPart(ch, 0, (int) size);
+              return withRetry(
+                  "put " + key,
+                  () -> s3Client.putObject(request, RequestBody.fromBytes(bytes)).eTag());
+            });
+    try {
+      return await(future);
+    } catch (Exception e) {
+      future.cancel(true);
+      throw e;
+    }
+  }
+
+  private String multipartUpload(
+      FileChannel ch, String key, long size, Map<String, String> metadata) throws Exception {
+    CreateMultipartUploadRequest createRequest =
+        CreateMultipartUploadRequest.builder().bucket(bucket).key(key).metadata(metadata).build();
+    String uploadId =
+        withRetry(
+            "create upload " + key,
+            () -> s3Client.createMultipartUpload(createRequest).uploadId());
+
+    List<Future<CompletedPart>> futures = new ArrayList<>();
+    try {
+      int partNumber = 1;
+      for (long offset = 0; offset < size; offset += partSize) {
+        int length = (int) Math.min(partSize, size - offset);
+        Callable<CompletedPart> part = uploadPart(ch, key, uploadId, partNumber++, offset, length);
+        futures.add(partExecutor.submit(part));
+      }
+      List<CompletedPart> parts = new ArrayList<>(futures.size());
+      for (Future<CompletedPart> future : futures) {
+        parts.add(await(future));
+      }
+      CompleteMultipartUploadRequest completeRequest =
+          CompleteMultipartUploadRequest.builder()
+              .bucket(bucket)
+              .key(key)
+              .uploadId(uploadId)
+              .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+              .build();
+      return withRetry(
+          "complete upload " + key, () -> s3Client.completeMultipartUpload(completeRequest).eTag());
+    } catch (Exception e) {
+      for (Future<CompletedPart> future : futures) {
+        future.cancel(true);
+      }
+      abort(key, uploadId);
+      throw e;
+    }
+  }
+
+  private Callable<CompletedPart> uploadPart(
+      FileChannel ch, String key, String uploadId, int partNumber, long offset, int length) {
+    return () -> {
+      // Read inside the task, so only running parts hold a buffer.
+      byte[] bytes = readPart(ch, offset, length);
+      UploadPartRequest request =
+          UploadPartRequest.builder()
+              .bucket(bucket)
+              .key(key)
+              .uploadId(uploadId)
+              .partNumber(partNumber)
+              .contentLength((long) length)
+              .build();
+      String etag =
+          withRetry(
+              "upload part " + partNumber + " of " + key,
+              () -> s3Client.uploadPart(request, RequestBody.fromBytes(bytes)).eTag());
+      return CompletedPart.builder().partNumber(partNumber).eTag(etag).build();
+    };
+  }
+
+  private void abort(String key, String uploadId) {
+    try {
+      AbortMultipartUploadRequest request =
+          AbortMultipartUploadRequest.builder().bucket(bucket).key(key).uploadId(uploadId).build();
+      s3Client.abortMultipartUpload(request);
+    } catch (SdkException e) {
+      statusReporter.addWarn("S3ArchiveShipper: Cannot abort upload " + uploadId + " of " + key, e);
+    }
+  }
+
+  private void confirm(String key, long size) throws Exception {
+    HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucket).key(key).build();
+    Long contentLength =
+        withRetry("head " + key, () -> s3Client.headObject(request).contentLength());
+    if (contentLength == null || contentLength != size) {
+      throw new IOException(
+          "Uploaded object " + key + " has length " + contentLength + ", expected " + size);
+    }
+  }
+
+  private void deleteLocal(Path path, String archiveId) throws IOException, SQLException {
+    // The rolling strategy may have renamed the file since it was rolled over, in which case the
+    // catalog follows it.  Only scan the directory if neither path has the archive any more.
+    Path candidate = catalog != null ? catalog.path(archiveId).orElse(path) : path;
+    Optional<Path> current =
+        hasArchive(candidate, archiveId)
+            ? Optional.of(candidate)
+            : ArchiveCatalog.locate(path.getParent(), archiveId);
+    if (current.isPresent()) {
+      Files.deleteIfExists(current.get());
+      statusReporter.addInfo("S3ArchiveShipper: deleted " + current.get());
+      if (catalog != null) {
+        catalog.remove(archiveId);
+      }
+    } else {
+      statusReporter.addWarn("S3ArchiveShipper: Cannot find " + archiveId + " to delete");
+    }
+  }
+
+  String objectKey(ArchiveManifest manifest) {
+    String date = DATE_PATH.format(Instant.ofEpochSecond(manifest.getMinEpochSecs()));
+    String separator = prefix.isEmpty() || prefix.endsWith("/") ? "" : "/";
+    return prefix + separator + date + "/" + manifest.getArchiveId() + ".db";
+  }
+
+  private Map<String, String> metadata(ArchiveManifest manifest) {
+    Map<String, String> metadata = new HashMap<>();
+    metadata.put("blacklite-archive-id", manifest.getArchiveId());
+    metadata.put("blacklite-format", manifest.getFormat());
+    metadata.put("blacklite-codec", manifest.getCodec());
+    metadata.put("blacklite-row-count", Long.toString(manifest.getRowCount()));
+    metadata.put("blacklite-min-epoch-secs", Long.toString(manifest.getMinEpochSecs()));
+    metadata.put("blacklite-max-epoch-secs", Long.toString(manifest.getMaxEpochSecs()));
+    return metadata;
+  }
+
+  private <T> T withRetry(String action, Callable<T> callable) throws Exception {
+    for (int attempt = 1; ; attempt++) {
+      try {
+        return callable.call();
+      } catch (SdkException e) {
+        if (attempt >= maxAttempts || !isRetryable(e)) {
+          throw e;
+        }
+        long delay = backoffMillis(attempt);
+        statusReporter.addWarn(
+            String.format(
+                "S3ArchiveShipper: %s failed on attempt %d, retrying in %dms",
+                action, attempt, delay),
+            e);
+        Thread.sleep(delay);
+      }
+    }
+  }
+
+  static boolean isRetryable(SdkException e) {
+    if (e instanceof SdkServiceException) {
+      int status = ((SdkServiceException) e).statusCode();
+      return status >= 500 || status == 429 || status == 408;
+    }
+    return e instanceof SdkClientException;
+  }
+
+  // Full jitter keeps a fleet of hosts that lost the endpoint at once from retrying in lockstep.
+  private long backoffMillis(int attempt) {
+    long cap = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+    return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+  }
+
+  private static byte[] readPart(FileChannel ch, long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = ch.read(buffer, offset + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of file at " + (offset + buffer.position()));
+      }
+    }
+    return buffer.array();
+  }
+
+  private static <T> T await(Future<T> future) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+
+  private static boolean hasArchive(Path path, String archiveId) throws SQLException {
+    if (!Files.isRegularFile(path)) {
+      return false;
+    }
+    Optional<ArchiveManifest> manifest = readManifest(path);
+    return manifest.isPresent() && manifest.get().getArchiveId().equals(archiveId);
+  }
+
+  /**
+   * @return the path the file has been renamed to by the rolling strategy since it was rolled
+   *     over, found by its file key in the same directory, or the rolled path.
+   */
+  private static Path currentPath(Path rolledPath, Object fileKey) throws IOException {
+    if (fileKey == null || fileKey.equals(fileKey(rolledPath))) {
+      return rolledPath;
+    }
+    try (Stream<Path> files = Files.list(rolledPath.getParent())) {
+      return files.filter(p -> fileKey.equals(fileKey(p))).findFirst().orElse(rolledPath);
+    }
+  }
+
+  /** @return the identity of the file, or null if it is gone or the file system has none. */
+  private static Object fileKey(Path path) {
+    try {
+      return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static Optional<ArchiveManifest> readManifest(Path path) throws SQLException {
+    try (Connection conn = JDBC.createConnection("jdbc:sqlite:" + path, new Properties())) {
+      return ArchiveManifest.read(conn);
+    }
+  }
+
+  private S3Client buildClient() {
+    S3ClientBuilder builder =
+        S3Client.builder()
+            .serviceConfiguration(
+                S3Configuration.builder()
+                    .pathStyleAccessEnabled(pathStyleAccess)
+                    // Parts are already in memory, so they can be signed without chunking.
+                    .chunkedEncodingEnabled(false)
+                    .build())
+            // Retries are handled here, so they can be logged and backed off with jitter.
+            .overrideConfiguration(
+                ClientOverrideConfiguration.builder().retryPolicy(RetryPolicy.none()).build());
+    if (region != null) {
+      builder.region(Region.of(region));
+    }
+    if (endpoint != null) {
+      builder.endpointOverride(URI.create(endpoint));
+    }
+    if (accessKeyId != null) {
+      builder.credentialsProvider(
+          StaticCredentialsProvider.create(
+              AwsBasicCredentials.create(accessKeyId, secretAccessKey)));
+    }
+    return builder.build();
+  }
+
+  private static ThreadFactory threadFactory(String name) {
+    return r -> {
+      Thread t = new Thread(r);
+      t.setDaemon(true);
+      t.setName(name);
+      return t;
+    };
+  }
+
+  private void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      statusReporter.addWarn("S3ArchiveShipper: Cannot close channel", e);
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    if (uploadExecutor == null) {
+      return;
+    }
+    // Give queued archives a chance to ship, as the host may not come back.
+    uploadExecutor.shutdown();
+    if (!uploadExecutor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+      statusReporter.addError("S3ArchiveShipper: Timeout waiting for uploads!");
+      uploadExecutor.shutdownNow();
+    }
+    partExecutor.shutdownNow();
+    uploadExecutor = null;
+    if (ownsClient) {
+      s3Client.close();
+      s3Client = null;
+    }
+  }
+}
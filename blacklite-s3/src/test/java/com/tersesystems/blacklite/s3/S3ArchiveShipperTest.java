@@ -0,0 +1,317 @@
+package com.tersesystems.blacklite.s3;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tersesystems.blacklite.StatusReporter;
+import com.tersesystems.blacklite.Statements;
+import com.tersesystems.blacklite.archive.ArchiveCatalog;
+import com.tersesystems.blacklite.archive.ArchiveManifest;
+import com.tersesystems.blacklite.codec.identity.IdentityCodec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class S3ArchiveShipperTest {
+
+  private FakeS3 fakeS3;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    fakeS3 = new FakeS3();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    fakeS3.stop();
+  }
+
+  @Test
+  public void testMultipartUpload() throws Exception {
+    Path tmpDir = Files.createTempDirectory("shipper");
+    Path archive = createArchive(tmpDir.resolve("archive.1.db"), 5000);
+    byte[] original = Files.readAllBytes(archive);
+    String archiveId = manifest(archive).getArchiveId();
+    Path catalogFile = Files.createTempDirectory("catalog").resolve("catalog.db");
+    ArchiveCatalog catalog = new ArchiveCatalog(catalogFile.toString());
+    catalog.add(archive);
+    assertThat(catalog.path(archiveId)).contains(archive.toAbsolutePath());
+
+    S3ArchiveShipper shipper = createShipper();
+    shipper.setCatalogFile(catalogFile.toString());
+    shipper.setDeleteAfterShipping(true);
+    shipper.initialize(StatusReporter.DEFAULT);
+    shipper.rolledOver(archive.toString());
+    shipper.close();
+
+    String key = "logs/2020/11/03/" + archiveId + ".db";
+    assertThat(fakeS3.objects).containsOnlyKeys("/archives/" + key);
+    assertThat(fakeS3.objects.get("/archives/" + key)).isEqualTo(original);
+    assertThat(fakeS3.partRequests.get()).isGreaterThan(1);
+    assertThat(Files.exists(archive)).isFalse();
+
+    assertThat(catalog.findShipment(archiveId)).contains("s3://archives/" + key);
+    // Only the deleted archive's row is removed.
+    assertThat(catalog.path(archiveId)).isEmpty();
+  }
+
+  @Test
+  public void testRetryAfterFailure() throws Exception {
+    Path tmpDir = Files.createTempDirectory("shipper");
+    Path archive = createArchive(tmpDir.resolve("archive.1.db"), 5000);
+    byte[] original = Files.readAllBytes(archive);
+    fakeS3.failures.set(2);
+
+    S3ArchiveShipper shipper = createShipper();
+    shipper.initialize(StatusReporter.DEFAULT);
+    shipper.rolledOver(archive.toString());
+    shipper.close();
+
+    assertThat(fakeS3.failures.get()).isEqualTo(0);
+    assertThat(fakeS3.objects.values()).containsExactly(original);
+    // Not deleting by default.
+    assertThat(Files.exists(archive)).isTrue();
+  }
+
+  @Test
+  public void testSmallFileIsPut() throws Exception {
+    Path tmpDir = Files.createTempDirectory("shipper");
+    Path archive = createArchive(tmpDir.resolve("archive.1.db"), 10);
+    byte[] original = Files.readAllBytes(archive);
+
+    S3ArchiveShipper shipper = createShipper();
+    shipper.setPartSize(1024 * 1024);
+    shipper.initialize(StatusReporter.DEFAULT);
+    shipper.rolledOver(archive.toString());
+    shipper.close();
+
+    assertThat(fakeS3.partRequests.get()).isEqualTo(0);
+    assertThat(fakeS3.objects.values()).containsExactly(original);
+  }
+
+  @Test
+  public void testFindsArchiveRenamedBeforeUpload() throws Exception {
+    Path tmpDir = Files.createTempDirectory("shipper");
+    Path first = createArchive(tmpDir.resolve("first.db"), 10);
+    Path archive = createArchive(tmpDir.resolve("archive.1.db"), 10);
+    byte[] original = Files.readAllBytes(archive);
+    String archiveId = manifest(archive).getArchiveId();
+
+    // The first upload holds the only upload thread until the archive has been renamed.
+    fakeS3.release = new CountDownLatch(1);
+    S3ArchiveShipper shipper = createShipper();
+    shipper.setPartSize(1024 * 1024);
+    shipper.setMaxConcurrentUploads(1);
+    shipper.initialize(StatusReporter.DEFAULT);
+    shipper.rolledOver(first.toString());
+    shipper.rolledOver(archive.toString());
+    Files.move(archive, tmpDir.resolve("archive.2.db"));
+    fakeS3.release.countDown();
+    shipper.close();
+
+    String key = "/archives/logs/2020/11/03/" + archiveId + ".db";
+    assertThat(fakeS3.objects).hasSize(2);
+    assertThat(fakeS3.objects.get(key)).isEqualTo(original);
+  }
+
+  private S3ArchiveShipper createShipper() {
+    S3ArchiveShipper shipper = new S3ArchiveShipper();
+    shipper.setBucket("archives");
+    shipper.setPrefix("logs");
+    shipper.setRegion("us-east-1");
+    shipper.setEndpoint("http://localhost:" + fakeS3.port());
+    shipper.setPathStyleAccess(true);
+    shipper.setAccessKeyId("test");
+    shipper.setSecretAccessKey("test");
+    shipper.setPartSize(64 * 1024);
+    shipper.setBaseBackoffMillis(10);
+    return shipper;
+  }
+
+  private ArchiveManifest manifest(Path archive) throws SQLException {
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + archive)) {
+      return ArchiveManifest.read(c).orElseThrow(IllegalStateException::new);
+    }
+  }
+
+  private Path createArchive(Path path, int rows) throws SQLException {
+    Statements statements = Statements.instance();
+    try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + path)) {
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.createEntriesTable());
+        st.execute(statements.createArchiveManifest());
+        st.execute(statements.createArchiveManifestLevels());
+      }
+      try (PreparedStatement ps = c.prepareStatement(statements.insert())) {
+        for (int i = 0; i < rows; i++) {
+          ps.setLong(1, 1604430000L + i);
+          ps.setInt(2, 0);
+          ps.setInt(3, 20000);
+          ps.setBytes(4, ("{\"message\":\"row " + i + "\"}").getBytes(StandardCharsets.UTF_8));
+          ps.addBatch();
+        }
+        ps.executeBatch();
+      }
+      try (Statement st = c.createStatement()) {
+        st.execute(statements.rebuildArchiveManifestLevels());
+      }
+      ArchiveManifest.summarize(c, ArchiveManifest.FORMAT_ENTRIES, IdentityCodec.NAME, 0).write(c);
+    }
+    return path;
+  }
+
+  /** Just enough of the S3 API, with path style access, to upload and check objects. */
+  static class FakeS3 {
+    final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    final AtomicInteger partRequests = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    volatile CountDownLatch release;
+    private final AtomicInteger uploadIds = new AtomicInteger();
+    private final HttpServer server;
+
+    FakeS3() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/", this::handle);
+      server.start();
+    }
+
+    int port() {
+      return server.getAddress().getPort();
+    }
+
+    void stop() {
+      server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+      String path = exchange.getRequestURI().getPath();
+      Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+      byte[] body = readAll(exchange.getRequestBody());
+      String method = exchange.getRequestMethod();
+      if (release != null) {
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      if (method.equals("POST") && query.containsKey("uploads")) {
+        String uploadId = "upload-" + uploadIds.incrementAndGet();
+        uploads.put(uploadId, new ConcurrentSkipListMap<>());
+        respond(
+            exchange,
+            "<InitiateMultipartUploadResult><Key>"
+                + path
+                + "</Key><UploadId>"
+                + uploadId
+                + "</UploadId></InitiateMultipartUploadResult>");
+      } else if (method.equals("PUT") && query.containsKey("partNumber")) {
+        partRequests.incrementAndGet();
+        if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+          exchange.sendResponseHeaders(503, -1);
+          exchange.close();
+          return;
+        }
+        int partNumber = Integer.parseInt(query.get("partNumber"));
+        uploads.get(query.get("uploadId")).put(partNumber, body);
+        exchange.getResponseHeaders().add("ETag", "\"" + md5(body) + "\"");
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+      } else if (method.equals("POST") && query.containsKey("uploadId")) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : uploads.remove(query.get("uploadId")).values()) {
+          out.write(part);
+        }
+        objects.put(path, out.toByteArray());
+        respond(
+            exchange,
+            "<CompleteMultipartUploadResult><Key>"
+                + path
+                + "</Key><ETag>\"multipart\"</ETag></CompleteMultipartUploadResult>");
+      } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+        uploads.remove(query.get("uploadId"));
+        exchange.sendResponseHeaders(204, -1);
+        exchange.close();
+      } else if (method.equals("PUT")) {
+        objects.put(path, body);
+        exchange.getResponseHeaders().add("ETag", "\"" + md5(body) + "\"");
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+      } else if (method.equals("HEAD") && objects.containsKey(path)) {
+        exchange.getResponseHeaders().add("Content-Length", "" + objects.get(path).length);
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+      } else {
+        exchange.sendResponseHeaders(404, -1);
+        exchange.close();
+      }
+    }
+
+    private static void respond(HttpExchange exchange, String xml) throws IOException {
+      byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/xml");
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+      Map<String, String> query = new TreeMap<>();
+      if (rawQuery != null) {
+        for (String param : rawQuery.split("&")) {
+          int eq = param.indexOf('=');
+          query.put(eq < 0 ? param : param.substring(0, eq), eq < 0 ? "" : param.substring(eq + 1));
+        }
+      }
+      return query;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+
+    private static String md5(byte[] bytes) {
+      try {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("MD5").digest(bytes)) {
+          sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}